@@ -53,6 +53,9 @@ public class Constants {
   public static final int DEFAULT_SSL_PORT_NUMBER = 8443;
   public static final int DEFAULT_JETTY_MAX_THREAD_COUNT = 20;
 
+  // Size of the parts the logs are uploaded to the DB in
+  public static final int DEFAULT_LOG_UPLOAD_CHUNK_SIZE = 50 * 1024;
+
   // One Schedule's default End Time: 01/01/2050, 00:00:00, UTC
   public static final long DEFAULT_SCHEDULE_END_EPOCH_TIME = 2524608000000L;
 
@@ -79,6 +82,21 @@ public class Constants {
     public static final String AZKABAN_SERVER_LOGGING_KAFKA_BROKERLIST = "azkaban.server.logging.kafka.brokerList";
     public static final String AZKABAN_SERVER_LOGGING_KAFKA_TOPIC = "azkaban.server.logging.kafka.topic";
 
+    // How often the executors rewrite the whole running flow to the DB, 0 to rewrite it on every
+    // update. Above 0 the updates in between are appended to execution_flow_updates, specified for
+    // both the web and exec servers since the web server merges them into the flows it reads
+    public static final String AZKABAN_FLOW_UPDATE_COMPACTION_INTERVAL_MS = "azkaban.flow.update.compactionIntervalMs";
+
+    // Size in bytes of the parts the job and flow logs are uploaded to the DB in
+    public static final String AZKABAN_LOG_UPLOAD_CHUNK_SIZE = "azkaban.log.upload.chunkSize";
+
+    // Writes the job and flow log files on background threads, specified for the exec server
+    public static final String AZKABAN_SERVER_LOGGING_ASYNC_ENABLED = "azkaban.server.logging.async.enabled";
+    // Number of log events of a job or flow queued before the overflow policy applies
+    public static final String AZKABAN_SERVER_LOGGING_ASYNC_BUFFER_SIZE = "azkaban.server.logging.async.bufferSize";
+    // BLOCK or DROP, see AsyncLogAppender.OverflowPolicy
+    public static final String AZKABAN_SERVER_LOGGING_ASYNC_OVERFLOW_POLICY = "azkaban.server.logging.async.overflowPolicy";
+
     // Represent the class name of azkaban metrics reporter.
     public static final String CUSTOM_METRICS_REPORTER_CLASS_NAME = "azkaban.metrics.reporter.name";
 
@@ -151,6 +169,21 @@ public class Constants {
      *    implies save latest 3 versions saved in storage.
      **/
     public static final String AZKABAN_STORAGE_ARTIFACT_MAX_RETENTION = "azkaban.storage.artifact.max.retention";
+
+    // Connection pool and timeouts of the HTTP client used to call executors
+    public static final String EXECUTOR_CLIENT_MAX_CONNECTIONS =
+        "azkaban.server.executorclient.max.connections";
+    public static final String EXECUTOR_CLIENT_MAX_CONNECTIONS_PER_ROUTE =
+        "azkaban.server.executorclient.max.connections.per.route";
+    public static final String EXECUTOR_CLIENT_CONNECTION_REQUEST_TIMEOUT_MS =
+        "azkaban.server.executorclient.connection.request.timeout.ms";
+    public static final String EXECUTOR_CLIENT_CONNECT_TIMEOUT_MS =
+        "azkaban.server.executorclient.connect.timeout.ms";
+    // Must be longer than the time an executor holds a long-poll update request.
+    public static final String EXECUTOR_CLIENT_SOCKET_TIMEOUT_MS =
+        "azkaban.server.executorclient.socket.timeout.ms";
+    public static final String EXECUTOR_CLIENT_IDLE_CONNECTION_TIMEOUT_MS =
+        "azkaban.server.executorclient.idle.connection.timeout.ms";
   }
 
   public static class FlowProperties {
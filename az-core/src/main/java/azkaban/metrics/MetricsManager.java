@@ -21,6 +21,7 @@ import static azkaban.Constants.ConfigurationKeys.METRICS_SERVER_URL;
 
 import azkaban.utils.Props;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.jvm.GarbageCollectorMetricSet;
@@ -78,6 +79,14 @@ public class MetricsManager {
     this.registry.register(name, (Gauge<T>) gaugeFunc::get);
   }
 
+  /**
+   * A {@link Histogram} measures the distribution of values, e.g., the time it takes to open a
+   * connection.
+   */
+  public Histogram addHistogram(final String name) {
+    return this.registry.histogram(name);
+  }
+
   /**
    * reporting metrics to remote metrics collector. Note: this method must be synchronized, since
    * both web server and executor will call it during initialization.
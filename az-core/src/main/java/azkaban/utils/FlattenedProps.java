@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of a Props hierarchy, optimized for reads.
+ *
+ * The levels of the hierarchy are merged into one map, so that a lookup no longer walks the whole
+ * parent chain. Flattening stops at the first ancestor which is already a snapshot: it becomes the
+ * parent of the new snapshot instead of being copied, so that the jobs of a flow share one copy
+ * of the flow properties. Any attempt to modify a snapshot throws an
+ * UnsupportedOperationException.
+ */
+public final class FlattenedProps extends Props {
+
+  private final Map<String, String> values;
+
+  private FlattenedProps(final FlattenedProps parent, final Map<String, String> values,
+      final String source) {
+    super(parent, Collections.unmodifiableMap(values), source);
+    this.values = values;
+  }
+
+  /**
+   * Flattens props and its parents, up to their first ancestor which is already flattened.
+   *
+   * @return null if props is null.
+   */
+  public static FlattenedProps of(final Props props) {
+    if (props == null || props instanceof FlattenedProps) {
+      return (FlattenedProps) props;
+    }
+
+    FlattenedProps ancestor = null;
+    for (Props parent = props.getParent(); parent != null; parent = parent.getParent()) {
+      if (parent instanceof FlattenedProps) {
+        ancestor = (FlattenedProps) parent;
+        break;
+      }
+    }
+
+    final Map<String, String> values = new HashMap<>();
+    putLevels(props, ancestor, values);
+    return new FlattenedProps(ancestor, values, props.getSource());
+  }
+
+  /**
+   * Flattens all the levels of props over all the levels of base into one level. The values of
+   * props take precedence. Either of them can be null.
+   */
+  public static FlattenedProps merge(final Props base, final Props props) {
+    final Map<String, String> values = new HashMap<>();
+    putLevels(base, null, values);
+    putLevels(props, null, values);
+    return new FlattenedProps(null, values,
+        props != null ? props.getSource() : base != null ? base.getSource() : null);
+  }
+
+  /* Puts the values of props and its parents up to, but excluding, last. Children win. */
+  private static void putLevels(final Props props, final Props last,
+      final Map<String, String> values) {
+    if (props == null || props == last) {
+      return;
+    }
+    putLevels(props.getParent(), last, values);
+    for (final String key : props.localKeySet()) {
+      values.put(key, props.get(key));
+    }
+  }
+
+  /**
+   * Return value if available in this snapshot otherwise return from the shared ancestor
+   */
+  @Override
+  public String get(final Object key) {
+    final String value = this.values.get(key);
+    if (value != null || this.values.containsKey(key)) {
+      return value;
+    }
+    final Props parent = getParent();
+    return parent != null ? parent.get(key) : null;
+  }
+
+  @Override
+  public void setParent(final Props prop) {
+    throw new UnsupportedOperationException("Flattened props can't be modified");
+  }
+}
@@ -27,14 +27,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.ObjectWriter;
+import org.codehaus.jackson.smile.SmileFactory;
 
 public class JSONUtils {
 
+  // ObjectMappers are thread safe once configured, so they are shared instead of being created
+  // for every call.
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
   /**
    * The constructor. Cannot construct this class.
    */
@@ -46,14 +51,12 @@ public class JSONUtils {
   }
 
   public static String toJSON(final Object obj, final boolean prettyPrint) {
-    final ObjectMapper mapper = new ObjectMapper();
-
     try {
       if (prettyPrint) {
-        final ObjectWriter writer = mapper.writerWithDefaultPrettyPrinter();
+        final ObjectWriter writer = MAPPER.writerWithDefaultPrettyPrinter();
         return writer.writeValueAsString(obj);
       }
-      return mapper.writeValueAsString(obj);
+      return MAPPER.writeValueAsString(obj);
     } catch (final Exception e) {
       throw new RuntimeException(e);
     }
@@ -65,14 +68,13 @@ public class JSONUtils {
 
   public static void toJSON(final Object obj, final OutputStream stream,
       final boolean prettyPrint) {
-    final ObjectMapper mapper = new ObjectMapper();
     try {
       if (prettyPrint) {
-        final ObjectWriter writer = mapper.writerWithDefaultPrettyPrinter();
+        final ObjectWriter writer = MAPPER.writerWithDefaultPrettyPrinter();
         writer.writeValue(stream, obj);
         return;
       }
-      mapper.writeValue(stream, obj);
+      MAPPER.writeValue(stream, obj);
     } catch (final Exception e) {
       throw new RuntimeException(e);
     }
@@ -103,28 +105,45 @@ public class JSONUtils {
   }
 
   public static Object parseJSONFromString(final String json) throws IOException {
-    final ObjectMapper mapper = new ObjectMapper();
-    final JsonFactory factory = new JsonFactory();
-    final JsonParser parser = factory.createJsonParser(json);
-    final JsonNode node = mapper.readTree(parser);
+    final JsonParser parser = MAPPER.getJsonFactory().createJsonParser(json);
+    final JsonNode node = MAPPER.readTree(parser);
 
     return toObjectFromJSONNode(node);
   }
 
+  public static <T> T parseJSONFromString(final String json, final Class<T> valueType)
+      throws IOException {
+    return MAPPER.readValue(json, valueType);
+  }
+
   public static Object parseJSONFromFile(final File file) throws IOException {
-    final ObjectMapper mapper = new ObjectMapper();
-    final JsonFactory factory = new JsonFactory();
-    final JsonParser parser = factory.createJsonParser(file);
-    final JsonNode node = mapper.readTree(parser);
+    final JsonParser parser = MAPPER.getJsonFactory().createJsonParser(file);
+    final JsonNode node = MAPPER.readTree(parser);
 
     return toObjectFromJSONNode(node);
   }
 
   public static Object parseJSONFromReader(final Reader reader) throws IOException {
-    final ObjectMapper mapper = new ObjectMapper();
-    final JsonFactory factory = new JsonFactory();
-    final JsonParser parser = factory.createJsonParser(reader);
-    final JsonNode node = mapper.readTree(parser);
+    final JsonParser parser = MAPPER.getJsonFactory().createJsonParser(reader);
+    final JsonNode node = MAPPER.readTree(parser);
+
+    return toObjectFromJSONNode(node);
+  }
+
+  /**
+   * Encodes the object in Smile, a binary form of JSON which is more compact and quicker to parse.
+   */
+  public static byte[] toSmile(final Object obj) throws IOException {
+    return SMILE_MAPPER.writeValueAsBytes(obj);
+  }
+
+  /**
+   * Parses Smile encoded data into the same maps, lists and values as
+   * {@link #parseJSONFromString(String)}.
+   */
+  public static Object parseSmile(final byte[] data) throws IOException {
+    final JsonParser parser = SMILE_MAPPER.getJsonFactory().createJsonParser(data);
+    final JsonNode node = SMILE_MAPPER.readTree(parser);
 
     return toObjectFromJSONNode(node);
   }
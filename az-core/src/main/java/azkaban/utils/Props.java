@@ -62,6 +62,16 @@ public class Props {
     this._parent = parent;
   }
 
+  /**
+   * Constructor for Props backed by the given map, which is used as is. Used by {@link
+   * FlattenedProps}.
+   */
+  Props(final Props parent, final Map<String, String> current, final String source) {
+    this._current = current;
+    this._parent = parent;
+    this.source = source;
+  }
+
   /**
    * Load props from a file.
    */
@@ -17,7 +17,6 @@
 package azkaban.utils;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -27,12 +26,25 @@ import java.io.OutputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Queue;
 import java.util.Random;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipOutputStream;
@@ -57,6 +69,10 @@ import org.quartz.CronExpression;
 public class Utils {
 
   public static final Random RANDOM = new Random();
+  // Large archives are extracted in parallel, each thread extracting at least this many files
+  private static final int MIN_ENTRIES_PER_UNZIP_THREAD = 100;
+  private static final int MAX_UNZIP_THREADS = 8;
+  private static final int UNZIP_BUFFER_SIZE = 64 * 1024;
   private static final Logger logger = Logger
       .getLogger(Utils.class);
 
@@ -194,26 +210,95 @@ public class Utils {
     }
   }
 
+  /**
+   * Extracts the zip file into dest. Large archives are extracted by several threads.
+   */
   public static void unzip(final ZipFile source, final File dest) throws IOException {
-    final Enumeration<?> entries = source.entries();
+    unzip(source, dest, Math.min(MAX_UNZIP_THREADS, Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * Extracts the zip file into dest. The directories are created first, then the files are
+   * extracted by up to parallelism threads, the largest first.
+   *
+   * @throws IOException if an entry would be extracted outside of dest.
+   */
+  public static void unzip(final ZipFile source, final File dest, final int parallelism)
+      throws IOException {
+    final Path destDir = dest.toPath().toAbsolutePath().normalize();
+    final Set<Path> dirs = new TreeSet<>();
+    final List<ZipEntry> files = new ArrayList<>();
+    final Enumeration<? extends ZipEntry> entries = source.entries();
     while (entries.hasMoreElements()) {
-      final ZipEntry entry = (ZipEntry) entries.nextElement();
-      final File newFile = new File(dest, entry.getName());
+      final ZipEntry entry = entries.nextElement();
+      final Path target = getUnzipTarget(destDir, entry);
       if (entry.isDirectory()) {
-        newFile.mkdirs();
+        dirs.add(target);
       } else {
-        newFile.getParentFile().mkdirs();
-        final InputStream src = source.getInputStream(entry);
-        try {
-          final OutputStream output =
-              new BufferedOutputStream(new FileOutputStream(newFile));
-          try {
-            IOUtils.copy(src, output);
-          } finally {
-            output.close();
-          }
-        } finally {
-          src.close();
+        dirs.add(target.getParent());
+        files.add(entry);
+      }
+    }
+    for (final Path dir : dirs) {
+      Files.createDirectories(dir);
+    }
+    files.sort(Comparator.comparingLong(ZipEntry::getCompressedSize).reversed());
+
+    final Queue<ZipEntry> queue = new ConcurrentLinkedQueue<>(files);
+    if (parallelism <= 1 || files.size() < MIN_ENTRIES_PER_UNZIP_THREAD * 2) {
+      extractEntries(source, destDir, queue);
+      return;
+    }
+
+    final int threads = Math.min(parallelism, files.size() / MIN_ENTRIES_PER_UNZIP_THREAD);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          extractEntries(source, destDir, queue);
+          return null;
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while extracting " + source.getName(), e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Failed to extract " + source.getName(), e.getCause());
+    } finally {
+      // stops the other threads after their current entry if one failed
+      queue.clear();
+      executor.shutdownNow();
+    }
+  }
+
+  /* Returns where the entry is extracted, refusing the entries escaping destDir */
+  private static Path getUnzipTarget(final Path destDir, final ZipEntry entry)
+      throws IOException {
+    final Path target = destDir.resolve(entry.getName()).normalize();
+    if (!target.startsWith(destDir)) {
+      throw new IOException("Zip entry " + entry.getName() + " is outside of " + destDir);
+    }
+    return target;
+  }
+
+  /* Extracts the file entries of the queue into their already created directories */
+  private static void extractEntries(final ZipFile source, final Path destDir,
+      final Queue<ZipEntry> entries) throws IOException {
+    final byte[] buffer = new byte[UNZIP_BUFFER_SIZE];
+    ZipEntry entry;
+    while ((entry = entries.poll()) != null) {
+      try (InputStream input = source.getInputStream(entry);
+          OutputStream output = Files.newOutputStream(getUnzipTarget(destDir, entry))) {
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+          output.write(buffer, 0, read);
         }
       }
     }
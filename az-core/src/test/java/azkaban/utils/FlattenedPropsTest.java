@@ -0,0 +1,114 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.Test;
+
+public class FlattenedPropsTest {
+
+  /**
+   * Builds a chain shaped like the props of a job: job source, output props, flow props, shared
+   * props and global props, each level overriding some keys of the levels below.
+   */
+  private static Props createJobChain(final int keysPerLevel) {
+    Props props = null;
+    final String[] levels = {"global", "shared", "flow", "output", "job"};
+    for (int level = 0; level < levels.length; level++) {
+      props = new Props(props);
+      props.setSource(levels[level]);
+      for (int i = level * keysPerLevel / 2; i < (level + 2) * keysPerLevel / 2; i++) {
+        props.put("key" + i, levels[level] + i);
+      }
+    }
+    return props;
+  }
+
+  @Test
+  public void testSnapshotReadsLikeChain() {
+    final Props chain = createJobChain(100);
+    final Props snapshot = FlattenedProps.of(chain);
+
+    assertThat(snapshot.getKeySet()).isEqualTo(chain.getKeySet());
+    assertThat(snapshot.getFlattened()).isEqualTo(chain.getFlattened());
+    for (final String key : chain.getKeySet()) {
+      assertThat(snapshot.get(key)).isEqualTo(chain.get(key));
+    }
+    assertThat(snapshot.get("key0")).isEqualTo("global0");
+    assertThat(snapshot.get("key250")).isEqualTo("job250");
+    assertThat(snapshot.containsKey("missing")).isFalse();
+    assertThat(snapshot.get("missing")).isNull();
+    assertThat(snapshot.getParent()).isNull();
+    assertThat(snapshot.getSource()).isEqualTo("job");
+    assertThat(PropsUtils.resolveProps(snapshot).getFlattened())
+        .isEqualTo(PropsUtils.resolveProps(chain).getFlattened());
+  }
+
+  @Test
+  public void testFlattenedAncestorIsShared() {
+    final FlattenedProps flowProps = FlattenedProps
+        .merge(Props.of("shared", "shared", "both", "shared"), Props.of("both", "flow"));
+    assertThat(flowProps.get("both")).isEqualTo("flow");
+
+    final Props job1 = Props.of(Props.of(flowProps, "output", "job0"), "job", "job1");
+    final Props job2 = Props.of(flowProps, "job", "job2", "both", "job2");
+    final Props snapshot1 = FlattenedProps.of(job1);
+    final Props snapshot2 = FlattenedProps.of(job2);
+
+    assertThat(snapshot1.getParent()).isSameAs(flowProps);
+    assertThat(snapshot2.getParent()).isSameAs(flowProps);
+    assertThat(snapshot1.localKeySet()).containsOnly("job", "output");
+    assertThat(snapshot1.get("both")).isEqualTo("flow");
+    assertThat(snapshot1.get("shared")).isEqualTo("shared");
+    assertThat(snapshot2.get("both")).isEqualTo("job2");
+    assertThat(FlattenedProps.of(snapshot1)).isSameAs(snapshot1);
+  }
+
+  @Test
+  public void testSnapshotIsImmutable() {
+    final Props chain = createJobChain(10);
+    final Props snapshot = FlattenedProps.of(chain);
+
+    assertThatThrownBy(() -> snapshot.put("key0", "value"))
+        .isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> snapshot.removeLocal("key0"))
+        .isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> snapshot.setParent(new Props()))
+        .isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> Props.of(snapshot, "key", "value").setEarliestAncestor(new Props()))
+        .isInstanceOf(UnsupportedOperationException.class);
+
+    // the snapshot doesn't see the later changes of the chain
+    chain.put("key0", "changed");
+    assertThat(snapshot.get("key0")).isEqualTo("global0");
+
+    // props built on top of a snapshot stay mutable
+    final Props child = new Props(snapshot);
+    child.put("key0", "child");
+    assertThat(child.get("key0")).isEqualTo("child");
+    assertThat(snapshot.get("key0")).isEqualTo("global0");
+  }
+
+  @Test
+  public void testMergeOfNothing() {
+    final Props props = FlattenedProps.merge(null, null);
+    assertThat(props.getKeySet()).isEmpty();
+    assertThat(FlattenedProps.of(null)).isNull();
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class JSONUtilsTest {
+
+  /**
+   * Builds an object shaped like the update objects executors send for running flows.
+   */
+  private static Map<String, Object> createUpdateObject(final int numNodes) {
+    final List<Object> nodes = new ArrayList<>();
+    for (int i = 0; i < numNodes; i++) {
+      final Map<String, Object> node = new HashMap<>();
+      node.put("id", "job" + i);
+      node.put("status", "RUNNING");
+      node.put("startTime", 1500000000000L + i);
+      node.put("endTime", 1500000003000L + i);
+      node.put("updateTime", 1500000001000L + i);
+      node.put("attempt", 0);
+      nodes.add(node);
+    }
+    final Map<String, Object> flow = new HashMap<>();
+    flow.put("execId", 12345);
+    flow.put("status", "RUNNING");
+    flow.put("startTime", 1500000000000L);
+    flow.put("updateTime", 1500000002000L);
+    flow.put("nodes", nodes);
+    return flow;
+  }
+
+  @Test
+  public void testJsonRoundTrip() throws Exception {
+    final Map<String, Object> update = createUpdateObject(10);
+    assertThat(JSONUtils.parseJSONFromString(JSONUtils.toJSON(update))).isEqualTo(update);
+  }
+
+  @Test
+  public void testSmileRoundTrip() throws Exception {
+    final Map<String, Object> update = createUpdateObject(10);
+    assertThat(JSONUtils.parseSmile(JSONUtils.toSmile(update))).isEqualTo(update);
+  }
+
+  @Test
+  public void testSmileIsSmallerThanJson() throws Exception {
+    final Map<String, Object> update = createUpdateObject(100);
+    final int jsonSize = JSONUtils.toJSON(update).getBytes(StandardCharsets.UTF_8).length;
+    final int smileSize = JSONUtils.toSmile(update).length;
+    assertThat(smileSize).isLessThan(jsonSize);
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import azkaban.utils.Pair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <pre>
+ * Registry of the active executions (queued, being dispatched or running), indexed by execution
+ * id and by project and flow.
+ * NOTE: The concurrency checks done for every submitted flow look up the executions of the flow
+ *       directly instead of scanning all the active executions. Lookups don't take any lock.
+ *       Submissions of the same flow are serialized with {@link #reserve(int, String)}, which
+ *       locks the entry of the flow only, so that submissions of different flows don't wait on
+ *       each other.
+ * </pre>
+ */
+public class ActiveExecutions {
+
+  private final ConcurrentHashMap<Integer, ExecutableFlow> flowsById = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Pair<Integer, String>, FlowExecutions> flowsByKey =
+      new ConcurrentHashMap<>();
+
+  private static Pair<Integer, String> key(final int projectId, final String flowId) {
+    return new Pair<>(projectId, flowId);
+  }
+
+  private static Pair<Integer, String> key(final ExecutableFlow flow) {
+    return key(flow.getProjectId(), flow.getFlowId());
+  }
+
+  /**
+   * Registers an active execution, does nothing if it is already registered.
+   */
+  public void add(final ExecutableFlow flow) {
+    final int executionId = flow.getExecutionId();
+    if (this.flowsById.putIfAbsent(executionId, flow) == null) {
+      this.flowsByKey.compute(key(flow), (key, executions) -> {
+        final FlowExecutions result = executions == null ? new FlowExecutions() : executions;
+        result.executionIds.add(executionId);
+        return result;
+      });
+    }
+  }
+
+  /**
+   * Unregisters an execution once it is finalized.
+   *
+   * @return false if the execution wasn't registered.
+   */
+  public boolean remove(final int executionId) {
+    final ExecutableFlow flow = this.flowsById.remove(executionId);
+    if (flow == null) {
+      return false;
+    }
+    this.flowsByKey.computeIfPresent(key(flow), (key, executions) -> {
+      executions.executionIds.remove(executionId);
+      return executions.isIdle() ? null : executions;
+    });
+    return true;
+  }
+
+  public ExecutableFlow get(final int executionId) {
+    return this.flowsById.get(executionId);
+  }
+
+  public boolean contains(final int executionId) {
+    return this.flowsById.containsKey(executionId);
+  }
+
+  public int size() {
+    return this.flowsById.size();
+  }
+
+  /**
+   * @return the ids of the active executions of the flow, sorted in ascending order.
+   */
+  public List<Integer> getExecutionIds(final int projectId, final String flowId) {
+    final FlowExecutions executions = this.flowsByKey.get(key(projectId, flowId));
+    return executions == null ? Collections.emptyList()
+        : new ArrayList<>(executions.executionIds);
+  }
+
+  public boolean isFlowRunning(final int projectId, final String flowId) {
+    final FlowExecutions executions = this.flowsByKey.get(key(projectId, flowId));
+    return executions != null && !executions.executionIds.isEmpty();
+  }
+
+  /**
+   * Reserves the flow for a submission: blocks until no other submission of the same flow is in
+   * progress. The reservation must be closed once the submitted execution is registered, or once
+   * the submission failed.
+   */
+  public FlowReservation reserve(final int projectId, final String flowId) {
+    final Pair<Integer, String> key = key(projectId, flowId);
+    // the entry can't be removed while it has reservations, whether they hold its lock or not
+    final FlowExecutions executions = this.flowsByKey.compute(key, (k, current) -> {
+      final FlowExecutions result = current == null ? new FlowExecutions() : current;
+      result.reservations++;
+      return result;
+    });
+    executions.submitLock.lock();
+    return new FlowReservation(key, executions);
+  }
+
+  /* Active executions and pending submissions of one flow */
+  private static class FlowExecutions {
+
+    private final ConcurrentSkipListSet<Integer> executionIds = new ConcurrentSkipListSet<>();
+    private final ReentrantLock submitLock = new ReentrantLock();
+    // only updated in the remapping functions of flowsByKey, which are atomic per flow
+    private int reservations = 0;
+
+    private boolean isIdle() {
+      return this.executionIds.isEmpty() && this.reservations == 0;
+    }
+  }
+
+  /**
+   * Exclusive right to submit a flow, released by {@link #close()}.
+   */
+  public class FlowReservation implements AutoCloseable {
+
+    private final Pair<Integer, String> key;
+    private final FlowExecutions executions;
+
+    private FlowReservation(final Pair<Integer, String> key, final FlowExecutions executions) {
+      this.key = key;
+      this.executions = executions;
+    }
+
+    @Override
+    public void close() {
+      this.executions.submitLock.unlock();
+      ActiveExecutions.this.flowsByKey.computeIfPresent(this.key, (k, current) -> {
+        current.reservations--;
+        return current.isIdle() ? null : current;
+      });
+    }
+  }
+}
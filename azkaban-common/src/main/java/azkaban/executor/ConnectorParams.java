@@ -24,9 +24,14 @@ public interface ConnectorParams {
   public static final String SHAREDTOKEN_PARAM = "token";
   public static final String USER_PARAM = "user";
 
+  // Media type of Smile encoded responses. Requested through the Accept header.
+  public static final String SMILE_MIME_TYPE = "application/x-jackson-smile";
+
   public static final String UPDATE_ACTION = "update";
   public static final String STATUS_ACTION = "status";
   public static final String EXECUTE_ACTION = "execute";
+  // Submits all executions in EXEC_ID_LIST_PARAM with one call.
+  public static final String EXECUTE_BATCH_ACTION = "executeBatch";
   public static final String CANCEL_ACTION = "cancel";
   public static final String PAUSE_ACTION = "pause";
   public static final String RESUME_ACTION = "resume";
@@ -63,6 +68,10 @@ public interface ConnectorParams {
   public static final String RESPONSE_ALIVE = "alive";
   public static final String RESPONSE_UPDATETIME = "lasttime";
   public static final String RESPONSE_UPDATED_FLOWS = "updated";
+  public static final String RESPONSE_UPDATE_EPOCH = "updateEpoch";
+  public static final String RESPONSE_UPDATE_SEQUENCE = "updateSequence";
+  // Maps each execution id of an EXECUTE_BATCH_ACTION to RESPONSE_SUCCESS or an error message.
+  public static final String RESPONSE_BATCH_RESULTS = "batchResults";
 
   public static final int NODE_NAME_INDEX = 0;
   public static final int NODE_STATUS_INDEX = 1;
@@ -72,6 +81,12 @@ public interface ConnectorParams {
   public static final String UPDATE_TIME_LIST_PARAM = "updatetime";
   public static final String EXEC_ID_LIST_PARAM = "executionId";
 
+  // Long-poll (streaming) update parameters. The executor holds the update request until one of
+  // the listed flows changes after the given sequence, or until the wait time expires.
+  public static final String UPDATE_EPOCH_PARAM = "updateEpoch";
+  public static final String UPDATE_SEQUENCE_PARAM = "updateSequence";
+  public static final String UPDATE_WAIT_MS_PARAM = "updateWaitMs";
+
   public static final String FORCED_FAILED_MARKER = ".failed";
 
   public static final String UPDATE_MAP_EXEC_ID = "executionId";
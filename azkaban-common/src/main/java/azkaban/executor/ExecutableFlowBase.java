@@ -24,6 +24,7 @@ import azkaban.project.Project;
 import azkaban.utils.TypedMapWrapper;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -44,6 +45,14 @@ public class ExecutableFlowBase extends ExecutableNode {
   private ArrayList<String> endNodes;
   private String flowId;
 
+  // Dependency counters, indexed by the dependency index of the nodes. Built by
+  // resetDependencyCounters(), not saved.
+  private ExecutableNode[] indexedNodes;
+  private int[][] outNodeIndexes;
+  private int[] remainingDependencies;
+  private int[] failedDependencies;
+  private boolean[] dependencyFinished;
+
   public ExecutableFlowBase(final Project project, final Node node, final Flow flow,
       final ExecutableFlowBase parent) {
     super(node, parent);
@@ -204,6 +213,98 @@ public class ExecutableFlowBase extends ExecutableNode {
     return this.endNodes;
   }
 
+  /**
+   * <pre>
+   * (Re)builds the dependency counters of this flow and of its embedded flows from the current
+   * status of the nodes.
+   * NOTE: Each node counts its dependencies that are not finished yet, so that telling whether a
+   *       node is ready takes constant time, and finishing a node only visits its out nodes.
+   *       The counters need to be rebuilt whenever node statuses are reset, e.g. to retry
+   *       failures. They are not thread safe.
+   * </pre>
+   */
+  public void resetDependencyCounters() {
+    final int size = this.executableNodes.size();
+    this.indexedNodes = this.executableNodes.values().toArray(new ExecutableNode[size]);
+    this.outNodeIndexes = new int[size][];
+    this.remainingDependencies = new int[size];
+    this.failedDependencies = new int[size];
+    this.dependencyFinished = new boolean[size];
+    for (int i = 0; i < size; i++) {
+      this.indexedNodes[i].setDependencyIndex(i);
+    }
+    for (int i = 0; i < size; i++) {
+      final ExecutableNode node = this.indexedNodes[i];
+      final int[] outIndexes = new int[node.getOutNodes().size()];
+      int j = 0;
+      for (final String outNodeId : node.getOutNodes()) {
+        outIndexes[j++] = this.executableNodes.get(outNodeId).getDependencyIndex();
+      }
+      this.outNodeIndexes[i] = outIndexes;
+      this.remainingDependencies[i] = node.getInNodes().size();
+      if (node instanceof ExecutableFlowBase) {
+        ((ExecutableFlowBase) node).resetDependencyCounters();
+      }
+    }
+    for (final ExecutableNode node : this.indexedNodes) {
+      if (Status.isStatusFinished(node.getStatus())) {
+        dependencyFinished(node);
+      }
+    }
+  }
+
+  /**
+   * Records that a node of this flow is finished for good (i.e. it won't be retried), so that
+   * the nodes depending on it have one dependency less. Recording a node more than once has no
+   * effect.
+   *
+   * @return the out nodes of the node whose dependencies are now all finished.
+   */
+  public List<ExecutableNode> dependencyFinished(final ExecutableNode node) {
+    if (this.indexedNodes == null) {
+      resetDependencyCounters();
+    }
+    final int index = node.getDependencyIndex();
+    if (this.dependencyFinished[index]) {
+      return Collections.emptyList();
+    }
+    this.dependencyFinished[index] = true;
+
+    final Status status = node.getStatus();
+    final boolean failed = status == Status.FAILED || status == Status.CANCELLED
+        || status == Status.KILLED;
+    final List<ExecutableNode> readyNodes = new ArrayList<>();
+    for (final int outIndex : this.outNodeIndexes[index]) {
+      if (failed) {
+        this.failedDependencies[outIndex]++;
+      }
+      if (--this.remainingDependencies[outIndex] == 0) {
+        readyNodes.add(this.indexedNodes[outIndex]);
+      }
+    }
+    return readyNodes;
+  }
+
+  /**
+   * @return true if all the in nodes of the node are finished.
+   */
+  public boolean areDependenciesFinished(final ExecutableNode node) {
+    if (this.indexedNodes == null) {
+      resetDependencyCounters();
+    }
+    return this.remainingDependencies[node.getDependencyIndex()] == 0;
+  }
+
+  /**
+   * @return true if any in node of the node failed, was killed or was cancelled.
+   */
+  public boolean hasFailedDependency(final ExecutableNode node) {
+    if (this.indexedNodes == null) {
+      resetDependencyCounters();
+    }
+    return this.failedDependencies[node.getDependencyIndex()] > 0;
+  }
+
   @Override
   public Map<String, Object> toObject() {
     final Map<String, Object> mapObj = new HashMap<>();
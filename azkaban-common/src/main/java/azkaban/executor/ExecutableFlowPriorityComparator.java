@@ -29,12 +29,33 @@ public final class ExecutableFlowPriorityComparator implements
   private static final Logger logger = Logger
       .getLogger(ExecutableFlowPriorityComparator.class);
 
+  private final long priorityAgingMs;
+
+  public ExecutableFlowPriorityComparator() {
+    this(0);
+  }
+
+  /**
+   * @param priorityAgingMs time a flow has to wait to gain one priority level, aging is disabled
+   * if not positive.
+   */
+  public ExecutableFlowPriorityComparator(final long priorityAgingMs) {
+    this.priorityAgingMs = priorityAgingMs;
+  }
+
   /**
    * <pre>
    * Sorting order is determined by:-
    * 1. descending order of priority
    * 2. if same priority, ascending order of update time
    * 3. if same priority and updateTime, ascending order of execution id
+   *
+   * With priority aging, a flow gains one priority level for every priorityAgingMs it has
+   * waited since it was submitted, so that low priority flows are not starved by a steady stream
+   * of higher priority ones. A flow of priority p is then ordered as if it had been submitted
+   * p * priorityAgingMs earlier, which keeps the order of two flows the same while they wait:-
+   * 1. ascending order of submit time minus priority times priorityAgingMs
+   * 2. if same, ascending order of execution id
    * </pre>
    *
    * {@inheritDoc}
@@ -57,6 +78,14 @@ public final class ExecutableFlowPriorityComparator implements
       return -1;
     } else if (exflow2 == null) {
       return 1;
+    } else if (this.priorityAgingMs > 0) {
+      int diff = Long.compare(
+          exflow1.getSubmitTime() - getPriority(exflow1) * this.priorityAgingMs,
+          exflow2.getSubmitTime() - getPriority(exflow2) * this.priorityAgingMs);
+      if (diff == 0) {
+        diff = exflow1.getExecutionId() - exflow2.getExecutionId();
+      }
+      return diff;
     } else {
       // descending order of priority
       int diff = getPriority(exflow2) - getPriority(exflow1);
@@ -72,8 +101,10 @@ public final class ExecutableFlowPriorityComparator implements
     }
   }
 
-  /* Helper method to fetch flow priority from flow props */
-  private int getPriority(final ExecutableFlow exflow) {
+  /**
+   * Helper method to fetch flow priority from flow props
+   */
+  public static int getPriority(final ExecutableFlow exflow) {
     final ExecutionOptions options = exflow.getExecutionOptions();
     int priority = ExecutionOptions.DEFAULT_FLOW_PRIORITY;
     if (options != null
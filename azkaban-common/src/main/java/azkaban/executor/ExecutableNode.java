@@ -69,6 +69,8 @@ public class ExecutableNode {
 
   // Transient. These values aren't saved, but rediscovered.
   private ExecutableFlowBase parentFlow;
+  // Index of the node in the dependency counters of its parent flow, -1 until they are built
+  private int dependencyIndex = -1;
 
   public ExecutableNode(final Node node) {
     this.id = node.getId();
@@ -109,6 +111,14 @@ public class ExecutableNode {
     this.parentFlow = flow;
   }
 
+  int getDependencyIndex() {
+    return this.dependencyIndex;
+  }
+
+  void setDependencyIndex(final int dependencyIndex) {
+    this.dependencyIndex = dependencyIndex;
+  }
+
   public String getId() {
     return this.id;
   }
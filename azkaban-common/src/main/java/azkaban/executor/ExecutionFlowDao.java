@@ -16,19 +16,24 @@
 
 package azkaban.executor;
 
+import azkaban.Constants.ConfigurationKeys;
 import azkaban.db.EncodingType;
 import azkaban.db.DatabaseOperator;
 import azkaban.db.SQLTransaction;
 import azkaban.utils.GZIPUtils;
 import azkaban.utils.JSONUtils;
 import azkaban.utils.Pair;
+import azkaban.utils.Props;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.dbutils.ResultSetHandler;
@@ -38,11 +43,24 @@ import org.apache.log4j.Logger;
 public class ExecutionFlowDao {
 
   private static final Logger logger = Logger.getLogger(ExecutionFlowDao.class);
+  // Max number of executions whose appended updates are fetched in one query
+  private static final int FLOW_UPDATES_FETCH_BATCH_SIZE = 500;
   private final DatabaseOperator dbOperator;
+  // Whether the executors append flow updates to execution_flow_updates
+  private final boolean appendedUpdatesEnabled;
 
   @Inject
-  public ExecutionFlowDao(final DatabaseOperator dbOperator) {
+  public ExecutionFlowDao(final DatabaseOperator dbOperator, final Props props) {
     this.dbOperator = dbOperator;
+    this.appendedUpdatesEnabled = isAppendedUpdatesEnabled(props);
+  }
+
+  /**
+   * @return true if the flow updates are appended to execution_flow_updates between the rewrites
+   * of the whole flow. Otherwise that table is never read nor written.
+   */
+  static boolean isAppendedUpdatesEnabled(final Props props) {
+    return props.getLong(ConfigurationKeys.AZKABAN_FLOW_UPDATE_COMPACTION_INTERVAL_MS, 0) > 0;
   }
 
   public synchronized void uploadExecutableFlow(final ExecutableFlow flow)
@@ -80,8 +98,9 @@ public class ExecutionFlowDao {
   List<ExecutableFlow> fetchFlowHistory(final int skip, final int num)
       throws ExecutorManagerException {
     try {
-      return this.dbOperator.query(FetchExecutableFlows.FETCH_ALL_EXECUTABLE_FLOW_HISTORY,
-          new FetchExecutableFlows(), skip, num);
+      return applyAppendedUpdates(
+          this.dbOperator.query(FetchExecutableFlows.FETCH_ALL_EXECUTABLE_FLOW_HISTORY,
+              new FetchExecutableFlows(), skip, num));
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching flow History", e);
     }
@@ -91,8 +110,9 @@ public class ExecutionFlowDao {
       final int skip, final int num)
       throws ExecutorManagerException {
     try {
-      return this.dbOperator.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW_HISTORY,
-          new FetchExecutableFlows(), projectId, flowId, skip, num);
+      return applyAppendedUpdates(
+          this.dbOperator.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW_HISTORY,
+              new FetchExecutableFlows(), projectId, flowId, skip, num));
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching flow history", e);
     }
@@ -101,8 +121,15 @@ public class ExecutionFlowDao {
   public List<Pair<ExecutionReference, ExecutableFlow>> fetchQueuedFlows()
       throws ExecutorManagerException {
     try {
-      return this.dbOperator.query(FetchQueuedExecutableFlows.FETCH_QUEUED_EXECUTABLE_FLOW,
-          new FetchQueuedExecutableFlows());
+      final List<Pair<ExecutionReference, ExecutableFlow>> flows = this.dbOperator
+          .query(FetchQueuedExecutableFlows.FETCH_QUEUED_EXECUTABLE_FLOW,
+              new FetchQueuedExecutableFlows());
+      final List<ExecutableFlow> executableFlows = new ArrayList<>();
+      for (final Pair<ExecutionReference, ExecutableFlow> flow : flows) {
+        executableFlows.add(flow.getSecond());
+      }
+      applyAppendedUpdates(executableFlows);
+      return flows;
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching active flows", e);
     }
@@ -113,8 +140,9 @@ public class ExecutionFlowDao {
       final Status status)
       throws ExecutorManagerException {
     try {
-      return this.dbOperator.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW_BY_STATUS,
-          new FetchExecutableFlows(), projectId, flowId, status.getNumVal(), skip, num);
+      return applyAppendedUpdates(
+          this.dbOperator.query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW_BY_STATUS,
+              new FetchExecutableFlows(), projectId, flowId, status.getNumVal(), skip, num));
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching active flows", e);
     }
@@ -123,10 +151,11 @@ public class ExecutionFlowDao {
   List<ExecutableFlow> fetchRecentlyFinishedFlows(final Duration maxAge)
       throws ExecutorManagerException {
     try {
-      return this.dbOperator.query(FetchRecentlyFinishedFlows.FETCH_RECENTLY_FINISHED_FLOW,
-          new FetchRecentlyFinishedFlows(), System.currentTimeMillis() - maxAge.toMillis(),
-          Status.SUCCEEDED.getNumVal(), Status.KILLED.getNumVal(),
-          Status.FAILED.getNumVal());
+      return applyAppendedUpdates(
+          this.dbOperator.query(FetchRecentlyFinishedFlows.FETCH_RECENTLY_FINISHED_FLOW,
+              new FetchRecentlyFinishedFlows(), System.currentTimeMillis() - maxAge.toMillis(),
+              Status.SUCCEEDED.getNumVal(), Status.KILLED.getNumVal(),
+              Status.FAILED.getNumVal()));
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching recently finished flows", e);
     }
@@ -210,7 +239,8 @@ public class ExecutionFlowDao {
     }
 
     try {
-      return this.dbOperator.query(query, new FetchExecutableFlows(), params.toArray());
+      return applyAppendedUpdates(
+          this.dbOperator.query(query, new FetchExecutableFlows(), params.toArray()));
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching active flows", e);
     }
@@ -226,29 +256,84 @@ public class ExecutionFlowDao {
         "UPDATE execution_flows "
             + "SET status=?,update_time=?,start_time=?,end_time=?,enc_type=?,flow_data=? "
             + "WHERE exec_id=?";
+    final String DELETE_EXECUTABLE_FLOW_UPDATES =
+        "DELETE FROM execution_flow_updates WHERE exec_id=?";
+
+    final byte[] data = encode(flow.toObject(), encType);
+
+    // The full flow data carries all the updates appended so far
+    final SQLTransaction<Integer> compact = transOperator -> {
+      transOperator.update(UPDATE_EXECUTABLE_FLOW_DATA, flow.getStatus()
+          .getNumVal(), flow.getUpdateTime(), flow.getStartTime(), flow
+          .getEndTime(), encType.getNumVal(), data, flow.getExecutionId());
+      if (this.appendedUpdatesEnabled) {
+        transOperator.update(DELETE_EXECUTABLE_FLOW_UPDATES, flow.getExecutionId());
+      }
+      transOperator.getConnection().commit();
+      return 1;
+    };
+    try {
+      this.dbOperator.transaction(compact);
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error updating flow.", e);
+    }
+  }
+
+  /**
+   * Appends the changes of the nodes updated after sinceUpdateTime, instead of rewriting the
+   * whole flow data. The fetch methods apply them over the flow data until the next
+   * {@link #updateExecutableFlow(ExecutableFlow)} compacts them. Rewrites the whole flow data if
+   * the appended updates aren't enabled.
+   */
+  void appendExecutableFlowUpdate(final ExecutableFlow flow, final long sinceUpdateTime)
+      throws ExecutorManagerException {
+    if (!this.appendedUpdatesEnabled) {
+      updateExecutableFlow(flow);
+      return;
+    }
+    final String UPDATE_EXECUTABLE_FLOW_STATUS =
+        "UPDATE execution_flows SET status=?,update_time=?,start_time=?,end_time=? "
+            + "WHERE exec_id=?";
+    final String INSERT_EXECUTABLE_FLOW_UPDATE =
+        "INSERT INTO execution_flow_updates (exec_id, update_time, enc_type, update_data) "
+            + "values (?,?,?,?)";
+
+    final EncodingType encType = EncodingType.GZIP;
+    final byte[] data = encode(flow.toUpdateObject(sinceUpdateTime), encType);
+
+    final SQLTransaction<Integer> append = transOperator -> {
+      transOperator.update(UPDATE_EXECUTABLE_FLOW_STATUS, flow.getStatus().getNumVal(),
+          flow.getUpdateTime(), flow.getStartTime(), flow.getEndTime(), flow.getExecutionId());
+      transOperator.update(INSERT_EXECUTABLE_FLOW_UPDATE, flow.getExecutionId(),
+          flow.getUpdateTime(), encType.getNumVal(), data);
+      transOperator.getConnection().commit();
+      return 1;
+    };
+    try {
+      this.dbOperator.transaction(append);
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error appending flow update.", e);
+    }
+  }
 
-    final String json = JSONUtils.toJSON(flow.toObject());
-    byte[] data = null;
+  private static byte[] encode(final Object object, final EncodingType encType)
+      throws ExecutorManagerException {
+    final String json = JSONUtils.toJSON(object);
     try {
       final byte[] stringData = json.getBytes("UTF-8");
-      data = stringData;
       // Todo kunkun-tang: use a common method to transform stringData to data.
       if (encType == EncodingType.GZIP) {
-        data = GZIPUtils.gzipBytes(stringData);
+        return GZIPUtils.gzipBytes(stringData);
       }
+      return stringData;
     } catch (final IOException e) {
       throw new ExecutorManagerException("Error encoding the execution flow.");
     }
-
-    try {
-      this.dbOperator.update(UPDATE_EXECUTABLE_FLOW_DATA, flow.getStatus()
-          .getNumVal(), flow.getUpdateTime(), flow.getStartTime(), flow
-          .getEndTime(), encType.getNumVal(), data, flow.getExecutionId());
-    } catch (final SQLException e) {
-      throw new ExecutorManagerException("Error updating flow.", e);
-    }
   }
 
+  /**
+   * Fetches the flow data of an execution, along with the updates appended since it was written.
+   */
   public ExecutableFlow fetchExecutableFlow(final int execId) throws ExecutorManagerException {
     final FetchExecutableFlows flowHandler = new FetchExecutableFlows();
     try {
@@ -256,14 +341,106 @@ public class ExecutionFlowDao {
           .query(FetchExecutableFlows.FETCH_EXECUTABLE_FLOW, flowHandler, execId);
       if (properties.isEmpty()) {
         return null;
-      } else {
-        return properties.get(0);
       }
+      return applyAppendedUpdates(properties).get(0);
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching flow id " + execId, e);
     }
   }
 
+  private <T extends Collection<ExecutableFlow>> T applyAppendedUpdates(final T flows)
+      throws SQLException {
+    return this.appendedUpdatesEnabled ? applyExecutableFlowUpdates(this.dbOperator, flows)
+        : flows;
+  }
+
+  /**
+   * Applies the updates appended to the flow data of the given flows since it was written, in
+   * the order they were made.
+   *
+   * @return the given flows.
+   */
+  static <T extends Collection<ExecutableFlow>> T applyExecutableFlowUpdates(
+      final DatabaseOperator dbOperator, final T flows) throws SQLException {
+    final Map<Integer, ExecutableFlow> flowsById = new HashMap<>();
+    for (final ExecutableFlow flow : flows) {
+      if (flow != null) {
+        flowsById.put(flow.getExecutionId(), flow);
+      }
+    }
+    final List<Integer> execIds = new ArrayList<>(flowsById.keySet());
+    for (int from = 0; from < execIds.size(); from += FLOW_UPDATES_FETCH_BATCH_SIZE) {
+      final List<Integer> batch =
+          execIds.subList(from, Math.min(execIds.size(), from + FLOW_UPDATES_FETCH_BATCH_SIZE));
+      final String query = FetchExecutableFlowUpdates.FETCH_EXECUTABLE_FLOW_UPDATES
+          + "WHERE exec_id IN (" + String.join(",", Collections.nCopies(batch.size(), "?"))
+          + ") ORDER BY update_id";
+      final List<Pair<Integer, Map<String, Object>>> updates =
+          dbOperator.query(query, new FetchExecutableFlowUpdates(), batch.toArray());
+      for (final Pair<Integer, Map<String, Object>> update : updates) {
+        flowsById.get(update.getFirst()).applyUpdateObject(update.getSecond());
+      }
+    }
+    return flows;
+  }
+
+  /**
+   * Rewrites the flow data of an execution with the updates appended to it, if there are any.
+   * The execution must be finished, so that no update is appended in the meantime.
+   */
+  void compactExecutableFlowUpdates(final int execId) throws ExecutorManagerException {
+    if (!this.appendedUpdatesEnabled) {
+      return;
+    }
+    final String COUNT_EXECUTABLE_FLOW_UPDATES =
+        "SELECT COUNT(*) FROM execution_flow_updates WHERE exec_id=?";
+    try {
+      final long count = this.dbOperator.query(COUNT_EXECUTABLE_FLOW_UPDATES,
+          rs -> rs.next() ? rs.getLong(1) : 0L, execId);
+      if (count == 0) {
+        return;
+      }
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error counting the updates of flow id " + execId, e);
+    }
+    final ExecutableFlow flow = fetchExecutableFlow(execId);
+    if (flow != null) {
+      updateExecutableFlow(flow);
+    }
+  }
+
+  /**
+   * Compacts the updates left over by the finished executions, e.g. when the last write of the
+   * flow failed.
+   *
+   * @return the number of executions compacted.
+   */
+  int compactFinishedExecutableFlowUpdates() throws ExecutorManagerException {
+    if (!this.appendedUpdatesEnabled) {
+      return 0;
+    }
+    final String FETCH_FINISHED_EXEC_IDS_WITH_UPDATES =
+        "SELECT DISTINCT u.exec_id FROM execution_flow_updates u "
+            + "JOIN execution_flows ef ON u.exec_id = ef.exec_id "
+            + "WHERE ef.status IN (?, ?, ?)";
+    final List<Integer> execIds;
+    try {
+      execIds = this.dbOperator.query(FETCH_FINISHED_EXEC_IDS_WITH_UPDATES, rs -> {
+        final List<Integer> ids = new ArrayList<>();
+        while (rs.next()) {
+          ids.add(rs.getInt(1));
+        }
+        return ids;
+      }, Status.SUCCEEDED.getNumVal(), Status.KILLED.getNumVal(), Status.FAILED.getNumVal());
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error fetching the finished flows with updates", e);
+    }
+    for (final int execId : execIds) {
+      compactExecutableFlowUpdates(execId);
+    }
+    return execIds.size();
+  }
+
   public static class FetchExecutableFlows implements
       ResultSetHandler<List<ExecutableFlow>> {
 
@@ -313,6 +490,33 @@ public class ExecutionFlowDao {
     }
   }
 
+  /**
+   * JDBC ResultSetHandler to fetch the updates appended to the flow data of executions, keyed by
+   * execution id.
+   */
+  private static class FetchExecutableFlowUpdates implements
+      ResultSetHandler<List<Pair<Integer, Map<String, Object>>>> {
+
+    private static final String FETCH_EXECUTABLE_FLOW_UPDATES =
+        "SELECT exec_id, enc_type, update_data FROM execution_flow_updates ";
+
+    @Override
+    public List<Pair<Integer, Map<String, Object>>> handle(final ResultSet rs)
+        throws SQLException {
+      final List<Pair<Integer, Map<String, Object>>> updates = new ArrayList<>();
+      while (rs.next()) {
+        final EncodingType encType = EncodingType.fromInteger(rs.getInt(2));
+        try {
+          updates.add(new Pair<>(rs.getInt(1), (Map<String, Object>) GZIPUtils
+              .transformBytesToObject(rs.getBytes(3), encType)));
+        } catch (final IOException e) {
+          throw new SQLException("Error retrieving flow update", e);
+        }
+      }
+      return updates;
+    }
+  }
+
   /**
    * JDBC ResultSetHandler to fetch queued executions
    */
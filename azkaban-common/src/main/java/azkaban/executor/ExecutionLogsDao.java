@@ -16,6 +16,9 @@
 
 package azkaban.executor;
 
+import static azkaban.Constants.DEFAULT_LOG_UPLOAD_CHUNK_SIZE;
+
+import azkaban.Constants.ConfigurationKeys;
 import azkaban.db.EncodingType;
 import azkaban.db.DatabaseOperator;
 import azkaban.db.DatabaseTransOperator;
@@ -23,20 +26,24 @@ import azkaban.db.SQLTransaction;
 import azkaban.utils.FileIOUtils;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.GZIPUtils;
+import azkaban.utils.GZIPUtils.Gzipper;
 import azkaban.utils.Pair;
-import java.io.BufferedInputStream;
+import azkaban.utils.Props;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.dbutils.ResultSetHandler;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 
@@ -45,12 +52,20 @@ import org.joda.time.DateTime;
 public class ExecutionLogsDao {
 
   private static final Logger logger = Logger.getLogger(ExecutionLogsDao.class);
+  private static final String INSERT_EXECUTION_LOGS = "INSERT INTO execution_logs "
+      + "(exec_id, name, attempt, enc_type, start_byte, end_byte, "
+      + "log, upload_time) VALUES (?,?,?,?,?,?,?,?)";
+  // Log parts inserted per JDBC batch, bounds the memory held by a batch
+  private static final int LOG_PARTS_PER_BATCH = 32;
   private final DatabaseOperator dbOperator;
   private final EncodingType defaultEncodingType = EncodingType.GZIP;
+  private final int chunkSize;
 
   @Inject
-  ExecutionLogsDao(final DatabaseOperator dbOperator) {
+  ExecutionLogsDao(final DatabaseOperator dbOperator, final Props props) {
     this.dbOperator = dbOperator;
+    this.chunkSize = props.getInt(ConfigurationKeys.AZKABAN_LOG_UPLOAD_CHUNK_SIZE,
+        DEFAULT_LOG_UPLOAD_CHUNK_SIZE);
   }
 
   // TODO kunkun-tang: the interface's parameter is called endByte, but actually is length.
@@ -82,50 +97,76 @@ public class ExecutionLogsDao {
     }
   }
 
+  /**
+   * Uploads one part of a log, starting at startByte of the whole log. Retrying the upload of a
+   * part already uploaded has no effect: parts are keyed by exec_id, name, attempt and
+   * start_byte.
+   */
+  public void uploadLogChunk(final int execId, final String name, final int attempt,
+      final int startByte, final byte[] buffer, final int length)
+      throws ExecutorManagerException {
+    final String FETCH_LOG_PART = "SELECT end_byte FROM execution_logs "
+        + "WHERE exec_id=? AND name=? AND attempt=? AND start_byte=?";
+    final SQLTransaction<Integer> transaction = transOperator -> {
+      final Integer endByte = transOperator.query(FETCH_LOG_PART,
+          rs -> rs.next() ? rs.getInt(1) : null, execId, name, attempt, startByte);
+      if (endByte != null) {
+        if (endByte != startByte + length) {
+          throw new SQLException("Log part of " + execId + " : " + name + " starting at "
+              + startByte + " was uploaded with a different length");
+        }
+        return 0;
+      }
+      try (final Gzipper gzipper = new Gzipper()) {
+        transOperator.update(INSERT_EXECUTION_LOGS, createLogPart(execId, name, attempt,
+            startByte, this.defaultEncodingType, buffer, length, gzipper));
+      }
+      transOperator.getConnection().commit();
+      return 1;
+    };
+    try {
+      this.dbOperator.transaction(transaction);
+    } catch (final SQLException e) {
+      throw new ExecutorManagerException("Error uploading log part of " + execId
+          + " : " + name + " starting at " + startByte, e);
+    }
+  }
+
   private void uploadLogFile(final DatabaseTransOperator transOperator, final int execId,
       final String name,
       final int attempt, final File[] files, final EncodingType encType)
       throws SQLException {
-    // 50K buffer... if logs are greater than this, we chunk.
-    // However, we better prevent large log files from being uploaded somehow
-    final byte[] buffer = new byte[50 * 1024];
-    int pos = 0;
-    int length = buffer.length;
+    // The files are uploaded as one log, in parts of chunkSize bytes
+    final ByteBuffer buffer = ByteBuffer.allocate(this.chunkSize);
+    final List<Object[]> batch = new ArrayList<>(LOG_PARTS_PER_BATCH);
     int startByte = 0;
-    try {
-      for (int i = 0; i < files.length; ++i) {
-        final File file = files[i];
-
-        final BufferedInputStream bufferedStream =
-            new BufferedInputStream(new FileInputStream(file));
-        try {
-          int size = bufferedStream.read(buffer, pos, length);
-          while (size >= 0) {
-            if (pos + size == buffer.length) {
-              // Flush here.
-              uploadLogPart(transOperator, execId, name, attempt, startByte,
-                  startByte + buffer.length, encType, buffer, buffer.length);
-
-              pos = 0;
-              length = buffer.length;
-              startByte += buffer.length;
-            } else {
-              // Usually end of file.
-              pos += size;
-              length = buffer.length - pos;
+    try (final Gzipper gzipper = new Gzipper()) {
+      for (final File file : files) {
+        try (final FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.READ)) {
+          while (true) {
+            if (!buffer.hasRemaining()) {
+              batch.add(createLogPart(execId, name, attempt, startByte, encType,
+                  buffer.array(), buffer.position(), gzipper));
+              startByte += buffer.position();
+              buffer.clear();
+              if (batch.size() == LOG_PARTS_PER_BATCH) {
+                insertLogParts(transOperator, batch);
+              }
+            }
+            if (channel.read(buffer) < 0) {
+              break;
             }
-            size = bufferedStream.read(buffer, pos, length);
           }
-        } finally {
-          IOUtils.closeQuietly(bufferedStream);
         }
       }
 
       // Final commit of buffer.
-      if (pos > 0) {
-        uploadLogPart(transOperator, execId, name, attempt, startByte, startByte
-            + pos, encType, buffer, pos);
+      if (buffer.position() > 0) {
+        batch.add(createLogPart(execId, name, attempt, startByte, encType, buffer.array(),
+            buffer.position(), gzipper));
       }
+      insertLogParts(transOperator, batch);
     } catch (final SQLException e) {
       logger.error("Error writing log part.", e);
       throw new SQLException("Error writing log part", e);
@@ -135,6 +176,14 @@ public class ExecutionLogsDao {
     }
   }
 
+  private void insertLogParts(final DatabaseTransOperator transOperator,
+      final List<Object[]> batch) throws SQLException {
+    if (!batch.isEmpty()) {
+      transOperator.batch(INSERT_EXECUTION_LOGS, batch.toArray(new Object[batch.size()][]));
+      batch.clear();
+    }
+  }
+
   int removeExecutionLogsByTime(final long millis)
       throws ExecutorManagerException {
     final String DELETE_BY_TIME =
@@ -148,26 +197,16 @@ public class ExecutionLogsDao {
     }
   }
 
-  private void uploadLogPart(final DatabaseTransOperator transOperator, final int execId,
-      final String name,
-      final int attempt, final int startByte, final int endByte,
-      final EncodingType encType,
-      final byte[] buffer, final int length)
-      throws SQLException, IOException {
-    final String INSERT_EXECUTION_LOGS = "INSERT INTO execution_logs "
-        + "(exec_id, name, attempt, enc_type, start_byte, end_byte, "
-        + "log, upload_time) VALUES (?,?,?,?,?,?,?,?)";
-
-    byte[] buf = buffer;
-    if (encType == EncodingType.GZIP) {
-      buf = GZIPUtils.gzipBytes(buf, 0, length);
-    } else if (length < buf.length) {
-      buf = Arrays.copyOf(buffer, length);
-    }
-
-    transOperator.update(INSERT_EXECUTION_LOGS, execId, name, attempt,
-        encType.getNumVal(), startByte, startByte + length, buf, DateTime.now()
-            .getMillis());
+  /**
+   * @return the params of the insert of a log part.
+   */
+  private Object[] createLogPart(final int execId, final String name, final int attempt,
+      final int startByte, final EncodingType encType, final byte[] buffer, final int length,
+      final Gzipper gzipper) {
+    final byte[] log = encType == EncodingType.GZIP ? gzipper.gzip(buffer, 0, length)
+        : Arrays.copyOf(buffer, length);
+    return new Object[]{execId, name, attempt, encType.getNumVal(), startByte,
+        startByte + length, log, DateTime.now().getMillis()};
   }
 
   private static class FetchLogsHandler implements ResultSetHandler<LogData> {
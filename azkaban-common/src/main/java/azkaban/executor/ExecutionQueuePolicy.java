@@ -0,0 +1,69 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import azkaban.utils.Pair;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Decides in which order the queued flows are dispatched.
+ *
+ * Implementations don't need to be thread safe, {@link QueuedExecutions} synchronizes all the
+ * calls.
+ */
+public interface ExecutionQueuePolicy {
+
+  void add(Pair<ExecutionReference, ExecutableFlow> pair);
+
+  boolean remove(Pair<ExecutionReference, ExecutableFlow> pair);
+
+  /**
+   * Takes the next flow to dispatch out of the queue.
+   *
+   * @return null if there is no flow that can be dispatched now.
+   */
+  Pair<ExecutionReference, ExecutableFlow> poll();
+
+  int size();
+
+  /**
+   * @return the tenant a flow is accounted to, the project by default.
+   */
+  default String getTenant(final ExecutableFlow flow) {
+    return flow.getProjectName();
+  }
+
+  /**
+   * @return number of running flows of each tenant, if the policy keeps track of them.
+   */
+  default Map<String, Integer> getRunningFlowCounts() {
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Called for the flows that were already running when the queue was created.
+   */
+  default void flowRunning(final ExecutableFlow flow) {
+  }
+
+  /**
+   * Called when a flow is finalized, whether it ran or not.
+   */
+  default void flowFinished(final int executionId) {
+  }
+}
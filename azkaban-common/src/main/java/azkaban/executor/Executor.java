@@ -30,9 +30,10 @@ public class Executor implements Comparable<Executor> {
   private final String host;
   private final int port;
   private boolean isActive;
-  // cached copy of the latest statistics from  the executor.
-  private ExecutorInfo cachedExecutorStats;
-  private Date lastStatsUpdatedTime;
+  // cached copy of the latest statistics from  the executor. Replaced as a whole by the heartbeat
+  // thread and read without locking by the dispatcher.
+  private volatile ExecutorInfo cachedExecutorStats;
+  private volatile Date lastStatsUpdatedTime;
 
   /**
    * <pre>
@@ -127,8 +128,15 @@ public class Executor implements Comparable<Executor> {
   }
 
   public void setExecutorInfo(final ExecutorInfo info) {
+    setExecutorInfo(info, new Date());
+  }
+
+  /**
+   * Sets the executor info along with the time it was fetched from the executor.
+   */
+  public void setExecutorInfo(final ExecutorInfo info, final Date lastStatsUpdatedTime) {
     this.cachedExecutorStats = info;
-    this.lastStatsUpdatedTime = new Date();
+    this.lastStatsUpdatedTime = lastStatsUpdatedTime;
   }
 
   /**
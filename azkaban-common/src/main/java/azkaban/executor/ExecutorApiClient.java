@@ -16,12 +16,26 @@
 
 package azkaban.executor;
 
+import azkaban.utils.JSONUtils;
+import azkaban.utils.Pair;
 import azkaban.utils.RestfulApiClient;
 import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 
 /**
@@ -31,6 +45,11 @@ import org.apache.http.util.EntityUtils;
 @Singleton
 public class ExecutorApiClient extends RestfulApiClient<String> {
 
+  @Inject
+  public ExecutorApiClient(final ExecutorHttpClientPool httpClientPool) {
+    super(httpClientPool.getHttpClient());
+  }
+
   /**
    * Implementing the parseResponse function to return de-serialized Json object.
    *
@@ -54,4 +73,44 @@ public class ExecutorApiClient extends RestfulApiClient<String> {
 
     return responseBody;
   }
+
+  /**
+   * Posts the parameters as a form and asks for a Smile encoded response.
+   *
+   * @param uri the URI of the request, without query parameters.
+   * @param params the parameters to post.
+   * @return the response parsed into maps and lists, or null if the executor answered with
+   * something else than Smile, which means it doesn't support this kind of request.
+   */
+  public Object httpPostForSmile(final URI uri, final List<Pair<String, String>> params)
+      throws IOException {
+    final List<NameValuePair> form = new ArrayList<>(params.size());
+    for (final Pair<String, String> param : params) {
+      form.add(new BasicNameValuePair(param.getFirst(), param.getSecond()));
+    }
+
+    final HttpPost post = new HttpPost(uri);
+    post.setHeader(HttpHeaders.ACCEPT, ConnectorParams.SMILE_MIME_TYPE);
+    post.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+    return this.execute(post, this::parseSmileResponse);
+  }
+
+  private Object parseSmileResponse(final HttpResponse response) throws IOException {
+    final StatusLine statusLine = response.getStatusLine();
+    if (statusLine.getStatusCode() >= 300) {
+      throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+    }
+
+    // Older executors ignore posted requests and answer with an empty response.
+    final HttpEntity entity = response.getEntity();
+    if (entity == null) {
+      return null;
+    }
+    final ContentType contentType = ContentType.get(entity);
+    if (contentType == null
+        || !ConnectorParams.SMILE_MIME_TYPE.equals(contentType.getMimeType())) {
+      return null;
+    }
+    return JSONUtils.parseSmile(EntityUtils.toByteArray(entity));
+  }
 }
@@ -25,13 +25,18 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.inject.Singleton;
-import org.codehaus.jackson.map.ObjectMapper;
 
 @Singleton
 public class ExecutorApiGateway {
 
+  // How long to keep calling an executor the old way after it didn't understand a Smile request.
+  private static final long SMILE_RETRY_INTERVAL_MS = 10 * 60 * 1000L;
+
   private final ExecutorApiClient apiClient;
+  // host:port of executors that don't support Smile requests, mapped to when to try again.
+  private final Map<String, Long> nonSmileExecutors = new ConcurrentHashMap<>();
 
   @Inject
   public ExecutorApiGateway(final ExecutorApiClient apiClient) {
@@ -73,6 +78,11 @@ public class ExecutorApiGateway {
           .valueOf(executionId)));
       paramList.add(new Pair<>(ConnectorParams.USER_PARAM, user));
 
+      final Map<String, Object> response = callForSmileObjectMap(host, port, "/executor",
+          paramList);
+      if (response != null) {
+        return response;
+      }
       return callForJsonObjectMap(host, port, "/executor", paramList);
     } catch (final IOException e) {
       throw new ExecutorManagerException(e);
@@ -88,7 +98,32 @@ public class ExecutorApiGateway {
     if (null == responseString || responseString.length() == 0) {
       return null;
     }
-    return new ObjectMapper().readValue(responseString, valueType);
+    return JSONUtils.parseJSONFromString(responseString, valueType);
+  }
+
+  /*
+   * Call executor with the parameters in a posted form and return the Smile encoded object map.
+   * Returns null if the executor doesn't support this, in which case the caller should fall back
+   * to callForJsonObjectMap.
+   */
+  private Map<String, Object> callForSmileObjectMap(final String host, final int port,
+      final String path, final List<Pair<String, String>> paramList) throws IOException {
+    final String hostPort = host + ":" + port;
+    final Long retryTime = this.nonSmileExecutors.get(hostPort);
+    if (retryTime != null && retryTime > System.currentTimeMillis()) {
+      return null;
+    }
+
+    final URI uri = ExecutorApiClient.buildUri(host, port, path, true);
+    @SuppressWarnings("unchecked") final Map<String, Object> response =
+        (Map<String, Object>) this.apiClient.httpPostForSmile(uri, paramList);
+    if (response == null) {
+      this.nonSmileExecutors.put(hostPort, System.currentTimeMillis() + SMILE_RETRY_INTERVAL_MS);
+      return null;
+    }
+    this.nonSmileExecutors.remove(hostPort);
+    checkError(response);
+    return response;
   }
 
   /*
@@ -101,11 +136,15 @@ public class ExecutorApiGateway {
 
     @SuppressWarnings("unchecked") final Map<String, Object> jsonResponse =
         (Map<String, Object>) JSONUtils.parseJSONFromString(responseString);
-    final String error = (String) jsonResponse.get(ConnectorParams.RESPONSE_ERROR);
+    checkError(jsonResponse);
+    return jsonResponse;
+  }
+
+  private static void checkError(final Map<String, Object> response) throws IOException {
+    final String error = (String) response.get(ConnectorParams.RESPONSE_ERROR);
     if (error != null) {
-      throw new IOException(error);
+      throw new ErrorResponseException(error);
     }
-    return jsonResponse;
   }
 
   /*
@@ -124,4 +163,15 @@ public class ExecutorApiGateway {
     return this.apiClient.httpGet(uri, null);
   }
 
+  /**
+   * The executor received the call and answered it with an error.
+   */
+  static class ErrorResponseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    ErrorResponseException(final String error) {
+      super(error);
+    }
+  }
 }
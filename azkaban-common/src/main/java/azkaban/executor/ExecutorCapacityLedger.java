@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps track of the free flow slots of the active executors, so that the queue processor can
+ * tell when all the executors are full.
+ *
+ * The remaining flow capacity reported by each executor is taken at every heartbeat of the
+ * executor, and adjusted locally in between: a dispatched flow takes one slot of its executor
+ * until the next heartbeat, which replaces the local adjustments since the previous one. The
+ * slots of finished flows are given back by the heartbeats only, the executor may have reported
+ * the finished flow before the web server finalizes it. Threads waiting for capacity are woken up
+ * as soon as an executor reports a free slot.
+ *
+ * Executors that didn't report their capacity (e.g. because they didn't answer their last
+ * heartbeat) have no free slot until they do: an executor that is down must not be dispatched
+ * to. The first round of heartbeats runs before any flow is dispatched.
+ */
+public class ExecutorCapacityLedger {
+
+  // remaining flow slots keyed by executor id, null if the executor didn't report its capacity.
+  // Negative when more flows were reserved on the executor than it had slots for.
+  private final Map<Integer, Integer> remainingCapacities = new HashMap<>();
+  // flows reserved on each executor since its last reported capacity
+  private final Map<Integer, Integer> reservationsSinceUpdate = new HashMap<>();
+  private int totalCapacity = 0;
+
+  /**
+   * Resets the ledger to the capacities reported in the executor info of the given executors.
+   */
+  public synchronized void update(final Collection<Executor> executors) {
+    this.remainingCapacities.clear();
+    this.reservationsSinceUpdate.clear();
+    this.totalCapacity = 0;
+    for (final Executor executor : executors) {
+      putReportedCapacity(executor);
+    }
+    if (hasCapacity()) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Resets the capacity of one executor to the one reported in its executor info, dropping the
+   * reservations made since the previous one. Executors which were not part of the last full
+   * update are ignored.
+   */
+  public synchronized void update(final Executor executor) {
+    if (!this.remainingCapacities.containsKey(executor.getId())) {
+      return;
+    }
+    final Integer previous = this.remainingCapacities.get(executor.getId());
+    if (previous != null) {
+      this.totalCapacity -= Math.max(0, previous);
+    }
+    this.reservationsSinceUpdate.remove(executor.getId());
+    putReportedCapacity(executor);
+    if (hasCapacity()) {
+      notifyAll();
+    }
+  }
+
+  /**
+   * Takes a slot of the executor a flow is dispatched to. The executor may go over its capacity
+   * (e.g. for a flow the user assigned to it), in which case as many slots have to be released
+   * before it has a free one again.
+   */
+  public synchronized void reserve(final Executor executor) {
+    final Integer capacity = this.remainingCapacities.get(executor.getId());
+    if (capacity != null) {
+      this.remainingCapacities.put(executor.getId(), capacity - 1);
+      this.reservationsSinceUpdate.merge(executor.getId(), 1, Integer::sum);
+      if (capacity > 0) {
+        this.totalCapacity--;
+      }
+    }
+  }
+
+  /**
+   * Gives back the slot reserved for a flow that wasn't dispatched to the executor after all, and
+   * wakes up the waiting threads. Ignored if the executor reported its capacity since the
+   * reservation, which already left the flow out.
+   */
+  public synchronized void cancelReservation(final Executor executor) {
+    final Integer reservations = this.reservationsSinceUpdate.get(executor.getId());
+    if (reservations == null) {
+      return;
+    }
+    if (reservations > 1) {
+      this.reservationsSinceUpdate.put(executor.getId(), reservations - 1);
+    } else {
+      this.reservationsSinceUpdate.remove(executor.getId());
+    }
+    final Integer capacity = this.remainingCapacities.get(executor.getId());
+    if (capacity != null) {
+      this.remainingCapacities.put(executor.getId(), capacity + 1);
+      if (capacity >= 0) {
+        this.totalCapacity++;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * @return the number of free flow slots over all the executors.
+   */
+  public synchronized int getAvailableCapacity() {
+    return this.totalCapacity;
+  }
+
+  public synchronized boolean hasCapacity() {
+    return getAvailableCapacity() > 0;
+  }
+
+  private void putReportedCapacity(final Executor executor) {
+    final ExecutorInfo info = executor.getExecutorInfo();
+    if (info == null) {
+      this.remainingCapacities.put(executor.getId(), null);
+    } else {
+      final int capacity = Math.max(0, info.getRemainingFlowCapacity());
+      this.remainingCapacities.put(executor.getId(), capacity);
+      this.totalCapacity += capacity;
+    }
+  }
+
+  /**
+   * Blocks until any executor has a free flow slot or until the timeout expires, whichever comes
+   * first.
+   *
+   * @return true if there is capacity available.
+   */
+  public synchronized boolean awaitCapacity(final long timeoutMs) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    while (!hasCapacity()) {
+      final long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        break;
+      }
+      wait(remaining);
+    }
+    return hasCapacity();
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+
+/**
+ * <pre>
+ * Keeps the ExecutorInfo of the active executors fresh in the background.
+ * NOTE: Every interval, the statistics of all the executors are fetched in parallel and each
+ *       executor gets its new ExecutorInfo as a whole, so that the dispatcher can read it at any
+ *       time without waiting on the network. The age of the stats is given by
+ *       {@link Executor#getLastStatsUpdatedTime()}.
+ *       The ExecutorInfo of an executor which doesn't answer is cleared, so that it is neither
+ *       ranked on stale stats nor counted with the free slots it had. An executor whose previous
+ *       heartbeat is still in flight is skipped, so a hung executor never ties up more than one
+ *       thread.
+ * </pre>
+ */
+public class ExecutorHeartbeatService {
+
+  private static final Logger logger = Logger.getLogger(ExecutorHeartbeatService.class);
+
+  // how long start() waits for the first round of heartbeats
+  private static final long FIRST_ROUND_TIMEOUT_MS = 5000;
+
+  private final ExecutorApiGateway apiGateway;
+  private final Supplier<Collection<Executor>> executorSupplier;
+  private final Consumer<Executor> refreshListener;
+  private final long intervalMs;
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService heartbeatPool;
+  // heartbeats in flight keyed by executor id, only used by the scheduling thread
+  private final Map<Integer, Future<?>> pendingHeartbeats = new HashMap<>();
+  private volatile long lastSuccessfulRefresh;
+
+  /**
+   * @param executorSupplier gives the executors to heartbeat at every round.
+   * @param refreshListener called with each executor after its ExecutorInfo was refreshed or
+   * cleared.
+   * @param intervalMs delay between the end of a round and the start of the next one.
+   * @param maxThreads number of executors to heartbeat concurrently.
+   */
+  public ExecutorHeartbeatService(final ExecutorApiGateway apiGateway,
+      final Supplier<Collection<Executor>> executorSupplier,
+      final Consumer<Executor> refreshListener, final long intervalMs, final int maxThreads) {
+    this.apiGateway = apiGateway;
+    this.executorSupplier = executorSupplier;
+    this.refreshListener = refreshListener;
+    this.intervalMs = intervalMs;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "azk-executor-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.heartbeatPool = Executors.newFixedThreadPool(maxThreads);
+  }
+
+  /**
+   * Runs a first round of heartbeats, waiting for it to complete for a few seconds at most, and
+   * schedules the following ones.
+   */
+  public void start() {
+    try {
+      final long deadline = System.currentTimeMillis() + FIRST_ROUND_TIMEOUT_MS;
+      for (final Future<?> future : this.scheduler.submit(this::heartbeatAll).get()) {
+        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+      }
+    } catch (final TimeoutException e) {
+      logger.warn("Not all the executors answered the first heartbeat in time");
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (final Exception e) {
+      logger.error("Failed to run the first round of executor heartbeats", e);
+    }
+    this.scheduler.scheduleWithFixedDelay(this::heartbeatAll, this.intervalMs, this.intervalMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+    this.heartbeatPool.shutdownNow();
+  }
+
+  /**
+   * @return last time all the executors answered a round of heartbeats, 0 if they never did.
+   */
+  public long getLastSuccessfulRefresh() {
+    return this.lastSuccessfulRefresh;
+  }
+
+  /**
+   * Sends a heartbeat to every executor which doesn't have one in flight.
+   *
+   * @return the heartbeats sent.
+   */
+  List<Future<?>> heartbeatAll() {
+    final Collection<Executor> executors = this.executorSupplier.get();
+    final List<Future<?>> futures = new ArrayList<>();
+    final AtomicInteger remaining = new AtomicInteger(executors.size());
+    final AtomicBoolean allSucceeded = new AtomicBoolean(true);
+    final Set<Integer> executorIds = new HashSet<>();
+    for (final Executor executor : executors) {
+      executorIds.add(executor.getId());
+      final Future<?> pending = this.pendingHeartbeats.get(executor.getId());
+      if (pending != null && !pending.isDone()) {
+        logger.warn("Skipping heartbeat of executor " + executor
+            + " as the previous one is still in flight");
+        allSucceeded.set(false);
+        remaining.decrementAndGet();
+        continue;
+      }
+      final Future<?> future = this.heartbeatPool.submit(() -> {
+        if (!heartbeat(executor)) {
+          allSucceeded.set(false);
+        }
+        if (remaining.decrementAndGet() == 0 && allSucceeded.get()) {
+          this.lastSuccessfulRefresh = System.currentTimeMillis();
+        }
+      });
+      this.pendingHeartbeats.put(executor.getId(), future);
+      futures.add(future);
+    }
+    this.pendingHeartbeats.keySet().retainAll(executorIds);
+    return futures;
+  }
+
+  /* Fetches the stats of the executor, returns true on success */
+  private boolean heartbeat(final Executor executor) {
+    try {
+      final ExecutorInfo executorInfo = this.apiGateway.callForJsonType(executor.getHost(),
+          executor.getPort(), "/serverStatistics", null, ExecutorInfo.class);
+      if (executorInfo == null) {
+        logger.warn("Empty ExecutorInfo from executor : " + executor);
+        invalidate(executor);
+        return false;
+      }
+      executor.setExecutorInfo(executorInfo);
+      logger.debug(String.format("Successfully refreshed executor: %s with executor info : %s",
+          executor, executorInfo));
+      this.refreshListener.accept(executor);
+      return true;
+    } catch (final Exception e) {
+      logger.warn("Failed to update ExecutorInfo for executor : " + executor, e);
+      invalidate(executor);
+      return false;
+    }
+  }
+
+  /* Clears the cached ExecutorInfo of an executor which didn't answer */
+  private void invalidate(final Executor executor) {
+    if (executor.getExecutorInfo() != null) {
+      executor.setExecutorInfo(null, null);
+      this.refreshListener.accept(executor);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static azkaban.Constants.ConfigurationKeys.EXECUTOR_CLIENT_CONNECTION_REQUEST_TIMEOUT_MS;
+import static azkaban.Constants.ConfigurationKeys.EXECUTOR_CLIENT_CONNECT_TIMEOUT_MS;
+import static azkaban.Constants.ConfigurationKeys.EXECUTOR_CLIENT_IDLE_CONNECTION_TIMEOUT_MS;
+import static azkaban.Constants.ConfigurationKeys.EXECUTOR_CLIENT_MAX_CONNECTIONS;
+import static azkaban.Constants.ConfigurationKeys.EXECUTOR_CLIENT_MAX_CONNECTIONS_PER_ROUTE;
+import static azkaban.Constants.ConfigurationKeys.EXECUTOR_CLIENT_SOCKET_TIMEOUT_MS;
+
+import azkaban.metrics.MetricsManager;
+import azkaban.utils.Props;
+import com.codahale.metrics.Histogram;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+
+/**
+ * Holds the HTTP client shared by all calls from the web server to the executors.
+ *
+ * Connections are pooled and kept alive between calls, so that dispatches, status updates and log
+ * fetches don't pay for a new TCP connection every time. Connections that stay idle for too long
+ * are closed in the background.
+ */
+@Singleton
+public class ExecutorHttpClientPool {
+
+  private static final Logger logger = Logger.getLogger(ExecutorHttpClientPool.class);
+
+  private static final int DEFAULT_MAX_CONNECTIONS = 100;
+  private static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+  private static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT_MS = 10 * 1000;
+  private static final int DEFAULT_CONNECT_TIMEOUT_MS = 10 * 1000;
+  private static final int DEFAULT_SOCKET_TIMEOUT_MS = 120 * 1000;
+  private static final long DEFAULT_IDLE_CONNECTION_TIMEOUT_MS = 30 * 1000L;
+
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final CloseableHttpClient httpClient;
+
+  @Inject
+  public ExecutorHttpClientPool(final Props props, final MetricsManager metricsManager) {
+    final Histogram connectTimeHistogram =
+        metricsManager.addHistogram("executor-client-connect-time-ms");
+    this.connectionManager = new TimedConnectionManager(connectTimeHistogram);
+    this.connectionManager.setMaxTotal(
+        props.getInt(EXECUTOR_CLIENT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS));
+    this.connectionManager.setDefaultMaxPerRoute(props.getInt(
+        EXECUTOR_CLIENT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_MAX_CONNECTIONS_PER_ROUTE));
+
+    final RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectionRequestTimeout(props.getInt(EXECUTOR_CLIENT_CONNECTION_REQUEST_TIMEOUT_MS,
+            DEFAULT_CONNECTION_REQUEST_TIMEOUT_MS))
+        .setConnectTimeout(
+            props.getInt(EXECUTOR_CLIENT_CONNECT_TIMEOUT_MS, DEFAULT_CONNECT_TIMEOUT_MS))
+        .setSocketTimeout(
+            props.getInt(EXECUTOR_CLIENT_SOCKET_TIMEOUT_MS, DEFAULT_SOCKET_TIMEOUT_MS))
+        .build();
+    logger.info("Executor client request configuration " + requestConfig.toString());
+
+    this.httpClient = HttpClients.custom()
+        .setConnectionManager(this.connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .evictExpiredConnections()
+        .evictIdleConnections(props.getLong(EXECUTOR_CLIENT_IDLE_CONNECTION_TIMEOUT_MS,
+            DEFAULT_IDLE_CONNECTION_TIMEOUT_MS), TimeUnit.MILLISECONDS)
+        .build();
+
+    metricsManager.addGauge("executor-client-leased-connections",
+        () -> this.connectionManager.getTotalStats().getLeased());
+    metricsManager.addGauge("executor-client-pending-connections",
+        () -> this.connectionManager.getTotalStats().getPending());
+    metricsManager.addGauge("executor-client-available-connections",
+        () -> this.connectionManager.getTotalStats().getAvailable());
+  }
+
+  public CloseableHttpClient getHttpClient() {
+    return this.httpClient;
+  }
+
+  /**
+   * Connection manager that records how long it takes to open new connections.
+   */
+  private static class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+
+    private final Histogram connectTimeHistogram;
+
+    TimedConnectionManager(final Histogram connectTimeHistogram) {
+      this.connectTimeHistogram = connectTimeHistogram;
+    }
+
+    @Override
+    public void connect(final HttpClientConnection managedConn, final HttpRoute route,
+        final int connectTimeout, final HttpContext context) throws IOException {
+      final long startTime = System.currentTimeMillis();
+      super.connect(managedConn, route, connectTimeout, context);
+      this.connectTimeHistogram.update(System.currentTimeMillis() - startTime);
+    }
+  }
+}
@@ -231,12 +231,40 @@ public interface ExecutorLoader {
   void uploadLogFile(int execId, String name, int attempt, File... files)
       throws ExecutorManagerException;
 
+  /**
+   * Uploads the part of a log starting at startByte, uploading the same part again does nothing.
+   */
+  void uploadLogChunk(int execId, String name, int attempt, int startByte, byte[] buffer,
+      int length) throws ExecutorManagerException;
+
   void uploadAttachmentFile(ExecutableNode node, File file)
       throws ExecutorManagerException;
 
   void updateExecutableFlow(ExecutableFlow flow)
       throws ExecutorManagerException;
 
+  /**
+   * Persists the changes of the nodes updated after sinceUpdateTime only. They are applied over
+   * the flow data written by the last {@link #updateExecutableFlow(ExecutableFlow)} when the flow
+   * is fetched.
+   */
+  void appendExecutableFlowUpdate(ExecutableFlow flow, long sinceUpdateTime)
+      throws ExecutorManagerException;
+
+  /**
+   * Writes the updates appended to the flow data of a finished execution into its flow data.
+   */
+  void compactExecutableFlowUpdates(int execId)
+      throws ExecutorManagerException;
+
+  /**
+   * Compacts the updates left over by all the finished executions.
+   *
+   * @return the number of executions compacted.
+   */
+  int compactFinishedExecutableFlowUpdates()
+      throws ExecutorManagerException;
+
   void uploadExecutableNode(ExecutableNode node, Props inputParams)
       throws ExecutorManagerException;
 
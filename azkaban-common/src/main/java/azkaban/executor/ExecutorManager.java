@@ -21,7 +21,7 @@ import azkaban.alert.Alerter;
 import azkaban.event.EventHandler;
 import azkaban.executor.selector.ExecutorComparator;
 import azkaban.executor.selector.ExecutorFilter;
-import azkaban.executor.selector.ExecutorSelector;
+import azkaban.executor.selector.ExecutorRanking;
 import azkaban.flow.FlowUtils;
 import azkaban.metrics.CommonMetrics;
 import azkaban.project.Project;
@@ -31,10 +31,10 @@ import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.JSONUtils;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
-import com.google.common.collect.Lists;
 import java.io.File;
 import java.io.IOException;
 import java.lang.Thread.State;
+import java.net.ConnectException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -42,19 +42,25 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
 
@@ -73,6 +79,26 @@ public class ExecutorManager extends EventHandler implements
       "azkaban.executorselector.comparator.";
   static final String AZKABAN_QUEUEPROCESSING_ENABLED =
       "azkaban.queueprocessing.enabled";
+  // Number of queued flows dispatched together. A batch is sent to each selected executor in one
+  // call. 1 dispatches flows one by one.
+  static final String AZKABAN_QUEUEPROCESSING_DISPATCH_BATCH_SIZE =
+      "azkaban.queueprocessing.dispatch.batchSize";
+  // Order in which queued flows are dispatched: "priority" or "fairshare"
+  static final String AZKABAN_QUEUEPROCESSING_POLICY = "azkaban.queueprocessing.policy";
+  static final String QUEUE_POLICY_PRIORITY = "priority";
+  static final String QUEUE_POLICY_FAIRSHARE = "fairshare";
+  // Time a queued flow has to wait to gain one priority level. 0 disables priority aging.
+  static final String AZKABAN_QUEUEPROCESSING_PRIORITY_AGING_MS =
+      "azkaban.queueprocessing.priorityAgingMs";
+  // Tenants the fairshare policy shares between: "project" or "user"
+  static final String AZKABAN_QUEUEPROCESSING_FAIRSHARE_TENANT =
+      "azkaban.queueprocessing.fairshare.tenant";
+  static final String AZKABAN_QUEUEPROCESSING_FAIRSHARE_WEIGHT_PREFIX =
+      "azkaban.queueprocessing.fairshare.weight.";
+  // Maximum number of running flows of a tenant, 0 for unlimited. Can be set for a specific
+  // tenant by appending ".<tenant>".
+  static final String AZKABAN_QUEUEPROCESSING_FAIRSHARE_MAX_RUNNING_FLOWS =
+      "azkaban.queueprocessing.fairshare.maxRunningFlows";
   private static final String AZKABAN_WEBSERVER_QUEUE_SIZE =
       "azkaban.webserver.queue.size";
   private static final String AZKABAN_ACTIVE_EXECUTOR_REFRESH_IN_MS =
@@ -81,14 +107,30 @@ public class ExecutorManager extends EventHandler implements
       "azkaban.activeexecutor.refresh.flowinterval";
   private static final String AZKABAN_EXECUTORINFO_REFRESH_MAX_THREADS =
       "azkaban.executorinfo.refresh.maxThreads";
+  private static final String AZKABAN_EXECUTORINFO_REFRESH_INTERVAL_MS =
+      "azkaban.executorinfo.refresh.intervalMs";
+  // Age of the executor stats after which the StatsFreshness filter drops the executor
+  private static final String AZKABAN_EXECUTOR_SELECTOR_MAX_STATS_AGE_MS =
+      "azkaban.executorselector.maxStatsAgeMs";
   private static final String AZKABAN_MAX_DISPATCHING_ERRORS_PERMITTED =
       "azkaban.maxDispatchingErrors";
+  private static final String AZKABAN_EXECUTOR_UPDATE_STREAM_ENABLED =
+      "azkaban.executor.update.stream.enabled";
+  private static final String AZKABAN_EXECUTOR_UPDATE_STREAM_WAIT_MS =
+      "azkaban.executor.update.stream.waitMs";
+  private static final long DEFAULT_EXECUTOR_UPDATE_STREAM_WAIT_MS = 10 * 1000L;
+  private static final String AZKABAN_EXECUTOR_UPDATE_MAX_THREADS =
+      "azkaban.executor.update.maxThreads";
+  private static final String AZKABAN_EXECUTOR_UPDATE_TIMEOUT_MS =
+      "azkaban.executor.update.timeoutMs";
+  private static final long DEFAULT_EXECUTOR_UPDATE_TIMEOUT_MS = 10 * 1000L;
   // 12 weeks
   private static final long DEFAULT_EXECUTION_LOGS_RETENTION_MS = 3 * 4 * 7
       * 24 * 60 * 60 * 1000L;
   private static final Duration RECENTLY_FINISHED_LIFETIME = Duration.ofMinutes(10);
   private static final Logger logger = Logger.getLogger(ExecutorManager.class);
-  final private Set<Executor> activeExecutors = new HashSet<>();
+  // Replaced as a whole when the executors are set up, so that it can be read without locking
+  private volatile Set<Executor> activeExecutors = Collections.emptySet();
   private final AlerterHolder alerterHolder;
   private final Props azkProps;
   private final CommonMetrics commonMetrics;
@@ -96,19 +138,40 @@ public class ExecutorManager extends EventHandler implements
   private final CleanerThread cleanerThread;
   private final ConcurrentHashMap<Integer, Pair<ExecutionReference, ExecutableFlow>> runningFlows =
       new ConcurrentHashMap<>();
+  // All the queued, dispatching and running flows, indexed by project and flow
+  private final ActiveExecutions activeExecutions = new ActiveExecutions();
   private final ExecutingManagerUpdaterThread executingManager;
   private final ExecutorApiGateway apiGateway;
+  // Executors that are long-polled for flow updates instead of being polled by the
+  // ExecutingManagerUpdaterThread, which only polls the flows their stream doesn't watch yet.
+  // Only used if update streaming is enabled.
+  private final Map<Executor, ExecutorUpdateStreamThread> updateStreams =
+      new ConcurrentHashMap<>();
+  private final Set<Executor> streamUnsupportedExecutors = ConcurrentHashMap.newKeySet();
+  private final boolean isUpdateStreamEnabled;
+  private final long updateStreamWaitMs;
+  // Polls the executors for flow updates in parallel, so that one slow executor doesn't hold up
+  // the updates of all the others.
+  private final ExecutorService executorUpdaterService;
+  private final int executorUpdateMaxThreads;
+  private final long executorUpdateTimeoutMs;
+  // keyed by host:port
+  private final Map<String, ExecutorUpdateStats> executorUpdateStats = new ConcurrentHashMap<>();
   QueuedExecutions queuedFlows;
   File cacheDir;
   private QueueProcessorThread queueProcessor;
-  private volatile Pair<ExecutionReference, ExecutableFlow> runningCandidate = null;
   private long lastCleanerThreadCheckTime = -1;
   private long lastThreadCheckTime = -1;
   private String updaterStage = "not started";
   private List<String> filterList;
+  private long maxStatsAgeMs = ExecutorFilter.DEFAULT_MAX_STATS_AGE_MS;
   private Map<String, Integer> comparatorWeightsMap;
-  private long lastSuccessfulExecutorInfoRefresh;
-  private ExecutorService executorInforRefresherService;
+  // Ranking of the active executors used by the QueueProcessorThread, updated at every executor
+  // heartbeat. Null if the active executors changed since it was built.
+  private volatile ExecutorRanking executorRanking;
+  // Free flow slots of the active executors, tells the QueueProcessorThread when all of them are full
+  private final ExecutorCapacityLedger capacityLedger = new ExecutorCapacityLedger();
+  private ExecutorHeartbeatService heartbeatService;
 
   @Inject
   public ExecutorManager(final Props azkProps, final ExecutorLoader loader,
@@ -120,10 +183,22 @@ public class ExecutorManager extends EventHandler implements
     this.commonMetrics = commonMetrics;
     this.executorLoader = loader;
     this.apiGateway = apiGateway;
+    this.isUpdateStreamEnabled =
+        azkProps.getBoolean(AZKABAN_EXECUTOR_UPDATE_STREAM_ENABLED, false);
+    this.updateStreamWaitMs = azkProps.getLong(AZKABAN_EXECUTOR_UPDATE_STREAM_WAIT_MS,
+        DEFAULT_EXECUTOR_UPDATE_STREAM_WAIT_MS);
+    this.executorUpdateMaxThreads = azkProps.getInt(AZKABAN_EXECUTOR_UPDATE_MAX_THREADS, 10);
+    this.executorUpdaterService = Executors.newFixedThreadPool(this.executorUpdateMaxThreads);
+    this.executorUpdateTimeoutMs = azkProps.getLong(AZKABAN_EXECUTOR_UPDATE_TIMEOUT_MS,
+        DEFAULT_EXECUTOR_UPDATE_TIMEOUT_MS);
     this.setupExecutors();
     this.loadRunningFlows();
 
-    this.queuedFlows = new QueuedExecutions(azkProps.getLong(AZKABAN_WEBSERVER_QUEUE_SIZE, 100000));
+    this.queuedFlows = new QueuedExecutions(azkProps.getLong(AZKABAN_WEBSERVER_QUEUE_SIZE, 100000),
+        createQueuePolicy());
+    for (final Pair<ExecutionReference, ExecutableFlow> runningFlow : this.runningFlows.values()) {
+      this.queuedFlows.flowRunning(runningFlow.getSecond());
+    }
     this.loadQueuedFlows();
 
     this.cacheDir = new File(azkProps.getString("cache.directory", "cache"));
@@ -144,12 +219,42 @@ public class ExecutorManager extends EventHandler implements
 
   }
 
+  private ExecutionQueuePolicy createQueuePolicy() {
+    final ExecutableFlowPriorityComparator comparator = new ExecutableFlowPriorityComparator(
+        this.azkProps.getLong(AZKABAN_QUEUEPROCESSING_PRIORITY_AGING_MS, 0));
+    final String policy =
+        this.azkProps.getString(AZKABAN_QUEUEPROCESSING_POLICY, QUEUE_POLICY_PRIORITY);
+    if (QUEUE_POLICY_PRIORITY.equals(policy)) {
+      return new PriorityQueuePolicy(comparator);
+    } else if (QUEUE_POLICY_FAIRSHARE.equals(policy)) {
+      return new FairShareQueuePolicy(comparator,
+          this.azkProps.getString(AZKABAN_QUEUEPROCESSING_FAIRSHARE_TENANT,
+              FairShareQueuePolicy.TENANT_PROJECT),
+          getIntegerMapByPrefix(AZKABAN_QUEUEPROCESSING_FAIRSHARE_WEIGHT_PREFIX),
+          this.azkProps.getInt(AZKABAN_QUEUEPROCESSING_FAIRSHARE_MAX_RUNNING_FLOWS, 0),
+          getIntegerMapByPrefix(AZKABAN_QUEUEPROCESSING_FAIRSHARE_MAX_RUNNING_FLOWS + "."));
+    } else {
+      throw new IllegalArgumentException("Unknown queue processing policy " + policy);
+    }
+  }
+
+  private Map<String, Integer> getIntegerMapByPrefix(final String prefix) {
+    final Map<String, Integer> values = new HashMap<>();
+    for (final Map.Entry<String, String> entry : this.azkProps.getMapByPrefix(prefix)
+        .entrySet()) {
+      values.put(entry.getKey(), Integer.valueOf(entry.getValue()));
+    }
+    return values;
+  }
+
   private void setupMultiExecutorMode() {
     // initliatize hard filters for executor selector from azkaban.properties
     final String filters = this.azkProps.getString(AZKABAN_EXECUTOR_SELECTOR_FILTERS, "");
     if (filters != null) {
       this.filterList = Arrays.asList(StringUtils.split(filters, ","));
     }
+    this.maxStatsAgeMs = this.azkProps.getLong(AZKABAN_EXECUTOR_SELECTOR_MAX_STATS_AGE_MS,
+        ExecutorFilter.DEFAULT_MAX_STATS_AGE_MS);
 
     // initliatize comparator feature weights for executor selector from
     // azkaban.properties
@@ -162,9 +267,11 @@ public class ExecutorManager extends EventHandler implements
       }
     }
 
-    this.executorInforRefresherService =
-        Executors.newFixedThreadPool(this.azkProps.getInt(
-            AZKABAN_EXECUTORINFO_REFRESH_MAX_THREADS, 5));
+    this.heartbeatService = new ExecutorHeartbeatService(this.apiGateway,
+        this::getActiveExecutorsSnapshot, this::onExecutorInfoRefreshed,
+        this.azkProps.getLong(AZKABAN_EXECUTORINFO_REFRESH_INTERVAL_MS, 10000),
+        this.azkProps.getInt(AZKABAN_EXECUTORINFO_REFRESH_MAX_THREADS, 5));
+    this.heartbeatService.start();
 
     // configure queue processor
     this.queueProcessor =
@@ -172,7 +279,8 @@ public class ExecutorManager extends EventHandler implements
             AZKABAN_QUEUEPROCESSING_ENABLED, true), this.azkProps.getLong(
             AZKABAN_ACTIVE_EXECUTOR_REFRESH_IN_MS, 50000), this.azkProps.getInt(
             AZKABAN_ACTIVE_EXECUTOR_REFRESH_IN_NUM_FLOW, 5), this.azkProps.getInt(
-            AZKABAN_MAX_DISPATCHING_ERRORS_PERMITTED, this.activeExecutors.size()));
+            AZKABAN_MAX_DISPATCHING_ERRORS_PERMITTED, this.activeExecutors.size()),
+            this.azkProps.getInt(AZKABAN_QUEUEPROCESSING_DISPATCH_BATCH_SIZE, 1));
 
     this.queueProcessor.start();
   }
@@ -217,8 +325,21 @@ public class ExecutorManager extends EventHandler implements
     } else {
       // clear all active executors, only if we have at least one new active
       // executors
-      this.activeExecutors.clear();
-      this.activeExecutors.addAll(newExecutors);
+      // keep the stats of the executors which stay active until their next heartbeat
+      final Map<Integer, Executor> previousExecutors = new HashMap<>();
+      for (final Executor executor : this.activeExecutors) {
+        previousExecutors.put(executor.getId(), executor);
+      }
+      for (final Executor executor : newExecutors) {
+        final Executor previous = previousExecutors.get(executor.getId());
+        if (previous != null && previous.getExecutorInfo() != null) {
+          executor.setExecutorInfo(previous.getExecutorInfo(),
+              previous.getLastStatsUpdatedTime());
+        }
+      }
+      this.activeExecutors = Collections.unmodifiableSet(newExecutors);
+      this.capacityLedger.update(newExecutors);
+      this.executorRanking = null;
     }
   }
 
@@ -226,51 +347,19 @@ public class ExecutorManager extends EventHandler implements
     return this.azkProps.getBoolean(AZKABAN_USE_MULTIPLE_EXECUTORS, false);
   }
 
+  private Collection<Executor> getActiveExecutorsSnapshot() {
+    return this.activeExecutors;
+  }
+
   /**
-   * Refresh Executor stats for all the actie executors in this executorManager
+   * Called by the heartbeat service after the ExecutorInfo of an executor was refreshed, or
+   * cleared because the executor didn't answer
    */
-  private void refreshExecutors() {
-    synchronized (this.activeExecutors) {
-
-      final List<Pair<Executor, Future<ExecutorInfo>>> futures =
-          new ArrayList<>();
-      for (final Executor executor : this.activeExecutors) {
-        // execute each executorInfo refresh task to fetch
-        final Future<ExecutorInfo> fetchExecutionInfo =
-            this.executorInforRefresherService.submit(
-                () -> this.apiGateway.callForJsonType(executor.getHost(),
-                    executor.getPort(), "/serverStatistics", null, ExecutorInfo.class));
-        futures.add(new Pair<>(executor,
-            fetchExecutionInfo));
-      }
-
-      boolean wasSuccess = true;
-      for (final Pair<Executor, Future<ExecutorInfo>> refreshPair : futures) {
-        final Executor executor = refreshPair.getFirst();
-        executor.setExecutorInfo(null); // invalidate cached ExecutorInfo
-        try {
-          // max 5 secs
-          final ExecutorInfo executorInfo = refreshPair.getSecond().get(5, TimeUnit.SECONDS);
-          // executorInfo is null if the response was empty
-          executor.setExecutorInfo(executorInfo);
-          logger.info(String.format(
-              "Successfully refreshed executor: %s with executor info : %s",
-              executor, executorInfo));
-        } catch (final TimeoutException e) {
-          wasSuccess = false;
-          logger.error("Timed out while waiting for ExecutorInfo refresh"
-              + executor, e);
-        } catch (final Exception e) {
-          wasSuccess = false;
-          logger.error("Failed to update ExecutorInfo for executor : "
-              + executor, e);
-        }
-      }
-
-      // update is successful for all executors
-      if (wasSuccess) {
-        this.lastSuccessfulExecutorInfoRefresh = System.currentTimeMillis();
-      }
+  private void onExecutorInfoRefreshed(final Executor executor) {
+    this.capacityLedger.update(executor);
+    final ExecutorRanking ranking = this.executorRanking;
+    if (ranking != null) {
+      ranking.refresh(executor);
     }
   }
 
@@ -328,7 +417,7 @@ public class ExecutorManager extends EventHandler implements
    * Return last Successful ExecutorInfo Refresh for all active executors
    */
   public long getLastSuccessfulExecutorInfoRefresh() {
-    return this.lastSuccessfulExecutorInfoRefresh;
+    return this.heartbeatService == null ? 0 : this.heartbeatService.getLastSuccessfulRefresh();
   }
 
   /**
@@ -355,6 +444,20 @@ public class ExecutorManager extends EventHandler implements
     return this.updaterStage;
   }
 
+  /**
+   * @return round trip statistics of the flow update calls, keyed by executor host:port.
+   */
+  public Map<String, ExecutorUpdateStats> getExecutorUpdateStats() {
+    return new TreeMap<>(this.executorUpdateStats);
+  }
+
+  /**
+   * Gets the depth and wait times of the queued flows of each tenant (project or submit user).
+   */
+  public Map<String, QueueTenantStats> getQueueTenantStats() {
+    return this.queuedFlows.getTenantStats();
+  }
+
   @Override
   public boolean isExecutorManagerThreadActive() {
     return this.executingManager.isAlive();
@@ -371,7 +474,7 @@ public class ExecutorManager extends EventHandler implements
 
   @Override
   public Collection<Executor> getAllActiveExecutors() {
-    return Collections.unmodifiableCollection(this.activeExecutors);
+    return this.activeExecutors;
   }
 
   /**
@@ -417,6 +520,9 @@ public class ExecutorManager extends EventHandler implements
 
   private void loadRunningFlows() throws ExecutorManagerException {
     this.runningFlows.putAll(this.executorLoader.fetchActiveFlows());
+    for (final Pair<ExecutionReference, ExecutableFlow> runningFlow : this.runningFlows.values()) {
+      this.activeExecutions.add(runningFlow.getSecond());
+    }
   }
 
   /*
@@ -428,6 +534,7 @@ public class ExecutorManager extends EventHandler implements
         this.executorLoader.fetchQueuedFlows();
     if (retrievedExecutions != null) {
       for (final Pair<ExecutionReference, ExecutableFlow> pair : retrievedExecutions) {
+        this.activeExecutions.add(pair.getSecond());
         this.queuedFlows.enqueue(pair.getSecond(), pair.getFirst());
       }
     }
@@ -442,33 +549,7 @@ public class ExecutorManager extends EventHandler implements
    */
   @Override
   public List<Integer> getRunningFlows(final int projectId, final String flowId) {
-    final List<Integer> executionIds = new ArrayList<>();
-    executionIds.addAll(getRunningFlowsHelper(projectId, flowId,
-        this.queuedFlows.getAllEntries()));
-    // it's possible an execution is runningCandidate, meaning it's in dispatching state neither in queuedFlows nor runningFlows,
-    // so checks the runningCandidate as well.
-    if (this.runningCandidate != null) {
-      executionIds
-          .addAll(
-              getRunningFlowsHelper(projectId, flowId, Lists.newArrayList(this.runningCandidate)));
-    }
-    executionIds.addAll(getRunningFlowsHelper(projectId, flowId,
-        this.runningFlows.values()));
-    Collections.sort(executionIds);
-    return executionIds;
-  }
-
-  /* Helper method for getRunningFlows */
-  private List<Integer> getRunningFlowsHelper(final int projectId, final String flowId,
-      final Collection<Pair<ExecutionReference, ExecutableFlow>> collection) {
-    final List<Integer> executionIds = new ArrayList<>();
-    for (final Pair<ExecutionReference, ExecutableFlow> ref : collection) {
-      if (ref.getSecond().getFlowId().equals(flowId)
-          && ref.getSecond().getProjectId() == projectId) {
-        executionIds.add(ref.getFirst().getExecId());
-      }
-    }
-    return executionIds;
+    return this.activeExecutions.getExecutionIds(projectId, flowId);
   }
 
   /**
@@ -503,26 +584,7 @@ public class ExecutorManager extends EventHandler implements
    */
   @Override
   public boolean isFlowRunning(final int projectId, final String flowId) {
-    boolean isRunning = false;
-    isRunning =
-        isRunning
-            || isFlowRunningHelper(projectId, flowId, this.queuedFlows.getAllEntries());
-    isRunning =
-        isRunning
-            || isFlowRunningHelper(projectId, flowId, this.runningFlows.values());
-    return isRunning;
-  }
-
-  /* Search a running flow in a collection */
-  private boolean isFlowRunningHelper(final int projectId, final String flowId,
-      final Collection<Pair<ExecutionReference, ExecutableFlow>> collection) {
-    for (final Pair<ExecutionReference, ExecutableFlow> ref : collection) {
-      if (ref.getSecond().getProjectId() == projectId
-          && ref.getSecond().getFlowId().equals(flowId)) {
-        return true;
-      }
-    }
-    return false;
+    return this.activeExecutions.isFlowRunning(projectId, flowId);
   }
 
   /**
@@ -930,10 +992,10 @@ public class ExecutorManager extends EventHandler implements
   public String submitExecutableFlow(final ExecutableFlow exflow, final String userId)
       throws ExecutorManagerException {
 
-    final String exFlowKey = exflow.getProjectName() + "." + exflow.getId() + ".submitFlow";
-    // using project and flow name to prevent race condition when same flow is submitted by API and schedule at the same time
-    // causing two same flow submission entering this piece.
-    synchronized (exFlowKey.intern()) {
+    // reserving the project and flow to prevent race condition when same flow is submitted by API
+    // and schedule at the same time causing two same flow submission entering this piece.
+    try (final ActiveExecutions.FlowReservation reservation =
+        this.activeExecutions.reserve(exflow.getProjectId(), exflow.getFlowId())) {
       final String flowId = exflow.getFlowId();
 
       logger.info("Submitting execution flow " + flowId + " by " + userId);
@@ -951,7 +1013,7 @@ public class ExecutorManager extends EventHandler implements
         exflow.setSubmitUser(userId);
         exflow.setSubmitTime(System.currentTimeMillis());
 
-        final List<Integer> running = getRunningFlows(projectId, flowId);
+        final List<Integer> running = this.activeExecutions.getExecutionIds(projectId, flowId);
 
         ExecutionOptions options = exflow.getExecutionOptions();
         if (options == null) {
@@ -1004,11 +1066,18 @@ public class ExecutorManager extends EventHandler implements
         if (isMultiExecutorMode()) {
           //Take MultiExecutor route
           this.executorLoader.addActiveExecutableReference(reference);
-          this.queuedFlows.enqueue(exflow, reference);
+          this.activeExecutions.add(exflow);
+          try {
+            this.queuedFlows.enqueue(exflow, reference);
+          } catch (final ExecutorManagerException e) {
+            this.activeExecutions.remove(exflow.getExecutionId());
+            throw e;
+          }
         } else {
           // assign only local executor we have
           final Executor choosenExecutor = this.activeExecutors.iterator().next();
           this.executorLoader.addActiveExecutableReference(reference);
+          this.activeExecutions.add(exflow);
           try {
             dispatch(reference, exflow, choosenExecutor);
             this.commonMetrics.markDispatchSuccess();
@@ -1030,6 +1099,17 @@ public class ExecutorManager extends EventHandler implements
     }
   }
 
+  private void compactFinishedFlowUpdates() {
+    try {
+      final int count = this.executorLoader.compactFinishedExecutableFlowUpdates();
+      if (count > 0) {
+        logger.info("Compacted the leftover updates of " + count + " finished flows.");
+      }
+    } catch (final ExecutorManagerException e) {
+      logger.error("flow update compaction failed. ", e);
+    }
+  }
+
   private void cleanOldExecutionLogs(final long millis) {
     final long beforeDeleteLogsTimestamp = System.currentTimeMillis();
     try {
@@ -1090,8 +1170,13 @@ public class ExecutorManager extends EventHandler implements
   public void shutdown() {
     if (isMultiExecutorMode()) {
       this.queueProcessor.shutdown();
+      this.heartbeatService.shutdown();
     }
     this.executingManager.shutdown();
+    for (final ExecutorUpdateStreamThread stream : this.updateStreams.values()) {
+      stream.shutdown();
+    }
+    this.executorUpdaterService.shutdownNow();
   }
 
   private void finalizeFlows(final ExecutableFlow flow) {
@@ -1117,6 +1202,9 @@ public class ExecutorManager extends EventHandler implements
         }
       }
 
+      // Write the node updates appended by the executor into the flow data
+      this.executorLoader.compactExecutableFlowUpdates(execId);
+
       this.updaterStage = "finalizing flow " + execId + " deleting active reference";
 
       // Delete the executing reference.
@@ -1128,6 +1216,9 @@ public class ExecutorManager extends EventHandler implements
 
       this.updaterStage = "finalizing flow " + execId + " cleaning from memory";
       this.runningFlows.remove(execId);
+      this.activeExecutions.remove(execId);
+      // the slot of the flow is given back by the next heartbeat of its executor
+      this.queuedFlows.flowFinished(execId);
     } catch (final ExecutorManagerException e) {
       alertUser = false; // failed due to azkaban internal error, not to alert user
       logger.error(e);
@@ -1361,6 +1452,51 @@ public class ExecutorManager extends EventHandler implements
         status);
   }
 
+  /**
+   * Applies the flow updates returned by an executor. Flows that have finished, or which can no
+   * longer be updated, are added to finalizeFlows.
+   */
+  @SuppressWarnings("unchecked")
+  private void applyExecutorUpdates(final Map<String, Object> results,
+      final List<ExecutableFlow> finishedFlows, final List<ExecutableFlow> finalizeFlows) {
+    final List<Map<String, Object>> executionUpdates =
+        (List<Map<String, Object>>) results.get(ConnectorParams.RESPONSE_UPDATED_FLOWS);
+    for (final Map<String, Object> updateMap : executionUpdates) {
+      try {
+        final ExecutableFlow flow = updateExecution(updateMap);
+
+        this.updaterStage = "Updated flow " + flow.getExecutionId();
+
+        if (isFinished(flow)) {
+          finishedFlows.add(flow);
+          finalizeFlows.add(flow);
+        }
+      } catch (final ExecutorManagerException e) {
+        final ExecutableFlow flow = e.getExecutableFlow();
+        logger.error(e);
+
+        if (flow != null) {
+          logger.error("Finalizing flow " + flow.getExecutionId());
+          finalizeFlows.add(flow);
+        }
+      }
+    }
+  }
+
+  /**
+   * Starts long-polling the executor for flow updates, unless streaming is disabled, the executor
+   * doesn't support it or a stream is already running.
+   */
+  private void startUpdateStream(final Executor executor) {
+    if (!this.isUpdateStreamEnabled || this.streamUnsupportedExecutors.contains(executor)) {
+      return;
+    }
+    final ExecutorUpdateStreamThread stream = new ExecutorUpdateStreamThread(executor);
+    if (this.updateStreams.putIfAbsent(executor, stream) == null) {
+      stream.start();
+    }
+  }
+
   /**
    * Calls executor to dispatch the flow, update db to assign the executor and in-memory state of
    * executableFlow
@@ -1398,6 +1534,134 @@ public class ExecutorManager extends EventHandler implements
         exflow.getExecutionId(), reference.getNumErrors()));
   }
 
+  /**
+   * Dispatches several flows to one executor with a single call. If the call fails after it may
+   * have reached the executor (e.g. on a read timeout), the executor is asked which of the flows
+   * it took, so that a flow isn't dispatched twice.
+   *
+   * @return the flows that the executor didn't take. Their executor assignment is rolled back.
+   * @throws ExecutorManagerException if the executor rejected the call (e.g. because it doesn't
+   * support batches), in which case none of the flows has been dispatched.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Pair<ExecutionReference, ExecutableFlow>> dispatchBatch(
+      final Executor choosenExecutor, final List<Pair<ExecutionReference, ExecutableFlow>> flows)
+      throws ExecutorManagerException {
+    final List<Integer> executionIds = new ArrayList<>();
+    try {
+      for (final Pair<ExecutionReference, ExecutableFlow> pair : flows) {
+        final ExecutableFlow exflow = pair.getSecond();
+        exflow.setUpdateTime(System.currentTimeMillis());
+        this.executorLoader.assignExecutor(choosenExecutor.getId(), exflow.getExecutionId());
+        executionIds.add(exflow.getExecutionId());
+      }
+    } catch (final ExecutorManagerException ex) {
+      unassignExecutor(executionIds);
+      throw ex;
+    }
+
+    Map<String, Object> results;
+    try {
+      final Map<String, Object> response = this.apiGateway.callWithExecutionId(
+          choosenExecutor.getHost(), choosenExecutor.getPort(),
+          ConnectorParams.EXECUTE_BATCH_ACTION, null, null,
+          new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM, JSONUtils.toJSON(executionIds)));
+      results = (Map<String, Object>) response.get(ConnectorParams.RESPONSE_BATCH_RESULTS);
+    } catch (final ExecutorManagerException ex) {
+      if (isRejectedCall(ex)) {
+        logger.error("Rolling back executor assignment for execution ids:" + executionIds, ex);
+        unassignExecutor(executionIds);
+        throw new ExecutorManagerException(ex);
+      }
+      logger.error(String.format("Batch dispatch of %s to executor %s failed, asking the "
+          + "executor which executions it took", executionIds, choosenExecutor), ex);
+      results = fetchAcceptedFlows(choosenExecutor, executionIds);
+    }
+
+    final List<Pair<ExecutionReference, ExecutableFlow>> rejectedFlows = new ArrayList<>();
+    for (final Pair<ExecutionReference, ExecutableFlow> pair : flows) {
+      final ExecutionReference reference = pair.getFirst();
+      final ExecutableFlow exflow = pair.getSecond();
+      final Object result =
+          results == null ? null : results.get(String.valueOf(exflow.getExecutionId()));
+      if (ConnectorParams.RESPONSE_SUCCESS.equals(result)) {
+        reference.setExecutor(choosenExecutor);
+        this.runningFlows.put(exflow.getExecutionId(), pair);
+        logger.info(String.format(
+            "Successfully dispatched exec %d with error count %d",
+            exflow.getExecutionId(), reference.getNumErrors()));
+      } else {
+        logger.warn(String.format("Executor %s rejected exec %d: %s", choosenExecutor,
+            exflow.getExecutionId(), result));
+        this.executorLoader.unassignExecutor(exflow.getExecutionId());
+        rejectedFlows.add(pair);
+      }
+    }
+
+    synchronized (this) {
+      // Wake up ExecutingManagerUpdaterThread, same as in dispatch.
+      this.notifyAll();
+    }
+    return rejectedFlows;
+  }
+
+  /*
+   * Whether a failed call is known to have been turned down without the executor acting on it:
+   * the executor answered with an error or refused the action, or it couldn't be connected to.
+   */
+  private static boolean isRejectedCall(final ExecutorManagerException ex) {
+    for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ExecutorApiGateway.ErrorResponseException
+          || cause instanceof ConnectException || cause instanceof ConnectTimeoutException) {
+        return true;
+      }
+      if (cause instanceof HttpResponseException) {
+        final int statusCode = ((HttpResponseException) cause).getStatusCode();
+        return statusCode == HttpStatus.SC_NOT_FOUND
+            || statusCode == HttpStatus.SC_METHOD_NOT_ALLOWED
+            || statusCode == HttpStatus.SC_NOT_IMPLEMENTED;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Asks the executor for the status of each execution of a batch whose dispatch failed. An
+   * execution that the executor doesn't know is reported as rejected, the ones it knows, or whose
+   * status couldn't be fetched, as accepted: they stay assigned to the executor and the updater
+   * thread finalizes them if the executor doesn't run them.
+   */
+  private Map<String, Object> fetchAcceptedFlows(final Executor executor,
+      final List<Integer> executionIds) {
+    final Map<String, Object> results = new HashMap<>();
+    for (final int executionId : executionIds) {
+      Object result = ConnectorParams.RESPONSE_SUCCESS;
+      try {
+        final Map<String, Object> response = this.apiGateway.callWithExecutionId(
+            executor.getHost(), executor.getPort(), ConnectorParams.STATUS_ACTION, executionId,
+            null);
+        if (ConnectorParams.RESPONSE_NOTFOUND.equals(response.get(ConnectorParams.STATUS_PARAM))) {
+          result = "Executor " + executor + " didn't take exec " + executionId;
+        }
+      } catch (final ExecutorManagerException e) {
+        logger.error(String.format("Failed to fetch the status of exec %d from executor %s, "
+            + "keeping it assigned to the executor", executionId, executor), e);
+      }
+      results.put(String.valueOf(executionId), result);
+    }
+    return results;
+  }
+
+  private void unassignExecutor(final List<Integer> executionIds) {
+    for (final int executionId : executionIds) {
+      try {
+        this.executorLoader.unassignExecutor(executionId);
+      } catch (final ExecutorManagerException e) {
+        logger.error("Failed to unassign executor for execution id:" + executionId, e);
+      }
+    }
+  }
+
   private class ExecutingManagerUpdaterThread extends Thread {
 
     private final int waitTimeIdleMs = 2000;
@@ -1406,6 +1670,8 @@ public class ExecutorManager extends EventHandler implements
     // times (1 mins) before we evict.
     private final int numErrors = 6;
     private final long errorThreshold = 10000;
+    // The last update call made to each executor. Only accessed by this thread.
+    private final Map<Executor, Future<Map<String, Object>>> inFlightUpdates = new HashMap<>();
     private boolean shutdown = false;
 
     public ExecutingManagerUpdaterThread() {
@@ -1416,6 +1682,81 @@ public class ExecutorManager extends EventHandler implements
       this.shutdown = true;
     }
 
+    /**
+     * Asks an executor for the updates of the given flows. Runs on the executorUpdaterService.
+     */
+    private Map<String, Object> callUpdate(final Executor executor,
+        final List<ExecutableFlow> flows) throws ExecutorManagerException {
+      final List<Long> updateTimesList = new ArrayList<>();
+      final List<Integer> executionIdsList = new ArrayList<>();
+      // We pack the parameters of the same host together before we
+      // query.
+      fillUpdateTimeAndExecId(flows, executionIdsList, updateTimesList);
+
+      final Pair<String, String> updateTimes =
+          new Pair<>(
+              ConnectorParams.UPDATE_TIME_LIST_PARAM,
+              JSONUtils.toJSON(updateTimesList));
+      final Pair<String, String> executionIds =
+          new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM,
+              JSONUtils.toJSON(executionIdsList));
+
+      final ExecutorUpdateStats stats = getUpdateStats(executor);
+      final long startTime = System.currentTimeMillis();
+      boolean succeeded = false;
+      try {
+        final Map<String, Object> results =
+            ExecutorManager.this.apiGateway.callWithExecutionId(executor.getHost(),
+                executor.getPort(), ConnectorParams.UPDATE_ACTION,
+                null, null, executionIds, updateTimes);
+        succeeded = true;
+        return results;
+      } finally {
+        stats.recordCall(System.currentTimeMillis() - startTime, succeeded);
+      }
+    }
+
+    private ExecutorUpdateStats getUpdateStats(final Executor executor) {
+      return ExecutorManager.this.executorUpdateStats.computeIfAbsent(
+          executor.getHost() + ":" + executor.getPort(), k -> new ExecutorUpdateStats());
+    }
+
+    private void handleUpdateTimeout(final Executor executor, final List<ExecutableFlow> flows,
+        final List<ExecutableFlow> finalizeFlows) {
+      logger.error("Timed out getting flow updates from " + executor.getHost() + ":"
+          + executor.getPort());
+      getUpdateStats(executor).recordTimeout();
+      ExecutorManager.this.commonMetrics.markExecutorUpdateTimeout();
+      handleUpdateFailure(flows, finalizeFlows);
+    }
+
+    private void handleUpdateFailure(final List<ExecutableFlow> flows,
+        final List<ExecutableFlow> finalizeFlows) {
+      for (final ExecutableFlow flow : flows) {
+        final Pair<ExecutionReference, ExecutableFlow> pair =
+            ExecutorManager.this.runningFlows.get(flow.getExecutionId());
+
+        if (pair != null) {
+          ExecutorManager.this.updaterStage =
+              "Failed to get update. Doing some clean up for flow "
+                  + pair.getSecond().getExecutionId();
+
+          final ExecutionReference ref = pair.getFirst();
+          int numErrors = ref.getNumErrors();
+          if (ref.getNumErrors() < this.numErrors) {
+            ref.setNextCheckTime(System.currentTimeMillis()
+                + this.errorThreshold);
+            ref.setNumErrors(++numErrors);
+          } else {
+            logger.error("Evicting flow " + flow.getExecutionId()
+                + ". The executor is unresponsive.");
+            // TODO should send out an unresponsive email here.
+            finalizeFlows.add(pair.getSecond());
+          }
+        }
+      }
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public void run() {
@@ -1432,91 +1773,117 @@ public class ExecutorManager extends EventHandler implements
               new ArrayList<>();
 
           if (exFlowMap.size() > 0) {
+            // Query all executors at once and apply their results in the order they come back,
+            // so that a slow executor only delays the updates of its own flows.
+            final CompletionService<Map<String, Object>> completionService =
+                new ExecutorCompletionService<>(ExecutorManager.this.executorUpdaterService);
+            final Map<Future<Map<String, Object>>, Executor> pendingUpdates = new HashMap<>();
+            // Time each call started running. A call is timed from its start, not from the time
+            // it spent queued in the pool behind the calls to other executors.
+            final Map<Executor, Long> callStartTimes = new ConcurrentHashMap<>();
+            final long roundStartTime = System.currentTimeMillis();
+
             for (final Map.Entry<Executor, List<ExecutableFlow>> entry : exFlowMap
                 .entrySet()) {
-              final List<Long> updateTimesList = new ArrayList<>();
-              final List<Integer> executionIdsList = new ArrayList<>();
-
               final Executor executor = entry.getKey();
 
+              // Flows on this executor are kept up to date by its update stream, except the
+              // ones dispatched while the stream waits for the executor. Those are polled until
+              // the next request of the stream watches them.
+              final ExecutorUpdateStreamThread stream =
+                  ExecutorManager.this.updateStreams.get(executor);
+              if (stream != null) {
+                final List<ExecutableFlow> unwatchedFlows = new ArrayList<>();
+                for (final ExecutableFlow flow : entry.getValue()) {
+                  if (!stream.isWatching(flow.getExecutionId())) {
+                    unwatchedFlows.add(flow);
+                  }
+                }
+                if (unwatchedFlows.isEmpty()) {
+                  continue;
+                }
+                entry.setValue(unwatchedFlows);
+              }
+
+              final Future<Map<String, Object>> previousUpdate =
+                  this.inFlightUpdates.get(executor);
+              if (previousUpdate != null && !previousUpdate.isDone()) {
+                // Don't pile up calls on an executor that still hasn't answered the last one.
+                handleUpdateTimeout(executor, entry.getValue(), finalizeFlows);
+                continue;
+              }
+
+              final Future<Map<String, Object>> update = completionService.submit(() -> {
+                callStartTimes.put(executor, System.currentTimeMillis());
+                return callUpdate(executor, entry.getValue());
+              });
+              pendingUpdates.put(update, executor);
+              this.inFlightUpdates.put(executor, update);
+            }
+
+            // Calls still queued in the pool are given up once the pool had the time to run all
+            // the calls of the round, one timeout per call per thread.
+            final int maxThreads = ExecutorManager.this.executorUpdateMaxThreads;
+            final int rounds = (pendingUpdates.size() + maxThreads - 1) / maxThreads;
+            final long roundDeadline =
+                roundStartTime + rounds * ExecutorManager.this.executorUpdateTimeoutMs;
+
+            while (!pendingUpdates.isEmpty()) {
+              ExecutorManager.this.updaterStage =
+                  "Waiting for updates from " + pendingUpdates.size() + " executors.";
+              final long now = System.currentTimeMillis();
+              long nextDeadline = Long.MAX_VALUE;
+              final Iterator<Map.Entry<Future<Map<String, Object>>, Executor>> pendingIterator =
+                  pendingUpdates.entrySet().iterator();
+              while (pendingIterator.hasNext()) {
+                final Map.Entry<Future<Map<String, Object>>, Executor> pending =
+                    pendingIterator.next();
+                final Long callStartTime = callStartTimes.get(pending.getValue());
+                final long callDeadline = callStartTime == null ? roundDeadline : Math.min(
+                    roundDeadline, callStartTime + ExecutorManager.this.executorUpdateTimeoutMs);
+                if (callDeadline <= now && !pending.getKey().isDone()) {
+                  // Give up on the executor. Its call is left to finish on its own and the result
+                  // is dropped; no new call is made to the executor until then.
+                  handleUpdateTimeout(pending.getValue(), exFlowMap.get(pending.getValue()),
+                      finalizeFlows);
+                  pendingIterator.remove();
+                } else {
+                  nextDeadline = Math.min(nextDeadline, callDeadline);
+                }
+              }
+              if (pendingUpdates.isEmpty()) {
+                break;
+              }
+
+              final Future<Map<String, Object>> update = completionService
+                  .poll(Math.max(0, nextDeadline - now), TimeUnit.MILLISECONDS);
+              // nothing came back before the next deadline, or a call given up on came back late
+              final Executor executor = update == null ? null : pendingUpdates.remove(update);
+              if (executor == null) {
+                continue;
+              }
               ExecutorManager.this.updaterStage =
                   "Starting update flows on " + executor.getHost() + ":"
                       + executor.getPort();
 
-              // We pack the parameters of the same host together before we
-              // query.
-              fillUpdateTimeAndExecId(entry.getValue(), executionIdsList,
-                  updateTimesList);
-
-              final Pair<String, String> updateTimes =
-                  new Pair<>(
-                      ConnectorParams.UPDATE_TIME_LIST_PARAM,
-                      JSONUtils.toJSON(updateTimesList));
-              final Pair<String, String> executionIds =
-                  new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM,
-                      JSONUtils.toJSON(executionIdsList));
-
               Map<String, Object> results = null;
               try {
-                results =
-                    ExecutorManager.this.apiGateway.callWithExecutionId(executor.getHost(),
-                        executor.getPort(), ConnectorParams.UPDATE_ACTION,
-                        null, null, executionIds, updateTimes);
-              } catch (final ExecutorManagerException e) {
-                logger.error(e);
-                for (final ExecutableFlow flow : entry.getValue()) {
-                  final Pair<ExecutionReference, ExecutableFlow> pair =
-                      ExecutorManager.this.runningFlows.get(flow.getExecutionId());
-
-                  ExecutorManager.this.updaterStage =
-                      "Failed to get update. Doing some clean up for flow "
-                          + pair.getSecond().getExecutionId();
-
-                  if (pair != null) {
-                    final ExecutionReference ref = pair.getFirst();
-                    int numErrors = ref.getNumErrors();
-                    if (ref.getNumErrors() < this.numErrors) {
-                      ref.setNextCheckTime(System.currentTimeMillis()
-                          + this.errorThreshold);
-                      ref.setNumErrors(++numErrors);
-                    } else {
-                      logger.error("Evicting flow " + flow.getExecutionId()
-                          + ". The executor is unresponsive.");
-                      // TODO should send out an unresponsive email here.
-                      finalizeFlows.add(pair.getSecond());
-                    }
-                  }
-                }
+                results = update.get();
+              } catch (final ExecutionException e) {
+                logger.error(e.getCause());
+                handleUpdateFailure(exFlowMap.get(executor), finalizeFlows);
               }
 
               // We gets results
               if (results != null) {
-                final List<Map<String, Object>> executionUpdates =
-                    (List<Map<String, Object>>) results
-                        .get(ConnectorParams.RESPONSE_UPDATED_FLOWS);
-                for (final Map<String, Object> updateMap : executionUpdates) {
-                  try {
-                    final ExecutableFlow flow = updateExecution(updateMap);
-
-                    ExecutorManager.this.updaterStage = "Updated flow " + flow.getExecutionId();
-
-                    if (isFinished(flow)) {
-                      finishedFlows.add(flow);
-                      finalizeFlows.add(flow);
-                    }
-                  } catch (final ExecutorManagerException e) {
-                    final ExecutableFlow flow = e.getExecutableFlow();
-                    logger.error(e);
-
-                    if (flow != null) {
-                      logger.error("Finalizing flow " + flow.getExecutionId());
-                      finalizeFlows.add(flow);
-                    }
-                  }
-                }
+                applyExecutorUpdates(results, finishedFlows, finalizeFlows);
+                // The executor is reachable, so switch it over to streaming if enabled.
+                startUpdateStream(executor);
               }
             }
 
+            this.inFlightUpdates.values().removeIf(Future::isDone);
+
             ExecutorManager.this.updaterStage =
                 "Finalizing " + finalizeFlows.size() + " error flows.";
 
@@ -1545,6 +1912,102 @@ public class ExecutorManager extends EventHandler implements
     }
   }
 
+  /*
+   * Long-polls one executor for status changes of the flows it runs and applies them as soon as
+   * they arrive. The executor answers when one of the flows changed after the last sequence number
+   * seen, so updates are neither delayed by a polling interval nor computed for unchanged flows.
+   *
+   * The thread stops when the executor runs no more flows or when a call fails. The
+   * ExecutingManagerUpdaterThread then goes back to polling the executor, and restarts the stream
+   * after the next successful poll.
+   */
+  private class ExecutorUpdateStreamThread extends Thread {
+
+    private final Executor executor;
+    private volatile boolean shutdown = false;
+    // Position in the executor's update journal. The initial values make the executor resync.
+    private long epoch = -1;
+    private long sequence = -1;
+    // Executions of the previous request
+    private volatile Set<Integer> watchedExecutionIds = Collections.emptySet();
+
+    public ExecutorUpdateStreamThread(final Executor executor) {
+      this.executor = executor;
+      this.setName("ExecutorUpdateStream-" + executor.getHost() + ":" + executor.getPort());
+      this.setDaemon(true);
+    }
+
+    private void shutdown() {
+      this.shutdown = true;
+      this.interrupt();
+    }
+
+    /* True if the updates of the execution come with the current request of the stream */
+    private boolean isWatching(final int executionId) {
+      return this.watchedExecutionIds.contains(executionId);
+    }
+
+    @Override
+    public void run() {
+      logger.info("Streaming flow updates from executor " + this.executor);
+      try {
+        while (!this.shutdown) {
+          final List<ExecutableFlow> flows = getFlowToExecutorMap().get(this.executor);
+          if (flows == null || flows.isEmpty()) {
+            break;
+          }
+
+          final List<Long> updateTimesList = new ArrayList<>();
+          final List<Integer> executionIdsList = new ArrayList<>();
+          fillUpdateTimeAndExecId(flows, executionIdsList, updateTimesList);
+          if (!this.watchedExecutionIds.containsAll(executionIdsList)) {
+            // The executor only answers for the flows changed since the sequence, so a flow
+            // dispatched since the previous request wouldn't be sent until it changes again.
+            this.sequence = -1;
+          }
+          this.watchedExecutionIds = new HashSet<>(executionIdsList);
+
+          final Map<String, Object> results =
+              ExecutorManager.this.apiGateway.callWithExecutionId(this.executor.getHost(),
+                  this.executor.getPort(), ConnectorParams.UPDATE_ACTION, null, null,
+                  new Pair<>(ConnectorParams.EXEC_ID_LIST_PARAM,
+                      JSONUtils.toJSON(executionIdsList)),
+                  new Pair<>(ConnectorParams.UPDATE_TIME_LIST_PARAM,
+                      JSONUtils.toJSON(updateTimesList)),
+                  new Pair<>(ConnectorParams.UPDATE_EPOCH_PARAM, String.valueOf(this.epoch)),
+                  new Pair<>(ConnectorParams.UPDATE_SEQUENCE_PARAM,
+                      String.valueOf(this.sequence)),
+                  new Pair<>(ConnectorParams.UPDATE_WAIT_MS_PARAM,
+                      String.valueOf(ExecutorManager.this.updateStreamWaitMs)));
+
+          if (!results.containsKey(ConnectorParams.RESPONSE_UPDATE_SEQUENCE)) {
+            logger.warn("Executor " + this.executor
+                + " doesn't support streaming updates. Falling back to polling.");
+            ExecutorManager.this.streamUnsupportedExecutors.add(this.executor);
+            break;
+          }
+          this.epoch = JSONUtils.getLongFromObject(
+              results.get(ConnectorParams.RESPONSE_UPDATE_EPOCH));
+          this.sequence = JSONUtils.getLongFromObject(
+              results.get(ConnectorParams.RESPONSE_UPDATE_SEQUENCE));
+
+          final List<ExecutableFlow> finalizeFlows = new ArrayList<>();
+          applyExecutorUpdates(results, new ArrayList<>(), finalizeFlows);
+          for (final ExecutableFlow flow : finalizeFlows) {
+            finalizeFlows(flow);
+          }
+        }
+      } catch (final Exception e) {
+        if (!this.shutdown) {
+          logger.warn("Update stream of executor " + this.executor
+              + " failed. Falling back to polling.", e);
+        }
+      } finally {
+        ExecutorManager.this.updateStreams.remove(this.executor, this);
+      }
+    }
+  }
+
   /*
    * cleaner thread to clean up execution_logs, etc in DB. Runs every hour.
    */
@@ -1581,6 +2044,7 @@ public class ExecutorManager extends EventHandler implements
             final long currentTime = System.currentTimeMillis();
             if (currentTime - CLEANER_THREAD_WAIT_INTERVAL_MS > this.lastLogCleanTime) {
               cleanExecutionLogs();
+              compactFinishedFlowUpdates();
               this.lastLogCleanTime = currentTime;
             }
 
@@ -1610,6 +2074,7 @@ public class ExecutorManager extends EventHandler implements
 
     private static final long QUEUE_PROCESSOR_WAIT_IN_MS = 1000;
     private final int maxDispatchingErrors;
+    private final int dispatchBatchSize;
     private final long activeExecutorRefreshWindowInMilisec;
     private final int activeExecutorRefreshWindowInFlows;
 
@@ -1619,9 +2084,11 @@ public class ExecutorManager extends EventHandler implements
     public QueueProcessorThread(final boolean isActive,
         final long activeExecutorRefreshWindowInTime,
         final int activeExecutorRefreshWindowInFlows,
-        final int maxDispatchingErrors) {
+        final int maxDispatchingErrors,
+        final int dispatchBatchSize) {
       setActive(isActive);
       this.maxDispatchingErrors = maxDispatchingErrors;
+      this.dispatchBatchSize = dispatchBatchSize;
       this.activeExecutorRefreshWindowInFlows =
           activeExecutorRefreshWindowInFlows;
       this.activeExecutorRefreshWindowInMilisec =
@@ -1651,8 +2118,13 @@ public class ExecutorManager extends EventHandler implements
           try {
             // start processing queue if active, other wait for sometime
             if (this.isActive) {
-              processQueuedFlows(this.activeExecutorRefreshWindowInMilisec,
-                  this.activeExecutorRefreshWindowInFlows);
+              if (this.dispatchBatchSize > 1) {
+                processQueuedFlowsInBatches(this.activeExecutorRefreshWindowInMilisec,
+                    this.activeExecutorRefreshWindowInFlows);
+              } else {
+                processQueuedFlows(this.activeExecutorRefreshWindowInMilisec,
+                    this.activeExecutorRefreshWindowInFlows);
+              }
             }
             wait(QUEUE_PROCESSOR_WAIT_IN_MS);
           } catch (final Exception e) {
@@ -1670,10 +2142,17 @@ public class ExecutorManager extends EventHandler implements
       long lastExecutorRefreshTime = 0;
       int currentContinuousFlowProcessed = 0;
 
-      while (isActive() && (ExecutorManager.this.runningCandidate = ExecutorManager.this.queuedFlows
-          .fetchHead()) != null) {
-        final ExecutionReference reference = ExecutorManager.this.runningCandidate.getFirst();
-        final ExecutableFlow exflow = ExecutorManager.this.runningCandidate.getSecond();
+      while (isActive()) {
+        if (awaitCapacity(activeExecutorsRefreshWindow, lastExecutorRefreshTime)) {
+          continue;
+        }
+        final Pair<ExecutionReference, ExecutableFlow> runningCandidate =
+            ExecutorManager.this.queuedFlows.fetchHead();
+        if (runningCandidate == null) {
+          break;
+        }
+        final ExecutionReference reference = runningCandidate.getFirst();
+        final ExecutableFlow exflow = runningCandidate.getSecond();
         final long currentTime = System.currentTimeMillis();
 
         // if we have dispatched more than maxContinuousFlowProcessed or
@@ -1682,20 +2161,23 @@ public class ExecutorManager extends EventHandler implements
 
         if (currentTime - lastExecutorRefreshTime > activeExecutorsRefreshWindow
             || currentContinuousFlowProcessed >= maxContinuousFlowProcessed) {
-          // Refresh executorInfo for all activeExecutors
-          refreshExecutors();
+          // The executor stats are kept fresh by the heartbeat service, a new refresh window
+          // only lets the flows tried in the last one be tried again
           lastExecutorRefreshTime = currentTime;
           currentContinuousFlowProcessed = 0;
         }
 
+        if (!ExecutorManager.this.capacityLedger.hasCapacity()) {
+          // all executors got full since the flows were fetched, wait for a free slot
+          ExecutorManager.this.queuedFlows.enqueue(exflow, reference);
+          continue;
+        }
+
         /**
          * <pre>
-         *  TODO: Work around till we improve Filters to have a notion of GlobalSystemState.
-         *        Currently we try each queued flow once to infer a global busy state
-         * Possible improvements:-
-         *   1. Move system level filters in refreshExecutors and sleep if we have all executors busy after refresh
-         *   2. Implement GlobalSystemState in selector or in a third place to manage system filters. Basically
-         *      taking out all the filters which do not depend on the flow but are still being part of Selector.
+         *  The capacity ledger tells when all the executors are full. A flow can still fail to be
+         *  placed while there is capacity (e.g. if the executors with free slots are filtered out
+         *  for their memory or cpu usage), so we try each queued flow once per refresh.
          * Assumptions:-
          *   1. no one else except QueueProcessor is updating ExecutableFlow update time
          *   2. re-attempting a flow (which has been tried before) is considered as all executors are busy
@@ -1704,7 +2186,6 @@ public class ExecutorManager extends EventHandler implements
         if (exflow.getUpdateTime() > lastExecutorRefreshTime) {
           // put back in the queue
           ExecutorManager.this.queuedFlows.enqueue(exflow, reference);
-          ExecutorManager.this.runningCandidate = null;
           final long sleepInterval =
               activeExecutorsRefreshWindow
                   - (currentTime - lastExecutorRefreshTime);
@@ -1715,7 +2196,6 @@ public class ExecutorManager extends EventHandler implements
           // process flow with current snapshot of activeExecutors
           selectExecutorAndDispatchFlow(reference, exflow, new HashSet<>(
               ExecutorManager.this.activeExecutors));
-          ExecutorManager.this.runningCandidate = null;
         }
 
         // do not count failed flow processsing (flows still in queue)
@@ -1725,6 +2205,165 @@ public class ExecutorManager extends EventHandler implements
       }
     }
 
+    /*
+     * Same as processQueuedFlows, but takes up to dispatchBatchSize flows from the queue at a
+     * time, selects executors for all of them against the same snapshot of executors and sends the
+     * flows selected for the same executor in one call. Every selected flow takes a slot of its
+     * executor, so the batch is spread over the executors which have room for it.
+     */
+    private void processQueuedFlowsInBatches(final long activeExecutorsRefreshWindow,
+        final int maxContinuousFlowProcessed) throws InterruptedException,
+        ExecutorManagerException {
+      long lastExecutorRefreshTime = 0;
+      int currentContinuousFlowProcessed = 0;
+
+      while (isActive()) {
+        if (awaitCapacity(activeExecutorsRefreshWindow, lastExecutorRefreshTime)) {
+          continue;
+        }
+        final List<Pair<ExecutionReference, ExecutableFlow>> batch = fetchBatch();
+        final long currentTime = System.currentTimeMillis();
+
+        if (currentTime - lastExecutorRefreshTime > activeExecutorsRefreshWindow
+            || currentContinuousFlowProcessed >= maxContinuousFlowProcessed) {
+          // The executor stats are kept fresh by the heartbeat service, a new refresh window
+          // only lets the flows tried in the last one be tried again
+          lastExecutorRefreshTime = currentTime;
+          currentContinuousFlowProcessed = 0;
+        }
+
+        if (!ExecutorManager.this.capacityLedger.hasCapacity()) {
+          // all executors got full since the flows were fetched, wait for a free slot
+          for (final Pair<ExecutionReference, ExecutableFlow> pair : batch) {
+            ExecutorManager.this.queuedFlows.enqueue(pair.getSecond(), pair.getFirst());
+          }
+          continue;
+        }
+
+        final Set<Executor> availableExecutors =
+            new HashSet<>(ExecutorManager.this.activeExecutors);
+        final Map<Executor, List<Pair<ExecutionReference, ExecutableFlow>>> dispatchGroups =
+            new HashMap<>();
+        boolean isAllRetried = true;
+        for (final Pair<ExecutionReference, ExecutableFlow> pair : batch) {
+          final ExecutionReference reference = pair.getFirst();
+          final ExecutableFlow exflow = pair.getSecond();
+          // A flow that has already been tried since the last refresh is considered as all
+          // executors being busy, see processQueuedFlows.
+          if (exflow.getUpdateTime() > lastExecutorRefreshTime) {
+            ExecutorManager.this.queuedFlows.enqueue(exflow, reference);
+            continue;
+          }
+          isAllRetried = false;
+          exflow.setUpdateTime(currentTime);
+          final Executor selectedExecutor = selectExecutor(exflow, availableExecutors);
+          if (selectedExecutor != null) {
+            dispatchGroups.computeIfAbsent(selectedExecutor, k -> new ArrayList<>()).add(pair);
+          } else {
+            ExecutorManager.this.commonMetrics.markDispatchFail();
+            handleNoExecutorSelectedCase(reference, exflow);
+          }
+        }
+
+        for (final Map.Entry<Executor, List<Pair<ExecutionReference, ExecutableFlow>>> group :
+            dispatchGroups.entrySet()) {
+          dispatchGroup(group.getKey(), group.getValue(), availableExecutors);
+        }
+
+        for (final Pair<ExecutionReference, ExecutableFlow> pair : batch) {
+          final int executionId = pair.getSecond().getExecutionId();
+          // do not count failed flow processsing (flows still in queue)
+          if (ExecutorManager.this.queuedFlows.getFlow(executionId) == null) {
+            currentContinuousFlowProcessed++;
+          }
+        }
+
+        if (isAllRetried) {
+          // wait till next executor refresh
+          sleep(activeExecutorsRefreshWindow - (currentTime - lastExecutorRefreshTime));
+        }
+      }
+    }
+
+    /*
+     * Waits while all the executors are known to be full. The wait ends as soon as a running flow
+     * finishes, or when the executors are due for a refresh. Returns true if it waited.
+     */
+    private boolean awaitCapacity(final long activeExecutorsRefreshWindow,
+        final long lastExecutorRefreshTime) throws InterruptedException {
+      final long waitTime =
+          activeExecutorsRefreshWindow - (System.currentTimeMillis() - lastExecutorRefreshTime);
+      if (waitTime <= 0 || ExecutorManager.this.capacityLedger.hasCapacity()) {
+        return false;
+      }
+      ExecutorManager.this.capacityLedger.awaitCapacity(waitTime);
+      return true;
+    }
+
+    /* Ranks the active executors with their current executorInfo */
+    private ExecutorRanking rankExecutors() {
+      final ExecutorRanking ranking = new ExecutorRanking(ExecutorManager.this.filterList,
+          ExecutorManager.this.comparatorWeightsMap, getActiveExecutorsSnapshot(),
+          ExecutorManager.this.maxStatsAgeMs);
+      ExecutorManager.this.executorRanking = ranking;
+      return ranking;
+    }
+
+    /* Takes the next flows to dispatch from the queue, waiting for at least one */
+    private List<Pair<ExecutionReference, ExecutableFlow>> fetchBatch()
+        throws InterruptedException {
+      final List<Pair<ExecutionReference, ExecutableFlow>> batch = new ArrayList<>();
+      // don't take more flows than the executors have room for
+      final int batchSize = Math.min(this.dispatchBatchSize,
+          ExecutorManager.this.capacityLedger.getAvailableCapacity());
+      Pair<ExecutionReference, ExecutableFlow> pair = ExecutorManager.this.queuedFlows.fetchHead();
+      while (pair != null) {
+        batch.add(pair);
+        if (batch.size() >= batchSize) {
+          break;
+        }
+        pair = ExecutorManager.this.queuedFlows.pollHead();
+      }
+      return batch;
+    }
+
+    /* Dispatches the flows selected for one executor with a single call */
+    private void dispatchGroup(final Executor selectedExecutor,
+        final List<Pair<ExecutionReference, ExecutableFlow>> flows,
+        final Set<Executor> availableExecutors) throws ExecutorManagerException {
+      final List<Pair<ExecutionReference, ExecutableFlow>> rejectedFlows;
+      try {
+        rejectedFlows = dispatchBatch(selectedExecutor, flows);
+      } catch (final ExecutorManagerException e) {
+        // The executor turned the batch down, e.g. because it doesn't support batches; send the
+        // flows one by one instead.
+        logger.warn(String.format(
+            "Executor %s failed to take a batch of %d flows, dispatching them one by one",
+            selectedExecutor, flows.size()), e);
+        for (final Pair<ExecutionReference, ExecutableFlow> pair : flows) {
+          synchronized (pair.getSecond()) {
+            dispatchFlow(pair.getFirst(), pair.getSecond(), selectedExecutor,
+                new HashSet<>(availableExecutors));
+          }
+        }
+        return;
+      }
+
+      for (final Pair<ExecutionReference, ExecutableFlow> pair : flows) {
+        if (rejectedFlows.contains(pair)) {
+          ExecutorManager.this.commonMetrics.markDispatchFail();
+          cancelReservation(selectedExecutor);
+          synchronized (pair.getSecond()) {
+            handleDispatchExceptionCase(pair.getFirst(), pair.getSecond(), selectedExecutor,
+                new HashSet<>(availableExecutors));
+          }
+        } else {
+          ExecutorManager.this.commonMetrics.markDispatchSuccess();
+          recordQueueWaitTime(pair.getSecond());
+        }
+      }
+    }
+
     /* process flow with a snapshot of available Executors */
     private void selectExecutorAndDispatchFlow(final ExecutionReference reference,
         final ExecutableFlow exflow, final Set<Executor> availableExecutors)
@@ -1732,17 +2371,7 @@ public class ExecutorManager extends EventHandler implements
       synchronized (exflow) {
         final Executor selectedExecutor = selectExecutor(exflow, availableExecutors);
         if (selectedExecutor != null) {
-          try {
-            dispatch(reference, exflow, selectedExecutor);
-            ExecutorManager.this.commonMetrics.markDispatchSuccess();
-          } catch (final ExecutorManagerException e) {
-            ExecutorManager.this.commonMetrics.markDispatchFail();
-            logger.warn(String.format(
-                "Executor %s responded with exception for exec: %d",
-                selectedExecutor, exflow.getExecutionId()), e);
-            handleDispatchExceptionCase(reference, exflow, selectedExecutor,
-                availableExecutors);
-          }
+          dispatchFlow(reference, exflow, selectedExecutor, availableExecutors);
         } else {
           ExecutorManager.this.commonMetrics.markDispatchFail();
           handleNoExecutorSelectedCase(reference, exflow);
@@ -1750,6 +2379,25 @@ public class ExecutorManager extends EventHandler implements
       }
     }
 
+    /* dispatch flow to the selected executor, trying the other available executors on failure */
+    private void dispatchFlow(final ExecutionReference reference, final ExecutableFlow exflow,
+        final Executor selectedExecutor, final Set<Executor> availableExecutors)
+        throws ExecutorManagerException {
+      try {
+        dispatch(reference, exflow, selectedExecutor);
+        ExecutorManager.this.commonMetrics.markDispatchSuccess();
+        recordQueueWaitTime(exflow);
+      } catch (final ExecutorManagerException e) {
+        ExecutorManager.this.commonMetrics.markDispatchFail();
+        cancelReservation(selectedExecutor);
+        logger.warn(String.format(
+            "Executor %s responded with exception for exec: %d",
+            selectedExecutor, exflow.getExecutionId()), e);
+        handleDispatchExceptionCase(reference, exflow, selectedExecutor,
+            availableExecutors);
+      }
+    }
+
     /* Helper method to fetch  overriding Executor, if a valid user has specifed otherwise return null */
     private Executor getUserSpecifiedExecutor(final ExecutionOptions options,
         final int executionId) {
@@ -1787,7 +2435,12 @@ public class ExecutorManager extends EventHandler implements
       return executor;
     }
 
-    /* Choose Executor for exflow among the available executors */
+    /*
+     * Choose Executor for exflow among the available executors. The flow takes a slot of the
+     * chosen executor right away, so that the flows selected before it is dispatched (e.g. the
+     * other flows of a batch) see the executor with that flow. The slot must be given back with
+     * cancelReservation if the flow isn't dispatched to the executor.
+     */
     private Executor selectExecutor(final ExecutableFlow exflow,
         final Set<Executor> availableExecutors) {
       Executor choosenExecutor =
@@ -1798,13 +2451,43 @@ public class ExecutorManager extends EventHandler implements
       if (choosenExecutor == null) {
         logger.info("Using dispatcher for execution id :"
             + exflow.getExecutionId());
-        final ExecutorSelector selector = new ExecutorSelector(ExecutorManager.this.filterList,
-            ExecutorManager.this.comparatorWeightsMap);
-        choosenExecutor = selector.getBest(availableExecutors, exflow);
+        ExecutorRanking ranking = ExecutorManager.this.executorRanking;
+        if (ranking == null) {
+          ranking = rankExecutors();
+        }
+        // the ranking leaves out the executors whose slots are all taken, e.g. by the flows
+        // selected before this one in the same batch
+        choosenExecutor = ranking.getBest(availableExecutors);
+      }
+      if (choosenExecutor != null) {
+        reserve(choosenExecutor);
       }
       return choosenExecutor;
     }
 
+    /* Accounts a flow selected for the executor in the ranking and the capacity ledger */
+    private void reserve(final Executor executor) {
+      final ExecutorRanking ranking = ExecutorManager.this.executorRanking;
+      if (ranking != null) {
+        ranking.markDispatched(executor);
+      }
+      ExecutorManager.this.capacityLedger.reserve(executor);
+    }
+
+    /* Gives back the slot reserved for a flow that wasn't dispatched to the executor */
+    private void cancelReservation(final Executor executor) {
+      final ExecutorRanking ranking = ExecutorManager.this.executorRanking;
+      if (ranking != null) {
+        ranking.cancelDispatch(executor);
+      }
+      ExecutorManager.this.capacityLedger.cancelReservation(executor);
+    }
+
+    private void recordQueueWaitTime(final ExecutableFlow exflow) {
+      ExecutorManager.this.commonMetrics
+          .recordQueueWaitTime(System.currentTimeMillis() - exflow.getSubmitTime());
+    }
+
     private void handleDispatchExceptionCase(final ExecutionReference reference,
         final ExecutableFlow exflow, final Executor lastSelectedExecutor,
         final Set<Executor> remainingExecutors) throws ExecutorManagerException {
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round trip statistics of the status update calls made to a single executor. Used to tell which
+ * executor slows down the update loop.
+ */
+public class ExecutorUpdateStats {
+
+  private final AtomicLong numCalls = new AtomicLong();
+  private final AtomicLong numFailures = new AtomicLong();
+  private final AtomicLong numTimeouts = new AtomicLong();
+  private final AtomicLong totalLatencyMs = new AtomicLong();
+  private final AtomicLong maxLatencyMs = new AtomicLong();
+  private volatile long lastLatencyMs = 0;
+
+  /**
+   * Records a completed call, whether it succeeded or not.
+   */
+  public void recordCall(final long latencyMs, final boolean succeeded) {
+    this.numCalls.incrementAndGet();
+    if (!succeeded) {
+      this.numFailures.incrementAndGet();
+    }
+    this.totalLatencyMs.addAndGet(latencyMs);
+    this.maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    this.lastLatencyMs = latencyMs;
+  }
+
+  /**
+   * Records a call that didn't complete before its deadline.
+   */
+  public void recordTimeout() {
+    this.numTimeouts.incrementAndGet();
+  }
+
+  public long getNumCalls() {
+    return this.numCalls.get();
+  }
+
+  public long getNumFailures() {
+    return this.numFailures.get();
+  }
+
+  public long getNumTimeouts() {
+    return this.numTimeouts.get();
+  }
+
+  public long getLastLatencyMs() {
+    return this.lastLatencyMs;
+  }
+
+  public long getMaxLatencyMs() {
+    return this.maxLatencyMs.get();
+  }
+
+  public long getAvgLatencyMs() {
+    final long calls = this.numCalls.get();
+    return calls == 0 ? 0 : this.totalLatencyMs.get() / calls;
+  }
+
+  @Override
+  public String toString() {
+    return "calls=" + getNumCalls() + ", failures=" + getNumFailures() + ", timeouts="
+        + getNumTimeouts() + ", lastLatencyMs=" + getLastLatencyMs() + ", avgLatencyMs="
+        + getAvgLatencyMs() + ", maxLatencyMs=" + getMaxLatencyMs();
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import azkaban.utils.Pair;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * <pre>
+ * Queue policy sharing the dispatching between tenants (projects or submit users).
+ *
+ * Each tenant has its own queue, ordered by the {@link ExecutableFlowPriorityComparator}, and is
+ * served in proportion to its weight: every dispatched flow advances the tenant's pass by
+ * 1 / weight and the tenant with the lowest pass goes next. A tenant whose queue was empty joins
+ * at the pass of the last dispatch, so it can't save up turns while it has nothing queued.
+ *
+ * A tenant can also be limited to a maximum number of running flows. Its queued flows are held
+ * back while it is at the limit, without holding back the other tenants.
+ * </pre>
+ */
+public class FairShareQueuePolicy implements ExecutionQueuePolicy {
+
+  public static final String TENANT_PROJECT = "project";
+  public static final String TENANT_USER = "user";
+
+  private final ExecutableFlowPriorityComparator comparator;
+  private final boolean isTenantUser;
+  private final Map<String, Integer> weights;
+  private final int defaultMaxRunningFlows;
+  private final Map<String, Integer> maxRunningFlows;
+
+  private final Map<String, TenantQueue> tenantQueues = new HashMap<>();
+  // tenants of the flows taken out of the queue, until they are finished
+  private final Map<Integer, String> runningFlowTenants = new HashMap<>();
+  // pass of the last dispatched flow
+  private double currentPass = 0;
+  private int size = 0;
+
+  /**
+   * @param comparator order of the flows of a tenant.
+   * @param tenant either {@link #TENANT_PROJECT} or {@link #TENANT_USER}.
+   * @param weights weights of the tenants, 1 if not specified.
+   * @param defaultMaxRunningFlows maximum number of running flows of a tenant, unlimited if not
+   * positive.
+   * @param maxRunningFlows maximum number of running flows of specific tenants.
+   */
+  public FairShareQueuePolicy(final ExecutableFlowPriorityComparator comparator,
+      final String tenant, final Map<String, Integer> weights, final int defaultMaxRunningFlows,
+      final Map<String, Integer> maxRunningFlows) {
+    if (!TENANT_PROJECT.equals(tenant) && !TENANT_USER.equals(tenant)) {
+      throw new IllegalArgumentException("Unknown tenant type " + tenant);
+    }
+    for (final Map.Entry<String, Integer> weight : weights.entrySet()) {
+      if (weight.getValue() <= 0) {
+        throw new IllegalArgumentException(
+            String.format("Invalid weight %d for tenant %s", weight.getValue(), weight.getKey()));
+      }
+    }
+    this.comparator = comparator;
+    this.isTenantUser = TENANT_USER.equals(tenant);
+    this.weights = weights;
+    this.defaultMaxRunningFlows = defaultMaxRunningFlows;
+    this.maxRunningFlows = maxRunningFlows;
+  }
+
+  public FairShareQueuePolicy(final ExecutableFlowPriorityComparator comparator,
+      final String tenant) {
+    this(comparator, tenant, Collections.emptyMap(), 0, Collections.emptyMap());
+  }
+
+  @Override
+  public String getTenant(final ExecutableFlow flow) {
+    return this.isTenantUser ? flow.getSubmitUser() : flow.getProjectName();
+  }
+
+  @Override
+  public void add(final Pair<ExecutionReference, ExecutableFlow> pair) {
+    final ExecutableFlow flow = pair.getSecond();
+    final TenantQueue tenantQueue = getTenantQueue(getTenant(flow));
+    // a flow that comes back to the queue, e.g. because it failed to be dispatched, isn't running
+    if (this.runningFlowTenants.remove(flow.getExecutionId()) != null) {
+      tenantQueue.runningFlows--;
+    }
+    if (tenantQueue.flows.isEmpty()) {
+      tenantQueue.pass = Math.max(tenantQueue.pass, this.currentPass);
+    }
+    tenantQueue.flows.add(pair);
+    this.size++;
+  }
+
+  @Override
+  public boolean remove(final Pair<ExecutionReference, ExecutableFlow> pair) {
+    final String tenant = getTenant(pair.getSecond());
+    final TenantQueue tenantQueue = this.tenantQueues.get(tenant);
+    if (tenantQueue == null || !tenantQueue.flows.remove(pair)) {
+      return false;
+    }
+    this.size--;
+    removeIfIdle(tenant, tenantQueue);
+    return true;
+  }
+
+  @Override
+  public Pair<ExecutionReference, ExecutableFlow> poll() {
+    TenantQueue next = null;
+    for (final TenantQueue tenantQueue : this.tenantQueues.values()) {
+      if (tenantQueue.flows.isEmpty() || tenantQueue.isAtMaxRunningFlows()) {
+        continue;
+      }
+      if (next == null || tenantQueue.pass < next.pass || (tenantQueue.pass == next.pass
+          && this.comparator.compare(tenantQueue.flows.peek(), next.flows.peek()) < 0)) {
+        next = tenantQueue;
+      }
+    }
+    if (next == null) {
+      return null;
+    }
+
+    final Pair<ExecutionReference, ExecutableFlow> pair = next.flows.poll();
+    this.size--;
+    this.currentPass = next.pass;
+    next.pass += 1.0 / next.weight;
+    next.runningFlows++;
+    this.runningFlowTenants.put(pair.getSecond().getExecutionId(), next.tenant);
+    return pair;
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  @Override
+  public void flowRunning(final ExecutableFlow flow) {
+    final String tenant = getTenant(flow);
+    if (this.runningFlowTenants.put(flow.getExecutionId(), tenant) == null) {
+      getTenantQueue(tenant).runningFlows++;
+    }
+  }
+
+  @Override
+  public void flowFinished(final int executionId) {
+    final String tenant = this.runningFlowTenants.remove(executionId);
+    if (tenant != null) {
+      final TenantQueue tenantQueue = this.tenantQueues.get(tenant);
+      tenantQueue.runningFlows--;
+      removeIfIdle(tenant, tenantQueue);
+    }
+  }
+
+  @Override
+  public Map<String, Integer> getRunningFlowCounts() {
+    final Map<String, Integer> counts = new HashMap<>();
+    for (final TenantQueue tenantQueue : this.tenantQueues.values()) {
+      if (tenantQueue.runningFlows > 0) {
+        counts.put(tenantQueue.tenant, tenantQueue.runningFlows);
+      }
+    }
+    return counts;
+  }
+
+  private TenantQueue getTenantQueue(final String tenant) {
+    return this.tenantQueues.computeIfAbsent(tenant, t -> new TenantQueue(t,
+        this.weights.getOrDefault(t, 1),
+        this.maxRunningFlows.getOrDefault(t, this.defaultMaxRunningFlows)));
+  }
+
+  /* forgets a tenant that has nothing queued nor running and no turns ahead of the others */
+  private void removeIfIdle(final String tenant, final TenantQueue tenantQueue) {
+    if (tenantQueue.flows.isEmpty() && tenantQueue.runningFlows <= 0
+        && tenantQueue.pass <= this.currentPass) {
+      this.tenantQueues.remove(tenant);
+    }
+  }
+
+  private class TenantQueue {
+
+    private final String tenant;
+    private final int weight;
+    private final int maxRunningFlows;
+    private final PriorityQueue<Pair<ExecutionReference, ExecutableFlow>> flows;
+    private double pass = 0;
+    private int runningFlows = 0;
+
+    private TenantQueue(final String tenant, final int weight, final int maxRunningFlows) {
+      this.tenant = tenant;
+      this.weight = weight;
+      this.maxRunningFlows = maxRunningFlows;
+      this.flows = new PriorityQueue<>(10, FairShareQueuePolicy.this.comparator);
+    }
+
+    private boolean isAtMaxRunningFlows() {
+      return this.maxRunningFlows > 0 && this.runningFlows >= this.maxRunningFlows;
+    }
+  }
+}
@@ -20,10 +20,12 @@ import azkaban.db.EncodingType;
 import azkaban.db.DatabaseOperator;
 import azkaban.utils.GZIPUtils;
 import azkaban.utils.Pair;
+import azkaban.utils.Props;
 import java.io.IOException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -38,17 +40,22 @@ public class FetchActiveFlowDao {
 
   private static final Logger logger = Logger.getLogger(FetchActiveFlowDao.class);
   private final DatabaseOperator dbOperator;
+  private final boolean appendedUpdatesEnabled;
 
   @Inject
-  public FetchActiveFlowDao(final DatabaseOperator dbOperator) {
+  public FetchActiveFlowDao(final DatabaseOperator dbOperator, final Props props) {
     this.dbOperator = dbOperator;
+    this.appendedUpdatesEnabled = ExecutionFlowDao.isAppendedUpdatesEnabled(props);
   }
 
   Map<Integer, Pair<ExecutionReference, ExecutableFlow>> fetchActiveFlows()
       throws ExecutorManagerException {
     try {
-      return this.dbOperator.query(FetchActiveExecutableFlows.FETCH_ACTIVE_EXECUTABLE_FLOW,
-          new FetchActiveExecutableFlows());
+      final Map<Integer, Pair<ExecutionReference, ExecutableFlow>> flows = this.dbOperator
+          .query(FetchActiveExecutableFlows.FETCH_ACTIVE_EXECUTABLE_FLOW,
+              new FetchActiveExecutableFlows());
+      applyExecutableFlowUpdates(flows.values());
+      return flows;
     } catch (final SQLException e) {
       throw new ExecutorManagerException("Error fetching active flows", e);
     }
@@ -64,6 +71,7 @@ public class FetchActiveFlowDao {
       if (flows.isEmpty()) {
         return null;
       } else {
+        applyExecutableFlowUpdates(flows);
         return flows.get(0);
       }
     } catch (final SQLException e) {
@@ -71,6 +79,21 @@ public class FetchActiveFlowDao {
     }
   }
 
+  /* Applies the updates appended to the flow data of the active flows since it was written */
+  private void applyExecutableFlowUpdates(
+      final Collection<Pair<ExecutionReference, ExecutableFlow>> flows) throws SQLException {
+    if (!this.appendedUpdatesEnabled) {
+      return;
+    }
+    final List<ExecutableFlow> executableFlows = new ArrayList<>();
+    for (final Pair<ExecutionReference, ExecutableFlow> flow : flows) {
+      if (flow != null) {
+        executableFlows.add(flow.getSecond());
+      }
+    }
+    ExecutionFlowDao.applyExecutableFlowUpdates(this.dbOperator, executableFlows);
+  }
+
   private static class FetchActiveExecutableFlows implements
       ResultSetHandler<Map<Integer, Pair<ExecutionReference, ExecutableFlow>>> {
 
@@ -73,6 +73,22 @@ public class JdbcExecutorLoader implements ExecutorLoader {
     this.executionFlowDao.updateExecutableFlow(flow);
   }
 
+  @Override
+  public void appendExecutableFlowUpdate(final ExecutableFlow flow, final long sinceUpdateTime)
+      throws ExecutorManagerException {
+    this.executionFlowDao.appendExecutableFlowUpdate(flow, sinceUpdateTime);
+  }
+
+  @Override
+  public void compactExecutableFlowUpdates(final int execId) throws ExecutorManagerException {
+    this.executionFlowDao.compactExecutableFlowUpdates(execId);
+  }
+
+  @Override
+  public int compactFinishedExecutableFlowUpdates() throws ExecutorManagerException {
+    return this.executionFlowDao.compactFinishedExecutableFlowUpdates();
+  }
+
   @Override
   public ExecutableFlow fetchExecutableFlow(final int id)
       throws ExecutorManagerException {
@@ -251,6 +267,13 @@ public class JdbcExecutorLoader implements ExecutorLoader {
     this.executionLogsDao.uploadLogFile(execId, name, attempt, files);
   }
 
+  @Override
+  public void uploadLogChunk(final int execId, final String name, final int attempt,
+      final int startByte, final byte[] buffer, final int length)
+      throws ExecutorManagerException {
+    this.executionLogsDao.uploadLogChunk(execId, name, attempt, startByte, buffer, length);
+  }
+
   @Override
   public void uploadAttachmentFile(final ExecutableNode node, final File file)
       throws ExecutorManagerException {
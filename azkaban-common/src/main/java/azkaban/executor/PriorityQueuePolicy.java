@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import azkaban.utils.Pair;
+import java.util.PriorityQueue;
+
+/**
+ * Queue policy dispatching all the queued flows in the order of the
+ * {@link ExecutableFlowPriorityComparator}.
+ */
+public class PriorityQueuePolicy implements ExecutionQueuePolicy {
+
+  private final PriorityQueue<Pair<ExecutionReference, ExecutableFlow>> queue;
+
+  public PriorityQueuePolicy(final ExecutableFlowPriorityComparator comparator) {
+    this.queue = new PriorityQueue<>(10, comparator);
+  }
+
+  @Override
+  public void add(final Pair<ExecutionReference, ExecutableFlow> pair) {
+    this.queue.add(pair);
+  }
+
+  @Override
+  public boolean remove(final Pair<ExecutionReference, ExecutableFlow> pair) {
+    return this.queue.remove(pair);
+  }
+
+  @Override
+  public Pair<ExecutionReference, ExecutableFlow> poll() {
+    return this.queue.poll();
+  }
+
+  @Override
+  public int size() {
+    return this.queue.size();
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+/**
+ * Snapshot of the queued flows of one tenant (project or submit user) of the execution queue.
+ */
+public class QueueTenantStats {
+
+  private final int queuedFlows;
+  private final int runningFlows;
+  private final long avgWaitMs;
+  private final long maxWaitMs;
+
+  public QueueTenantStats(final int queuedFlows, final int runningFlows, final long avgWaitMs,
+      final long maxWaitMs) {
+    this.queuedFlows = queuedFlows;
+    this.runningFlows = runningFlows;
+    this.avgWaitMs = avgWaitMs;
+    this.maxWaitMs = maxWaitMs;
+  }
+
+  public int getQueuedFlows() {
+    return this.queuedFlows;
+  }
+
+  /**
+   * @return number of running flows, only known with queue policies that limit them.
+   */
+  public int getRunningFlows() {
+    return this.runningFlows;
+  }
+
+  /**
+   * @return average time the queued flows have waited since they were submitted.
+   */
+  public long getAvgWaitMs() {
+    return this.avgWaitMs;
+  }
+
+  /**
+   * @return time the longest waiting queued flow has waited since it was submitted.
+   */
+  public long getMaxWaitMs() {
+    return this.maxWaitMs;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("queued: %d, running: %d, avgWaitMs: %d, maxWaitMs: %d",
+        this.queuedFlows, this.runningFlows, this.avgWaitMs, this.maxWaitMs);
+  }
+}
@@ -3,15 +3,17 @@ package azkaban.executor;
 import azkaban.utils.Pair;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.concurrent.BlockingQueue;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
 import org.apache.log4j.Logger;
 
 /**
  * <pre>
  * Composite data structure to represent non-dispatched flows in webserver.
- * This data structure wraps a blocking queue and a concurrent hashmap.
+ * This data structure wraps a queue policy, which decides the dispatching order, and a
+ * concurrent hashmap.
  * </pre>
  */
 public class QueuedExecutions {
@@ -21,24 +23,39 @@ public class QueuedExecutions {
 
   /* map to easily access queued flows */
   final private ConcurrentHashMap<Integer, Pair<ExecutionReference, ExecutableFlow>> queuedFlowMap;
-  /* actual queue */
-  final private BlockingQueue<Pair<ExecutionReference, ExecutableFlow>> queuedFlowList;
+  /* actual queue, guarded by this */
+  final private ExecutionQueuePolicy queuePolicy;
 
   public QueuedExecutions(final long capacity) {
+    this(capacity, new PriorityQueuePolicy(new ExecutableFlowPriorityComparator()));
+  }
+
+  public QueuedExecutions(final long capacity, final ExecutionQueuePolicy queuePolicy) {
     this.capacity = capacity;
     this.queuedFlowMap =
         new ConcurrentHashMap<>();
-    this.queuedFlowList =
-        new PriorityBlockingQueue<>(10,
-            new ExecutableFlowPriorityComparator());
+    this.queuePolicy = queuePolicy;
   }
 
   /**
-   * Wraps BoundedQueue Take method to have a corresponding update in queuedFlowMap lookup table
+   * Takes the next flow to dispatch, waiting until there is one. Has a corresponding update in
+   * queuedFlowMap lookup table
    */
-  public Pair<ExecutionReference, ExecutableFlow> fetchHead()
+  public synchronized Pair<ExecutionReference, ExecutableFlow> fetchHead()
       throws InterruptedException {
-    final Pair<ExecutionReference, ExecutableFlow> pair = this.queuedFlowList.take();
+    Pair<ExecutionReference, ExecutableFlow> pair;
+    while ((pair = pollHead()) == null) {
+      wait();
+    }
+    return pair;
+  }
+
+  /**
+   * Same as {@link #fetchHead()}, but returns null instead of waiting if there is no flow to
+   * dispatch
+   */
+  public synchronized Pair<ExecutionReference, ExecutableFlow> pollHead() {
+    final Pair<ExecutionReference, ExecutableFlow> pair = this.queuePolicy.poll();
     if (pair != null && pair.getFirst() != null) {
       this.queuedFlowMap.remove(pair.getFirst().getExecId());
     }
@@ -48,10 +65,10 @@ public class QueuedExecutions {
   /**
    * Helper method to have a single point of deletion in the queued flows
    */
-  public void dequeue(final int executionId) {
-    if (this.queuedFlowMap.containsKey(executionId)) {
-      this.queuedFlowList.remove(this.queuedFlowMap.get(executionId));
-      this.queuedFlowMap.remove(executionId);
+  public synchronized void dequeue(final int executionId) {
+    final Pair<ExecutionReference, ExecutableFlow> pair = this.queuedFlowMap.remove(executionId);
+    if (pair != null) {
+      this.queuePolicy.remove(pair);
     }
   }
 
@@ -70,7 +87,7 @@ public class QueuedExecutions {
    *           same execution Id
    * </pre>
    */
-  public void enqueue(final ExecutableFlow exflow, final ExecutionReference ref)
+  public synchronized void enqueue(final ExecutableFlow exflow, final ExecutionReference ref)
       throws ExecutorManagerException {
     if (hasExecution(exflow.getExecutionId())) {
       final String errMsg = "Flow already in queue " + exflow.getExecutionId();
@@ -79,14 +96,56 @@ public class QueuedExecutions {
 
     final Pair<ExecutionReference, ExecutableFlow> pair =
         new Pair<>(ref, exflow);
-    try {
-      this.queuedFlowMap.put(exflow.getExecutionId(), pair);
-      this.queuedFlowList.put(pair);
-    } catch (final InterruptedException e) {
-      final String errMsg = "Failed to insert flow " + exflow.getExecutionId();
-      logger.error(errMsg, e);
-      throw new ExecutorManagerException(errMsg);
+    this.queuedFlowMap.put(exflow.getExecutionId(), pair);
+    this.queuePolicy.add(pair);
+    notifyAll();
+  }
+
+  /**
+   * Tells the queue policy about a flow that was running before the queue was created
+   */
+  public synchronized void flowRunning(final ExecutableFlow exflow) {
+    this.queuePolicy.flowRunning(exflow);
+  }
+
+  /**
+   * Tells the queue policy that a flow taken from the queue is finalized, which may let the
+   * flows of the same tenant be dispatched
+   */
+  public synchronized void flowFinished(final int executionId) {
+    this.queuePolicy.flowFinished(executionId);
+    notifyAll();
+  }
+
+  /**
+   * Returns the queue statistics of each tenant of the queue policy, sorted by tenant
+   */
+  public synchronized Map<String, QueueTenantStats> getTenantStats() {
+    final long now = System.currentTimeMillis();
+    final Map<String, Integer> queuedCounts = new HashMap<>();
+    final Map<String, Long> totalWaitTimes = new HashMap<>();
+    final Map<String, Long> maxWaitTimes = new HashMap<>();
+    for (final Pair<ExecutionReference, ExecutableFlow> pair : this.queuedFlowMap.values()) {
+      final String tenant = String.valueOf(this.queuePolicy.getTenant(pair.getSecond()));
+      final long waitTime = Math.max(0, now - pair.getSecond().getSubmitTime());
+      queuedCounts.merge(tenant, 1, Integer::sum);
+      totalWaitTimes.merge(tenant, waitTime, Long::sum);
+      maxWaitTimes.merge(tenant, waitTime, Math::max);
+    }
+
+    final Map<String, Integer> runningCounts = this.queuePolicy.getRunningFlowCounts();
+    final Map<String, QueueTenantStats> stats = new TreeMap<>();
+    for (final Map.Entry<String, Integer> entry : queuedCounts.entrySet()) {
+      final String tenant = entry.getKey();
+      stats.put(tenant, new QueueTenantStats(entry.getValue(),
+          runningCounts.getOrDefault(tenant, 0),
+          totalWaitTimes.get(tenant) / entry.getValue(), maxWaitTimes.get(tenant)));
+    }
+    for (final Map.Entry<String, Integer> entry : runningCounts.entrySet()) {
+      stats.putIfAbsent(String.valueOf(entry.getKey()),
+          new QueueTenantStats(0, entry.getValue(), 0, 0));
     }
+    return stats;
   }
 
   /**
@@ -147,8 +206,8 @@ public class QueuedExecutions {
   /**
    * Size of the queue
    */
-  public long size() {
-    return this.queuedFlowList.size();
+  public synchronized long size() {
+    return this.queuePolicy.size();
   }
 
   /**
@@ -161,14 +220,14 @@ public class QueuedExecutions {
   /**
    * Verify, if queue is empty or not
    */
-  public boolean isEmpty() {
-    return this.queuedFlowList.isEmpty() && this.queuedFlowMap.isEmpty();
+  public synchronized boolean isEmpty() {
+    return this.queuePolicy.size() == 0 && this.queuedFlowMap.isEmpty();
   }
 
   /**
    * Empties queue by dequeuing all the elements
    */
-  public void clear() {
+  public synchronized void clear() {
     for (final Pair<ExecutionReference, ExecutableFlow> pair : this.queuedFlowMap.values()) {
       dequeue(pair.getFirst().getExecId());
     }
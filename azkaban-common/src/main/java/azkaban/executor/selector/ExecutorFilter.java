@@ -20,6 +20,7 @@ import azkaban.executor.ExecutableFlow;
 import azkaban.executor.Executor;
 import azkaban.executor.ExecutorInfo;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -34,6 +35,9 @@ public final class ExecutorFilter extends CandidateFilter<Executor, ExecutableFl
   private static final String STATICREMAININGFLOWSIZE_FILTER_NAME = "StaticRemainingFlowSize";
   private static final String MINIMUMFREEMEMORY_FILTER_NAME = "MinimumFreeMemory";
   private static final String CPUSTATUS_FILTER_NAME = "CpuStatus";
+  private static final String STATSFRESHNESS_FILTER_NAME = "StatsFreshness";
+  // age of the executor stats after which the StatsFreshness filter drops the executor
+  public static final long DEFAULT_MAX_STATS_AGE_MS = 2 * 60 * 1000L;
   private static Map<String, FactorFilter<Executor, ExecutableFlow>> filterRepository = null;
 
   /**<pre>
@@ -47,6 +51,8 @@ public final class ExecutorFilter extends CandidateFilter<Executor, ExecutableFl
     filterRepository.put(STATICREMAININGFLOWSIZE_FILTER_NAME, getStaticRemainingFlowSizeFilter());
     filterRepository.put(MINIMUMFREEMEMORY_FILTER_NAME, getMinimumReservedMemoryFilter());
     filterRepository.put(CPUSTATUS_FILTER_NAME, getCpuStatusFilter());
+    filterRepository
+        .put(STATSFRESHNESS_FILTER_NAME, getStatsFreshnessFilter(DEFAULT_MAX_STATS_AGE_MS));
   }
 
   /**
@@ -56,6 +62,18 @@ public final class ExecutorFilter extends CandidateFilter<Executor, ExecutableFl
    * valid list object.
    */
   public ExecutorFilter(final Collection<String> filterList) {
+    this(filterList, DEFAULT_MAX_STATS_AGE_MS);
+  }
+
+  /**
+   * constructor of the ExecutorFilter.
+   *
+   * @param filterList the list of filter to be registered, the parameter must be a not-empty and
+   * valid list object.
+   * @param maxStatsAgeMs age of the executor stats after which the StatsFreshness filter filters
+   * out the executor.
+   */
+  public ExecutorFilter(final Collection<String> filterList, final long maxStatsAgeMs) {
     // shortcut if the filter list is invalid. A little bit ugly to have to throw in constructor.
     if (null == filterList || filterList.size() == 0) {
       logger.error(
@@ -65,7 +83,9 @@ public final class ExecutorFilter extends CandidateFilter<Executor, ExecutableFl
 
     // register the filters according to the list.
     for (final String filterName : filterList) {
-      if (filterRepository.containsKey(filterName)) {
+      if (STATSFRESHNESS_FILTER_NAME.equals(filterName)) {
+        this.registerFactorFilter(getStatsFreshnessFilter(maxStatsAgeMs));
+      } else if (filterRepository.containsKey(filterName)) {
         this.registerFactorFilter(filterRepository.get(filterName));
       } else {
         logger.error(String.format("failed to initialize executor filter " +
@@ -186,6 +206,42 @@ public final class ExecutorFilter extends CandidateFilter<Executor, ExecutableFl
         });
   }
 
+  /**
+   * <pre>
+   * function to register the static stats freshness filter.
+   * NOTE :  this is a static filter which means the filter will be filtering based on the system
+   * standard which
+   *        is not Coming for the passed flow.
+   *        This filter will filter out any executors whose stats haven't been refreshed for
+   *        the last maxStatsAgeMs, e.g. because the executor stopped answering the heartbeats.
+   * </pre>
+   */
+  private static FactorFilter<Executor, ExecutableFlow> getStatsFreshnessFilter(
+      final long maxStatsAgeMs) {
+    return FactorFilter
+        .create(STATSFRESHNESS_FILTER_NAME, new FactorFilter.Filter<Executor, ExecutableFlow>() {
+          @Override
+          public boolean filterTarget(final Executor filteringTarget,
+              final ExecutableFlow referencingObject) {
+            if (null == filteringTarget) {
+              logger.debug(String
+                  .format("%s : filtering out the target as it is null.",
+                      STATSFRESHNESS_FILTER_NAME));
+              return false;
+            }
+
+            final Date lastStatsUpdatedTime = filteringTarget.getLastStatsUpdatedTime();
+            if (null == filteringTarget.getExecutorInfo() || null == lastStatsUpdatedTime) {
+              logger.debug(String.format("%s : filtering out %s as it's stats is unavailable.",
+                  STATSFRESHNESS_FILTER_NAME,
+                  filteringTarget.toString()));
+              return false;
+            }
+            return System.currentTimeMillis() - lastStatsUpdatedTime.getTime() <= maxStatsAgeMs;
+          }
+        });
+  }
+
   @Override
   public String getName() {
     return "ExecutorFilter";
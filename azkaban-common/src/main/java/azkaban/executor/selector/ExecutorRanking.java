@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor.selector;
+
+import azkaban.executor.Executor;
+import azkaban.executor.ExecutorInfo;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import org.apache.log4j.Logger;
+
+/**
+ * <pre>
+ * Ranking of the executors, built once and kept up to date with the executor heartbeats.
+ * NOTE: Unlike the ExecutorSelector, which filters and sorts all the executors for every flow,
+ *       the ranking applies the filters and the comparators once and then keeps the executors
+ *       sorted. All the executor filters are static (they don't look at the flow), so the
+ *       result of the filtering is the same for every flow until the next refresh.
+ *       After every dispatch, the ranking updates the stats of the chosen executor the way the
+ *       executor itself would, so that successive picks spread the load without having to
+ *       refresh the executors over the network. Only the executors with a free flow slot are
+ *       kept sorted, so the best executor is the first one of the ranking that the flow may go
+ *       to: picking it costs O(log n) instead of going through all the executors.
+ *       The ranking works on snapshots of the executor stats, so that the stats refreshed in the
+ *       background don't change the order of the ranked executors under its feet, and the local
+ *       updates don't leak into the refreshed stats. A refreshed executor is re-ranked with
+ *       {@link #refresh(Executor)}. All the methods are thread safe.
+ * </pre>
+ */
+public class ExecutorRanking {
+
+  private static final Logger logger = Logger.getLogger(ExecutorRanking.class);
+
+  private final ExecutorFilter filter;
+  private final TreeSet<Executor> rankedExecutors;
+  // the executors passed in, keyed by id, and the snapshots of the ones that passed the filters
+  private final Map<Integer, Executor> executorsById = new HashMap<>();
+  private final Map<Integer, Executor> snapshotsById = new HashMap<>();
+
+  /**
+   * Constructor of the class.
+   *
+   * @param filterList name list of the filters to be applied, filter feature will be disabled if
+   * a null or empty value is passed.
+   * @param comparatorList name/weight pair list of the comparators to rank the executors with, the
+   * natural order of the executors is used if a null or empty value is passed.
+   * @param executors the executors to be ranked.
+   */
+  public ExecutorRanking(final Collection<String> filterList,
+      final Map<String, Integer> comparatorList, final Collection<Executor> executors) {
+    this(filterList, comparatorList, executors, ExecutorFilter.DEFAULT_MAX_STATS_AGE_MS);
+  }
+
+  /**
+   * Constructor of the class.
+   *
+   * @param filterList name list of the filters to be applied, filter feature will be disabled if
+   * a null or empty value is passed.
+   * @param comparatorList name/weight pair list of the comparators to rank the executors with, the
+   * natural order of the executors is used if a null or empty value is passed.
+   * @param executors the executors to be ranked.
+   * @param maxStatsAgeMs age of the executor stats after which the StatsFreshness filter filters
+   * out the executor.
+   */
+  public ExecutorRanking(final Collection<String> filterList,
+      final Map<String, Integer> comparatorList, final Collection<Executor> executors,
+      final long maxStatsAgeMs) {
+    this.filter = null == filterList || filterList.isEmpty() ? null
+        : new ExecutorFilter(filterList, maxStatsAgeMs);
+    final Comparator<Executor> comparator =
+        null == comparatorList || comparatorList.isEmpty() ? Comparator.naturalOrder()
+            : new ExecutorComparator(comparatorList);
+    this.rankedExecutors = new TreeSet<>((executor1, executor2) -> {
+      // the candidate comparator never considers two executors equal, not even an executor and
+      // itself, which a sorted set relies on.
+      if (executor1 == executor2) {
+        return 0;
+      }
+      final int result = comparator.compare(executor1, executor2);
+      return result != 0 ? result : Integer.compare(executor1.getId(), executor2.getId());
+    });
+    for (final Executor executor : executors) {
+      rank(executor);
+    }
+    logger.debug(String.format("ranked %d out of %d executors", this.rankedExecutors.size(),
+        executors.size()));
+  }
+
+  /**
+   * Gets the best ranked executor among the given candidates. The ranking is walked from the best
+   * executor down to the first candidate, so the candidates should be a set.
+   *
+   * @param candidates executors which can be chosen.
+   * @return the best executor, null if none of the candidates passed the filters or has a free
+   * flow slot.
+   */
+  public synchronized Executor getBest(final Collection<Executor> candidates) {
+    if (null == candidates || candidates.isEmpty()) {
+      logger.error("failed to get the best executor as the passed candidates are null or empty.");
+      return null;
+    }
+    final Iterator<Executor> iterator = this.rankedExecutors.descendingIterator();
+    while (iterator.hasNext()) {
+      final Executor snapshot = iterator.next();
+      final Executor executor = this.executorsById.get(snapshot.getId());
+      if (candidates.contains(executor)) {
+        if (isEligible(snapshot)) {
+          return executor;
+        }
+        // the stats of the executor got too old since it was ranked
+        iterator.remove();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Records a flow dispatched to the given executor: the executor gets one more assigned flow and
+   * one less remaining flow slot, and is moved to its new position in the ranking (or out of it if
+   * it doesn't pass the filters anymore). Called when the executor is picked for the flow, so the
+   * next picks see it before the flow reaches the executor.
+   */
+  public synchronized void markDispatched(final Executor executor) {
+    updateAssignedFlows(executor, 1);
+    final Executor snapshot = this.snapshotsById.get(executor.getId());
+    if (null != snapshot && null != snapshot.getExecutorInfo()) {
+      snapshot.getExecutorInfo().setLastDispatchedTime(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * Takes back a {@link #markDispatched(Executor)} of a flow that the executor didn't take.
+   */
+  public synchronized void cancelDispatch(final Executor executor) {
+    updateAssignedFlows(executor, -1);
+  }
+
+  /**
+   * Re-ranks the executor with its current stats, e.g. after a heartbeat. The flows the ranking
+   * dispatched to the executor since are expected to be part of the new stats.
+   */
+  public synchronized void refresh(final Executor executor) {
+    final Executor snapshot = this.snapshotsById.remove(executor.getId());
+    if (null != snapshot) {
+      removeRanked(snapshot);
+    }
+    this.executorsById.remove(executor.getId());
+    rank(executor);
+  }
+
+  /**
+   * @return the stats of the executor as accounted by the ranking, null if the executor didn't
+   * pass the filters when it was last ranked. The executor may be full.
+   */
+  public synchronized ExecutorInfo getRankedExecutorInfo(final Executor executor) {
+    final Executor snapshot = this.snapshotsById.get(executor.getId());
+    return null == snapshot ? null : snapshot.getExecutorInfo();
+  }
+
+  public synchronized int size() {
+    return this.rankedExecutors.size();
+  }
+
+  private void updateAssignedFlows(final Executor executor, final int delta) {
+    final Executor snapshot = this.snapshotsById.get(executor.getId());
+    if (null == snapshot) {
+      return;
+    }
+    // the executor may be out of the ranking, e.g. when the flows dispatched to it filled it up
+    removeRanked(snapshot);
+    final ExecutorInfo info = snapshot.getExecutorInfo();
+    if (null != info) {
+      info.setRemainingFlowCapacity(info.getRemainingFlowCapacity() - delta);
+      info.setNumberOfAssignedFlows(info.getNumberOfAssignedFlows() + delta);
+    }
+    if (isEligible(snapshot) && hasFreeSlot(snapshot)) {
+      this.rankedExecutors.add(snapshot);
+    }
+  }
+
+  private boolean removeRanked(final Executor executor) {
+    if (this.rankedExecutors.remove(executor)) {
+      return true;
+    }
+    // weighted votes of the factor comparators aren't guaranteed to be transitive, so the lookup
+    // may miss an executor that is in the ranking.
+    return this.rankedExecutors.removeIf(ranked -> ranked == executor);
+  }
+
+  private void rank(final Executor executor) {
+    final Executor snapshot = snapshot(executor);
+    if (isEligible(snapshot)) {
+      this.executorsById.put(executor.getId(), executor);
+      this.snapshotsById.put(executor.getId(), snapshot);
+      if (hasFreeSlot(snapshot)) {
+        this.rankedExecutors.add(snapshot);
+      }
+    }
+  }
+
+  private static Executor snapshot(final Executor executor) {
+    final Executor snapshot = new Executor(executor.getId(), executor.getHost(),
+        executor.getPort(), executor.isActive());
+    final ExecutorInfo info = executor.getExecutorInfo();
+    snapshot.setExecutorInfo(null == info ? null
+        : new ExecutorInfo(info.getRemainingMemoryPercent(), info.getRemainingMemoryInMB(),
+            info.getRemainingFlowCapacity(), info.getLastDispatchedTime(), info.getCpuUsage(),
+            info.getNumberOfAssignedFlows()), executor.getLastStatsUpdatedTime());
+    return snapshot;
+  }
+
+  /* Executors which didn't report their capacity, e.g. because they are down, have no free slot */
+  private static boolean hasFreeSlot(final Executor executor) {
+    final ExecutorInfo info = executor.getExecutorInfo();
+    return null != info && info.getRemainingFlowCapacity() > 0;
+  }
+
+  private boolean isEligible(final Executor executor) {
+    return null == this.filter || this.filter.filterTarget(executor, null);
+  }
+}
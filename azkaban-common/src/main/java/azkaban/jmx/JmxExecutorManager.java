@@ -17,8 +17,11 @@
 package azkaban.jmx;
 
 import azkaban.executor.ExecutorManager;
+import azkaban.executor.ExecutorUpdateStats;
+import azkaban.executor.QueueTenantStats;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class JmxExecutorManager implements JmxExecutorManagerMBean {
 
@@ -93,4 +96,24 @@ public class JmxExecutorManager implements JmxExecutorManagerMBean {
     return this.manager.getLastSuccessfulExecutorInfoRefresh();
   }
 
+  @Override
+  public List<String> getExecutorUpdateStats() {
+    final List<String> stats = new ArrayList<>();
+    for (final Map.Entry<String, ExecutorUpdateStats> entry : this.manager
+        .getExecutorUpdateStats().entrySet()) {
+      stats.add(entry.getKey() + ": " + entry.getValue());
+    }
+    return stats;
+  }
+
+  @Override
+  public List<String> getQueueTenantStats() {
+    final List<String> stats = new ArrayList<>();
+    for (final Map.Entry<String, QueueTenantStats> entry : this.manager
+        .getQueueTenantStats().entrySet()) {
+      stats.add(entry.getKey() + ": " + entry.getValue());
+    }
+    return stats;
+  }
+
 }
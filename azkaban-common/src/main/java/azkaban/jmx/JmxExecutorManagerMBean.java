@@ -59,4 +59,10 @@ public interface JmxExecutorManagerMBean {
   @DisplayName("OPERATION: getLastSuccessfulExecutorInfoRefresh")
   long getLastSuccessfulExecutorInfoRefresh();
 
+  @DisplayName("OPERATION: getExecutorUpdateStats")
+  List<String> getExecutorUpdateStats();
+
+  @DisplayName("OPERATION: getQueueTenantStats")
+  List<String> getQueueTenantStats();
+
 }
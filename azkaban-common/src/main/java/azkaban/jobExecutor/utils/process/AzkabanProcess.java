@@ -16,13 +16,12 @@
 
 package azkaban.jobExecutor.utils.process;
 
-import azkaban.utils.LogGobbler;
+import azkaban.utils.LogLineSink;
+import azkaban.utils.OutputPump;
 import com.google.common.base.Joiner;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.Field;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -34,7 +33,8 @@ import org.apache.log4j.Logger;
 /**
  * An improved version of java.lang.Process.
  *
- * Output is read by separate threads to avoid deadlock and logged to log4j loggers.
+ * Output is read by the threads of the shared {@link OutputPump} to avoid deadlock and logged to
+ * log4j loggers.
  */
 public class AzkabanProcess {
 
@@ -46,6 +46,7 @@ public class AzkabanProcess {
   private final Logger logger;
   private final CountDownLatch startupLatch;
   private final CountDownLatch completeLatch;
+  private final OutputPump outputPump = OutputPump.getInstance();
 
   private volatile int processId;
   private volatile Process process;
@@ -97,17 +98,12 @@ public class AzkabanProcess {
 
       this.startupLatch.countDown();
 
-      final LogGobbler outputGobbler =
-          new LogGobbler(
-              new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8),
-              this.logger, Level.INFO, 30);
-      final LogGobbler errorGobbler =
-          new LogGobbler(
-              new InputStreamReader(this.process.getErrorStream(), StandardCharsets.UTF_8),
-              this.logger, Level.ERROR, 30);
-
-      outputGobbler.start();
-      errorGobbler.start();
+      final LogLineSink outputSink = new LogLineSink(this.logger, Level.INFO, 30);
+      final LogLineSink errorSink = new LogLineSink(this.logger, Level.ERROR, 30);
+      final OutputPump.Source output =
+          this.outputPump.register(this.process.getInputStream(), this.process, outputSink);
+      final OutputPump.Source error =
+          this.outputPump.register(this.process.getErrorStream(), this.process, errorSink);
       int exitCode = -1;
       try {
         exitCode = this.process.waitFor();
@@ -118,15 +114,13 @@ public class AzkabanProcess {
       this.completeLatch.countDown();
 
       // try to wait for everything to get logged out before exiting
-      outputGobbler.awaitCompletion(5000);
-      errorGobbler.awaitCompletion(5000);
+      output.awaitCompletion(5000);
+      error.awaitCompletion(5000);
 
       if (exitCode != 0) {
-        final String output =
-            new StringBuilder().append("Stdout:\n")
-                .append(outputGobbler.getRecentLog()).append("\n\n")
-                .append("Stderr:\n").append(errorGobbler.getRecentLog())
-                .append("\n").toString();
+        final StringBuilder builder = new StringBuilder("Stdout:\n");
+        outputSink.appendRecentLog(builder).append("\n\n").append("Stderr:\n");
+        final String output = errorSink.appendRecentLog(builder).append("\n").toString();
         throw new ProcessFailureException(exitCode, output);
       }
 
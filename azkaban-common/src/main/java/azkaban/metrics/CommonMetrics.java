@@ -16,6 +16,7 @@
 
 package azkaban.metrics;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
@@ -36,6 +37,8 @@ public class CommonMetrics {
   private Meter dispatchSuccessMeter;
   private Meter sendEmailFailMeter;
   private Meter sendEmailSuccessMeter;
+  private Meter executorUpdateTimeoutMeter;
+  private Histogram queueWaitTimeHistogram;
 
   @Inject
   public CommonMetrics(final MetricsManager metricsManager) {
@@ -49,6 +52,8 @@ public class CommonMetrics {
     this.dispatchSuccessMeter = this.metricsManager.addMeter("dispatch-success-meter");
     this.sendEmailFailMeter = this.metricsManager.addMeter("send-email-fail-meter");
     this.sendEmailSuccessMeter = this.metricsManager.addMeter("send-email-success-meter");
+    this.executorUpdateTimeoutMeter = this.metricsManager.addMeter("executor-update-timeout-meter");
+    this.queueWaitTimeHistogram = this.metricsManager.addHistogram("queue-wait-time-ms");
     this.metricsManager.addGauge("OOM-waiting-job-count", this.OOMWaitingJobCount::get);
   }
 
@@ -89,6 +94,21 @@ public class CommonMetrics {
     this.sendEmailSuccessMeter.mark();
   }
 
+  /**
+   * Mark executorUpdateTimeoutMeter when web server gives up waiting for the flow updates of an
+   * executor.
+   */
+  public void markExecutorUpdateTimeout() {
+    this.executorUpdateTimeoutMeter.mark();
+  }
+
+  /**
+   * Record the time a flow waited in the web server's queue before it was dispatched.
+   */
+  public void recordQueueWaitTime(final long waitTimeMs) {
+    this.queueWaitTimeHistogram.update(waitTimeMs);
+  }
+
   /**
    * Mark the occurrence of an job waiting event due to OOM
    */
@@ -196,10 +196,10 @@ class AzkabanProjectLoader {
   }
 
   private File unzipFile(final File archiveFile) throws IOException {
-    final ZipFile zipfile = new ZipFile(archiveFile);
     final File unzipped = Utils.createTempDir(this.tempDir);
-    Utils.unzip(zipfile, unzipped);
-    zipfile.close();
+    try (ZipFile zipfile = new ZipFile(archiveFile)) {
+      Utils.unzip(zipfile, unzipped);
+    }
 
     return unzipped;
   }
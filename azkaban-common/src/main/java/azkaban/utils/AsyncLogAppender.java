@@ -0,0 +1,214 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * <pre>
+ * Writes the events of a log file appender on a small pool of shared writer threads, so the
+ * threads logging (e.g. the ones draining the output of a job) don't wait for the disk.
+ * NOTE: The events are queued in a bounded buffer per appender, the writer threads write them
+ *       in batches and flush the file once per batch. When the buffer is full, the logging
+ *       thread either waits for room (BLOCK) or the event is dropped and counted (DROP), the
+ *       number of dropped events is written to the file with the next batch.
+ *       The {@link OutputPump} threads drain the output of many jobs each, so they don't log
+ *       into a full BLOCK buffer: they check {@link #wouldBlock()} and hold the output of the
+ *       job back until there is room, without losing any of it.
+ *       Closing the appender writes out all the queued events before closing the file, the
+ *       file is complete once close() returns.
+ * </pre>
+ */
+public class AsyncLogAppender extends AppenderSkeleton {
+
+  private static final int MAX_BATCH_SIZE = 1024;
+  private static final Logger logger = Logger.getLogger(AsyncLogAppender.class);
+  private static final int NUM_WRITER_THREADS = 2;
+  private static final ExecutorService writers = createWriters();
+
+  private final FileAppender appender;
+  private final BlockingQueue<LoggingEvent> buffer;
+  private final OverflowPolicy overflowPolicy;
+  // Set while a batch of this appender is queued or being written
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+  private final AtomicLong droppedCount = new AtomicLong(0);
+  // Guards the writes to the file appender
+  private final Object writeLock = new Object();
+  private final List<LoggingEvent> batch = new ArrayList<>();
+  private long reportedDroppedCount = 0;
+  private boolean fileClosed = false;
+  private volatile boolean closing = false;
+
+  public AsyncLogAppender(final FileAppender appender, final int bufferSize,
+      final OverflowPolicy overflowPolicy) {
+    this.appender = appender;
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    this.overflowPolicy = overflowPolicy;
+    setName(appender.getFile());
+  }
+
+  private static ExecutorService createWriters() {
+    final AtomicInteger threadCount = new AtomicInteger();
+    return Executors.newFixedThreadPool(NUM_WRITER_THREADS, runnable -> {
+      final Thread thread = new Thread(runnable,
+          "azk-log-writer-" + threadCount.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  @Override
+  protected void append(final LoggingEvent event) {
+    if (this.closing) {
+      return;
+    }
+    // Capture what depends on the logging thread before the event changes threads
+    event.getNDC();
+    event.getThreadName();
+    event.getMDCCopy();
+    event.getRenderedMessage();
+    event.getThrowableStrRep();
+
+    if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+      try {
+        this.buffer.put(event);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        this.droppedCount.incrementAndGet();
+        return;
+      }
+    } else if (!this.buffer.offer(event)) {
+      this.droppedCount.incrementAndGet();
+      return;
+    }
+    schedule();
+  }
+
+  private void schedule() {
+    if (!this.closing && this.scheduled.compareAndSet(false, true)) {
+      writers.execute(this::writeScheduledBatch);
+    }
+  }
+
+  private void writeScheduledBatch() {
+    try {
+      writeBatch();
+    } catch (final RuntimeException e) {
+      logger.error("Error writing to log file " + getName(), e);
+    } finally {
+      this.scheduled.set(false);
+      // Events queued while the batch was written
+      if (!this.buffer.isEmpty()) {
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * Writes up to MAX_BATCH_SIZE queued events, then flushes the file.
+   *
+   * @return true if anything was written.
+   */
+  private boolean writeBatch() {
+    synchronized (this.writeLock) {
+      if (this.fileClosed) {
+        this.buffer.clear();
+        return false;
+      }
+      final long dropped = this.droppedCount.get();
+      if (dropped > this.reportedDroppedCount) {
+        this.batch.add(new LoggingEvent(AsyncLogAppender.class.getName(), logger, Level.WARN,
+            (dropped - this.reportedDroppedCount) + " log events dropped, the log buffer was full",
+            null));
+        this.reportedDroppedCount = dropped;
+      }
+      this.buffer.drainTo(this.batch, MAX_BATCH_SIZE);
+      try {
+        for (int i = 0; i < this.batch.size(); i++) {
+          // Only the last event of the batch flushes the file
+          this.appender.setImmediateFlush(i == this.batch.size() - 1);
+          this.appender.doAppend(this.batch.get(i));
+        }
+        return !this.batch.isEmpty();
+      } finally {
+        this.batch.clear();
+      }
+    }
+  }
+
+  /**
+   * @return true if an event appended now would wait for room in the buffer.
+   */
+  public boolean wouldBlock() {
+    return this.overflowPolicy == OverflowPolicy.BLOCK && this.buffer.remainingCapacity() == 0;
+  }
+
+  /**
+   * @return the number of events dropped because the buffer was full.
+   */
+  public long getDroppedCount() {
+    return this.droppedCount.get();
+  }
+
+  /**
+   * Writes out the queued events and closes the file.
+   */
+  @Override
+  public void close() {
+    this.closing = true;
+    synchronized (this.writeLock) {
+      if (this.fileClosed) {
+        return;
+      }
+      while (writeBatch()) {
+        // write until the buffer is empty
+      }
+      this.appender.close();
+      this.fileClosed = true;
+      this.closed = true;
+    }
+    if (getDroppedCount() > 0) {
+      logger.warn(getDroppedCount() + " log events were dropped writing " + getName());
+    }
+  }
+
+  @Override
+  public boolean requiresLayout() {
+    return false;
+  }
+
+  /**
+   * What happens to the events logged while the buffer is full.
+   */
+  public enum OverflowPolicy {
+    BLOCK,
+    DROP
+  }
+}
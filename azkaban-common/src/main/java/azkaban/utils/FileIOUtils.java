@@ -17,20 +17,29 @@
 package azkaban.utils;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 
@@ -41,6 +50,8 @@ import org.apache.log4j.Logger;
 public class FileIOUtils {
 
   private final static Logger logger = Logger.getLogger(FileIOUtils.class);
+  // Large trees are linked in parallel, each thread linking at least this many files
+  private static final int MIN_FILES_PER_LINK_THREAD = 1000;
 
   /**
    * Check if a directory is writable
@@ -87,11 +98,23 @@ public class FileIOUtils {
   }
 
   /**
-   * Run a unix command that will hard link files and recurse into directories.
+   * Hard links the files of sourceDir and its sub directories into destDir, creating the sub
+   * directories in destDir.
    */
-
   public static void createDeepHardlink(final File sourceDir, final File destDir)
       throws IOException {
+    createDeepLinks(sourceDir, destDir, LinkMode.HARD_LINK, 1);
+  }
+
+  /**
+   * Links the files of sourceDir and its sub directories into destDir, creating the sub
+   * directories in destDir. Files are copied instead if the file system doesn't support hard
+   * links between the two directories.
+   *
+   * @param parallelism number of threads linking the files of large trees.
+   */
+  public static void createDeepLinks(final File sourceDir, final File destDir,
+      final LinkMode mode, final int parallelism) throws IOException {
     if (!sourceDir.exists()) {
       throw new IOException("Source directory " + sourceDir.getPath()
           + " doesn't exist");
@@ -102,73 +125,67 @@ public class FileIOUtils {
       throw new IOException("Source or Destination is not a directory.");
     }
 
-    final Set<String> paths = new HashSet<>();
-    createDirsFindFiles(sourceDir, sourceDir, destDir, paths);
+    final Path source = sourceDir.toPath().toAbsolutePath();
+    final Path dest = destDir.toPath().toAbsolutePath();
+    final List<Path> files = createDirsFindFiles(source, dest);
+    final FileLinker linker = new FileLinker(source, dest, mode);
 
-    final StringBuffer buffer = new StringBuffer();
-    for (String path : paths) {
-      final File sourceLink = new File(sourceDir, path);
-      path = "." + path;
-
-      buffer.append("ln ").append(sourceLink.getAbsolutePath()).append("/*")
-          .append(" ").append(path).append(";");
+    if (parallelism <= 1 || files.size() < MIN_FILES_PER_LINK_THREAD * 2) {
+      for (final Path file : files) {
+        linker.link(file);
+      }
+      return;
     }
 
-    runShellCommand(buffer.toString(), destDir);
-  }
-
-  private static void runShellCommand(final String command, final File workingDir)
-      throws IOException {
-    final ProcessBuilder builder = new ProcessBuilder().command("sh", "-c", command);
-    builder.directory(workingDir);
-
-    // XXX what about stopping threads ??
-    final Process process = builder.start();
+    final int threads = Math.min(parallelism, files.size() / MIN_FILES_PER_LINK_THREAD);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
     try {
-      final NullLogger errorLogger = new NullLogger(process.getErrorStream());
-      final NullLogger inputLogger = new NullLogger(process.getInputStream());
-      errorLogger.start();
-      inputLogger.start();
-
-      try {
-        if (process.waitFor() < 0) {
-          // Assume that the error will be in standard out. Otherwise it'll be
-          // in standard in.
-          String errorMessage = errorLogger.getLastMessages();
-          if (errorMessage.isEmpty()) {
-            errorMessage = inputLogger.getLastMessages();
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        final List<Path> part = files
+            .subList(files.size() * i / threads, files.size() * (i + 1) / threads);
+        futures.add(executor.submit(() -> {
+          for (final Path file : part) {
+            linker.link(file);
           }
-
-          throw new IOException(errorMessage);
-        }
-      } catch (final InterruptedException e) {
-        logger.error(e);
+          return null;
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get();
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while linking " + source + " into " + dest, e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
       }
+      throw new IOException("Failed to link " + source + " into " + dest, e.getCause());
     } finally {
-      IOUtils.closeQuietly(process.getInputStream());
-      IOUtils.closeQuietly(process.getOutputStream());
-      IOUtils.closeQuietly(process.getErrorStream());
+      executor.shutdownNow();
     }
-
   }
 
-  private static void createDirsFindFiles(final File baseDir, final File sourceDir,
-      final File destDir, final Set<String> paths) {
-    final File[] srcList = sourceDir.listFiles();
-    final String path = getRelativePath(baseDir, sourceDir);
-    paths.add(path);
-
-    for (final File file : srcList) {
-      if (file.isDirectory()) {
-        final File newDestDir = new File(destDir, file.getName());
-        newDestDir.mkdirs();
-        createDirsFindFiles(baseDir, file, newDestDir, paths);
+  /* Creates the sub directories of sourceDir in destDir and returns the files to link */
+  private static List<Path> createDirsFindFiles(final Path sourceDir, final Path destDir)
+      throws IOException {
+    final List<Path> files = new ArrayList<>();
+    Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs)
+          throws IOException {
+        Files.createDirectories(destDir.resolve(sourceDir.relativize(dir)));
+        return FileVisitResult.CONTINUE;
       }
-    }
-  }
 
-  private static String getRelativePath(final File basePath, final File sourceDir) {
-    return sourceDir.getPath().substring(basePath.getPath().length());
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        files.add(file);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return files;
   }
 
   public static Pair<Integer, Integer> readUtf8File(final File file, final int offset,
@@ -354,38 +371,49 @@ public class FileIOUtils {
     }
   }
 
-  private static class NullLogger extends Thread {
+  /**
+   * How the files are linked by {@link #createDeepLinks(File, File, LinkMode, int)}.
+   */
+  public enum LinkMode {
+    HARD_LINK,
+    SYMBOLIC_LINK
+  }
 
-    private final BufferedReader inputReader;
-    private final CircularBuffer<String> buffer = new CircularBuffer<>(5);
+  /* Links files of the source tree into the destination tree, can be used by several threads */
+  private static class FileLinker {
 
-    public NullLogger(final InputStream stream) {
-      this.inputReader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
-    }
+    private final Path sourceDir;
+    private final Path destDir;
+    private final LinkMode mode;
+    // Set once a hard link fails, the remaining files are copied
+    private volatile boolean copyFiles = false;
 
-    @Override
-    public void run() {
-      try {
-        while (!Thread.currentThread().isInterrupted()) {
-          final String line = this.inputReader.readLine();
-          if (line == null) {
-            return;
-          }
-          this.buffer.append(line);
-        }
-      } catch (final IOException e) {
-        e.printStackTrace();
-      }
+    private FileLinker(final Path sourceDir, final Path destDir, final LinkMode mode) {
+      this.sourceDir = sourceDir;
+      this.destDir = destDir;
+      this.mode = mode;
     }
 
-    public String getLastMessages() {
-      final StringBuffer messageBuffer = new StringBuffer();
-      for (final String message : this.buffer) {
-        messageBuffer.append(message);
-        messageBuffer.append("\n");
+    private void link(final Path file) throws IOException {
+      final Path target = this.destDir.resolve(this.sourceDir.relativize(file));
+      if (this.mode == LinkMode.SYMBOLIC_LINK) {
+        Files.createSymbolicLink(target, file);
+        return;
       }
 
-      return messageBuffer.toString();
+      if (!this.copyFiles) {
+        try {
+          Files.createLink(target, file);
+          return;
+        } catch (final FileAlreadyExistsException e) {
+          throw e;
+        } catch (final UnsupportedOperationException | FileSystemException e) {
+          logger.warn("Can't hard link " + file + " into " + this.destDir
+              + ", copying the files instead. " + e);
+          this.copyFiles = true;
+        }
+      }
+      Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
     }
   }
 
@@ -20,6 +20,9 @@ import azkaban.db.EncodingType;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import org.apache.commons.io.IOUtils;
@@ -76,4 +79,56 @@ public class GZIPUtils {
     }
   }
 
+  /**
+   * Gzips byte arrays one after another with the same deflater and working buffer, instead of
+   * a new deflater and output stream per array like {@link #gzipBytes(byte[], int, int)}.
+   * Not threadsafe, close it to free the deflater.
+   */
+  public static class Gzipper implements AutoCloseable {
+
+    // Header written by GZIPOutputStream: magic number, deflate method, no flags, time or OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0,
+        0, 0};
+    private static final int TRAILER_SIZE = 8;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+    private byte[] buffer = new byte[8 * 1024];
+
+    /**
+     * @return the gzipped bytes, in an array of their exact length.
+     */
+    public byte[] gzip(final byte[] bytes, final int offset, final int length) {
+      this.deflater.reset();
+      this.deflater.setInput(bytes, offset, length);
+      this.deflater.finish();
+      this.crc.reset();
+      this.crc.update(bytes, offset, length);
+
+      System.arraycopy(HEADER, 0, this.buffer, 0, HEADER.length);
+      int size = HEADER.length;
+      while (!this.deflater.finished()) {
+        if (size == this.buffer.length) {
+          this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+        }
+        size += this.deflater.deflate(this.buffer, size, this.buffer.length - size);
+      }
+
+      final byte[] gzipped = Arrays.copyOf(this.buffer, size + TRAILER_SIZE);
+      writeIntLE(gzipped, size, (int) this.crc.getValue());
+      writeIntLE(gzipped, size + 4, length);
+      return gzipped;
+    }
+
+    private static void writeIntLE(final byte[] bytes, final int offset, final int value) {
+      for (int i = 0; i < 4; i++) {
+        bytes[offset + i] = (byte) (value >>> (8 * i));
+      }
+    }
+
+    @Override
+    public void close() {
+      this.deflater.end();
+    }
+  }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.util.Enumeration;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Logs the lines of an output stream read by the {@link OutputPump} and keeps the recent ones.
+ */
+public class LogLineSink {
+
+  // Bound of the recent log, whatever the length of the lines
+  private static final int MAX_RECENT_LOG_CHARS = 64 * 1024;
+
+  private final Logger logger;
+  private final Level loggingLevel;
+  private final TailBuffer buffer;
+
+  public LogLineSink(final Logger logger, final Level level, final int bufferLines) {
+    this.logger = logger;
+    this.loggingLevel = level;
+    this.buffer = new TailBuffer(bufferLines, MAX_RECENT_LOG_CHARS);
+  }
+
+  /**
+   * Keeps the line among the recent ones and logs it.
+   */
+  public void logLine(final String line) {
+    synchronized (this.buffer) {
+      this.buffer.appendLine(line);
+    }
+    if (this.logger != null) {
+      this.logger.log(this.loggingLevel, line);
+    }
+  }
+
+  /**
+   * @return true if logging a line now would wait for an {@link AsyncLogAppender} of the logger
+   * to have room for it.
+   */
+  public boolean wouldBlock() {
+    if (this.logger == null) {
+      return false;
+    }
+    final Enumeration<?> appenders = this.logger.getAllAppenders();
+    while (appenders.hasMoreElements()) {
+      final Object appender = appenders.nextElement();
+      if (appender instanceof AsyncLogAppender && ((AsyncLogAppender) appender).wouldBlock()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public String getRecentLog() {
+    synchronized (this.buffer) {
+      return this.buffer.toString();
+    }
+  }
+
+  /**
+   * Appends the recent log to the builder, without building its String first.
+   */
+  public StringBuilder appendRecentLog(final StringBuilder builder) {
+    synchronized (this.buffer) {
+      return this.buffer.appendTo(builder);
+    }
+  }
+}
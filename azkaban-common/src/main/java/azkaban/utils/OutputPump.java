@@ -0,0 +1,322 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+
+/**
+ * <pre>
+ * Drains the output of child processes on a small pool of shared threads, instead of one
+ * reading thread per stream.
+ * NOTE: The pipes of a java.lang.Process can't be selected, so the pump threads poll their
+ *       streams and only read what is already available: a quiet process never blocks a pump
+ *       thread. Each stream is read by a single pump thread, which feeds its lines to the
+ *       LogLineSink of the stream, keeping its recent lines and logging them. A stream whose
+ *       sink would block (its log buffer is full) is held back: its lines are kept and logged
+ *       on a later poll, while the pump thread goes on with the other streams.
+ *       Once its process has exited, a stream is read to its end: the JDK drains and closes the
+ *       pipes of an exited process right after reporting its exit, so after {@link #EXIT_DRAIN_MS}
+ *       reading them returns their last output then the end of the stream, without waiting for a
+ *       descendant process which inherited the pipe. A stream which isn't a pipe of its process is
+ *       done once nothing was read from it for {@link #EXIT_QUIET_MS} after the exit.
+ * </pre>
+ */
+public class OutputPump {
+
+  static final long EXIT_DRAIN_MS = 10;
+  static final long EXIT_QUIET_MS = 100;
+  private static final Logger logger = Logger.getLogger(OutputPump.class);
+  private static final int DEFAULT_THREADS =
+      Math.max(2, Runtime.getRuntime().availableProcessors() / 4);
+  // Characters read from a stream before the pump thread moves on to the next stream
+  private static final int READ_CHUNK_SIZE = 8192;
+  private static final long MAX_IDLE_SLEEP_MS = 20;
+  private static volatile OutputPump instance = null;
+
+  private final PumpThread[] threads;
+  private final AtomicInteger nextThread = new AtomicInteger();
+
+  public OutputPump(final int numThreads) {
+    this.threads = new PumpThread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      this.threads[i] = new PumpThread("azk-output-pump-" + i);
+      this.threads[i].start();
+    }
+  }
+
+  /**
+   * Get the pump shared by all the processes of the JVM
+   */
+  public static OutputPump getInstance() {
+    if (instance == null) {
+      synchronized (OutputPump.class) {
+        if (instance == null) {
+          logger.info("Starting the output pump with " + DEFAULT_THREADS + " threads");
+          instance = new OutputPump(DEFAULT_THREADS);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Starts draining a stream of the process into the sink.
+   */
+  public Source register(final InputStream stream, final Process process,
+      final LogLineSink sink) {
+    final PumpThread thread = this.threads[
+        Math.floorMod(this.nextThread.getAndIncrement(), this.threads.length)];
+    final boolean processPipe =
+        stream == process.getInputStream() || stream == process.getErrorStream();
+    final Source source = new Source(new InputStreamReader(stream, StandardCharsets.UTF_8),
+        process, processPipe, sink, thread);
+    thread.add(source);
+    return source;
+  }
+
+  public int getThreadCount() {
+    return this.threads.length;
+  }
+
+  /**
+   * @return the number of streams being drained.
+   */
+  public int getSourceCount() {
+    int count = 0;
+    for (final PumpThread thread : this.threads) {
+      count += thread.sources.size();
+    }
+    return count;
+  }
+
+  public void shutdown() {
+    for (final PumpThread thread : this.threads) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * A stream drained by the pump.
+   */
+  public static class Source {
+
+    private final Reader reader;
+    private final Process process;
+    // The JDK drains the stream once the process exits, it can be read to its end then
+    private final boolean processPipe;
+    private final LogLineSink sink;
+    private final PumpThread thread;
+    private final CountDownLatch completion = new CountDownLatch(1);
+    private final StringBuilder line = new StringBuilder();
+    // Lines read but not logged yet, held back while the sink would block
+    private final Deque<String> pendingLines = new ArrayDeque<>();
+    private boolean lastWasCarriageReturn = false;
+    private boolean endOfStream = false;
+    private long quietSince = -1;
+    // Set once the owner of the stream stopped waiting for it, it may close the stream anytime
+    private volatile boolean detached = false;
+
+    private Source(final Reader reader, final Process process, final boolean processPipe,
+        final LogLineSink sink, final PumpThread thread) {
+      this.reader = reader;
+      this.process = process;
+      this.processPipe = processPipe;
+      this.sink = sink;
+      this.thread = thread;
+    }
+
+    /**
+     * Waits up to waitMs for the whole stream to be read. The stream isn't read any more
+     * afterwards, even if it isn't done.
+     */
+    public void awaitCompletion(final long waitMs) {
+      try {
+        this.completion.await(waitMs, TimeUnit.MILLISECONDS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      this.detached = true;
+      this.thread.remove(this);
+    }
+
+    public boolean isComplete() {
+      return this.completion.getCount() == 0;
+    }
+
+    /**
+     * Reads what is available, called by the pump thread only.
+     *
+     * @return true if anything was read.
+     */
+    private boolean pump(final char[] buffer, final long now) {
+      if (!logPendingLines()) {
+        return false;
+      }
+      if (this.endOfStream) {
+        complete();
+        return false;
+      }
+      try {
+        if (this.reader.ready()) {
+          return read(buffer);
+        }
+        if (this.process.isAlive()) {
+          return false;
+        }
+        if (this.quietSince < 0) {
+          this.quietSince = now;
+        } else if (this.processPipe && now - this.quietSince >= EXIT_DRAIN_MS) {
+          // drained by the JDK by now, the read returns without waiting for more output
+          return read(buffer);
+        } else if (now - this.quietSince >= EXIT_QUIET_MS) {
+          endOfStream();
+        }
+      } catch (final IOException e) {
+        if (!this.detached) {
+          logger.error("Error reading from logging stream:", e);
+        }
+        endOfStream();
+      }
+      return false;
+    }
+
+    /* Reads one chunk, at most */
+    private boolean read(final char[] buffer) throws IOException {
+      final int read = this.reader.read(buffer);
+      if (read > 0) {
+        this.quietSince = -1;
+        splitLines(buffer, read);
+        logPendingLines();
+        return true;
+      }
+      if (read < 0) {
+        endOfStream();
+      }
+      return false;
+    }
+
+    private void splitLines(final char[] buffer, final int length) {
+      for (int i = 0; i < length; i++) {
+        final char c = buffer[i];
+        if (c == '\n' && this.lastWasCarriageReturn) {
+          this.lastWasCarriageReturn = false;
+        } else if (c == '\n' || c == '\r') {
+          this.pendingLines.add(this.line.toString());
+          this.line.setLength(0);
+          this.lastWasCarriageReturn = c == '\r';
+        } else {
+          this.line.append(c);
+          this.lastWasCarriageReturn = false;
+        }
+      }
+    }
+
+    /**
+     * Logs the pending lines until the sink would block.
+     *
+     * @return true if all of them were logged.
+     */
+    private boolean logPendingLines() {
+      while (!this.pendingLines.isEmpty()) {
+        if (this.sink.wouldBlock()) {
+          return false;
+        }
+        this.sink.logLine(this.pendingLines.poll());
+      }
+      return true;
+    }
+
+    /* Nothing more to read, completes once the last lines are logged */
+    private void endOfStream() {
+      if (this.line.length() > 0) {
+        this.pendingLines.add(this.line.toString());
+        this.line.setLength(0);
+      }
+      this.endOfStream = true;
+      if (logPendingLines()) {
+        complete();
+      }
+    }
+
+    private void complete() {
+      this.thread.remove(this);
+      this.completion.countDown();
+    }
+  }
+
+  /* Polls its sources, sleeping a little longer every time none of them had output */
+  private static class PumpThread extends Thread {
+
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+    private final char[] buffer = new char[READ_CHUNK_SIZE];
+
+    private PumpThread(final String name) {
+      super(name);
+      setDaemon(true);
+    }
+
+    private void add(final Source source) {
+      synchronized (this.sources) {
+        this.sources.add(source);
+        this.sources.notifyAll();
+      }
+    }
+
+    private void remove(final Source source) {
+      this.sources.remove(source);
+    }
+
+    @Override
+    public void run() {
+      long idleSleepMs = 1;
+      try {
+        while (!isInterrupted()) {
+          synchronized (this.sources) {
+            while (this.sources.isEmpty()) {
+              this.sources.wait();
+            }
+          }
+          boolean read = false;
+          final long now = System.currentTimeMillis();
+          for (final Source source : this.sources) {
+            read |= source.pump(this.buffer, now);
+          }
+          if (read) {
+            idleSleepMs = 1;
+          } else {
+            Thread.sleep(idleSleepMs);
+            idleSleepMs = Math.min(idleSleepMs * 2, MAX_IDLE_SLEEP_MS);
+          }
+        }
+      } catch (final InterruptedException e) {
+        logger.info(getName() + " stopped");
+      }
+    }
+  }
+}
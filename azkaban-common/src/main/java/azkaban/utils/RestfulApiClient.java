@@ -26,6 +26,7 @@ import org.apache.http.HttpMessage;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
@@ -51,6 +52,21 @@ public abstract class RestfulApiClient<T> {
 
   protected static Logger logger = Logger.getLogger(RestfulApiClient.class);
 
+  // Shared client used for all requests. If null, a new client is created for every request.
+  private final CloseableHttpClient httpClient;
+
+  protected RestfulApiClient() {
+    this(null);
+  }
+
+  /**
+   * @param httpClient client shared by all requests of this instance. It is not closed after the
+   * requests, so that its connections can be reused.
+   */
+  protected RestfulApiClient(final CloseableHttpClient httpClient) {
+    this.httpClient = httpClient;
+  }
+
   /**
    * helper function to build a valid URI.
    *
@@ -242,9 +258,22 @@ public abstract class RestfulApiClient<T> {
    * function to dispatch the request and pass back the response.
    */
   protected T sendAndReturn(final HttpUriRequest request) throws IOException {
+    return this.execute(request, this::parseResponse);
+  }
+
+  /**
+   * function to dispatch the request and transform the response with the given handler. The
+   * response is consumed and released once the handler returns.
+   */
+  protected <R> R execute(final HttpUriRequest request, final ResponseHandler<R> handler)
+      throws IOException {
+    if (this.httpClient != null) {
+      return this.httpClient.execute(request, handler);
+    }
+
     final CloseableHttpClient client = HttpClients.createDefault();
     try {
-      return this.parseResponse(client.execute(request));
+      return client.execute(request, handler);
     } finally {
       client.close();
     }
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+/**
+ * The tail of a text output: its last lines, joined by line separators, bounded both by a number
+ * of lines and by a number of characters. When the character bound is hit, the oldest kept line
+ * is cut so that the tail is exact.
+ *
+ * The characters are kept in a ring over an array which grows with the tail, up to maxChars, so
+ * that the tail of a quiet output takes little memory. Once the array is big enough, appending a
+ * line doesn't allocate. This class is not threadsafe.
+ */
+public class TailBuffer {
+
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+  private static final int INITIAL_CAPACITY = 256;
+
+  private final int maxChars;
+  // Holds the tail, the character at offset i of the whole output is at i % chars.length
+  private char[] chars;
+  // Offsets of the starts of the last lines in the whole output, used as a ring too
+  private final long[] lineStarts;
+  private long length = 0;
+  private long lineCount = 0;
+
+  public TailBuffer(final int maxLines, final int maxChars) {
+    this.maxChars = maxChars;
+    this.chars = new char[Math.min(maxChars, INITIAL_CAPACITY)];
+    this.lineStarts = new long[maxLines];
+  }
+
+  public void appendLine(final CharSequence line) {
+    if (this.lineCount > 0) {
+      append(LINE_SEPARATOR);
+    }
+    this.lineStarts[(int) (this.lineCount % this.lineStarts.length)] = this.length;
+    this.lineCount++;
+    append(line);
+  }
+
+  private void append(final CharSequence sequence) {
+    // the characters which would be overwritten by the same sequence are skipped
+    final int skipped = Math.max(0, sequence.length() - this.maxChars);
+    ensureCapacity(this.length + sequence.length());
+    this.length += skipped;
+    for (int i = skipped; i < sequence.length(); i++) {
+      this.chars[(int) (this.length % this.chars.length)] = sequence.charAt(i);
+      this.length++;
+    }
+  }
+
+  /* Grows the array so that it can hold the tail once the output is newLength long */
+  private void ensureCapacity(final long newLength) {
+    if (this.chars.length == this.maxChars) {
+      return;
+    }
+    // the tail only starts later once the output is longer
+    final long tailStart = getTailStart();
+    final long needed = Math.min(this.maxChars, newLength - tailStart);
+    if (needed <= this.chars.length) {
+      return;
+    }
+    final char[] grown =
+        new char[(int) Math.min(this.maxChars, Math.max(needed, 2L * this.chars.length))];
+    for (long i = tailStart; i < this.length; i++) {
+      grown[(int) (i % grown.length)] = this.chars[(int) (i % this.chars.length)];
+    }
+    this.chars = grown;
+  }
+
+  private long getTailStart() {
+    long start = Math.max(0, this.length - this.maxChars);
+    if (this.lineCount > this.lineStarts.length) {
+      start = Math.max(start, this.lineStarts[(int) (this.lineCount % this.lineStarts.length)]);
+    }
+    return start;
+  }
+
+  /**
+   * @return the number of characters the tail can take before the array grows.
+   */
+  int getCapacity() {
+    return this.chars.length;
+  }
+
+  /**
+   * @return the number of characters of the tail.
+   */
+  public int size() {
+    return (int) (this.length - getTailStart());
+  }
+
+  /**
+   * Appends the tail to the builder, without intermediate copies.
+   */
+  public StringBuilder appendTo(final StringBuilder builder) {
+    final int start = (int) (getTailStart() % this.chars.length);
+    final int size = size();
+    final int firstPart = Math.min(size, this.chars.length - start);
+    builder.append(this.chars, start, firstPart);
+    builder.append(this.chars, 0, size - firstPart);
+    return builder;
+  }
+
+  @Override
+  public String toString() {
+    return appendTo(new StringBuilder(size())).toString();
+  }
+}
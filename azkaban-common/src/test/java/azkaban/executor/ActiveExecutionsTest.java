@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.utils.TestUtils;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ActiveExecutionsTest {
+
+  private static ExecutableFlow createFlow(final String flowName, final int execId)
+      throws Exception {
+    final ExecutableFlow flow = TestUtils.createExecutableFlow("exectest1", flowName);
+    flow.setExecutionId(execId);
+    return flow;
+  }
+
+  @Test
+  public void testIndexByFlow() throws Exception {
+    final ActiveExecutions executions = new ActiveExecutions();
+    final ExecutableFlow flow3 = createFlow("exec1", 3);
+    final ExecutableFlow flow1 = createFlow("exec1", 1);
+    final ExecutableFlow flow2 = createFlow("exec2", 2);
+    executions.add(flow3);
+    executions.add(flow1);
+    executions.add(flow2);
+    executions.add(flow1);
+
+    assertThat(executions.size()).isEqualTo(3);
+    assertThat(executions.get(3)).isEqualTo(flow3);
+    assertThat(executions.getExecutionIds(flow1.getProjectId(), "exec1")).containsExactly(1, 3);
+    assertThat(executions.getExecutionIds(flow2.getProjectId(), "exec2")).containsExactly(2);
+    assertThat(executions.isFlowRunning(flow1.getProjectId() + 1, "exec1")).isFalse();
+
+    assertThat(executions.remove(1)).isTrue();
+    assertThat(executions.remove(1)).isFalse();
+    assertThat(executions.remove(2)).isTrue();
+    assertThat(executions.contains(1)).isFalse();
+    assertThat(executions.getExecutionIds(flow1.getProjectId(), "exec1")).containsExactly(3);
+    assertThat(executions.isFlowRunning(flow2.getProjectId(), "exec2")).isFalse();
+  }
+
+  @Test
+  public void testReservationsOfSameFlowAreExclusive() throws Exception {
+    final ActiveExecutions executions = new ActiveExecutions();
+    final ExecutorService service = Executors.newFixedThreadPool(8);
+    final AtomicInteger nextExecId = new AtomicInteger();
+    final AtomicInteger skipped = new AtomicInteger();
+    final CountDownLatch start = new CountDownLatch(1);
+    final int projectId = createFlow("exec1", 0).getProjectId();
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        futures.add(service.submit(() -> {
+          start.await();
+          // submit the flow unless it is running already, like with the skip concurrent option
+          try (final ActiveExecutions.FlowReservation reservation =
+              executions.reserve(projectId, "exec1")) {
+            if (executions.isFlowRunning(projectId, "exec1")) {
+              skipped.incrementAndGet();
+            } else {
+              executions.add(createFlow("exec1", nextExecId.incrementAndGet()));
+            }
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (final Future<?> future : futures) {
+        future.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      service.shutdownNow();
+    }
+
+    assertThat(skipped.get()).isEqualTo(49);
+    assertThat(executions.getExecutionIds(projectId, "exec1")).containsExactly(1);
+
+    // the entry of the flow is gone once it has neither executions nor reservations
+    executions.remove(1);
+    executions.reserve(projectId, "exec1").close();
+    assertThat(executions.isFlowRunning(projectId, "exec1")).isFalse();
+  }
+}
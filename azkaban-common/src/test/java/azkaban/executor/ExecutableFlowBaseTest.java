@@ -0,0 +1,134 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.flow.Edge;
+import azkaban.flow.Flow;
+import azkaban.flow.Node;
+import azkaban.project.Project;
+import java.util.List;
+import org.junit.Test;
+
+public class ExecutableFlowBaseTest {
+
+  private static final int SIZE = 2000;
+
+  private final Project project = new Project(11, "myTestProject");
+
+  private static void addNode(final Flow flow, final String id) {
+    final Node node = new Node(id);
+    node.setType("command");
+    flow.addNode(node);
+  }
+
+  /* SIZE start nodes which all lead to the "sink" node */
+  private ExecutableFlow createWideFlow() {
+    final Flow flow = new Flow("wide");
+    addNode(flow, "sink");
+    for (int i = 0; i < SIZE; i++) {
+      addNode(flow, "job" + i);
+      flow.addEdge(new Edge("job" + i, "sink"));
+    }
+    flow.initialize();
+    return new ExecutableFlow(this.project, flow);
+  }
+
+  /* chain of SIZE nodes */
+  private ExecutableFlow createDeepFlow() {
+    final Flow flow = new Flow("deep");
+    addNode(flow, "job0");
+    for (int i = 1; i < SIZE; i++) {
+      addNode(flow, "job" + i);
+      flow.addEdge(new Edge("job" + (i - 1), "job" + i));
+    }
+    flow.initialize();
+    return new ExecutableFlow(this.project, flow);
+  }
+
+  private static List<ExecutableNode> finish(final ExecutableFlow flow, final String id,
+      final Status status) {
+    final ExecutableNode node = flow.getExecutableNode(id);
+    node.setStatus(status);
+    return flow.dependencyFinished(node);
+  }
+
+  @Test
+  public void testWideFlowIsReadyWhenAllDependenciesAreFinished() {
+    final ExecutableFlow flow = createWideFlow();
+    flow.resetDependencyCounters();
+    final ExecutableNode sink = flow.getExecutableNode("sink");
+
+    for (int i = 0; i < SIZE - 1; i++) {
+      assertThat(finish(flow, "job" + i, Status.SUCCEEDED)).isEmpty();
+    }
+    assertThat(flow.areDependenciesFinished(sink)).isFalse();
+    // finishing a node twice doesn't count twice
+    assertThat(finish(flow, "job0", Status.SUCCEEDED)).isEmpty();
+
+    assertThat(finish(flow, "job" + (SIZE - 1), Status.SUCCEEDED)).containsExactly(sink);
+    assertThat(flow.areDependenciesFinished(sink)).isTrue();
+    assertThat(flow.hasFailedDependency(sink)).isFalse();
+  }
+
+  @Test
+  public void testDeepFlowReadinessMovesDownTheChain() {
+    final ExecutableFlow flow = createDeepFlow();
+    flow.resetDependencyCounters();
+    assertThat(flow.areDependenciesFinished(flow.getExecutableNode("job0"))).isTrue();
+
+    for (int i = 0; i < SIZE - 1; i++) {
+      final ExecutableNode next = flow.getExecutableNode("job" + (i + 1));
+      assertThat(flow.areDependenciesFinished(next)).isFalse();
+      // disabled jobs finish as skipped, which doesn't fail their dependents
+      final Status status = i % 2 == 0 ? Status.SKIPPED : Status.SUCCEEDED;
+      assertThat(finish(flow, "job" + i, status)).containsExactly(next);
+      assertThat(flow.hasFailedDependency(next)).isFalse();
+    }
+  }
+
+  @Test
+  public void testFailedDependency() {
+    final ExecutableFlow flow = createWideFlow();
+    final ExecutableNode sink = flow.getExecutableNode("sink");
+    for (int i = 0; i < SIZE; i++) {
+      finish(flow, "job" + i, i == 1 ? Status.KILLED : Status.SUCCEEDED);
+    }
+
+    assertThat(flow.areDependenciesFinished(sink)).isTrue();
+    assertThat(flow.hasFailedDependency(sink)).isTrue();
+  }
+
+  @Test
+  public void testResetCountsCurrentStatuses() {
+    final ExecutableFlow flow = createWideFlow();
+    final ExecutableNode sink = flow.getExecutableNode("sink");
+    for (int i = 0; i < SIZE; i++) {
+      finish(flow, "job" + i, i == 1 ? Status.FAILED : Status.SUCCEEDED);
+    }
+
+    // retrying the failed job makes the sink wait for it again
+    flow.getExecutableNode("job1").resetForRetry();
+    flow.resetDependencyCounters();
+    assertThat(flow.areDependenciesFinished(sink)).isFalse();
+    assertThat(flow.hasFailedDependency(sink)).isFalse();
+
+    assertThat(finish(flow, "job1", Status.SUCCEEDED)).containsExactly(sink);
+    assertThat(flow.hasFailedDependency(sink)).isFalse();
+  }
+}
@@ -141,4 +141,29 @@ public class ExecutableFlowPriorityComparatorTest {
     Assert.assertEquals(flow4, queue.take().getSecond());
     Assert.assertEquals(flow2, queue.take().getSecond());
   }
+
+  /* low priority flows overtake higher priority ones once they have waited long enough */
+  @Test
+  public void testPriorityAging() throws IOException, InterruptedException {
+    final ExecutableFlow flow1 = createExecutableFlow("exec1", 6, 0, 1);
+    final ExecutableFlow flow2 = createExecutableFlow("exec2", 2, 2000, 2);
+    final ExecutableFlow flow3 = createExecutableFlow("exec3", 8, 0, 3);
+    // the flows age from their submission, whatever updated them in the meantime
+    flow1.setSubmitTime(1000);
+    flow2.setSubmitTime(0);
+    flow3.setSubmitTime(900);
+    final ExecutionReference dummyRef = new ExecutionReference(0);
+
+    final BlockingQueue<Pair<ExecutionReference, ExecutableFlow>> queue =
+        new PriorityBlockingQueue<>(10,
+            new ExecutableFlowPriorityComparator(100));
+    queue.put(new Pair<>(dummyRef, flow1));
+    queue.put(new Pair<>(dummyRef, flow2));
+    queue.put(new Pair<>(dummyRef, flow3));
+
+    // flow2 waited 1000ms longer than flow1, which makes up for 10 priority levels
+    Assert.assertEquals(flow2, queue.take().getSecond());
+    Assert.assertEquals(flow3, queue.take().getSecond());
+    Assert.assertEquals(flow1, queue.take().getSecond());
+  }
 }
@@ -19,6 +19,7 @@ package azkaban.executor;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import azkaban.Constants.ConfigurationKeys;
 import azkaban.db.DatabaseOperator;
 import azkaban.test.Utils;
 import azkaban.test.executions.ExecutionsTestUtil;
@@ -68,10 +69,10 @@ public class ExecutionFlowDaoTest {
 
   @Before
   public void setup() {
-    this.executionFlowDao = new ExecutionFlowDao(dbOperator);
+    this.executionFlowDao = new ExecutionFlowDao(dbOperator, new Props());
     this.executorDao = new ExecutorDao(dbOperator);
     this.assignExecutor = new AssignExecutorDao(dbOperator, this.executorDao);
-    this.fetchActiveFlowDao = new FetchActiveFlowDao(dbOperator);
+    this.fetchActiveFlowDao = new FetchActiveFlowDao(dbOperator, new Props());
     this.executionJobDao = new ExecutionJobDao(dbOperator);
   }
 
@@ -79,12 +80,21 @@ public class ExecutionFlowDaoTest {
   public void clearDB() {
     try {
       dbOperator.update("DELETE FROM execution_flows");
+      dbOperator.update("DELETE FROM execution_flow_updates");
       dbOperator.update("DELETE FROM executors");
     } catch (final SQLException e) {
       e.printStackTrace();
     }
   }
 
+  /* Uses the DAOs of a server whose executors append the flow updates */
+  private void enableAppendedUpdates() {
+    final Props props = new Props();
+    props.put(ConfigurationKeys.AZKABAN_FLOW_UPDATE_COMPACTION_INTERVAL_MS, 60000);
+    this.executionFlowDao = new ExecutionFlowDao(dbOperator, props);
+    this.fetchActiveFlowDao = new FetchActiveFlowDao(dbOperator, props);
+  }
+
   private ExecutableFlow createTestFlow() throws Exception {
     return TestUtils.createExecutableFlow("exectest1", "exec1");
   }
@@ -120,6 +130,129 @@ public class ExecutionFlowDaoTest {
     assertTwoFlowSame(fetchFlow, fetchFlow2);
   }
 
+  @Test
+  public void testAppendExecutableFlowUpdate() throws Exception {
+    final ExecutableFlow flow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(flow);
+    final long writeTime = System.currentTimeMillis();
+
+    final ExecutableNode node = flow.getExecutableNodes().get(0);
+    node.setStatus(Status.SUCCEEDED);
+    node.setStartTime(writeTime + 1);
+    node.setEndTime(writeTime + 2);
+    node.setUpdateTime(writeTime + 2);
+    flow.setStatus(Status.RUNNING);
+    flow.setUpdateTime(writeTime + 2);
+    this.executionFlowDao.appendExecutableFlowUpdate(flow, writeTime);
+
+    // the flow data is rebuilt from the last full write and the appended update
+    final ExecutableFlow fetchFlow =
+        this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId());
+    assertTwoFlowSame(flow, fetchFlow);
+    final ExecutableNode fetchNode = fetchFlow.getExecutableNode(node.getId());
+    assertThat(fetchNode.getStatus()).isEqualTo(Status.SUCCEEDED);
+    assertThat(fetchNode.getEndTime()).isEqualTo(writeTime + 2);
+    assertThat(countFlowUpdates(flow.getExecutionId())).isEqualTo(1);
+
+    // a full write compacts the appended updates
+    flow.setStatus(Status.SUCCEEDED);
+    flow.setEndTime(writeTime + 3);
+    this.executionFlowDao.updateExecutableFlow(flow);
+    assertThat(countFlowUpdates(flow.getExecutionId())).isEqualTo(0);
+    final ExecutableFlow fetchFlow2 =
+        this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId());
+    assertTwoFlowSame(flow, fetchFlow2);
+    assertThat(fetchFlow2.getExecutableNode(node.getId()).getStatus())
+        .isEqualTo(Status.SUCCEEDED);
+  }
+
+  @Test
+  public void testFetchActiveFlowsAndHistoryApplyAppendedUpdates() throws Exception {
+    enableAppendedUpdates();
+    final ExecutableFlow flow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(flow);
+    final Executor executor = this.executorDao.addExecutor("test", 1);
+    this.assignExecutor.assignExecutor(executor.getId(), flow.getExecutionId());
+    final long writeTime = System.currentTimeMillis();
+
+    final ExecutableNode node = flow.getExecutableNodes().get(0);
+    node.setStatus(Status.RUNNING);
+    node.setUpdateTime(writeTime + 1);
+    flow.setStatus(Status.RUNNING);
+    flow.setUpdateTime(writeTime + 1);
+    this.executionFlowDao.appendExecutableFlowUpdate(flow, writeTime);
+
+    final ExecutableFlow activeFlow =
+        this.fetchActiveFlowDao.fetchActiveFlows().get(flow.getExecutionId()).getSecond();
+    assertThat(activeFlow.getStatus()).isEqualTo(Status.RUNNING);
+    assertThat(activeFlow.getExecutableNode(node.getId()).getStatus())
+        .isEqualTo(Status.RUNNING);
+    assertThat(this.fetchActiveFlowDao.fetchActiveFlowByExecId(flow.getExecutionId())
+        .getSecond().getExecutableNode(node.getId()).getStatus()).isEqualTo(Status.RUNNING);
+    final List<ExecutableFlow> history = this.executionFlowDao.fetchFlowHistory(0, 10);
+    assertThat(history).hasSize(1);
+    assertThat(history.get(0).getExecutableNode(node.getId()).getStatus())
+        .isEqualTo(Status.RUNNING);
+  }
+
+  @Test
+  public void testCompactFinishedExecutableFlowUpdates() throws Exception {
+    enableAppendedUpdates();
+    final ExecutableFlow runningFlow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(runningFlow);
+    final ExecutableFlow finishedFlow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(finishedFlow);
+    final long writeTime = System.currentTimeMillis();
+
+    runningFlow.setStatus(Status.RUNNING);
+    runningFlow.setUpdateTime(writeTime + 1);
+    this.executionFlowDao.appendExecutableFlowUpdate(runningFlow, writeTime);
+    final ExecutableNode node = finishedFlow.getExecutableNodes().get(0);
+    node.setStatus(Status.SUCCEEDED);
+    node.setUpdateTime(writeTime + 1);
+    finishedFlow.setStatus(Status.SUCCEEDED);
+    finishedFlow.setUpdateTime(writeTime + 1);
+    this.executionFlowDao.appendExecutableFlowUpdate(finishedFlow, writeTime);
+
+    // only the finished flow is compacted, and its flow data keeps the appended update
+    assertThat(this.executionFlowDao.compactFinishedExecutableFlowUpdates()).isEqualTo(1);
+    assertThat(countFlowUpdates(runningFlow.getExecutionId())).isEqualTo(1);
+    assertThat(countFlowUpdates(finishedFlow.getExecutionId())).isEqualTo(0);
+    assertThat(this.executionFlowDao.fetchExecutableFlow(finishedFlow.getExecutionId())
+        .getExecutableNode(node.getId()).getStatus()).isEqualTo(Status.SUCCEEDED);
+    assertThat(this.executionFlowDao.compactFinishedExecutableFlowUpdates()).isEqualTo(0);
+  }
+
+  @Test
+  public void testAppendedUpdatesAreNotUsedByDefault() throws Exception {
+    final ExecutableFlow flow = createTestFlow();
+    this.executionFlowDao.uploadExecutableFlow(flow);
+    final long writeTime = System.currentTimeMillis();
+
+    // the whole flow is rewritten and the updates table is left alone
+    flow.setStatus(Status.RUNNING);
+    flow.setUpdateTime(writeTime + 1);
+    this.executionFlowDao.appendExecutableFlowUpdate(flow, writeTime);
+    assertThat(countFlowUpdates(flow.getExecutionId())).isEqualTo(0);
+    assertThat(this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId()).getStatus())
+        .isEqualTo(Status.RUNNING);
+
+    dbOperator.update("INSERT INTO execution_flow_updates "
+        + "(exec_id, update_time, enc_type, update_data) values (?,?,?,?)",
+        flow.getExecutionId(), writeTime + 2, 1, new byte[0]);
+    flow.setStatus(Status.SUCCEEDED);
+    this.executionFlowDao.updateExecutableFlow(flow);
+    assertThat(this.executionFlowDao.fetchExecutableFlow(flow.getExecutionId()).getStatus())
+        .isEqualTo(Status.SUCCEEDED);
+    assertThat(this.executionFlowDao.compactFinishedExecutableFlowUpdates()).isEqualTo(0);
+    assertThat(countFlowUpdates(flow.getExecutionId())).isEqualTo(1);
+  }
+
+  private long countFlowUpdates(final int execId) throws SQLException {
+    return dbOperator.query("SELECT COUNT(*) FROM execution_flow_updates WHERE exec_id=?",
+        rs -> rs.next() ? rs.getLong(1) : 0L, execId);
+  }
+
   @Test
   public void fetchFlowHistory() throws Exception {
     final ExecutableFlow flow = createTestFlow();
@@ -17,12 +17,17 @@
 package azkaban.executor;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import azkaban.Constants.ConfigurationKeys;
 import azkaban.db.DatabaseOperator;
 import azkaban.test.Utils;
 import azkaban.test.executions.ExecutionsTestUtil;
 import azkaban.utils.FileIOUtils.LogData;
+import azkaban.utils.Props;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.sql.SQLException;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -53,7 +58,7 @@ public class ExecutionLogsDaoTest {
 
   @Before
   public void setup() {
-    this.executionLogsDao = new ExecutionLogsDao(dbOperator);
+    this.executionLogsDao = new ExecutionLogsDao(dbOperator, new Props());
   }
 
   @After
@@ -109,4 +114,45 @@ public class ExecutionLogsDaoTest {
     assertThat(logsResult3).isNotNull();
     assertThat(logsResult3.getLength()).isEqualTo(185493);
   }
+
+  @Test
+  public void testUploadLogInManyParts() throws Exception {
+    final File logDir = ExecutionsTestUtil.getFlowDir(LOG_TEST_DIR_NAME);
+    final File[] largelog =
+        {new File(logDir, "largeLog1.log"), new File(logDir, "largeLog2.log"),
+            new File(logDir, "largeLog3.log")};
+    final StringBuilder expected = new StringBuilder();
+    for (final File file : largelog) {
+      expected.append(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    // parts of 1000 bytes, several JDBC batches
+    final ExecutionLogsDao dao = new ExecutionLogsDao(dbOperator,
+        Props.of(ConfigurationKeys.AZKABAN_LOG_UPLOAD_CHUNK_SIZE, "1000"));
+    dao.uploadLogFile(1, "manyParts", 0, largelog);
+
+    final LogData data = dao.fetchLogs(1, "manyParts", 0, 0, expected.length());
+    assertThat(data.getData()).isEqualTo(expected.toString());
+    assertThat(dbOperator.query(
+        "SELECT COUNT(*) FROM execution_logs WHERE exec_id=1 AND name='manyParts'",
+        rs -> rs.next() ? rs.getInt(1) : 0))
+        .isEqualTo((expected.length() + 999) / 1000);
+  }
+
+  @Test
+  public void testUploadLogChunks() throws ExecutorManagerException {
+    final byte[] first = "Hello ".getBytes(StandardCharsets.UTF_8);
+    final byte[] second = "world!...".getBytes(StandardCharsets.UTF_8);
+    this.executionLogsDao.uploadLogChunk(1, "chunks", 0, 0, first, first.length);
+    this.executionLogsDao.uploadLogChunk(1, "chunks", 0, first.length, second, 6);
+    // a retried upload does nothing
+    this.executionLogsDao.uploadLogChunk(1, "chunks", 0, 0, first, first.length);
+
+    final LogData data = this.executionLogsDao.fetchLogs(1, "chunks", 0, 0, 50000);
+    assertThat(data.getData()).isEqualTo("Hello world!");
+
+    assertThatThrownBy(
+        () -> this.executionLogsDao.uploadLogChunk(1, "chunks", 0, 0, second, second.length))
+        .isInstanceOf(ExecutorManagerException.class);
+  }
 }
@@ -16,9 +16,14 @@
 
 package azkaban.executor;
 
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import azkaban.utils.JSONUtils;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -46,4 +51,33 @@ public class ExecutorApiGatewayTest {
     Assert.assertTrue(exeInfo.equals(exeInfo2));
   }
 
+  @Test
+  public void testSmileResponse() throws Exception {
+    final Map<String, Object> smileResponse = new HashMap<>();
+    smileResponse.put(ConnectorParams.STATUS_PARAM, ConnectorParams.RESPONSE_SUCCESS);
+    when(this.client.httpPostForSmile(Mockito.any(), Mockito.any())).thenReturn(smileResponse);
+
+    final Map<String, Object> response = this.gateway.callWithExecutionId("localhost", 1234,
+        ConnectorParams.PING_ACTION, null, null);
+    Assert.assertEquals(smileResponse, response);
+    verify(this.client, never()).httpGet(Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  public void testFallBackToJsonForOlderExecutors() throws Exception {
+    when(this.client.httpPostForSmile(Mockito.any(), Mockito.any())).thenReturn(null);
+    when(this.client.httpGet(Mockito.any(), Mockito.any()))
+        .thenReturn("{\"status\":\"success\"}");
+
+    for (int i = 0; i < 2; i++) {
+      final Map<String, Object> response = this.gateway.callWithExecutionId("localhost", 1234,
+          ConnectorParams.PING_ACTION, null, null);
+      Assert.assertEquals(ConnectorParams.RESPONSE_SUCCESS,
+          response.get(ConnectorParams.STATUS_PARAM));
+    }
+    // The executor isn't asked for Smile again after it didn't understand the first request.
+    verify(this.client, times(1)).httpPostForSmile(Mockito.any(), Mockito.any());
+    verify(this.client, times(2)).httpGet(Mockito.any(), Mockito.any());
+  }
+
 }
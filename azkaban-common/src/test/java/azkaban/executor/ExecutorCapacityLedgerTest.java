@@ -0,0 +1,155 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ExecutorCapacityLedgerTest {
+
+  private static Executor createExecutor(final int id, final Integer remainingFlowCapacity) {
+    final Executor executor = new Executor(id, "host" + id, 80, true);
+    if (remainingFlowCapacity != null) {
+      executor.setExecutorInfo(new ExecutorInfo(99.9, 14095, remainingFlowCapacity, 0, 10, 0));
+    }
+    return executor;
+  }
+
+  @Test
+  public void testReserveAndCancel() {
+    final Executor executor1 = createExecutor(1, 1);
+    final Executor executor2 = createExecutor(2, 1);
+    final ExecutorCapacityLedger ledger = new ExecutorCapacityLedger();
+    ledger.update(Arrays.asList(executor1, executor2));
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(2);
+
+    ledger.reserve(executor1);
+    ledger.reserve(executor1);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(1);
+    ledger.reserve(executor2);
+    assertThat(ledger.hasCapacity()).isFalse();
+
+    ledger.cancelReservation(executor2);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(1);
+
+    // executor 1 got one flow more than it had room for
+    ledger.cancelReservation(executor1);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(1);
+    ledger.cancelReservation(executor1);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(2);
+    // nothing left to cancel
+    ledger.cancelReservation(executor1);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(2);
+  }
+
+  @Test
+  public void testUpdateReplacesTheLocalAdjustments() {
+    final Executor executor = createExecutor(1, 2);
+    final ExecutorCapacityLedger ledger = new ExecutorCapacityLedger();
+    ledger.update(Arrays.asList(executor));
+    ledger.reserve(executor);
+    ledger.reserve(executor);
+    assertThat(ledger.hasCapacity()).isFalse();
+
+    // the heartbeat reports one of the flows, the other one wasn't dispatched after all and the
+    // cancellation of its reservation comes after the heartbeat
+    executor.setExecutorInfo(new ExecutorInfo(99.9, 14095, 1, 0, 10, 1));
+    ledger.update(executor);
+    ledger.cancelReservation(executor);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(1);
+
+    // a flow finished on the executor, its slot is given back by the next heartbeat only
+    executor.setExecutorInfo(new ExecutorInfo(99.9, 14095, 2, 0, 10, 0));
+    ledger.update(executor);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(2);
+  }
+
+  @Test
+  public void testExecutorsWithoutStatsHaveNoCapacity() {
+    final Executor executor1 = createExecutor(1, 0);
+    final Executor executor2 = createExecutor(2, null);
+    final ExecutorCapacityLedger ledger = new ExecutorCapacityLedger();
+    ledger.update(Arrays.asList(executor1, executor2));
+    assertThat(ledger.hasCapacity()).isFalse();
+
+    // e.g. a flow that couldn't be dispatched to an executor which is down
+    ledger.reserve(executor2);
+    ledger.cancelReservation(executor2);
+    assertThat(ledger.hasCapacity()).isFalse();
+
+    executor2.setExecutorInfo(new ExecutorInfo(99.9, 14095, 2, 0, 10, 0));
+    ledger.update(executor2);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(2);
+
+    // the stats of executor 2 were cleared after a failed heartbeat
+    executor2.setExecutorInfo(null, null);
+    ledger.update(executor2);
+    assertThat(ledger.hasCapacity()).isFalse();
+  }
+
+  @Test
+  public void testUpdateSingleExecutor() {
+    final Executor executor1 = createExecutor(1, 2);
+    final Executor executor2 = createExecutor(2, null);
+    final ExecutorCapacityLedger ledger = new ExecutorCapacityLedger();
+    ledger.update(Arrays.asList(executor1, executor2));
+    ledger.reserve(executor1);
+
+    executor2.setExecutorInfo(new ExecutorInfo(99.9, 14095, 3, 0, 10, 0));
+    ledger.update(executor2);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(4);
+
+    // the heartbeat of executor 1 accounts for the flow dispatched to it
+    executor1.setExecutorInfo(new ExecutorInfo(99.9, 14095, 1, 0, 10, 1));
+    ledger.update(executor1);
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(4);
+
+    // executors which are not active anymore are ignored
+    ledger.update(createExecutor(3, 10));
+    assertThat(ledger.getAvailableCapacity()).isEqualTo(4);
+  }
+
+  @Test
+  public void testAwaitTimesOutWhenFull() throws Exception {
+    final ExecutorCapacityLedger ledger = new ExecutorCapacityLedger();
+    ledger.update(Arrays.asList(createExecutor(1, 0)));
+    assertThat(ledger.awaitCapacity(50)).isFalse();
+  }
+
+  @Test
+  public void testAwaitWakesUpOnFreeSlot() throws Exception {
+    final Executor executor = createExecutor(1, 0);
+    final ExecutorCapacityLedger ledger = new ExecutorCapacityLedger();
+    ledger.update(Arrays.asList(executor));
+
+    final CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> {
+      try {
+        return ledger.awaitCapacity(60000);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    executor.setExecutorInfo(new ExecutorInfo(99.9, 14095, 1, 0, 10, 0));
+    ledger.update(executor);
+
+    assertThat(waiter.get(10, TimeUnit.SECONDS)).isTrue();
+  }
+}
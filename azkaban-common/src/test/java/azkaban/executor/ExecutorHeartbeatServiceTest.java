@@ -0,0 +1,132 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutorHeartbeatServiceTest {
+
+  private final List<Executor> refreshedExecutors = new ArrayList<>();
+  private ExecutorApiGateway apiGateway;
+  private Executor executor1;
+  private Executor executor2;
+  private ExecutorHeartbeatService service;
+
+  @Before
+  public void setUp() throws Exception {
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    this.executor1 = new Executor(1, "host1", 80, true);
+    this.executor2 = new Executor(2, "host2", 80, true);
+    this.service = new ExecutorHeartbeatService(this.apiGateway,
+        () -> Arrays.asList(this.executor1, this.executor2), executor -> {
+      synchronized (this.refreshedExecutors) {
+        this.refreshedExecutors.add(executor);
+      }
+    }, 60000, 2);
+  }
+
+  @After
+  public void tearDown() {
+    this.service.shutdown();
+  }
+
+  private void heartbeatAll() throws Exception {
+    for (final Future<?> future : this.service.heartbeatAll()) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testHeartbeat() throws Exception {
+    final ExecutorInfo info1 = new ExecutorInfo(99.9, 14095, 10, 0, 10, 0);
+    final ExecutorInfo info2 = new ExecutorInfo(50, 14095, 5, 0, 10, 0);
+    when(this.apiGateway.callForJsonType(eq("host1"), anyInt(), any(), any(), any()))
+        .thenReturn(info1);
+    when(this.apiGateway.callForJsonType(eq("host2"), anyInt(), any(), any(), any()))
+        .thenReturn(info2);
+
+    heartbeatAll();
+
+    assertThat(this.executor1.getExecutorInfo()).isEqualTo(info1);
+    assertThat(this.executor2.getExecutorInfo()).isEqualTo(info2);
+    assertThat(this.executor1.getLastStatsUpdatedTime()).isNotNull();
+    assertThat(this.refreshedExecutors).containsOnly(this.executor1, this.executor2);
+    assertThat(this.service.getLastSuccessfulRefresh()).isGreaterThan(0);
+  }
+
+  @Test
+  public void testFailedHeartbeatClearsInfo() throws Exception {
+    this.executor1.setExecutorInfo(new ExecutorInfo(99.9, 14095, 10, 0, 10, 0));
+    when(this.apiGateway.callForJsonType(eq("host1"), anyInt(), any(), any(), any()))
+        .thenThrow(new IOException("connection refused"));
+    when(this.apiGateway.callForJsonType(eq("host2"), anyInt(), any(), any(), any()))
+        .thenReturn(new ExecutorInfo(50, 14095, 5, 0, 10, 0));
+
+    heartbeatAll();
+
+    assertThat(this.executor1.getExecutorInfo()).isNull();
+    assertThat(this.executor1.getLastStatsUpdatedTime()).isNull();
+    assertThat(this.refreshedExecutors).containsOnly(this.executor1, this.executor2);
+    assertThat(this.service.getLastSuccessfulRefresh()).isEqualTo(0);
+
+    this.refreshedExecutors.clear();
+    heartbeatAll();
+    assertThat(this.refreshedExecutors).containsOnly(this.executor2);
+  }
+
+  @Test
+  public void testExecutorWithHeartbeatInFlightIsSkipped() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    when(this.apiGateway.callForJsonType(eq("host1"), anyInt(), any(), any(), any()))
+        .thenAnswer(invocation -> {
+          release.await(10, TimeUnit.SECONDS);
+          return new ExecutorInfo(99.9, 14095, 10, 0, 10, 0);
+        });
+    when(this.apiGateway.callForJsonType(eq("host2"), anyInt(), any(), any(), any()))
+        .thenReturn(new ExecutorInfo(50, 14095, 5, 0, 10, 0));
+
+    final List<Future<?>> firstRound = this.service.heartbeatAll();
+    firstRound.get(1).get(10, TimeUnit.SECONDS);
+    heartbeatAll();
+    release.countDown();
+    firstRound.get(0).get(10, TimeUnit.SECONDS);
+
+    verify(this.apiGateway, times(1))
+        .callForJsonType(eq("host1"), anyInt(), any(), any(), any());
+    verify(this.apiGateway, times(2))
+        .callForJsonType(eq("host2"), anyInt(), any(), any(), any());
+    assertThat(this.executor1.getExecutorInfo()).isNotNull();
+  }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.metrics.MetricsManager;
+import azkaban.utils.Props;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.Test;
+
+public class ExecutorHttpClientPoolTest {
+
+  @Test
+  public void testPoolMetricsRegistered() {
+    final MetricRegistry registry = new MetricRegistry();
+    final ExecutorHttpClientPool pool =
+        new ExecutorHttpClientPool(new Props(), new MetricsManager(registry));
+
+    assertThat(pool.getHttpClient()).isNotNull();
+    assertThat(registry.getGauges().get("executor-client-leased-connections").getValue())
+        .isEqualTo(0);
+    assertThat(registry.getGauges().get("executor-client-pending-connections").getValue())
+        .isEqualTo(0);
+    assertThat(registry.getGauges().get("executor-client-available-connections").getValue())
+        .isEqualTo(0);
+    assertThat(registry.getHistograms()).containsKey("executor-client-connect-time-ms");
+  }
+}
@@ -16,12 +16,18 @@
 
 package azkaban.executor;
 
+import static azkaban.test.TestUtils.await;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -30,11 +36,13 @@ import azkaban.metrics.MetricsManager;
 import azkaban.user.User;
 import azkaban.utils.AbstractMailerTest;
 import azkaban.utils.Emailer;
+import azkaban.utils.JSONUtils;
 import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import azkaban.utils.TestUtils;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.ImmutableMap;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -43,6 +51,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Assert;
@@ -68,10 +78,15 @@ public class ExecutorManagerTest {
   private ExecutorApiGateway apiGateway;
 
   @Before
-  public void setup() {
+  public void setup() throws Exception {
     this.props = AbstractMailerTest.createMailProperties();
     this.alertHolder = new AlerterHolder(this.props, new Emailer(this.props, this.commonMetrics));
     this.loader = new MockExecutorLoader();
+    this.apiGateway = mock(ExecutorApiGateway.class);
+    // the executors answer their heartbeats, an executor without stats isn't dispatched to
+    doAnswer(invocation -> new ExecutorInfo(99.9, 14095, 50, 0, 10, 0)).when(this.apiGateway)
+        .callForJsonType(any(), anyInt(), eq("/serverStatistics"), any(),
+            eq(ExecutorInfo.class));
   }
 
   @After
@@ -308,6 +323,184 @@ public class ExecutorManagerTest {
     verify(this.loader).addActiveExecutableReference(any());
   }
 
+  // Accept all executions of the batches
+  @SuppressWarnings("unchecked")
+  private void mockBatchResponse() throws Exception {
+    doAnswer(invocation -> {
+      final Pair<String, String> executionIds = invocation.getArgument(5);
+      final Map<String, Object> results = new HashMap<>();
+      for (final Object execId : (List<?>) JSONUtils.parseJSONFromString(
+          executionIds.getSecond())) {
+        results.put(String.valueOf(execId), ConnectorParams.RESPONSE_SUCCESS);
+      }
+      return ImmutableMap.of(ConnectorParams.RESPONSE_BATCH_RESULTS, results);
+    }).when(this.apiGateway).callWithExecutionId(
+        any(), anyInt(), eq(ConnectorParams.EXECUTE_BATCH_ACTION), any(), any(), any());
+  }
+
+  // Answers the long-polls of the update streams once the latch is released
+  @SuppressWarnings("unchecked")
+  private void mockUpdateStreamResponse(final CountDownLatch answer, final long maxWaitMs)
+      throws Exception {
+    doAnswer(invocation -> {
+      answer.await(maxWaitMs, TimeUnit.MILLISECONDS);
+      return ImmutableMap.of(ConnectorParams.RESPONSE_UPDATE_EPOCH, 1L,
+          ConnectorParams.RESPONSE_UPDATE_SEQUENCE, 5L,
+          ConnectorParams.RESPONSE_UPDATED_FLOWS, Collections.emptyList());
+    }).when(this.apiGateway).callWithExecutionId(any(), anyInt(),
+        eq(ConnectorParams.UPDATE_ACTION), any(), any(), any(), any(), any(), any(), any());
+  }
+
+  /* Matches the execution list param of the update calls asking for the execution */
+  private static Pair<String, String> executionIdsWith(final int execId) {
+    return argThat(param -> param != null
+        && ConnectorParams.EXEC_ID_LIST_PARAM.equals(param.getFirst())
+        && ((List<?>) JSONUtils.parseJSONFromStringQuiet(param.getSecond())).contains(execId));
+  }
+
+  // Verifies a long-poll of the update stream asking for the execution
+  @SuppressWarnings("unchecked")
+  private void verifyStreamed(final int execId, final Pair<String, String> sequence)
+      throws Exception {
+    verify(this.apiGateway, atLeastOnce()).callWithExecutionId(any(), anyInt(),
+        eq(ConnectorParams.UPDATE_ACTION), any(), any(), executionIdsWith(execId), any(), any(),
+        eq(sequence), any());
+  }
+
+  // Verifies a poll of the ExecutingManagerUpdaterThread asking for the execution
+  @SuppressWarnings("unchecked")
+  private void verifyPolled(final int execId) throws Exception {
+    verify(this.apiGateway, atLeastOnce()).callWithExecutionId(any(), anyInt(),
+        eq(ConnectorParams.UPDATE_ACTION), any(), any(), executionIdsWith(execId), any());
+  }
+
+  @Test
+  public void testUpdateStreamResyncsWhenANewFlowIsWatched() throws Exception {
+    this.props.put("azkaban.executor.update.stream.enabled", "true");
+    testSetUpForRunningFlows();
+    mockUpdateResponse(ImmutableMap.of(ConnectorParams.RESPONSE_UPDATED_FLOWS,
+        Collections.emptyList()));
+    mockUpdateStreamResponse(new CountDownLatch(1), 20);
+    final Pair<String, String> resync = new Pair<>(ConnectorParams.UPDATE_SEQUENCE_PARAM, "-1");
+    final Pair<String, String> resumed = new Pair<>(ConnectorParams.UPDATE_SEQUENCE_PARAM, "5");
+    await().untilAsserted(() -> verifyStreamed(1, resumed));
+
+    final ExecutableFlow flow3 = TestUtils.createExecutableFlow("exectest1", "exec1");
+    flow3.setExecutionId(3);
+    this.manager.submitExecutableFlow(flow3, this.user.getUserId());
+
+    // the first request watching exec 3 makes the executor send all the watched flows
+    await().untilAsserted(() -> verifyStreamed(3, resync));
+  }
+
+  @Test
+  public void testFlowDispatchedDuringLongPollIsPolled() throws Exception {
+    this.props.put("azkaban.executor.update.stream.enabled", "true");
+    testSetUpForRunningFlows();
+    mockUpdateResponse(ImmutableMap.of(ConnectorParams.RESPONSE_UPDATED_FLOWS,
+        Collections.emptyList()));
+    // the executors don't answer the long-polls while the flow is dispatched
+    final CountDownLatch answer = new CountDownLatch(1);
+    try {
+      mockUpdateStreamResponse(answer, 10000);
+      final Pair<String, String> resync =
+          new Pair<>(ConnectorParams.UPDATE_SEQUENCE_PARAM, "-1");
+      await().untilAsserted(() -> {
+        verifyStreamed(1, resync);
+        verifyStreamed(2, resync);
+      });
+
+      final ExecutableFlow flow3 = TestUtils.createExecutableFlow("exectest1", "exec1");
+      flow3.setExecutionId(3);
+      this.manager.submitExecutableFlow(flow3, this.user.getUserId());
+
+      // exec 3 is polled until a long-poll watches it
+      await().untilAsserted(() -> verifyPolled(3));
+    } finally {
+      answer.countDown();
+    }
+  }
+
+  @Test
+  public void testBatchDispatch() throws Exception {
+    this.props.put(ExecutorManager.AZKABAN_QUEUEPROCESSING_DISPATCH_BATCH_SIZE, 10);
+    testSetUpForRunningFlows();
+    mockBatchResponse();
+
+    final ExecutableFlow flow3 = TestUtils.createExecutableFlow("exectest1", "exec1");
+    flow3.setExecutionId(3);
+    final ExecutableFlow flow4 = TestUtils.createExecutableFlow("exectest1", "exec2");
+    flow4.setExecutionId(4);
+    this.manager.submitExecutableFlow(flow3, this.user.getUserId());
+    this.manager.submitExecutableFlow(flow4, this.user.getUserId());
+
+    await().untilAsserted(() -> {
+      verify(this.loader).assignExecutor(anyInt(), eq(3));
+      verify(this.loader).assignExecutor(anyInt(), eq(4));
+    });
+    verify(this.apiGateway, never()).callWithExecutable(any(), any(), any());
+    verify(this.loader, never()).unassignExecutor(anyInt());
+    assertThat(this.manager.getRunningFlows(flow3.getProjectId(), flow3.getFlowId()))
+        .contains(3);
+  }
+
+  @Test
+  public void testBatchIsSpreadOverExecutorsWithFreeSlots() throws Exception {
+    this.props.put(ExecutorManager.AZKABAN_QUEUEPROCESSING_DISPATCH_BATCH_SIZE, 10);
+    // both executors have room for one more flow
+    doAnswer(invocation -> new ExecutorInfo(99.9, 14095, 1, 0, 10, 0)).when(this.apiGateway)
+        .callForJsonType(any(), anyInt(), eq("/serverStatistics"), any(),
+            eq(ExecutorInfo.class));
+    testSetUpForRunningFlows();
+    mockBatchResponse();
+
+    final ExecutableFlow flow3 = TestUtils.createExecutableFlow("exectest1", "exec1");
+    flow3.setExecutionId(3);
+    final ExecutableFlow flow4 = TestUtils.createExecutableFlow("exectest1", "exec2");
+    flow4.setExecutionId(4);
+    this.manager.submitExecutableFlow(flow3, this.user.getUserId());
+    this.manager.submitExecutableFlow(flow4, this.user.getUserId());
+
+    await().untilAsserted(() -> {
+      verify(this.loader).assignExecutor(anyInt(), eq(3));
+      verify(this.loader).assignExecutor(anyInt(), eq(4));
+    });
+    verify(this.loader).assignExecutor(eq(1), anyInt());
+    verify(this.loader).assignExecutor(eq(2), anyInt());
+  }
+
+  @Test
+  public void testFailedBatchDispatchOnlyRetriesTheFlowsNotTaken() throws Exception {
+    this.props.put(ExecutorManager.AZKABAN_QUEUEPROCESSING_DISPATCH_BATCH_SIZE, 10);
+    testSetUpForRunningFlows();
+    // the executor took exec 3 but the answer timed out
+    doThrow(new ExecutorManagerException(new SocketTimeoutException("Read timed out")))
+        .when(this.apiGateway).callWithExecutionId(
+        any(), anyInt(), eq(ConnectorParams.EXECUTE_BATCH_ACTION), any(), any(), any());
+    doReturn(ImmutableMap.of(ConnectorParams.STATUS_PARAM, Status.RUNNING.toString()))
+        .when(this.apiGateway).callWithExecutionId(
+        any(), anyInt(), eq(ConnectorParams.STATUS_ACTION), eq(3), any());
+    doReturn(ImmutableMap.of(ConnectorParams.STATUS_PARAM, ConnectorParams.RESPONSE_NOTFOUND))
+        .when(this.apiGateway).callWithExecutionId(
+        any(), anyInt(), eq(ConnectorParams.STATUS_ACTION), eq(4), any());
+
+    final ExecutableFlow flow3 = TestUtils.createExecutableFlow("exectest1", "exec1");
+    flow3.setExecutionId(3);
+    final ExecutableFlow flow4 = TestUtils.createExecutableFlow("exectest1", "exec2");
+    flow4.setExecutionId(4);
+    this.manager.submitExecutableFlow(flow3, this.user.getUserId());
+    this.manager.submitExecutableFlow(flow4, this.user.getUserId());
+
+    // exec 4 is dispatched again on its own
+    await().untilAsserted(
+        () -> verify(this.apiGateway).callWithExecutable(eq(flow4), any(), any()));
+    verify(this.loader).unassignExecutor(4);
+    verify(this.loader, never()).unassignExecutor(3);
+    verify(this.apiGateway, never()).callWithExecutable(eq(flow3), any(), any());
+    assertThat(this.manager.getRunningFlows(flow3.getProjectId(), flow3.getFlowId()))
+        .contains(3);
+  }
+
   @Ignore
   @Test
   public void testFetchAllActiveFlows() throws Exception {
@@ -358,7 +551,6 @@ public class ExecutorManagerTest {
    */
   private void testSetUpForRunningFlows() throws Exception {
     this.loader = mock(ExecutorLoader.class);
-    this.apiGateway = mock(ExecutorApiGateway.class);
     this.user = TestUtils.getTestUser();
     this.props.put(ExecutorManager.AZKABAN_USE_MULTIPLE_EXECUTORS, "true");
     //To test runningFlows, AZKABAN_QUEUEPROCESSING_ENABLED should be set to true
@@ -388,7 +580,7 @@ public class ExecutorManagerTest {
   }
 
   private ExecutableFlow waitFlowFinished(final ExecutableFlow flow) throws Exception {
-    azkaban.test.TestUtils.await().untilAsserted(() -> assertThat(getFlowStatus(flow))
+    await().untilAsserted(() -> assertThat(getFlowStatus(flow))
         .matches(Status::isStatusFinished, "isStatusFinished"));
     return fetchFlow(flow);
   }
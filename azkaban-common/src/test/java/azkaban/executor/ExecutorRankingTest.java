@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.executor.selector.ExecutorComparator;
+import azkaban.executor.selector.ExecutorFilter;
+import azkaban.executor.selector.ExecutorRanking;
+import azkaban.executor.selector.ExecutorSelector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecutorRankingTest {
+
+  private final List<Executor> executors = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    this.executors.clear();
+    this.executors.add(createExecutor(1, 3));
+    this.executors.add(createExecutor(2, 2));
+    this.executors.add(createExecutor(3, 2));
+    this.executors.add(createExecutor(4, 0));
+  }
+
+  private Executor createExecutor(final int id, final int remainingFlowCapacity) {
+    final Executor executor = new Executor(id, "host" + id, 80, true);
+    executor.setExecutorInfo(new ExecutorInfo(99.9, 14095, remainingFlowCapacity, 0, 10, 0));
+    return executor;
+  }
+
+  private ExecutorRanking createRanking() {
+    final Map<String, Integer> comparatorMap = new HashMap<>();
+    comparatorMap.put("NumberOfAssignedFlowComparator", 1);
+    return new ExecutorRanking(Collections.singletonList("StaticRemainingFlowSize"),
+        comparatorMap, this.executors);
+  }
+
+  @Test
+  public void testFilteredExecutorsAreNotRanked() throws Exception {
+    final ExecutorRanking ranking = createRanking();
+    assertThat(ranking.size()).isEqualTo(3);
+    assertThat(ranking.getBest(Collections.singletonList(this.executors.get(3)))).isNull();
+    assertThat(ranking.getBest(Collections.emptyList())).isNull();
+  }
+
+  @Test
+  public void testGetBestAmongCandidates() throws Exception {
+    final ExecutorRanking ranking = createRanking();
+    assertThat(ranking.getBest(this.executors)).isEqualTo(this.executors.get(0));
+    assertThat(ranking.getBest(Arrays.asList(this.executors.get(1), this.executors.get(3))))
+        .isEqualTo(this.executors.get(1));
+  }
+
+  @Test
+  public void testDispatchesSpreadOverExecutors() throws Exception {
+    final ExecutorRanking ranking = createRanking();
+    final Map<Integer, Integer> dispatchCounts = new HashMap<>();
+    Executor executor;
+    while ((executor = ranking.getBest(this.executors)) != null) {
+      dispatchCounts.merge(executor.getId(), 1, Integer::sum);
+      ranking.markDispatched(executor);
+    }
+
+    // every executor took as many flows as it had capacity for, one at a time.
+    assertThat(dispatchCounts).containsEntry(1, 3).containsEntry(2, 2).containsEntry(3, 2)
+        .doesNotContainKey(4);
+    assertThat(ranking.size()).isEqualTo(0);
+    for (final Executor ranked : this.executors.subList(0, 3)) {
+      final ExecutorInfo rankedInfo = ranking.getRankedExecutorInfo(ranked);
+      assertThat(rankedInfo.getRemainingFlowCapacity()).isEqualTo(0);
+      assertThat(rankedInfo.getNumberOfAssignedFlows())
+          .isEqualTo(dispatchCounts.get(ranked.getId()));
+      assertThat(rankedInfo.getLastDispatchedTime()).isGreaterThan(0);
+      // the stats reported by the executor are left untouched
+      assertThat(ranked.getExecutorInfo().getNumberOfAssignedFlows()).isEqualTo(0);
+    }
+    assertThat(ranking.getRankedExecutorInfo(this.executors.get(3))).isNull();
+  }
+
+  @Test
+  public void testCancelDispatch() throws Exception {
+    final ExecutorRanking ranking = createRanking();
+    ranking.markDispatched(this.executors.get(1));
+    ranking.markDispatched(this.executors.get(1));
+    // executor 2 is full and out of the ranking
+    assertThat(ranking.getBest(Collections.singletonList(this.executors.get(1)))).isNull();
+
+    ranking.cancelDispatch(this.executors.get(1));
+    assertThat(ranking.getBest(Collections.singletonList(this.executors.get(1))))
+        .isEqualTo(this.executors.get(1));
+    final ExecutorInfo rankedInfo = ranking.getRankedExecutorInfo(this.executors.get(1));
+    assertThat(rankedInfo.getRemainingFlowCapacity()).isEqualTo(1);
+    assertThat(rankedInfo.getNumberOfAssignedFlows()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFullExecutorsAreNotRanked() throws Exception {
+    final ExecutorRanking ranking = new ExecutorRanking(null, null, this.executors);
+    assertThat(ranking.size()).isEqualTo(3);
+    assertThat(ranking.getBest(Collections.singleton(this.executors.get(3)))).isNull();
+    // a full executor keeps its stats, to be ranked again once it reports a free slot
+    assertThat(ranking.getRankedExecutorInfo(this.executors.get(3))).isNotNull();
+  }
+
+  @Test
+  public void testExecutorsWithoutStatsAreNotRanked() throws Exception {
+    final Executor executor = new Executor(5, "host5", 80, true);
+    final ExecutorRanking ranking = new ExecutorRanking(null, null,
+        Arrays.asList(executor, this.executors.get(0)));
+    assertThat(ranking.size()).isEqualTo(1);
+    assertThat(ranking.getBest(Collections.singleton(executor))).isNull();
+
+    // the stats of executor 1 were cleared after a failed heartbeat
+    this.executors.get(0).setExecutorInfo(null, null);
+    ranking.refresh(this.executors.get(0));
+    assertThat(ranking.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRankingIsNotAffectedByRefreshedStats() throws Exception {
+    final ExecutorRanking ranking = createRanking();
+    // the stats of executor 2 are refreshed after the ranking was built
+    this.executors.get(1)
+        .setExecutorInfo(new ExecutorInfo(99.9, 14095, 10, 0, 10, 0));
+    assertThat(ranking.getBest(this.executors)).isEqualTo(this.executors.get(0));
+    ranking.markDispatched(this.executors.get(0));
+    assertThat(ranking.getRankedExecutorInfo(this.executors.get(0)).getRemainingFlowCapacity())
+        .isEqualTo(2);
+    assertThat(this.executors.get(0).getExecutorInfo().getRemainingFlowCapacity()).isEqualTo(3);
+  }
+
+  @Test
+  public void testRefresh() throws Exception {
+    final ExecutorRanking ranking = createRanking();
+    ranking.markDispatched(this.executors.get(0));
+
+    // executor 4 got free slots and executor 1 is full
+    this.executors.get(3).setExecutorInfo(new ExecutorInfo(99.9, 14095, 5, 0, 10, 0));
+    ranking.refresh(this.executors.get(3));
+    this.executors.get(0).setExecutorInfo(new ExecutorInfo(99.9, 14095, 0, 0, 10, 3));
+    ranking.refresh(this.executors.get(0));
+
+    assertThat(ranking.size()).isEqualTo(3);
+    assertThat(ranking.getBest(Collections.singletonList(this.executors.get(3))))
+        .isEqualTo(this.executors.get(3));
+    assertThat(ranking.getBest(Collections.singletonList(this.executors.get(0)))).isNull();
+    assertThat(ranking.getRankedExecutorInfo(this.executors.get(0))).isNull();
+  }
+
+  @Test
+  public void testExecutorWithStaleStatsIsDropped() throws Exception {
+    final Executor executor = createExecutor(5, 10);
+    executor.setExecutorInfo(executor.getExecutorInfo(), new Date());
+    final ExecutorRanking ranking = new ExecutorRanking(Collections.singletonList("StatsFreshness"),
+        null, Arrays.asList(executor, this.executors.get(0)));
+    assertThat(ranking.size()).isEqualTo(2);
+
+    this.executors.get(0).setExecutorInfo(this.executors.get(0).getExecutorInfo(),
+        new Date(System.currentTimeMillis() - 60 * 60 * 1000L));
+    ranking.refresh(this.executors.get(0));
+    assertThat(ranking.size()).isEqualTo(1);
+    assertThat(ranking.getBest(Collections.singletonList(this.executors.get(0)))).isNull();
+    assertThat(ranking.getBest(this.executors)).isNull();
+  }
+
+  @Test
+  public void testMaxStatsAgeIsConfigurable() throws Exception {
+    final Executor executor = createExecutor(5, 10);
+    executor.setExecutorInfo(executor.getExecutorInfo(),
+        new Date(System.currentTimeMillis() - 60 * 1000L));
+    assertThat(new ExecutorRanking(Collections.singletonList("StatsFreshness"), null,
+        Collections.singletonList(executor)).size()).isEqualTo(1);
+    assertThat(new ExecutorRanking(Collections.singletonList("StatsFreshness"), null,
+        Collections.singletonList(executor), 30 * 1000L).size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testMatchesExecutorSelector() throws Exception {
+    final List<String> filterList = new ArrayList<>(ExecutorFilter.getAvailableFilterNames());
+    final Map<String, Integer> comparatorMap = new HashMap<>();
+    for (final String name : ExecutorComparator.getAvailableComparatorNames()) {
+      comparatorMap.put(name, 1);
+    }
+    final List<Executor> executorList = new ArrayList<>();
+    executorList.add(new Executor(1, "host1", 80, true));
+    executorList.add(new Executor(2, "host2", 80, true));
+    executorList.add(new Executor(3, "host3", 80, true));
+    executorList.get(0)
+        .setExecutorInfo(new ExecutorInfo(99.9, 14095, 50, System.currentTimeMillis(), 89, 0));
+    executorList.get(1)
+        .setExecutorInfo(new ExecutorInfo(50, 14095, 50, System.currentTimeMillis(), 90, 0));
+    executorList.get(2)
+        .setExecutorInfo(new ExecutorInfo(99.9, 14095, 50, System.currentTimeMillis(), 90, 0));
+
+    final ExecutorRanking ranking = new ExecutorRanking(filterList, comparatorMap, executorList);
+    assertThat(ranking.getBest(executorList)).isEqualTo(
+        new ExecutorSelector(filterList, comparatorMap).getBest(executorList,
+            new ExecutableFlow()));
+  }
+}
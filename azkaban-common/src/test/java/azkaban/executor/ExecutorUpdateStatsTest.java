@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ExecutorUpdateStatsTest {
+
+  @Test
+  public void testRecordCalls() {
+    final ExecutorUpdateStats stats = new ExecutorUpdateStats();
+    assertThat(stats.getAvgLatencyMs()).isEqualTo(0);
+
+    stats.recordCall(100, true);
+    stats.recordCall(300, false);
+    stats.recordCall(200, true);
+    stats.recordTimeout();
+
+    assertThat(stats.getNumCalls()).isEqualTo(3);
+    assertThat(stats.getNumFailures()).isEqualTo(1);
+    assertThat(stats.getNumTimeouts()).isEqualTo(1);
+    assertThat(stats.getLastLatencyMs()).isEqualTo(200);
+    assertThat(stats.getAvgLatencyMs()).isEqualTo(200);
+    assertThat(stats.getMaxLatencyMs()).isEqualTo(300);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.utils.Pair;
+import azkaban.utils.TestUtils;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class FairShareQueuePolicyTest {
+
+  private static Pair<ExecutionReference, ExecutableFlow> createPair(final String user,
+      final int execId) throws IOException {
+    final ExecutableFlow flow = TestUtils.createExecutableFlow("exectest1", "exec1");
+    flow.setExecutionId(execId);
+    flow.setSubmitUser(user);
+    flow.setUpdateTime(0);
+    return new Pair<>(new ExecutionReference(execId), flow);
+  }
+
+  @Test
+  public void testWeightedShares() throws Exception {
+    final FairShareQueuePolicy policy = new FairShareQueuePolicy(
+        new ExecutableFlowPriorityComparator(), FairShareQueuePolicy.TENANT_USER,
+        ImmutableMap.of("userA", 2), 0, Collections.emptyMap());
+    for (int i = 1; i <= 6; i++) {
+      policy.add(createPair("userA", i));
+      policy.add(createPair("userB", 10 + i));
+    }
+    assertThat(policy.size()).isEqualTo(12);
+
+    final Map<String, Integer> dispatched = new HashMap<>();
+    for (int i = 0; i < 6; i++) {
+      dispatched.merge(policy.poll().getSecond().getSubmitUser(), 1, Integer::sum);
+    }
+    assertThat(dispatched).containsEntry("userA", 4).containsEntry("userB", 2);
+    assertThat(policy.size()).isEqualTo(6);
+  }
+
+  @Test
+  public void testBackloggedTenantDoesNotStarveOthers() throws Exception {
+    final FairShareQueuePolicy policy = new FairShareQueuePolicy(
+        new ExecutableFlowPriorityComparator(), FairShareQueuePolicy.TENANT_USER);
+    for (int i = 1; i <= 100; i++) {
+      policy.add(createPair("backfill", i));
+    }
+    for (int i = 0; i < 10; i++) {
+      policy.poll();
+    }
+
+    // a tenant that shows up later doesn't wait for the backlog of the other one
+    policy.add(createPair("userB", 1000));
+    assertThat(policy.poll().getSecond().getSubmitUser()).isEqualTo("userB");
+  }
+
+  @Test
+  public void testMaxRunningFlows() throws Exception {
+    final FairShareQueuePolicy policy = new FairShareQueuePolicy(
+        new ExecutableFlowPriorityComparator(), FairShareQueuePolicy.TENANT_USER,
+        Collections.emptyMap(), 0, ImmutableMap.of("userA", 1));
+    final Pair<ExecutionReference, ExecutableFlow> pairA1 = createPair("userA", 1);
+    final Pair<ExecutionReference, ExecutableFlow> pairA2 = createPair("userA", 2);
+    final Pair<ExecutionReference, ExecutableFlow> pairB3 = createPair("userB", 3);
+    policy.add(pairA1);
+    policy.add(pairA2);
+    policy.add(pairB3);
+
+    assertThat(policy.poll()).isEqualTo(pairA1);
+    assertThat(policy.poll()).isEqualTo(pairB3);
+    assertThat(policy.poll()).isNull();
+    assertThat(policy.getRunningFlowCounts()).containsEntry("userA", 1).containsEntry("userB", 1);
+
+    // a flow that comes back to the queue doesn't count as running
+    policy.add(pairA1);
+    assertThat(policy.poll()).isEqualTo(pairA1);
+
+    policy.flowFinished(1);
+    assertThat(policy.poll()).isEqualTo(pairA2);
+  }
+
+  @Test
+  public void testFlowRunningCountsTowardsMaxRunningFlows() throws Exception {
+    final FairShareQueuePolicy policy = new FairShareQueuePolicy(
+        new ExecutableFlowPriorityComparator(), FairShareQueuePolicy.TENANT_USER,
+        Collections.emptyMap(), 1, Collections.emptyMap());
+    policy.flowRunning(createPair("userA", 1).getSecond());
+    final Pair<ExecutionReference, ExecutableFlow> pair = createPair("userA", 2);
+    policy.add(pair);
+    assertThat(policy.poll()).isNull();
+
+    policy.flowFinished(1);
+    assertThat(policy.poll()).isEqualTo(pair);
+  }
+
+  @Test
+  public void testRemove() throws Exception {
+    final FairShareQueuePolicy policy = new FairShareQueuePolicy(
+        new ExecutableFlowPriorityComparator(), FairShareQueuePolicy.TENANT_USER);
+    final Pair<ExecutionReference, ExecutableFlow> pair = createPair("userA", 1);
+    policy.add(pair);
+    assertThat(policy.remove(pair)).isTrue();
+    assertThat(policy.remove(pair)).isFalse();
+    assertThat(policy.size()).isEqualTo(0);
+    assertThat(policy.poll()).isNull();
+  }
+}
@@ -22,6 +22,7 @@ import azkaban.utils.Pair;
 import azkaban.utils.Props;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Date;
@@ -117,6 +118,14 @@ public class MockExecutorLoader implements ExecutorLoader {
     }
   }
 
+  @Override
+  public void uploadLogChunk(final int execId, final String name, final int attempt,
+      final int startByte, final byte[] buffer, final int length)
+      throws ExecutorManagerException {
+    logger.info("Uploaded log part for [" + name + "]:[" + execId + "] starting at " + startByte
+        + ":\n" + new String(buffer, 0, length, StandardCharsets.UTF_8));
+  }
+
   @Override
   public void updateExecutableFlow(final ExecutableFlow flow)
       throws ExecutorManagerException {
@@ -126,6 +135,25 @@ public class MockExecutorLoader implements ExecutorLoader {
     this.flowUpdateCount++;
   }
 
+  @Override
+  public void appendExecutableFlowUpdate(final ExecutableFlow flow, final long sinceUpdateTime)
+      throws ExecutorManagerException {
+    final ExecutableFlow toUpdate = this.flows.get(flow.getExecutionId());
+
+    toUpdate.applyUpdateObject(flow.toUpdateObject(sinceUpdateTime));
+    this.flowUpdateCount++;
+  }
+
+  @Override
+  public void compactExecutableFlowUpdates(final int execId) throws ExecutorManagerException {
+    // the updates are applied as soon as they are appended
+  }
+
+  @Override
+  public int compactFinishedExecutableFlowUpdates() throws ExecutorManagerException {
+    return 0;
+  }
+
   @Override
   public void uploadExecutableNode(final ExecutableNode node, final Props inputParams)
       throws ExecutorManagerException {
@@ -20,7 +20,9 @@ import azkaban.utils.Pair;
 import azkaban.utils.TestUtils;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -198,4 +200,39 @@ public class QueuedExecutionsTest {
           queue.getReference(pair.getFirst().getExecId()));
     }
   }
+
+  /* Test that flows held back by the queue policy are released once a running flow finishes */
+  @Test
+  public void testFlowFinishedReleasesHeldBackFlows() throws IOException,
+      ExecutorManagerException, InterruptedException {
+    final QueuedExecutions queue = new QueuedExecutions(5, new FairShareQueuePolicy(
+        new ExecutableFlowPriorityComparator(), FairShareQueuePolicy.TENANT_PROJECT,
+        Collections.emptyMap(), 1, Collections.emptyMap()));
+    final List<Pair<ExecutionReference, ExecutableFlow>> dataList = getDummyData();
+    queue.enqueueAll(dataList);
+
+    Assert.assertEquals(dataList.get(0), queue.fetchHead());
+    // both flows belong to the same project, which can only run one flow at a time
+    Assert.assertNull(queue.pollHead());
+    Assert.assertEquals(1, queue.size());
+    Assert.assertTrue(queue.hasExecution(2));
+
+    queue.flowFinished(1);
+    Assert.assertEquals(dataList.get(1), queue.fetchHead());
+  }
+
+  /* Test getTenantStats method */
+  @Test
+  public void testGetTenantStats() throws IOException, ExecutorManagerException {
+    final QueuedExecutions queue = new QueuedExecutions(5);
+    final List<Pair<ExecutionReference, ExecutableFlow>> dataList = getDummyData();
+    queue.enqueueAll(dataList);
+
+    final Map<String, QueueTenantStats> stats = queue.getTenantStats();
+    Assert.assertEquals(1, stats.size());
+    final QueueTenantStats projectStats =
+        stats.get(dataList.get(0).getSecond().getProjectName());
+    Assert.assertEquals(2, projectStats.getQueuedFlows());
+    Assert.assertTrue(projectStats.getMaxWaitMs() >= projectStats.getAvgWaitMs());
+  }
 }
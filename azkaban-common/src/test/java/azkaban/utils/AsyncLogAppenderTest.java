@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import azkaban.utils.AsyncLogAppender.OverflowPolicy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncLogAppenderTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private static Logger createLogger(final String name, final AsyncLogAppender appender) {
+    final Logger logger = Logger.getLogger(AsyncLogAppenderTest.class.getName() + "." + name);
+    logger.setAdditivity(false);
+    logger.addAppender(appender);
+    return logger;
+  }
+
+  private static List<String> readLines(final File file) throws IOException {
+    return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testAllEventsAreWrittenBeforeClose() throws Exception {
+    final File file = new File(this.temp.getRoot(), "job.log");
+    final AsyncLogAppender appender = new AsyncLogAppender(
+        new FileAppender(new PatternLayout("%m%n"), file.getAbsolutePath(), false), 16,
+        OverflowPolicy.BLOCK);
+    final Logger logger = createLogger("block", appender);
+
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      logger.info("line " + i);
+      expected.add("line " + i);
+    }
+    logger.removeAppender(appender);
+    appender.close();
+
+    assertThat(readLines(file)).isEqualTo(expected);
+    assertThat(appender.getDroppedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testEventsAreDroppedAndCountedWhenFull() throws Exception {
+    final File file = new File(this.temp.getRoot(), "job.log");
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch slowDisk = new CountDownLatch(1);
+    final FileAppender fileAppender = new FileAppender(new PatternLayout("%m%n"),
+        file.getAbsolutePath(), false) {
+      @Override
+      protected void subAppend(final LoggingEvent event) {
+        writing.countDown();
+        try {
+          slowDisk.await();
+        } catch (final InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        super.subAppend(event);
+      }
+    };
+    final AsyncLogAppender appender = new AsyncLogAppender(fileAppender, 4, OverflowPolicy.DROP);
+    final Logger logger = createLogger("drop", appender);
+
+    logger.info("first");
+    // the writer thread is stuck writing the first event, the next 4 events fill the buffer
+    assertThat(writing.await(10, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < 10; i++) {
+      logger.info("line " + i);
+    }
+    assertThat(appender.getDroppedCount()).isEqualTo(6);
+
+    slowDisk.countDown();
+    logger.removeAppender(appender);
+    appender.close();
+
+    assertThat(readLines(file)).containsExactly("first",
+        "6 log events dropped, the log buffer was full", "line 0", "line 1", "line 2", "line 3");
+  }
+
+  @Test
+  public void testPumpHoldsBackTheStreamWhileTheBufferIsFull() throws Exception {
+    final File file = new File(this.temp.getRoot(), "job.log");
+    final CountDownLatch slowDisk = new CountDownLatch(1);
+    final FileAppender fileAppender = new FileAppender(new PatternLayout("%m%n"),
+        file.getAbsolutePath(), false) {
+      @Override
+      protected void subAppend(final LoggingEvent event) {
+        try {
+          slowDisk.await();
+        } catch (final InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        super.subAppend(event);
+      }
+    };
+    final AsyncLogAppender appender = new AsyncLogAppender(fileAppender, 4, OverflowPolicy.BLOCK);
+    final Logger logger = createLogger("pump", appender);
+    final OutputPump pump = new OutputPump(1);
+    try {
+      final Process slowProcess = new ProcessBuilder("sh", "-c",
+          "i=0; while [ $i -lt 100 ]; do echo \"line $i\"; i=$((i+1)); done").start();
+      final OutputPump.Source slowSource = pump.register(slowProcess.getInputStream(),
+          slowProcess, new LogLineSink(logger, Level.INFO, 10));
+      slowProcess.waitFor();
+      final Process otherProcess = new ProcessBuilder("sh", "-c", "echo other").start();
+      final LogLineSink otherSink = new LogLineSink(null, Level.INFO, 10);
+      final OutputPump.Source otherSource = pump.register(otherProcess.getInputStream(),
+          otherProcess, otherSink);
+      otherProcess.waitFor();
+      otherSource.awaitCompletion(10000);
+
+      // the pump thread went on with the other stream while the buffer was full
+      assertThat(otherSource.isComplete()).isTrue();
+      assertThat(otherSink.getRecentLog()).isEqualTo("other");
+      assertThat(slowSource.isComplete()).isFalse();
+
+      slowDisk.countDown();
+      slowSource.awaitCompletion(10000);
+      assertThat(slowSource.isComplete()).isTrue();
+    } finally {
+      pump.shutdown();
+      slowDisk.countDown();
+      logger.removeAppender(appender);
+      appender.close();
+    }
+
+    final List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add("line " + i);
+    }
+    assertThat(readLines(file)).isEqualTo(expected);
+    assertThat(appender.getDroppedCount()).isEqualTo(0);
+  }
+}
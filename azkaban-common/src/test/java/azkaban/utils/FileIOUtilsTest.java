@@ -17,12 +17,19 @@
 package azkaban.utils;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import azkaban.utils.FileIOUtils.LinkMode;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.comparator.NameFileComparator;
@@ -96,6 +103,43 @@ public class FileIOUtilsTest {
     assertTrue(exception);
   }
 
+  @Test
+  public void testParallelHardlinkOfLargeTree() throws IOException {
+    for (int i = 0; i < 3000; i++) {
+      final File dir = new File(this.sourceDir, "dir" + i % 30);
+      dir.mkdirs();
+      Files.write(new File(dir, "file" + i).toPath(),
+          String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+    }
+    Files.write(new File(this.sourceDir, ".hidden").toPath(), new byte[]{1});
+
+    FileIOUtils.createDeepLinks(this.sourceDir, this.destDir, LinkMode.HARD_LINK, 4);
+
+    assertTrue(areDirsEqual(this.sourceDir, this.destDir, true));
+    assertTrue(Files.isSameFile(new File(this.sourceDir, "dir7/file7").toPath(),
+        new File(this.destDir, "dir7/file7").toPath()));
+    assertTrue(new File(this.destDir, ".hidden").exists());
+  }
+
+  @Test
+  public void testSymbolicLinkTree() throws IOException {
+    FileIOUtils.createDeepLinks(this.sourceDir, this.destDir, LinkMode.SYMBOLIC_LINK, 1);
+
+    assertTrue(areDirsEqual(this.sourceDir, this.destDir, true));
+    final Path link = new File(this.destDir, "testdir/b.out").toPath();
+    assertTrue(Files.isSymbolicLink(link));
+    assertEquals(new File(this.sourceDir, "testdir/b.out").getAbsoluteFile().toPath(),
+        Files.readSymbolicLink(link));
+    assertTrue(new File(this.destDir, "testdir").isDirectory());
+    assertFalse(Files.isSymbolicLink(new File(this.destDir, "testdir").toPath()));
+  }
+
+  @Test(expected = FileAlreadyExistsException.class)
+  public void testHardlinkOverExistingFile() throws IOException {
+    new File(this.destDir, "a.out").createNewFile();
+    FileIOUtils.createDeepHardlink(this.sourceDir, this.destDir);
+  }
+
   private boolean areDirsEqualUtil(final File file1, final File file2, final boolean isRoot,
       final boolean ignoreRoot)
       throws IOException {
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.log4j.Level;
+import org.junit.After;
+import org.junit.Test;
+
+public class OutputPumpTest {
+
+  private final OutputPump pump = new OutputPump(2);
+
+  @After
+  public void tearDown() {
+    this.pump.shutdown();
+  }
+
+  private static Process start(final String command) throws Exception {
+    final ProcessBuilder builder = new ProcessBuilder("sh", "-c", command);
+    builder.redirectErrorStream(true);
+    return builder.start();
+  }
+
+  @Test
+  public void testManyProcessesShareThePumpThreads() throws Exception {
+    final int numProcesses = 50;
+    final List<Process> processes = new ArrayList<>();
+    final List<LogLineSink> sinks = new ArrayList<>();
+    final List<OutputPump.Source> sources = new ArrayList<>();
+    final int threadsBefore = Thread.activeCount();
+    for (int i = 0; i < numProcesses; i++) {
+      final Process process = start(
+          "i=0; while [ $i -lt 1000 ]; do echo \"line $i\"; i=$((i+1)); done; printf 'last'");
+      final LogLineSink sink = new LogLineSink(null, Level.INFO, 3);
+      processes.add(process);
+      sinks.add(sink);
+      sources.add(this.pump.register(process.getInputStream(), process, sink));
+    }
+    // no thread is started per process, a gobbler per stream would have started 50 of them
+    assertThat(Thread.activeCount()).isLessThan(threadsBefore + numProcesses);
+
+    for (int i = 0; i < numProcesses; i++) {
+      processes.get(i).waitFor();
+      sources.get(i).awaitCompletion(10000);
+      assertThat(sources.get(i).isComplete()).isTrue();
+      assertThat(sinks.get(i).getRecentLog())
+          .isEqualTo(String.join(System.getProperty("line.separator"),
+              "line 998", "line 999", "last"));
+    }
+    assertThat(this.pump.getSourceCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testLineSeparators() throws Exception {
+    final Process process = start("printf 'a\\r\\nb\\rc\\n\\nd'");
+    final LogLineSink sink = new LogLineSink(null, Level.INFO, 10);
+    final OutputPump.Source source = this.pump
+        .register(process.getInputStream(), process, sink);
+    process.waitFor();
+    source.awaitCompletion(10000);
+
+    assertThat(sink.getRecentLog()).isEqualTo(
+        String.join(System.getProperty("line.separator"), "a", "b", "c", "", "d"));
+  }
+
+  @Test
+  public void testStreamIsReadToItsEndOnceTheProcessExited() throws Exception {
+    // the background child keeps the pipe open, only the exit of the process ends the stream
+    final Process process = start("echo a; (sleep 10) &");
+    final LogLineSink sink = new LogLineSink(null, Level.INFO, 10);
+    final OutputPump.Source source = this.pump
+        .register(process.getInputStream(), process, sink);
+    process.waitFor();
+    source.awaitCompletion(5000);
+
+    assertThat(source.isComplete()).isTrue();
+    assertThat(sink.getRecentLog()).isEqualTo("a");
+  }
+
+  @Test
+  public void testStopWaitingForAStream() throws Exception {
+    final Process process = start("sleep 10");
+    final OutputPump.Source source = this.pump
+        .register(process.getInputStream(), process, new LogLineSink(null, Level.INFO, 10));
+    try {
+      source.awaitCompletion(50);
+      assertThat(source.isComplete()).isFalse();
+      assertThat(this.pump.getSourceCount()).isEqualTo(0);
+    } finally {
+      process.destroy();
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import org.junit.Test;
+
+public class TailBufferTest {
+
+  private static final String SEPARATOR = System.getProperty("line.separator");
+
+  @Test
+  public void testLastLinesAreKept() {
+    final TailBuffer buffer = new TailBuffer(3, 1000);
+    assertThat(buffer.toString()).isEmpty();
+
+    buffer.appendLine("line1");
+    buffer.appendLine("line2");
+    assertThat(buffer.toString()).isEqualTo("line1" + SEPARATOR + "line2");
+
+    for (int i = 3; i <= 10; i++) {
+      buffer.appendLine("line" + i);
+    }
+    assertThat(buffer.toString()).isEqualTo(Joiner.on(SEPARATOR).join("line8", "line9", "line10"));
+    assertThat(buffer.size()).isEqualTo(buffer.toString().length());
+  }
+
+  @Test
+  public void testTailIsBoundedByCharacters() {
+    final TailBuffer buffer = new TailBuffer(30, 20);
+    buffer.appendLine("first");
+    buffer.appendLine(Strings.repeat("a", 1024 * 1024) + "0123456789");
+    // the huge line is cut to the exact tail
+    assertThat(buffer.toString()).isEqualTo("aaaaaaaaaa0123456789");
+
+    buffer.appendLine("end");
+    final String expected = "aaaaaaaaaa0123456789" + SEPARATOR + "end";
+    assertThat(buffer.toString()).isEqualTo(expected.substring(expected.length() - 20));
+    assertThat(buffer.appendTo(new StringBuilder("Stdout:")).toString())
+        .isEqualTo("Stdout:" + expected.substring(expected.length() - 20));
+  }
+
+  @Test
+  public void testArrayGrowsWithTheTail() {
+    final TailBuffer buffer = new TailBuffer(3, 64 * 1024);
+    for (int i = 0; i < 10000; i++) {
+      buffer.appendLine("line" + i);
+    }
+    // the few last lines don't need the whole array
+    assertThat(buffer.getCapacity()).isLessThan(1024);
+    assertThat(buffer.toString())
+        .isEqualTo(Joiner.on(SEPARATOR).join("line9997", "line9998", "line9999"));
+
+    final String longLine = Strings.repeat("0123456789", 1000);
+    buffer.appendLine(longLine);
+    assertThat(buffer.toString())
+        .isEqualTo(Joiner.on(SEPARATOR).join("line9998", "line9999", longLine));
+    buffer.appendLine(Strings.repeat("a", 100 * 1024));
+    assertThat(buffer.getCapacity()).isEqualTo(64 * 1024);
+    assertThat(buffer.toString()).isEqualTo(Strings.repeat("a", 64 * 1024));
+  }
+
+  @Test
+  public void testEmptyLines() {
+    final TailBuffer buffer = new TailBuffer(2, 100);
+    buffer.appendLine("a");
+    buffer.appendLine("");
+    buffer.appendLine("");
+    assertThat(buffer.toString()).isEqualTo(SEPARATOR);
+  }
+}
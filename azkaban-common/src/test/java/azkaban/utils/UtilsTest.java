@@ -16,15 +16,80 @@
 
 package azkaban.utils;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 import org.joda.time.DateTimeZone;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Test class for azkaban.utils.Utils
  */
 public class UtilsTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  /* Creates a zip of the given entry names, each file containing its own name */
+  private File createZip(final String... names) throws IOException {
+    final File zip = this.temp.newFile();
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      for (final String name : names) {
+        out.putNextEntry(new ZipEntry(name));
+        if (!name.endsWith("/")) {
+          out.write(name.getBytes(StandardCharsets.UTF_8));
+        }
+        out.closeEntry();
+      }
+    }
+    return zip;
+  }
+
+  private static String read(final File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  /* Test extraction of an archive large enough to be extracted by several threads */
+  @Test
+  public void testParallelUnzip() throws IOException {
+    final String[] names = new String[1001];
+    names[0] = "empty/";
+    for (int i = 1; i < names.length; i++) {
+      names[i] = "dir" + i % 10 + "/sub/file" + i + ".txt";
+    }
+    final File dest = this.temp.newFolder();
+    try (ZipFile zip = new ZipFile(createZip(names))) {
+      Utils.unzip(zip, dest, 4);
+    }
+
+    Assert.assertTrue(new File(dest, "empty").isDirectory());
+    for (int i = 1; i < names.length; i++) {
+      Assert.assertEquals(names[i], read(new File(dest, names[i])));
+    }
+  }
+
+  /* Test entries escaping the destination directory are refused */
+  @Test
+  public void testUnzipPathTraversal() throws IOException {
+    final File dest = this.temp.newFolder("dest");
+    try (ZipFile zip = new ZipFile(createZip("ok.txt", "../evil.txt"))) {
+      Utils.unzip(zip, dest);
+      Assert.fail("Expected the archive to be refused");
+    } catch (final IOException e) {
+      Assert.assertTrue(e.getMessage().contains("../evil.txt"));
+    }
+    Assert.assertFalse(new File(dest.getParentFile(), "evil.txt").exists());
+    Assert.assertFalse(new File(dest, "ok.txt").exists());
+  }
+
   /* Test negative port case */
   @Test
   public void testNegativePort() {
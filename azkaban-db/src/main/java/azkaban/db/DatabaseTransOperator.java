@@ -107,6 +107,15 @@ public class DatabaseTransOperator {
     }
   }
 
+  /**
+   * Executes the statement once per set of params, in a single JDBC batch.
+   *
+   * @return the number of rows updated by each execution.
+   */
+  public int[] batch(final String updateClause, final Object[][] params) throws SQLException {
+    return this.queryRunner.batch(this.conn, updateClause, params);
+  }
+
   /**
    * @return the JDBC connection associated with this operator.
    */
@@ -40,10 +40,17 @@ public class MySQLDataSource extends AzkabanDataSource {
     final String user = props.getString("mysql.user");
     final String password = props.getString("mysql.password");
     final int numConnections = props.getInt("mysql.numconnections");
+    final boolean rewriteBatchedStatements =
+        props.getBoolean("mysql.rewriteBatchedStatements", false);
 
     final String url = "jdbc:mysql://" + (host + ":" + port + "/" + dbName);
     addConnectionProperty("useUnicode", "yes");
     addConnectionProperty("characterEncoding", "UTF-8");
+    if (rewriteBatchedStatements) {
+      // Sends the JDBC batches (i.e. of log parts) as multi-row statements. Applies to all the
+      // pooled connections, whose batches then report SUCCESS_NO_INFO as update counts.
+      addConnectionProperty("rewriteBatchedStatements", "true");
+    }
     setDriverClassName("com.mysql.jdbc.Driver");
     setUsername(user);
     setPassword(password);
@@ -0,0 +1,11 @@
+CREATE TABLE execution_flow_updates (
+  update_id   BIGINT NOT NULL AUTO_INCREMENT,
+  exec_id     INT    NOT NULL,
+  update_time BIGINT,
+  enc_type    TINYINT,
+  update_data LONGBLOB,
+  PRIMARY KEY (update_id)
+);
+
+CREATE INDEX ex_flow_updates_exec_id
+  ON execution_flow_updates (exec_id);
@@ -0,0 +1,16 @@
+-- DB Migration from release 3.30.1 to 3.31.0
+--
+-- Adds the 'execution_flow_updates' table. It holds the node updates appended to the flow data
+-- of running executions, see create.execution_flow_updates.sql.
+--
+CREATE TABLE execution_flow_updates (
+  update_id   BIGINT NOT NULL AUTO_INCREMENT,
+  exec_id     INT    NOT NULL,
+  update_time BIGINT,
+  enc_type    TINYINT,
+  update_data LONGBLOB,
+  PRIMARY KEY (update_id)
+);
+
+CREATE INDEX ex_flow_updates_exec_id
+  ON execution_flow_updates (exec_id);
@@ -17,6 +17,7 @@
 package azkaban.execapp;
 
 import azkaban.metrics.MetricsManager;
+import com.codahale.metrics.Histogram;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -27,6 +28,9 @@ import javax.inject.Singleton;
 public class ExecMetrics {
 
   private final MetricsManager metricsManager;
+  private Histogram jobHandoffTimeMs;
+  private Histogram projectDownloadTimeMs;
+  private Histogram projectExtractTimeMs;
 
   @Inject
   ExecMetrics(final MetricsManager metricsManager) {
@@ -35,7 +39,25 @@ public class ExecMetrics {
   }
 
   public void setupStaticMetrics() {
+    this.jobHandoffTimeMs = this.metricsManager.addHistogram("EXEC-JobHandoffTimeMs");
+    this.projectDownloadTimeMs = this.metricsManager.addHistogram("EXEC-ProjectDownloadTimeMs");
+    this.projectExtractTimeMs = this.metricsManager.addHistogram("EXEC-ProjectExtractTimeMs");
+  }
+
+  /**
+   * Records the time from a job finishing to a job depending on it being submitted.
+   */
+  public void recordJobHandoffTime(final long handoffTimeMs) {
+    this.jobHandoffTimeMs.update(handoffTimeMs);
+  }
 
+  /**
+   * Records the time taken to download and to extract a project version being prepared.
+   */
+  public void recordProjectPreparationTimes(final long downloadTimeMs,
+      final long extractTimeMs) {
+    this.projectDownloadTimeMs.update(downloadTimeMs);
+    this.projectExtractTimeMs.update(extractTimeMs);
   }
 
   public void addFlowRunnerManagerMetrics(final FlowRunnerManager flowRunnerManager) {
@@ -43,5 +65,21 @@ public class ExecMetrics {
         .addGauge("EXEC-NumRunningFlows", flowRunnerManager::getNumRunningFlows);
     this.metricsManager
         .addGauge("EXEC-NumQueuedFlows", flowRunnerManager::getNumQueuedFlows);
+    final FlowUpdateCoalescer flowUpdateCoalescer = flowRunnerManager.getFlowUpdateCoalescer();
+    this.metricsManager
+        .addGauge("EXEC-FlowUpdatesWritten", flowUpdateCoalescer::getWrittenUpdates);
+    this.metricsManager
+        .addGauge("EXEC-FlowUpdatesCoalesced", flowUpdateCoalescer::getCoalescedUpdates);
+    this.metricsManager
+        .addGauge("EXEC-FlowUpdatesAppended", flowUpdateCoalescer::getAppendedUpdates);
+
+    final JobSlotScheduler jobSlotScheduler = flowRunnerManager.getJobSlotScheduler();
+    if (jobSlotScheduler != null) {
+      this.metricsManager.addGauge("EXEC-JobSlots", jobSlotScheduler::getMaxSlots);
+      this.metricsManager.addGauge("EXEC-UsedJobSlots", jobSlotScheduler::getUsedSlots);
+      this.metricsManager.addGauge("EXEC-JobsWaitingForSlot", jobSlotScheduler::getWaitingJobs);
+      this.metricsManager
+          .addGauge("EXEC-ActiveJobSlotThreads", jobSlotScheduler::getActiveThreads);
+    }
   }
 }
@@ -24,6 +24,7 @@ import azkaban.executor.ExecutableFlowBase;
 import azkaban.executor.Executor;
 import azkaban.executor.ExecutorLoader;
 import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.Status;
 import azkaban.utils.FileIOUtils.JobMetaData;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.JSONUtils;
@@ -40,13 +41,14 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.log4j.Logger;
-import org.codehaus.jackson.map.ObjectMapper;
 
 
 public class ExecutorServlet extends HttpServlet implements ConnectorParams {
 
   public static final String JSON_MIME_TYPE = "application/json";
   private static final long serialVersionUID = 1L;
+  // Upper bound for how long a streaming update request may be held by the executor.
+  private static final long MAX_UPDATE_WAIT_MS = 60 * 1000;
   private static final Logger logger = Logger.getLogger(ExecutorServlet.class
       .getName());
   private AzkabanExecutorServer application;
@@ -73,9 +75,24 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
   protected void writeJSON(final HttpServletResponse resp, final Object obj)
       throws IOException {
     resp.setContentType(JSON_MIME_TYPE);
-    final ObjectMapper mapper = new ObjectMapper();
     final OutputStream stream = resp.getOutputStream();
-    mapper.writeValue(stream, obj);
+    JSONUtils.toJSON(obj, stream);
+  }
+
+  /**
+   * Writes the response in Smile if the caller asked for it, in JSON otherwise.
+   */
+  protected void writeResponse(final HttpServletRequest req, final HttpServletResponse resp,
+      final Object obj) throws IOException {
+    final String accept = req.getHeader("Accept");
+    if (accept != null && accept.contains(SMILE_MIME_TYPE)) {
+      final byte[] data = JSONUtils.toSmile(obj);
+      resp.setContentType(SMILE_MIME_TYPE);
+      resp.setContentLength(data.length);
+      resp.getOutputStream().write(data);
+    } else {
+      writeJSON(resp, obj);
+    }
   }
 
   @Override
@@ -92,6 +109,8 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
         if (action.equals(UPDATE_ACTION)) {
           // logger.info("Updated called");
           handleAjaxUpdateRequest(req, respMap);
+        } else if (action.equals(EXECUTE_BATCH_ACTION)) {
+          handleAjaxExecuteBatch(req, respMap);
         } else if (action.equals(PING_ACTION)) {
           respMap.put("status", "alive");
         } else if (action.equals(RELOAD_JOBTYPE_PLUGINS_ACTION)) {
@@ -146,7 +165,7 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
       logger.error(e.getMessage(), e);
       respMap.put(RESPONSE_ERROR, e.getMessage());
     }
-    writeJSON(resp, respMap);
+    writeResponse(req, resp, respMap);
     resp.flushBuffer();
   }
 
@@ -248,10 +267,44 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
         (ArrayList<Object>) JSONUtils.parseJSONFromString(getParam(req,
             EXEC_ID_LIST_PARAM));
 
+    // Streaming requests carry the last sequence number seen by the web server. Only flows that
+    // changed after that sequence are inspected, and the request is held until there is a change.
+    final FlowUpdateJournal journal = this.flowRunnerManager.getFlowUpdateJournal();
+    final boolean isStreaming = hasParam(req, UPDATE_SEQUENCE_PARAM);
+    long sinceSequence = FlowUpdateJournal.NO_SEQUENCE;
+    if (isStreaming) {
+      final long epoch = Long.parseLong(getParam(req, UPDATE_EPOCH_PARAM));
+      if (epoch == journal.getEpoch()) {
+        sinceSequence = Long.parseLong(getParam(req, UPDATE_SEQUENCE_PARAM));
+      }
+    }
+
+    final List<Integer> execIds = new ArrayList<>(execIDList.size());
+    boolean hasMissingFlow = false;
+    for (final Object execId : execIDList) {
+      execIds.add((Integer) execId);
+      hasMissingFlow |= this.flowRunnerManager.getExecutableFlow((Integer) execId) == null;
+    }
+
+    // A resync (first request, unknown epoch, or new flows watched by the web server) and missing
+    // flows are answered right away.
+    final boolean isResync = sinceSequence == FlowUpdateJournal.NO_SEQUENCE;
+    if (isStreaming) {
+      final long waitMs = isResync || hasMissingFlow ? 0
+          : Math.min(getLongParam(req, UPDATE_WAIT_MS_PARAM, 0), MAX_UPDATE_WAIT_MS);
+      try {
+        respMap.put(RESPONSE_UPDATE_SEQUENCE,
+            journal.awaitUpdate(execIds, sinceSequence, waitMs));
+      } catch (final InterruptedException e) {
+        throw new ServletException("Interrupted while waiting for flow updates", e);
+      }
+      respMap.put(RESPONSE_UPDATE_EPOCH, journal.getEpoch());
+    }
+
     final ArrayList<Object> updateList = new ArrayList<>();
-    for (int i = 0; i < execIDList.size(); ++i) {
+    for (int i = 0; i < execIds.size(); ++i) {
       final long updateTime = JSONUtils.getLongFromObject(updateTimesList.get(i));
-      final int execId = (Integer) execIDList.get(i);
+      final int execId = execIds.get(i);
 
       final ExecutableFlowBase flow = this.flowRunnerManager.getExecutableFlow(execId);
       if (flow == null) {
@@ -262,6 +315,10 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
         continue;
       }
 
+      if (isStreaming && !isResync && !journal.isUpdatedSince(execId, sinceSequence)) {
+        continue;
+      }
+
       if (flow.getUpdateTime() > updateTime) {
         updateList.add(flow.toUpdateObject(updateTime));
       }
@@ -281,9 +338,30 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
     }
   }
 
+  private void handleAjaxExecuteBatch(final HttpServletRequest req,
+      final Map<String, Object> respMap) throws ServletException, IOException {
+    final List<Object> execIDList =
+        (List<Object>) JSONUtils.parseJSONFromString(getParam(req, EXEC_ID_LIST_PARAM));
+    final List<Integer> execIds = new ArrayList<>(execIDList.size());
+    for (final Object execId : execIDList) {
+      execIds.add((Integer) execId);
+    }
+    logger.info("Submitting batch of executions " + execIds);
+
+    final Map<Integer, String> errors = this.flowRunnerManager.submitFlows(execIds);
+    final Map<String, Object> results = new HashMap<>();
+    for (final Integer execId : execIds) {
+      final String error = errors.get(execId);
+      results.put(String.valueOf(execId), error == null ? RESPONSE_SUCCESS : error);
+    }
+    respMap.put(RESPONSE_BATCH_RESULTS, results);
+  }
+
   private void handleAjaxFlowStatus(final Map<String, Object> respMap, final int execid) {
     final ExecutableFlowBase flow = this.flowRunnerManager.getExecutableFlow(execid);
-    if (flow == null) {
+    if (flow == null && this.flowRunnerManager.isSubmitting(execid)) {
+      respMap.put(STATUS_PARAM, Status.PREPARING.toString());
+    } else if (flow == null) {
       respMap.put(STATUS_PARAM, RESPONSE_NOTFOUND);
     } else {
       respMap.put(STATUS_PARAM, flow.getStatus().toString());
@@ -417,7 +495,8 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
   @Override
   public void doPost(final HttpServletRequest req, final HttpServletResponse resp)
       throws ServletException, IOException {
-
+    // The web server posts its parameters as a form to keep large payloads out of the URL.
+    doGet(req, resp);
   }
 
   /**
@@ -453,6 +532,19 @@ public class ExecutorServlet extends HttpServlet implements ConnectorParams {
     return Integer.parseInt(p);
   }
 
+  public long getLongParam(final HttpServletRequest request, final String name,
+      final long defaultVal) {
+    if (hasParam(request, name)) {
+      try {
+        return Long.parseLong(getParam(request, name));
+      } catch (final Exception e) {
+        return defaultVal;
+      }
+    }
+
+    return defaultVal;
+  }
+
   public int getIntParam(final HttpServletRequest request, final String name,
       final int defaultVal) {
     if (hasParam(request, name)) {
@@ -25,6 +25,7 @@ import azkaban.project.ProjectFileHandler;
 import azkaban.project.ProjectManagerException;
 import azkaban.storage.StorageManager;
 import azkaban.utils.FileIOUtils;
+import azkaban.utils.FileIOUtils.LinkMode;
 import azkaban.utils.Pair;
 import azkaban.utils.Utils;
 import com.google.common.annotations.VisibleForTesting;
@@ -33,6 +34,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.zip.ZipFile;
 import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
@@ -49,6 +53,13 @@ public class FlowPreparer {
 
   private final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects;
   private final StorageManager storageManager;
+  // Project versions being prepared, the flows needing them wait for these
+  private final Map<Pair<Integer, Integer>, CompletableFuture<Void>> preparations =
+      new ConcurrentHashMap<>();
+  // Records the preparation times if not null
+  private ExecMetrics execMetrics = null;
+  private LinkMode execDirLinkMode = LinkMode.HARD_LINK;
+  private int execDirLinkThreads = 1;
 
   public FlowPreparer(final StorageManager storageManager, final File executionsDir,
       final File projectsDir,
@@ -59,6 +70,19 @@ public class FlowPreparer {
     this.installedProjects = installedProjects;
   }
 
+  public void setExecMetrics(final ExecMetrics execMetrics) {
+    this.execMetrics = execMetrics;
+  }
+
+  /**
+   * @param linkMode how the project files are linked into the execution directories.
+   * @param linkThreads number of threads linking the files of large projects.
+   */
+  public void setExecDirLinking(final LinkMode linkMode, final int linkThreads) {
+    this.execDirLinkMode = linkMode;
+    this.execDirLinkThreads = linkThreads;
+  }
+
   /**
    * Prepare the flow directory for execution.
    *
@@ -89,7 +113,8 @@ public class FlowPreparer {
   }
 
   /**
-   * Prepare the project directory.
+   * Prepare the project directory. Only one flow prepares a project version at a time, the other
+   * flows needing it wait for the preparation to complete.
    *
    * @param pv ProjectVersion object
    */
@@ -110,6 +135,35 @@ public class FlowPreparer {
       return;
     }
 
+    final Pair<Integer, Integer> key = new Pair<>(projectId, version);
+    final CompletableFuture<Void> preparation = new CompletableFuture<>();
+    final CompletableFuture<Void> runningPreparation =
+        this.preparations.putIfAbsent(key, preparation);
+    if (runningPreparation != null) {
+      log.info("Waiting for the preparation of the project by another flow. " + pv);
+      waitForPreparation(pv, runningPreparation);
+      return;
+    }
+
+    try {
+      // It may have been prepared since it was checked
+      if (pv.getInstalledDir().exists()) {
+        log.info("Project already cached. Skipping download. " + pv);
+      } else {
+        prepareProject(pv, projectDir);
+      }
+      preparation.complete(null);
+    } catch (final Throwable e) {
+      // the flows waiting for it must not wait forever
+      preparation.completeExceptionally(e);
+      throw e;
+    } finally {
+      this.preparations.remove(key);
+    }
+  }
+
+  private void prepareProject(final ProjectVersion pv, final String projectDir)
+      throws ProjectManagerException, IOException {
     log.info("Preparing Project: " + pv);
 
     final File tempDir = new File(this.projectsDir,
@@ -120,17 +174,26 @@ public class FlowPreparer {
 
     ProjectFileHandler projectFileHandler = null;
     try {
-      projectFileHandler = requireNonNull(this.storageManager.getProjectFile(projectId, version));
-      checkState("zip".equals(projectFileHandler.getFileType()));
-
+      final long startTime = System.currentTimeMillis();
       log.info("Downloading zip file.");
+      projectFileHandler = requireNonNull(
+          this.storageManager.getProjectFile(pv.getProjectId(), pv.getVersion()));
+      checkState("zip".equals(projectFileHandler.getFileType()));
       final File zipFile = requireNonNull(projectFileHandler.getLocalFile());
-      final ZipFile zip = new ZipFile(zipFile);
-      Utils.unzip(zip, tempDir);
+      final long downloadTime = System.currentTimeMillis() - startTime;
+
+      try (ZipFile zip = new ZipFile(zipFile)) {
+        Utils.unzip(zip, tempDir);
+      }
 
       Files.move(tempDir.toPath(), pv.getInstalledDir().toPath(), StandardCopyOption.ATOMIC_MOVE);
+      final long extractTime = System.currentTimeMillis() - startTime - downloadTime;
 
-      log.warn(String.format("Project Preparation complete. [%s]", pv));
+      if (this.execMetrics != null) {
+        this.execMetrics.recordProjectPreparationTimes(downloadTime, extractTime);
+      }
+      log.warn(String.format("Project Preparation complete. [%s] download %d ms, extract %d ms",
+          pv, downloadTime, extractTime));
     } finally {
 
       if (projectFileHandler != null) {
@@ -142,9 +205,25 @@ public class FlowPreparer {
     }
   }
 
+  private void waitForPreparation(final ProjectVersion pv,
+      final CompletableFuture<Void> preparation) throws IOException {
+    try {
+      preparation.get();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the preparation of " + pv, e);
+    } catch (final ExecutionException e) {
+      throw new IOException("Preparation of " + pv + " by another flow failed", e.getCause());
+    }
+  }
+
   private void copyCreateHardlinkDirectory(final File projectDir, final File execDir)
       throws IOException {
-    FileIOUtils.createDeepHardlink(projectDir, execDir);
+    final long startTime = System.currentTimeMillis();
+    FileIOUtils.createDeepLinks(projectDir, execDir, this.execDirLinkMode,
+        this.execDirLinkThreads);
+    log.info(String.format("Linked %s into %s in %d ms", projectDir, execDir,
+        System.currentTimeMillis() - startTime));
   }
 
   private File createExecDir(final ExecutableFlow flow) {
@@ -30,6 +30,7 @@ import azkaban.execapp.metric.NumFailedJobMetric;
 import azkaban.execapp.metric.NumRunningJobMetric;
 import azkaban.executor.ExecutableFlow;
 import azkaban.executor.ExecutableFlowBase;
+import azkaban.executor.ExecutableFlowPriorityComparator;
 import azkaban.executor.ExecutableNode;
 import azkaban.executor.ExecutionOptions;
 import azkaban.executor.ExecutionOptions.FailureAction;
@@ -46,8 +47,12 @@ import azkaban.project.ProjectManagerException;
 import azkaban.sla.SlaOption;
 import azkaban.spi.AzkabanEventReporter;
 import azkaban.spi.EventType;
+import azkaban.utils.FlattenedProps;
 import azkaban.utils.Props;
 import azkaban.utils.SwapQueue;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
 import com.google.common.collect.ImmutableSet;
 import java.io.File;
 import java.io.IOException;
@@ -55,6 +60,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -78,8 +84,10 @@ public class FlowRunner extends EventHandler implements Runnable {
   private static final Layout DEFAULT_LAYOUT = new PatternLayout(
       "%d{dd-MM-yyyy HH:mm:ss z} %c{1} %p - %m\n");
   // We check update every 5 minutes, just in case things get stuck. But for the
-  // most part, we'll be idling.
+  // most part, we'll be idling: the graph is progressed by the threads of the finished jobs.
   private static final long CHECK_WAIT_MS = 5 * 60 * 1000;
+  // Suffix of the names of the job override properties
+  private static final String JOB_OVERRIDE_SUFFIX = ".jor";
   private final ExecutableFlow flow;
   // Sync object for queuing
   private final Object mainSyncObj = new Object();
@@ -93,6 +101,16 @@ public class FlowRunner extends EventHandler implements Runnable {
   // Properties map
   private final Props azkabanProps;
   private final Map<String, Props> sharedProps = new HashMap<>();
+  // Flattened flow properties keyed by the input props of the flow, then by the shared
+  // properties source of the jobs. Guarded by mainSyncObj.
+  private final Map<Props, Map<String, FlattenedProps>> flattenedFlowProps =
+      new IdentityHashMap<>();
+  // Job override properties of the project version keyed by property name, null if they
+  // couldn't be loaded in one go
+  private Map<String, Props> jobOverrides = null;
+  // Parsed job files shared by the executions of the project version, job files are parsed for
+  // every job run if null
+  private JobPropsCache jobPropsCache = null;
   private final JobRunnerEventListener listener = new JobRunnerEventListener();
   private final FlowRunnerEventListener flowListener = new FlowRunnerEventListener();
   private final Set<JobRunner> activeJobRunners = Collections
@@ -100,10 +118,14 @@ public class FlowRunner extends EventHandler implements Runnable {
   // Thread safe swap queue for finishedExecutions.
   private final SwapQueue<ExecutableNode> finishedNodes;
   private final AzkabanEventReporter azkabanEventReporter;
+  // Time from a job finishing to the jobs depending on it being submitted
+  private final Histogram jobHandoffTimes = new Histogram(new ExponentiallyDecayingReservoir());
   private Logger logger;
   private Appender flowAppender;
   private File logFile;
   private ExecutorService executorService;
+  // Runs the jobs on the job slots shared by all the flows, each flow has its own pool if null.
+  private JobSlotScheduler jobSlotScheduler = null;
   private Thread flowRunnerThread;
   private int numJobThreads = 10;
   // Used for pipelining
@@ -111,6 +133,14 @@ public class FlowRunner extends EventHandler implements Runnable {
   private Integer pipelineExecId = null;
   // Watches external flows for execution.
   private FlowWatcher watcher = null;
+  // Notified of every flow update so that streaming update requests can be answered.
+  private FlowUpdateJournal updateJournal = null;
+  // Coalesces the DB writes of the flow updates, the flow is written on every update if null.
+  private FlowUpdateCoalescer updateCoalescer = null;
+  private ExecMetrics execMetrics = null;
+  // Uploads the logs while the flow runs, the logs are uploaded when finished if null
+  private LogShipper logShipper = null;
+  private LogShipper.ShippedLog shippedLog = null;
   private Set<String> proxyUsers = null;
   private boolean validateUserProxy;
   private String jobLogFileSize = "5MB";
@@ -121,6 +151,11 @@ public class FlowRunner extends EventHandler implements Runnable {
   private boolean flowKilled = false;
   // The following is state that will trigger a retry of all failed jobs
   private boolean retryFailedJobs = false;
+  // End time of the finished job the graph is being progressed for, -1 when progressed by the
+  // main thread. Guarded by mainSyncObj.
+  private long handoffStartTime = -1;
+  // Error raised while progressing the graph for a finished job, rethrown by the main thread
+  private IOException progressException = null;
 
   /**
    * Constructor. This will create its own ExecutorService for thread pools
@@ -172,11 +207,41 @@ public class FlowRunner extends EventHandler implements Runnable {
     return this;
   }
 
+  public FlowRunner setFlowUpdateJournal(final FlowUpdateJournal updateJournal) {
+    this.updateJournal = updateJournal;
+    return this;
+  }
+
+  public FlowRunner setFlowUpdateCoalescer(final FlowUpdateCoalescer updateCoalescer) {
+    this.updateCoalescer = updateCoalescer;
+    return this;
+  }
+
+  public FlowRunner setExecMetrics(final ExecMetrics execMetrics) {
+    this.execMetrics = execMetrics;
+    return this;
+  }
+
+  public FlowRunner setJobPropsCache(final JobPropsCache jobPropsCache) {
+    this.jobPropsCache = jobPropsCache;
+    return this;
+  }
+
+  public FlowRunner setJobSlotScheduler(final JobSlotScheduler jobSlotScheduler) {
+    this.jobSlotScheduler = jobSlotScheduler;
+    return this;
+  }
+
   public FlowRunner setNumJobThreads(final int jobs) {
     this.numJobThreads = jobs;
     return this;
   }
 
+  public FlowRunner setLogShipper(final LogShipper logShipper) {
+    this.logShipper = logShipper;
+    return this;
+  }
+
   public FlowRunner setJobLogSettings(final String jobLogFileSize, final int jobLogNumFiles) {
     this.jobLogFileSize = jobLogFileSize;
     this.jobLogNumFiles = jobLogNumFiles;
@@ -197,7 +262,10 @@ public class FlowRunner extends EventHandler implements Runnable {
   public void run() {
     try {
       if (this.executorService == null) {
-        this.executorService = Executors.newFixedThreadPool(this.numJobThreads);
+        this.executorService = this.jobSlotScheduler == null
+            ? Executors.newFixedThreadPool(this.numJobThreads)
+            : this.jobSlotScheduler.newFlowExecutor(this.execId,
+                ExecutableFlowPriorityComparator.getPriority(this.flow), this.numJobThreads);
       }
       setupFlowExecution();
       this.flow.setStartTime(System.currentTimeMillis());
@@ -226,12 +294,19 @@ public class FlowRunner extends EventHandler implements Runnable {
           this.logger
               .info("Watcher cancelled status is " + this.watcher.isWatchCancelled());
         }
+        if (this.executorService != null) {
+          // no more jobs once the flow failed, the running ones still finish
+          this.executorService.shutdown();
+        }
 
         this.flow.setEndTime(System.currentTimeMillis());
         this.logger.info("Setting end time for flow " + this.execId + " to "
             + System.currentTimeMillis());
         closeLogger();
         updateFlow();
+        if (this.updateCoalescer != null) {
+          this.updateCoalescer.remove(this.execId);
+        }
       } finally {
         this.fireEventListeners(
             Event.create(this, EventType.FLOW_FINISHED, new EventData(this.flow)));
@@ -284,15 +359,32 @@ public class FlowRunner extends EventHandler implements Runnable {
   }
 
   private void updateFlow() {
-    updateFlow(System.currentTimeMillis());
+    updateFlow(System.currentTimeMillis(), false);
+  }
+
+  /**
+   * Writes the flow right away, for the updates which must not wait for the next coalesced write.
+   */
+  private void flushFlow() {
+    updateFlow(System.currentTimeMillis(), true);
   }
 
-  private synchronized void updateFlow(final long time) {
+  private synchronized void updateFlow(final long time, final boolean flush) {
     try {
       this.flow.setUpdateTime(time);
-      this.executorLoader.updateExecutableFlow(this.flow);
+      if (this.updateCoalescer == null) {
+        this.executorLoader.updateExecutableFlow(this.flow);
+      } else if (flush || Status.isStatusFinished(this.flow.getStatus())) {
+        this.updateCoalescer.flush(this.flow);
+      } else {
+        this.updateCoalescer.update(this.flow);
+      }
     } catch (final ExecutorManagerException e) {
       this.logger.error("Error updating flow.", e);
+    } finally {
+      if (this.updateJournal != null) {
+        this.updateJournal.markUpdated(this.execId);
+      }
     }
   }
 
@@ -311,8 +403,12 @@ public class FlowRunner extends EventHandler implements Runnable {
 
     this.flowAppender = null;
     try {
-      this.flowAppender = new FileAppender(this.loggerLayout, absolutePath, false);
+      this.flowAppender = LogUtil.createLogFileAppender(this.azkabanProps,
+          new FileAppender(this.loggerLayout, absolutePath, false));
       this.logger.addAppender(this.flowAppender);
+      if (this.logShipper != null) {
+        this.shippedLog = this.logShipper.register(this.execId, "", 0, this.logFile, 0);
+      }
     } catch (final IOException e) {
       this.logger.error("Could not open log file in " + this.execDir, e);
     }
@@ -321,10 +417,15 @@ public class FlowRunner extends EventHandler implements Runnable {
   private void closeLogger() {
     if (this.logger != null) {
       this.logger.removeAppender(this.flowAppender);
+      // Writes out the log events the appender still buffers
       this.flowAppender.close();
 
       try {
-        this.executorLoader.uploadLogFile(this.execId, "", 0, this.logFile);
+        if (this.shippedLog != null) {
+          this.shippedLog.finish();
+        } else {
+          this.executorLoader.uploadLogFile(this.execId, "", 0, this.logFile);
+        }
       } catch (final ExecutorManagerException e) {
         e.printStackTrace();
       }
@@ -352,6 +453,33 @@ public class FlowRunner extends EventHandler implements Runnable {
         props.setParent(inherits);
       }
     }
+
+    loadJobOverrides();
+  }
+
+  /**
+   * Loads all the job override properties (.jor) of the project version with a single query, so
+   * that the jobs without overrides, i.e. most of them, don't need a DB round-trip: a job missing
+   * from the map has no override. They are loaded for every execution, instead of being cached
+   * per project version, since they can be edited after the project is uploaded.
+   */
+  private void loadJobOverrides() {
+    try {
+      final Map<String, Props> properties = this.projectLoader
+          .fetchProjectProperties(this.flow.getProjectId(), this.flow.getVersion());
+      final Map<String, Props> overrides = new HashMap<>();
+      if (properties != null) {
+        for (final Map.Entry<String, Props> entry : properties.entrySet()) {
+          if (entry.getKey().endsWith(JOB_OVERRIDE_SUFFIX)) {
+            overrides.put(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+      this.jobOverrides = overrides;
+    } catch (final ProjectManagerException e) {
+      this.logger.error("Error loading job override properties, falling back to loading them "
+          + "per job", e);
+    }
   }
 
   /**
@@ -359,11 +487,18 @@ public class FlowRunner extends EventHandler implements Runnable {
    */
   private void runFlow() throws Exception {
     this.logger.info("Starting flows");
-    runReadyJob(this.flow);
+    synchronized (this.mainSyncObj) {
+      this.flow.resetDependencyCounters();
+      // jobs that finish right away progress the graph, which must not happen while it is started
+      runReadyJob(this.flow);
+    }
     updateFlow();
 
     while (!this.flowFinished) {
       synchronized (this.mainSyncObj) {
+        if (this.progressException != null) {
+          throw this.progressException;
+        }
         if (this.flowPaused) {
           try {
             this.mainSyncObj.wait(CHECK_WAIT_MS);
@@ -388,6 +523,7 @@ public class FlowRunner extends EventHandler implements Runnable {
     this.executorService.shutdown();
 
     updateFlow();
+    logJobHandoffTimes();
     this.logger.info("Finished Flow");
   }
 
@@ -401,6 +537,7 @@ public class FlowRunner extends EventHandler implements Runnable {
 
     final ArrayList<ExecutableNode> retryJobs = new ArrayList<>();
     resetFailedState(this.flow, retryJobs);
+    this.flow.resetDependencyCounters();
 
     for (final ExecutableNode node : retryJobs) {
       if (node.getStatus() == Status.READY
@@ -422,11 +559,11 @@ public class FlowRunner extends EventHandler implements Runnable {
   private boolean progressGraph() throws IOException {
     this.finishedNodes.swap();
 
-    // The following nodes are finished, so we'll collect a list of outnodes
-    // that are candidates for running next.
+    // The following nodes are finished, so we'll collect the outnodes whose
+    // dependencies are now all finished. They are the candidates for running next.
     final HashSet<ExecutableNode> nodesToCheck = new HashSet<>();
     for (final ExecutableNode node : this.finishedNodes) {
-      Set<String> outNodeIds = node.getOutNodes();
+      ExecutableNode finishedNode = node;
       ExecutableFlowBase parentFlow = node.getParentFlow();
 
       // If a job is seen as failed or killed due to failing SLA, then we set the parent flow to
@@ -448,7 +585,7 @@ public class FlowRunner extends EventHandler implements Runnable {
         }
       }
 
-      if (outNodeIds.isEmpty()) {
+      if (node.getOutNodes().isEmpty()) {
         // There's no outnodes means it's the end of a flow, so we finalize
         // and fire an event.
         finalizeFlow(parentFlow);
@@ -456,18 +593,14 @@ public class FlowRunner extends EventHandler implements Runnable {
 
         // If the parent has a parent, then we process
         if (!(parentFlow instanceof ExecutableFlow)) {
-          outNodeIds = parentFlow.getOutNodes();
+          finishedNode = parentFlow;
           parentFlow = parentFlow.getParentFlow();
         }
       }
 
-      // Add all out nodes from the finished job. We'll check against this set
-      // to
-      // see if any are candidates for running.
-      for (final String nodeId : outNodeIds) {
-        final ExecutableNode outNode = parentFlow.getExecutableNode(nodeId);
-        nodesToCheck.add(outNode);
-      }
+      // Only the out nodes which have no unfinished dependency left are
+      // candidates for running.
+      nodesToCheck.addAll(parentFlow.dependencyFinished(finishedNode));
     }
 
     // Runs candidate jobs. The code will check to see if they are ready to run
@@ -531,6 +664,45 @@ public class FlowRunner extends EventHandler implements Runnable {
     return true;
   }
 
+  /**
+   * Progresses the graph in the thread of a job that just finished, so that the jobs depending on
+   * it are submitted without waiting for the main thread to wake up. The main thread takes over
+   * if the flow is paused or failures are to be retried. Must be called while holding
+   * mainSyncObj.
+   */
+  private void progressGraphOnJobFinished(final ExecutableNode node) {
+    if (this.flowPaused || this.retryFailedJobs || this.flowFinished
+        || this.progressException != null) {
+      interrupt();
+      return;
+    }
+    this.handoffStartTime = node.getEndTime();
+    try {
+      while (progressGraph()) {
+        // disabled or cancelled jobs finish right away, progress again for them
+      }
+    } catch (final IOException e) {
+      this.logger.error("Failed to progress the flow after job " + node.getNestedId()
+          + " finished.", e);
+      this.progressException = e;
+    } finally {
+      this.handoffStartTime = -1;
+    }
+    if (this.flowFinished || this.progressException != null) {
+      interrupt();
+    }
+  }
+
+  private void logJobHandoffTimes() {
+    final Snapshot snapshot = this.jobHandoffTimes.getSnapshot();
+    if (this.jobHandoffTimes.getCount() > 0) {
+      this.logger.info(String.format(
+          "Job handoff time over %d jobs: median %.0f ms, 99th percentile %.0f ms, max %d ms",
+          this.jobHandoffTimes.getCount(), snapshot.getMedian(), snapshot.get99thPercentile(),
+          snapshot.getMax()));
+    }
+  }
+
   private boolean retryJobIfPossible(final ExecutableNode node) {
     if (node instanceof ExecutableFlowBase) {
       return false;
@@ -633,25 +805,19 @@ public class FlowRunner extends EventHandler implements Runnable {
       return;
     }
 
-    Props props = null;
     // 1. Shared properties (i.e. *.properties) for the jobs only. This takes
     // the
     // least precedence
+    String sharedSource = null;
     if (!(node instanceof ExecutableFlowBase)) {
-      final String sharedProps = node.getPropsSource();
-      if (sharedProps != null) {
-        props = this.sharedProps.get(sharedProps);
-      }
+      sharedSource = node.getPropsSource();
     }
 
     // The following is the hiearchical ordering of dependency resolution
     // 2. Parent Flow Properties
     final ExecutableFlowBase parentFlow = node.getParentFlow();
-    if (parentFlow != null) {
-      final Props flowProps = Props.clone(parentFlow.getInputProps());
-      flowProps.setEarliestAncestor(props);
-      props = flowProps;
-    }
+    Props props = getFlattenedFlowProps(parentFlow != null ? parentFlow.getInputProps() : null,
+        sharedSource);
 
     // 3. Output Properties. The call creates a clone, so we can overwrite it.
     final Props outputProps = collectOutputProps(node);
@@ -667,7 +833,24 @@ public class FlowRunner extends EventHandler implements Runnable {
       props = jobSource;
     }
 
-    node.setInputProps(props);
+    // Only the levels specific to the node are copied, the flow properties are shared
+    node.setInputProps(FlattenedProps.of(props));
+  }
+
+  /**
+   * Returns the parent flow properties over the shared properties, flattened once for all the
+   * jobs of the flow which use the same shared properties. Must be called while holding
+   * mainSyncObj.
+   *
+   * @return null if there are neither flow nor shared properties.
+   */
+  private FlattenedProps getFlattenedFlowProps(final Props flowProps, final String sharedSource) {
+    final Props sharedProps = sharedSource != null ? this.sharedProps.get(sharedSource) : null;
+    if (flowProps == null && sharedProps == null) {
+      return null;
+    }
+    return this.flattenedFlowProps.computeIfAbsent(flowProps, k -> new HashMap<>())
+        .computeIfAbsent(sharedSource, k -> FlattenedProps.merge(sharedProps, flowProps));
   }
 
   /**
@@ -687,32 +870,41 @@ public class FlowRunner extends EventHandler implements Runnable {
     }
 
     // load the override props if any
-    try {
-      props =
-          this.projectLoader.fetchProjectProperty(this.flow.getProjectId(),
-              this.flow.getVersion(), node.getId() + ".jor");
-    } catch (final ProjectManagerException e) {
-      e.printStackTrace();
-      this.logger.error("Error loading job override property for job "
-          + node.getId());
+    if (this.jobOverrides != null) {
+      final Props override = this.jobOverrides.get(node.getId() + JOB_OVERRIDE_SUFFIX);
+      if (override != null) {
+        // copied, as the props of the job get modified
+        props = new Props(null, override);
+      }
+    } else {
+      try {
+        props =
+            this.projectLoader.fetchProjectProperty(this.flow.getProjectId(),
+                this.flow.getVersion(), node.getId() + JOB_OVERRIDE_SUFFIX);
+      } catch (final ProjectManagerException e) {
+        e.printStackTrace();
+        this.logger.error("Error loading job override property for job "
+            + node.getId());
+      }
     }
 
     final File path = new File(this.execDir, source);
-    if (props == null) {
-      // if no override prop, load the original one on disk
+    if (props != null) {
+      // setting this fake source as this will be used to determine the location
+      // of log files.
+      props.setSource(path.getPath());
+    } else {
+      // if no override prop, load the original one on disk, with the job file as source
       try {
-        props = new Props(null, path);
+        props = this.jobPropsCache == null ? new Props(null, path)
+            : this.jobPropsCache
+                .get(this.flow.getProjectId(), this.flow.getVersion(), source, path);
       } catch (final IOException e) {
         e.printStackTrace();
         this.logger.error("Error loading job file " + source + " for job "
             + node.getId());
       }
     }
-    // setting this fake source as this will be used to determine the location
-    // of log files.
-    if (path.getPath() != null) {
-      props.setSource(path.getPath());
-    }
 
     customizeJobProperties(props);
 
@@ -730,11 +922,29 @@ public class FlowRunner extends EventHandler implements Runnable {
     try {
       this.executorService.submit(runner);
       this.activeJobRunners.add(runner);
+      if (this.handoffStartTime > 0) {
+        recordJobHandoffTime(System.currentTimeMillis() - this.handoffStartTime);
+      }
     } catch (final RejectedExecutionException e) {
       this.logger.error(e);
     }
   }
 
+  private void recordJobHandoffTime(final long handoffTimeMs) {
+    this.jobHandoffTimes.update(handoffTimeMs);
+    if (this.execMetrics != null) {
+      this.execMetrics.recordJobHandoffTime(handoffTimeMs);
+    }
+  }
+
+  /**
+   * @return the time from a job finishing to the jobs depending on it being submitted, over the
+   * jobs of this flow.
+   */
+  public Histogram getJobHandoffTimes() {
+    return this.jobHandoffTimes;
+  }
+
   /**
    * Determines what the state of the next node should be. Returns null if the node should not be
    * run.
@@ -747,23 +957,14 @@ public class FlowRunner extends EventHandler implements Runnable {
       return null;
     }
 
-    // Go through the node's dependencies. If all of the previous job's
-    // statuses is finished and not FAILED or KILLED, than we can safely
-    // run this job.
+    // Check the node's dependency counters. If all of the previous jobs are
+    // finished and none is FAILED or KILLED, than we can safely run this job.
     final ExecutableFlowBase flow = node.getParentFlow();
-    boolean shouldKill = false;
-    for (final String dependency : node.getInNodes()) {
-      final ExecutableNode dependencyNode = flow.getExecutableNode(dependency);
-      final Status depStatus = dependencyNode.getStatus();
-
-      if (!Status.isStatusFinished(depStatus)) {
-        return null;
-      } else if (depStatus == Status.FAILED || depStatus == Status.CANCELLED
-          || depStatus == Status.KILLED) {
-        // We propagate failures as KILLED states.
-        shouldKill = true;
-      }
+    if (!flow.areDependenciesFinished(node)) {
+      return null;
     }
+    // We propagate failures as KILLED states.
+    final boolean shouldKill = flow.hasFailedDependency(node);
 
     // If it's disabled but ready to run, we want to make sure it continues
     // being disabled.
@@ -818,6 +1019,7 @@ public class FlowRunner extends EventHandler implements Runnable {
 
     jobRunner.setDelayStart(node.getDelayedExecution());
     jobRunner.setLogSettings(this.logger, this.jobLogFileSize, this.jobLogNumFiles);
+    jobRunner.setLogShipper(this.logShipper);
     jobRunner.addListener(this.listener);
 
     if (JobCallbackManager.isInitialized()) {
@@ -857,7 +1059,7 @@ public class FlowRunner extends EventHandler implements Runnable {
         this.flowPaused = true;
         this.flow.setStatus(Status.PAUSED);
 
-        updateFlow();
+        flushFlow();
       } else {
         this.logger.info("Cannot pause finished flow. Called by user " + user);
       }
@@ -915,7 +1117,7 @@ public class FlowRunner extends EventHandler implements Runnable {
       for (final JobRunner runner : this.activeJobRunners) {
         runner.kill();
       }
-      updateFlow();
+      flushFlow();
     }
     interrupt();
   }
@@ -1195,7 +1397,7 @@ public class FlowRunner extends EventHandler implements Runnable {
           FlowRunner.this.finishedNodes.add(node);
           FlowRunner.this.activeJobRunners.remove(jobRunner);
           node.getParentFlow().setUpdateTime(System.currentTimeMillis());
-          interrupt();
+          progressGraphOnJobFinished(node);
           fireEventListeners(event);
         }
       } else if (event.getType() == EventType.JOB_STARTED) {
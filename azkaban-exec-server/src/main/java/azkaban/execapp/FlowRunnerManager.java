@@ -40,6 +40,7 @@ import azkaban.spi.EventType;
 import azkaban.storage.StorageManager;
 import azkaban.utils.FileIOUtils;
 import azkaban.utils.FileIOUtils.JobMetaData;
+import azkaban.utils.FileIOUtils.LinkMode;
 import azkaban.utils.FileIOUtils.LogData;
 import azkaban.utils.JSONUtils;
 import azkaban.utils.Pair;
@@ -97,18 +98,39 @@ public class FlowRunnerManager implements EventListener,
   private static final String EXECUTOR_THREADPOOL_WORKQUEUE_SIZE = "executor.threadpool.workqueue.size";
   private static final String EXECUTOR_FLOW_THREADS = "executor.flow.threads";
   private static final String FLOW_NUM_JOB_THREADS = "flow.num.job.threads";
+  // Number of jobs the executor runs at a time across all its flows, 0 to give each flow its own
+  // pool of flow.num.job.threads threads instead
+  private static final String EXECUTOR_JOB_SLOTS = "executor.job.slots";
+  // FAIR_SHARE or PRIORITY, see JobSlotScheduler.Policy
+  private static final String EXECUTOR_JOB_SLOTS_POLICY = "executor.job.slots.policy";
+  // Number of parsed job files kept for the executions of the same project version
+  private static final String EXECUTOR_JOB_PROPS_CACHE_SIZE = "executor.job.props.cache.size";
+  // How long the update of a running flow may wait before being written to the DB
+  private static final String FLOW_UPDATE_MAX_STALENESS_MS = "azkaban.flow.update.maxStalenessMs";
+  // HARD_LINK or SYMBOLIC_LINK, how the project files are linked into the execution directories
+  private static final String EXECUTION_DIR_LINK_MODE = "azkaban.execution.dir.link.mode";
+  // Number of threads linking the files of a large project into an execution directory
+  private static final String EXECUTION_DIR_LINK_THREADS = "azkaban.execution.dir.link.threads";
+  // How often the logs of the running jobs and flows are uploaded to the DB, 0 to upload them
+  // only when they are finished
+  private static final String LOG_UPLOAD_INTERVAL_MS = "azkaban.log.upload.intervalMs";
 
   // recently finished secs to clean up. 1 minute
   private static final int RECENTLY_FINISHED_TIME_TO_LIVE = 60 * 1000;
 
   private static final int DEFAULT_NUM_EXECUTING_FLOWS = 30;
   private static final int DEFAULT_FLOW_NUM_JOB_TREADS = 10;
+  private static final long DEFAULT_FLOW_UPDATE_MAX_STALENESS_MS = 1000;
+  private static final long DEFAULT_JOB_PROPS_CACHE_SIZE = 20000;
+  private static final int DEFAULT_EXECUTION_DIR_LINK_THREADS = 1;
 
   // this map is used to store the flows that have been submitted to
   // the executor service. Once a flow has been submitted, it is either
   // in the queue waiting to be executed or in executing state.
   private final Map<Future<?>, Integer> submittedFlows = new ConcurrentHashMap<>();
   private final Map<Integer, FlowRunner> runningFlows = new ConcurrentHashMap<>();
+  // executions of the batches being submitted which aren't running yet
+  private final Set<Integer> submittingFlows = ConcurrentHashMap.newKeySet();
   private final Map<Integer, ExecutableFlow> recentlyFinishedFlows = new ConcurrentHashMap<>();
   private final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects;
 
@@ -118,7 +140,15 @@ public class FlowRunnerManager implements EventListener,
   private final ProjectLoader projectLoader;
   private final JobTypeManager jobtypeManager;
   private final FlowPreparer flowPreparer;
+  private final FlowUpdateJournal flowUpdateJournal = new FlowUpdateJournal();
+  private final FlowUpdateCoalescer flowUpdateCoalescer;
+  // null unless executor.job.slots is set
+  private final JobSlotScheduler jobSlotScheduler;
+  private final JobPropsCache jobPropsCache;
+  // null unless azkaban.log.upload.intervalMs is set
+  private final LogShipper logShipper;
   private final TriggerManager triggerManager;
+  private final ExecMetrics execMetrics;
   private final AzkabanEventReporter azkabanEventReporter;
 
   private final Props azkabanProps;
@@ -155,8 +185,10 @@ public class FlowRunnerManager implements EventListener,
       final ProjectLoader projectLoader,
       final StorageManager storageManager,
       final TriggerManager triggerManager,
+      final ExecMetrics execMetrics,
       @Nullable final AzkabanEventReporter azkabanEventReporter) throws IOException {
     this.azkabanProps = props;
+    this.execMetrics = execMetrics;
 
     this.executionDirRetention = props.getLong("execution.dir.retention",
         this.executionDirRetention);
@@ -179,15 +211,43 @@ public class FlowRunnerManager implements EventListener,
     this.numThreads = props.getInt(EXECUTOR_FLOW_THREADS, DEFAULT_NUM_EXECUTING_FLOWS);
     this.numJobThreadPerFlow = props.getInt(FLOW_NUM_JOB_THREADS, DEFAULT_FLOW_NUM_JOB_TREADS);
     this.executorService = createExecutorService(this.numThreads);
+    final int jobSlots = props.getInt(EXECUTOR_JOB_SLOTS, 0);
+    if (jobSlots > 0) {
+      final JobSlotScheduler.Policy policy = JobSlotScheduler.Policy.valueOf(
+          props.getString(EXECUTOR_JOB_SLOTS_POLICY, JobSlotScheduler.Policy.FAIR_SHARE.name()));
+      logger.info("Running jobs on " + jobSlots + " shared job slots, policy " + policy);
+      this.jobSlotScheduler = new JobSlotScheduler(jobSlots, policy);
+    } else {
+      this.jobSlotScheduler = null;
+    }
+    this.jobPropsCache = new JobPropsCache(
+        props.getLong(EXECUTOR_JOB_PROPS_CACHE_SIZE, DEFAULT_JOB_PROPS_CACHE_SIZE));
 
     // Create a flow preparer
     this.flowPreparer = new FlowPreparer(storageManager, this.executionDirectory,
         this.projectDirectory,
         this.installedProjects);
+    this.flowPreparer.setExecMetrics(execMetrics);
+    this.flowPreparer.setExecDirLinking(
+        LinkMode.valueOf(props.getString(EXECUTION_DIR_LINK_MODE, LinkMode.HARD_LINK.name())),
+        props.getInt(EXECUTION_DIR_LINK_THREADS, DEFAULT_EXECUTION_DIR_LINK_THREADS));
 
     this.executorLoader = executorLoader;
     this.projectLoader = projectLoader;
     this.triggerManager = triggerManager;
+    this.flowUpdateCoalescer = new FlowUpdateCoalescer(executorLoader,
+        props.getLong(FLOW_UPDATE_MAX_STALENESS_MS, DEFAULT_FLOW_UPDATE_MAX_STALENESS_MS),
+        props.getLong(Constants.ConfigurationKeys.AZKABAN_FLOW_UPDATE_COMPACTION_INTERVAL_MS, 0));
+
+    final long logUploadIntervalMs = props.getLong(LOG_UPLOAD_INTERVAL_MS, 0);
+    if (logUploadIntervalMs > 0) {
+      logger.info("Uploading the logs of the running jobs every " + logUploadIntervalMs + " ms");
+      this.logShipper = new LogShipper(executorLoader, logUploadIntervalMs,
+          props.getInt(Constants.ConfigurationKeys.AZKABAN_LOG_UPLOAD_CHUNK_SIZE,
+              Constants.DEFAULT_LOG_UPLOAD_CHUNK_SIZE));
+    } else {
+      this.logShipper = null;
+    }
 
     this.jobLogChunkSize = this.azkabanProps.getString("job.log.chunk.size", "5MB");
     this.jobLogNumFiles = this.azkabanProps.getInt("job.log.backup.index", 4);
@@ -311,6 +371,35 @@ public class FlowRunnerManager implements EventListener,
     }
   }
 
+  /**
+   * Submits several flows at once. A flow that fails to be submitted doesn't affect the others.
+   *
+   * @return error messages of the flows that couldn't be submitted, by execution id.
+   */
+  public Map<Integer, String> submitFlows(final List<Integer> execIds) {
+    final Map<Integer, String> errors = new HashMap<>();
+    this.submittingFlows.addAll(execIds);
+    for (final int execId : execIds) {
+      try {
+        submitFlow(execId);
+      } catch (final Exception e) {
+        logger.error("Failed to submit execution " + execId, e);
+        errors.put(execId, String.valueOf(e.getMessage()));
+      } finally {
+        this.submittingFlows.remove(execId);
+      }
+    }
+    return errors;
+  }
+
+  /**
+   * @return true if the execution is part of a batch being submitted and isn't running yet. The
+   * web server may ask for it after its batch call failed.
+   */
+  public boolean isSubmitting(final int execId) {
+    return this.submittingFlows.contains(execId);
+  }
+
   public void submitFlow(final int execId) throws ExecutorManagerException {
     // Load file and submit
     if (this.runningFlows.containsKey(execId)) {
@@ -369,7 +458,13 @@ public class FlowRunnerManager implements EventListener,
     runner.setFlowWatcher(watcher)
         .setJobLogSettings(this.jobLogChunkSize, this.jobLogNumFiles)
         .setValidateProxyUser(this.validateProxyUser)
-        .setNumJobThreads(numJobThreads).addListener(this);
+        .setNumJobThreads(numJobThreads)
+        .setFlowUpdateJournal(this.flowUpdateJournal)
+        .setFlowUpdateCoalescer(this.flowUpdateCoalescer)
+        .setJobSlotScheduler(this.jobSlotScheduler)
+        .setJobPropsCache(this.jobPropsCache)
+        .setLogShipper(this.logShipper)
+        .setExecMetrics(this.execMetrics).addListener(this);
 
     configureFlowLevelMetrics(runner);
 
@@ -482,6 +577,21 @@ public class FlowRunnerManager implements EventListener,
     runner.retryFailures(user);
   }
 
+  public FlowUpdateJournal getFlowUpdateJournal() {
+    return this.flowUpdateJournal;
+  }
+
+  public FlowUpdateCoalescer getFlowUpdateCoalescer() {
+    return this.flowUpdateCoalescer;
+  }
+
+  /**
+   * @return the scheduler of the shared job slots, null if each flow has its own job threads.
+   */
+  public JobSlotScheduler getJobSlotScheduler() {
+    return this.jobSlotScheduler;
+  }
+
   public ExecutableFlow getExecutableFlow(final int execId) {
     final FlowRunner runner = this.runningFlows.get(execId);
     if (runner == null) {
@@ -746,6 +856,13 @@ public class FlowRunnerManager implements EventListener,
         logger.error(e);
       }
     }
+    this.flowUpdateCoalescer.shutdown();
+    if (this.jobSlotScheduler != null) {
+      this.jobSlotScheduler.shutdown();
+    }
+    if (this.logShipper != null) {
+      this.logShipper.shutdown();
+    }
     logger.warn("Shutdown FlowRunnerManager complete.");
   }
 
@@ -756,6 +873,13 @@ public class FlowRunnerManager implements EventListener,
   public void shutdownNow() {
     logger.warn("Shutting down FlowRunnerManager now...");
     this.executorService.shutdownNow();
+    if (this.jobSlotScheduler != null) {
+      this.jobSlotScheduler.shutdownNow();
+    }
+    this.flowUpdateCoalescer.shutdown();
+    if (this.logShipper != null) {
+      this.logShipper.shutdown();
+    }
     this.triggerManager.shutdown();
   }
 
@@ -914,6 +1038,7 @@ public class FlowRunnerManager implements EventListener,
         logger.info("Cleaning execution " + id
             + " from recently finished flows list.");
         FlowRunnerManager.this.recentlyFinishedFlows.remove(id);
+        FlowRunnerManager.this.flowUpdateJournal.remove(id);
       }
     }
 
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManagerException;
+import azkaban.executor.Status;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * <pre>
+ * Writes the updates of the running flows of this executor to the DB behind their FlowRunners.
+ * NOTE: Every write serializes and rewrites the whole flow, so the updates of a flow are
+ *       coalesced: a flow is written at most once per maxStalenessMs, and the write that follows
+ *       a burst of updates carries all of them. The web server follows running flows through the
+ *       executor, so only the DB copy is allowed to lag behind.
+ *       Updates that users or other flows wait on (finished flow, pause, kill) are written right
+ *       away with {@link #flush(ExecutableFlow)}, and the pending ones are written on shutdown.
+ *       With a compaction interval, a write only appends the nodes updated since the previous one
+ *       (see {@link ExecutorLoader#appendExecutableFlowUpdate(ExecutableFlow, long)}), and the
+ *       whole flow is rewritten once per interval and when it is finished.
+ * </pre>
+ */
+public class FlowUpdateCoalescer {
+
+  private static final Logger logger = Logger.getLogger(FlowUpdateCoalescer.class);
+
+  private final ExecutorLoader executorLoader;
+  private final long maxStalenessMs;
+  private final long compactionIntervalMs;
+  private final ScheduledExecutorService scheduler;
+  private final Map<Integer, FlowState> flows = new ConcurrentHashMap<>();
+  private final AtomicLong writtenUpdates = new AtomicLong();
+  private final AtomicLong coalescedUpdates = new AtomicLong();
+  private final AtomicLong appendedUpdates = new AtomicLong();
+
+  public FlowUpdateCoalescer(final ExecutorLoader executorLoader, final long maxStalenessMs) {
+    this(executorLoader, maxStalenessMs, 0);
+  }
+
+  /**
+   * @param maxStalenessMs how long an update may wait for the next write of its flow, 0 to write
+   * every update right away.
+   * @param compactionIntervalMs how often the whole flow is rewritten, 0 to rewrite it on every
+   * write instead of appending the updated nodes.
+   */
+  public FlowUpdateCoalescer(final ExecutorLoader executorLoader, final long maxStalenessMs,
+      final long compactionIntervalMs) {
+    this.executorLoader = executorLoader;
+    this.maxStalenessMs = maxStalenessMs;
+    this.compactionIntervalMs = compactionIntervalMs;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "azk-flow-update-writer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Writes the flow if it wasn't written for maxStalenessMs, otherwise makes sure that a write is
+   * scheduled by then.
+   */
+  public void update(final ExecutableFlow flow) {
+    final FlowState state = this.flows
+        .computeIfAbsent(flow.getExecutionId(), execId -> new FlowState());
+    synchronized (state) {
+      state.flow = flow;
+      if (state.scheduledWrite != null) {
+        // the scheduled write will carry this update
+        this.coalescedUpdates.incrementAndGet();
+        return;
+      }
+      final long delay = state.lastWriteTime + this.maxStalenessMs - System.currentTimeMillis();
+      if (delay <= 0) {
+        write(state, flow);
+      } else {
+        this.coalescedUpdates.incrementAndGet();
+        state.scheduledWrite = this.scheduler.schedule(() -> {
+          synchronized (state) {
+            if (state.scheduledWrite != null) {
+              state.scheduledWrite = null;
+              write(state, state.flow);
+            }
+          }
+        }, delay, TimeUnit.MILLISECONDS);
+      }
+    }
+  }
+
+  /**
+   * Writes the flow right away, along with the updates waiting for a scheduled write.
+   */
+  public void flush(final ExecutableFlow flow) {
+    final FlowState state = this.flows
+        .computeIfAbsent(flow.getExecutionId(), execId -> new FlowState());
+    synchronized (state) {
+      state.flow = flow;
+      cancelScheduledWrite(state);
+      write(state, flow);
+    }
+  }
+
+  /**
+   * Forgets about a flow once its final state is flushed.
+   */
+  public void remove(final int execId) {
+    final FlowState state = this.flows.remove(execId);
+    if (state != null) {
+      synchronized (state) {
+        cancelScheduledWrite(state);
+      }
+    }
+  }
+
+  /**
+   * Writes the pending updates of all the flows and stops the scheduled writes.
+   */
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+    for (final FlowState state : this.flows.values()) {
+      synchronized (state) {
+        if (state.scheduledWrite != null) {
+          cancelScheduledWrite(state);
+          write(state, state.flow);
+        }
+      }
+    }
+  }
+
+  public long getWrittenUpdates() {
+    return this.writtenUpdates.get();
+  }
+
+  public long getCoalescedUpdates() {
+    return this.coalescedUpdates.get();
+  }
+
+  /**
+   * @return number of written updates which only appended the updated nodes.
+   */
+  public long getAppendedUpdates() {
+    return this.appendedUpdates.get();
+  }
+
+  private void cancelScheduledWrite(final FlowState state) {
+    if (state.scheduledWrite != null) {
+      state.scheduledWrite.cancel(false);
+      state.scheduledWrite = null;
+    }
+  }
+
+  /* Must be called while holding the lock of the state */
+  private void write(final FlowState state, final ExecutableFlow flow) {
+    final long writeTime = System.currentTimeMillis();
+    state.lastWriteTime = writeTime;
+    try {
+      if (this.compactionIntervalMs <= 0 || state.lastPersistedTime == 0
+          || writeTime - state.lastCompactionTime >= this.compactionIntervalMs
+          || Status.isStatusFinished(flow.getStatus())) {
+        this.executorLoader.updateExecutableFlow(flow);
+        state.lastCompactionTime = writeTime;
+      } else {
+        // nodes updated in the same millisecond as the previous write may have missed it
+        this.executorLoader.appendExecutableFlowUpdate(flow, state.lastPersistedTime - 1);
+        this.appendedUpdates.incrementAndGet();
+      }
+      state.lastPersistedTime = writeTime;
+      this.writtenUpdates.incrementAndGet();
+    } catch (final ExecutorManagerException e) {
+      logger.error("Error updating flow " + flow.getExecutionId(), e);
+    }
+  }
+
+  /* Write state of one flow, guarded by its own lock */
+  private static class FlowState {
+
+    private ExecutableFlow flow;
+    private long lastWriteTime = 0;
+    // start time of the last successful write, the next one appends the nodes updated since
+    private long lastPersistedTime = 0;
+    private long lastCompactionTime = 0;
+    private ScheduledFuture<?> scheduledWrite;
+  }
+}
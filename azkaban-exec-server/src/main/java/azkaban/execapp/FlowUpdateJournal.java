@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records a sequence number for every state change of the flows running on this executor.
+ *
+ * The web server uses it to long-poll for flow status changes: it passes the last sequence number
+ * it has seen and the executor answers as soon as one of its flows changed after that point,
+ * computing update objects only for the flows that did change.
+ *
+ * Sequence numbers are only meaningful within an epoch. The epoch is assigned when the journal is
+ * created, so a web server that reconnects after an executor restart sees a different epoch and
+ * falls back to a full resync.
+ */
+public class FlowUpdateJournal {
+
+  public static final long NO_SEQUENCE = -1;
+
+  private final long epoch;
+  private final Map<Integer, Long> lastUpdateSequences = new ConcurrentHashMap<>();
+  private final Object updateSync = new Object();
+  // guarded by updateSync
+  private long sequence = 0;
+
+  public FlowUpdateJournal() {
+    this(System.currentTimeMillis());
+  }
+
+  FlowUpdateJournal(final long epoch) {
+    this.epoch = epoch;
+  }
+
+  public long getEpoch() {
+    return this.epoch;
+  }
+
+  public long getSequence() {
+    synchronized (this.updateSync) {
+      return this.sequence;
+    }
+  }
+
+  /**
+   * Records a state change of the given execution and wakes up any waiting long-poll requests.
+   */
+  public void markUpdated(final int execId) {
+    synchronized (this.updateSync) {
+      this.sequence++;
+      this.lastUpdateSequences.put(execId, this.sequence);
+      this.updateSync.notifyAll();
+    }
+  }
+
+  /**
+   * @return true if the execution changed after the given sequence number.
+   */
+  public boolean isUpdatedSince(final int execId, final long sinceSequence) {
+    final Long lastUpdate = this.lastUpdateSequences.get(execId);
+    return lastUpdate != null && lastUpdate > sinceSequence;
+  }
+
+  /**
+   * Blocks until one of the given executions changes after the given sequence number or until the
+   * timeout expires, whichever comes first.
+   *
+   * @return the sequence number the caller should resume from on its next request.
+   */
+  public long awaitUpdate(final Collection<Integer> execIds, final long sinceSequence,
+      final long timeoutMs) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + timeoutMs;
+    synchronized (this.updateSync) {
+      while (!isAnyUpdatedSince(execIds, sinceSequence)) {
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          break;
+        }
+        this.updateSync.wait(remaining);
+      }
+      return this.sequence;
+    }
+  }
+
+  /**
+   * Forgets an execution. Called once the flow is no longer reported to the web server.
+   */
+  public void remove(final int execId) {
+    this.lastUpdateSequences.remove(execId);
+  }
+
+  private boolean isAnyUpdatedSince(final Collection<Integer> execIds, final long sinceSequence) {
+    for (final Integer execId : execIds) {
+      if (isUpdatedSince(execId, sinceSequence)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import azkaban.utils.Props;
+import azkaban.utils.Triple;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Cache of the parsed job files, shared by all the executions of a project version.
+ *
+ * The job files of a project version never change, so each of them is parsed once instead of
+ * once per job run. Callers get their own copy of the cached props, which they are free to modify.
+ */
+public class JobPropsCache {
+
+  private final Cache<Triple<Integer, Integer, String>, Props> cache;
+
+  /**
+   * @param maxSize maximum number of job files kept.
+   */
+  public JobPropsCache(final long maxSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+  }
+
+  /**
+   * @param source path of the job file in the project.
+   * @param file the job file to parse if it isn't cached yet, e.g. in the directory of the
+   * execution.
+   * @return a copy of the props of the job file, with the given file as source even if it was
+   * parsed from another one, like {@link Props#Props(Props, File)}.
+   */
+  public Props get(final int projectId, final int version, final String source, final File file)
+      throws IOException {
+    try {
+      final Props props = this.cache
+          .get(new Triple<>(projectId, version, source), () -> new Props(null, file));
+      final Props copy = new Props(null, props);
+      copy.setSource(file.getPath());
+      return copy;
+    } catch (final ExecutionException e) {
+      throw new IOException("Error loading job file " + file, e.getCause());
+    }
+  }
+
+  public long size() {
+    return this.cache.size();
+  }
+}
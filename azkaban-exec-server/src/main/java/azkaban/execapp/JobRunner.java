@@ -51,7 +51,6 @@ import java.util.Set;
 import org.apache.kafka.log4jappender.KafkaLog4jAppender;
 import org.apache.log4j.Appender;
 import org.apache.log4j.EnhancedPatternLayout;
-import org.apache.log4j.FileAppender;
 import org.apache.log4j.Layout;
 import org.apache.log4j.Logger;
 import org.apache.log4j.RollingFileAppender;
@@ -89,6 +88,9 @@ public class JobRunner extends EventHandler implements Runnable {
 
   private String jobLogChunkSize;
   private int jobLogBackupIndex;
+  // Uploads the log while the job runs, the log is uploaded when the job is finished if null
+  private LogShipper logShipper = null;
+  private LogShipper.ShippedLog shippedLog = null;
 
   private long delayStartMs = 0;
   private volatile boolean killed = false;
@@ -96,7 +98,8 @@ public class JobRunner extends EventHandler implements Runnable {
 
   public JobRunner(final ExecutableNode node, final File workingDir, final ExecutorLoader loader,
       final JobTypeManager jobtypeManager, final Props azkabanProps) {
-    this.props = node.getInputProps();
+    // The input props are a shared snapshot, the properties added by the runner go on top of it
+    this.props = node.getInputProps() != null ? new Props(node.getInputProps()) : null;
     this.node = node;
     this.workingDir = workingDir;
 
@@ -166,6 +169,10 @@ public class JobRunner extends EventHandler implements Runnable {
     this.jobLogBackupIndex = numLogBackup;
   }
 
+  public void setLogShipper(final LogShipper logShipper) {
+    this.logShipper = logShipper;
+  }
+
   public Props getProps() {
     return this.props;
   }
@@ -264,6 +271,10 @@ public class JobRunner extends EventHandler implements Runnable {
 
       try {
         attachFileAppender(createFileAppender());
+        if (this.logShipper != null) {
+          this.shippedLog = this.logShipper.register(this.executionId, this.node.getNestedId(),
+              this.node.getAttempt(), this.logFile, this.jobLogBackupIndex);
+        }
       } catch (final IOException e) {
         removeAppender(this.jobAppender);
         this.flowLogger.error("Could not open log file in " + this.workingDir
@@ -297,7 +308,7 @@ public class JobRunner extends EventHandler implements Runnable {
     }
   }
 
-  private void attachFileAppender(final FileAppender appender) {
+  private void attachFileAppender(final Appender appender) {
     // If present, remove the existing file appender
     assert (this.jobAppender == null);
 
@@ -307,7 +318,7 @@ public class JobRunner extends EventHandler implements Runnable {
     this.flowLogger.info("Attached file appender for job " + this.jobId);
   }
 
-  private FileAppender createFileAppender() throws IOException {
+  private Appender createFileAppender() throws IOException {
     // Set up log files
     final String logName = createLogFileName(this.node);
     this.logFile = new File(this.workingDir, logName);
@@ -320,7 +331,7 @@ public class JobRunner extends EventHandler implements Runnable {
     fileAppender.setMaxFileSize(this.jobLogChunkSize);
 
     this.flowLogger.info("Created file appender for job " + this.jobId);
-    return fileAppender;
+    return LogUtil.createLogFileAppender(this.azkabanProps, fileAppender);
   }
 
   private void createAttachmentFile() {
@@ -500,6 +511,7 @@ public class JobRunner extends EventHandler implements Runnable {
   }
 
   private void finalizeLogFile(final int attemptNo) {
+    // Closing the appenders writes out the log events they still buffer
     closeLogger();
     if (this.logFile == null) {
       this.flowLogger.info("Log file for job " + this.jobId + " is null");
@@ -507,6 +519,11 @@ public class JobRunner extends EventHandler implements Runnable {
     }
 
     try {
+      if (this.shippedLog != null) {
+        // Only the part of the log written since the last upload is left
+        this.shippedLog.finish();
+        return;
+      }
       final File[] files = this.logFile.getParentFile().listFiles(new FilenameFilter() {
         @Override
         public boolean accept(final File dir, final String name) {
@@ -568,12 +585,20 @@ public class JobRunner extends EventHandler implements Runnable {
     createAttachmentFile();
     createLogger();
     boolean errorFound = false;
-    // Delay execution if necessary. Will return a true if something went wrong.
-    errorFound |= delayExecution();
-
-    // For pipelining of jobs. Will watch other jobs. Will return true if
-    // something went wrong.
-    errorFound |= blockOnPipeLine();
+    if (this.delayStartMs > 0 || !this.pipelineJobs.isEmpty()) {
+      // The job slot is given up during the waits, so the jobs waited for can get one
+      errorFound = JobSlotScheduler.callWithoutSlot(() -> {
+        // Delay execution if necessary. Will return a true if something went wrong.
+        boolean waitError = delayExecution();
+
+        // For pipelining of jobs. Will watch other jobs. Will return true if
+        // something went wrong.
+        waitError |= blockOnPipeLine();
+        return waitError;
+      });
+    } else if (isKilled()) {
+      errorFound = true;
+    }
 
     // Start the node.
     this.node.setStartTime(System.currentTimeMillis());
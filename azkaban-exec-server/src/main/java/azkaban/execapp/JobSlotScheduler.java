@@ -0,0 +1,325 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.log4j.Logger;
+
+/**
+ * <pre>
+ * Runs the jobs of all the flows of this executor on one pool of job slots.
+ * NOTE: Each flow gets its own ExecutorService from {@link #newFlowExecutor(int, int, int)},
+ *       which runs at most maxConcurrentJobs jobs of the flow at a time. The jobs waiting for a
+ *       slot are queued per flow, and every freed slot goes to the next job of the flow picked by
+ *       the {@link Policy}, among the flows that are under their own limit.
+ *       A job waiting for something else than its own work (its retry backoff, or the jobs of
+ *       another flow it is pipelined on) gives its slot up for the time of the wait, see
+ *       {@link #callWithoutSlot(Supplier)}, so that the waiting jobs can't hold all the slots
+ *       while the jobs they wait for are queued. There is one thread per slot plus one per such
+ *       waiting job, so the number of job threads of the executor no longer grows with the number
+ *       of running flows.
+ * </pre>
+ */
+public class JobSlotScheduler {
+
+  private static final Logger logger = Logger.getLogger(JobSlotScheduler.class);
+  // scheduler of the slot the current thread runs a job on
+  private static final ThreadLocal<JobSlotScheduler> currentScheduler = new ThreadLocal<>();
+
+  private final int maxSlots;
+  private final Comparator<FlowJobExecutor> order;
+  private final ThreadPoolExecutor threadPool;
+  // flows with jobs running or waiting, in registration order. Guarded by this.
+  private final Map<Integer, FlowJobExecutor> flows = new LinkedHashMap<>();
+  private int usedSlots = 0;
+  private int waitingJobs = 0;
+  // jobs done waiting without their slot, they get the next free slots
+  private int resumingJobs = 0;
+
+  public JobSlotScheduler(final int maxSlots, final Policy policy) {
+    this.maxSlots = maxSlots;
+    this.order = policy.order;
+    // the slots are counted by the scheduler, the jobs waiting without a slot keep their thread
+    this.threadPool = new ThreadPoolExecutor(maxSlots, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), r -> {
+      final Thread thread = new Thread(r);
+      thread.setName("azk-job-slot-" + thread.getId());
+      return thread;
+    });
+  }
+
+  /**
+   * Runs a wait of the job of the current thread without holding its job slot, so that the jobs
+   * it waits for can run meanwhile. The slot is given to the next job before the wait and taken
+   * back after it, ahead of the jobs waiting for a slot. Only runs the wait if the current thread
+   * doesn't run a job on a slot.
+   */
+  public static <T> T callWithoutSlot(final Supplier<T> wait) {
+    final JobSlotScheduler scheduler = currentScheduler.get();
+    if (scheduler == null) {
+      return wait.get();
+    }
+    scheduler.yieldSlot();
+    try {
+      return wait.get();
+    } finally {
+      scheduler.resumeSlot();
+    }
+  }
+
+  /**
+   * Creates the executor of the jobs of a flow. It is shut down by the flow once all its jobs are
+   * submitted, and forgotten by the scheduler once they are all done.
+   *
+   * @param priority higher priorities are served first by {@link Policy#PRIORITY}.
+   */
+  public synchronized ExecutorService newFlowExecutor(final int execId, final int priority,
+      final int maxConcurrentJobs) {
+    final FlowJobExecutor executor = new FlowJobExecutor(execId, priority,
+        Math.max(1, maxConcurrentJobs));
+    this.flows.put(execId, executor);
+    return executor;
+  }
+
+  public void shutdown() {
+    this.threadPool.shutdown();
+  }
+
+  public void shutdownNow() {
+    this.threadPool.shutdownNow();
+  }
+
+  public int getMaxSlots() {
+    return this.maxSlots;
+  }
+
+  public synchronized int getUsedSlots() {
+    return this.usedSlots;
+  }
+
+  public synchronized int getWaitingJobs() {
+    return this.waitingJobs;
+  }
+
+  public synchronized int getResumingJobs() {
+    return this.resumingJobs;
+  }
+
+  public int getActiveThreads() {
+    return this.threadPool.getActiveCount();
+  }
+
+  /* Hands out the free slots, must be called while holding the lock of the scheduler */
+  private void dispatch() {
+    while (this.usedSlots < this.maxSlots && this.resumingJobs == 0) {
+      FlowJobExecutor next = null;
+      for (final FlowJobExecutor flow : this.flows.values()) {
+        if (!flow.waiting.isEmpty() && flow.running < flow.maxConcurrentJobs
+            && (next == null || this.order.compare(flow, next) < 0)) {
+          next = flow;
+        }
+      }
+      if (next == null) {
+        return;
+      }
+      final Runnable job = next.waiting.poll();
+      this.waitingJobs--;
+      next.running++;
+      this.usedSlots++;
+      final FlowJobExecutor flow = next;
+      try {
+        this.threadPool.execute(() -> {
+          currentScheduler.set(this);
+          try {
+            job.run();
+          } finally {
+            currentScheduler.remove();
+            release(flow);
+          }
+        });
+      } catch (final RejectedExecutionException e) {
+        logger.error("Job slots are shut down, dropping a job of execution " + flow.execId, e);
+        flow.running--;
+        this.usedSlots--;
+        flow.terminateIfDone();
+        return;
+      }
+    }
+  }
+
+  private synchronized void release(final FlowJobExecutor flow) {
+    flow.running--;
+    this.usedSlots--;
+    flow.terminateIfDone();
+    notifyAll();
+    dispatch();
+  }
+
+  /* The job keeps counting against the limit of its flow, only the slot is given up */
+  private synchronized void yieldSlot() {
+    this.usedSlots--;
+    // a resuming job takes the slot, the dispatch holds the waiting jobs back meanwhile
+    notifyAll();
+    dispatch();
+  }
+
+  /* Takes a slot back for a job which gave its own up, waiting for one to be free */
+  private synchronized void resumeSlot() {
+    boolean interrupted = false;
+    this.resumingJobs++;
+    try {
+      while (this.usedSlots >= this.maxSlots) {
+        try {
+          wait();
+        } catch (final InterruptedException e) {
+          // keep waiting, the job would run over the slot limit otherwise
+          interrupted = true;
+        }
+      }
+    } finally {
+      this.resumingJobs--;
+    }
+    this.usedSlots++;
+    // other jobs may have been held back while this one was resuming
+    dispatch();
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Order in which the flows get the free slots.
+   */
+  public enum Policy {
+    // the flow with the fewest running jobs first, then the flow of higher priority
+    FAIR_SHARE(Comparator.<FlowJobExecutor>comparingInt(flow -> flow.running)
+        .thenComparing(Comparator.<FlowJobExecutor>comparingInt(flow -> flow.priority)
+            .reversed())),
+    // the flow of higher priority first, then the flow with the fewest running jobs
+    PRIORITY(Comparator.<FlowJobExecutor>comparingInt(flow -> flow.priority).reversed()
+        .thenComparingInt(flow -> flow.running));
+
+    private final Comparator<FlowJobExecutor> order;
+
+    Policy(final Comparator<FlowJobExecutor> order) {
+      this.order = order;
+    }
+  }
+
+  /* Job executor of one flow. All its state is guarded by the lock of the scheduler. */
+  private class FlowJobExecutor extends AbstractExecutorService {
+
+    private final int execId;
+    private final int priority;
+    private final int maxConcurrentJobs;
+    private final Deque<Runnable> waiting = new ArrayDeque<>();
+    private int running = 0;
+    private boolean isShutdown = false;
+    private boolean isTerminated = false;
+
+    private FlowJobExecutor(final int execId, final int priority, final int maxConcurrentJobs) {
+      this.execId = execId;
+      this.priority = priority;
+      this.maxConcurrentJobs = maxConcurrentJobs;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+      synchronized (JobSlotScheduler.this) {
+        if (this.isShutdown) {
+          throw new RejectedExecutionException("Jobs of execution " + this.execId
+              + " are shut down");
+        }
+        this.waiting.add(command);
+        JobSlotScheduler.this.waitingJobs++;
+        dispatch();
+      }
+    }
+
+    @Override
+    public void shutdown() {
+      synchronized (JobSlotScheduler.this) {
+        this.isShutdown = true;
+        terminateIfDone();
+      }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      synchronized (JobSlotScheduler.this) {
+        final List<Runnable> dropped = new ArrayList<>(this.waiting);
+        JobSlotScheduler.this.waitingJobs -= this.waiting.size();
+        this.waiting.clear();
+        this.isShutdown = true;
+        terminateIfDone();
+        return dropped;
+      }
+    }
+
+    @Override
+    public boolean isShutdown() {
+      synchronized (JobSlotScheduler.this) {
+        return this.isShutdown;
+      }
+    }
+
+    @Override
+    public boolean isTerminated() {
+      synchronized (JobSlotScheduler.this) {
+        return this.isTerminated;
+      }
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit)
+        throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+      synchronized (JobSlotScheduler.this) {
+        while (!this.isTerminated) {
+          final long remaining = deadline - System.currentTimeMillis();
+          if (remaining <= 0) {
+            return false;
+          }
+          JobSlotScheduler.this.wait(remaining);
+        }
+        return true;
+      }
+    }
+
+    /* Must be called while holding the lock of the scheduler */
+    private void terminateIfDone() {
+      if (this.isShutdown && !this.isTerminated && this.running == 0 && this.waiting.isEmpty()) {
+        this.isTerminated = true;
+        JobSlotScheduler.this.flows.remove(this.execId);
+        JobSlotScheduler.this.notifyAll();
+      }
+    }
+  }
+}
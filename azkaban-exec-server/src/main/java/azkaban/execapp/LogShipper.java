@@ -0,0 +1,273 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManagerException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * <pre>
+ * Uploads the logs of the running jobs and flows of this executor to the DB while they are
+ * written, instead of all at once when they are finished.
+ * NOTE: Every intervalMs, the log files are read from where the previous upload stopped and their
+ *       complete parts of chunkSize bytes are uploaded. Once the job or flow is finished and its
+ *       appenders are closed, {@link ShippedLog#finish()} only uploads the rest of the log.
+ *       The uploaded parts are the persisted offset of a log. They are keyed by their start in
+ *       the whole log (see {@link ExecutorLoader#uploadLogChunk}), so a part whose upload
+ *       failed is uploaded again with the same key, and retrying an upload which actually
+ *       succeeded does nothing.
+ *       Log files rolled over by a RollingFileAppender are followed: the file being read is read
+ *       to its end before moving on to the file written after it. The uploaded log is the whole
+ *       output, not only the part kept on disk. Files rolled over and deleted between two
+ *       uploads are skipped.
+ * </pre>
+ */
+public class LogShipper {
+
+  private static final Logger logger = Logger.getLogger(LogShipper.class);
+  private static final int FINISH_ATTEMPTS = 3;
+
+  private final ExecutorLoader executorLoader;
+  private final int chunkSize;
+  private final ScheduledExecutorService scheduler;
+  private final Set<ShippedLog> logs = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param intervalMs how often the complete parts of the logs are uploaded.
+   * @param chunkSize size of the uploaded parts.
+   */
+  public LogShipper(final ExecutorLoader executorLoader, final long intervalMs,
+      final int chunkSize) {
+    this.executorLoader = executorLoader;
+    this.chunkSize = chunkSize;
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+      final Thread thread = new Thread(r, "azk-log-shipper");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleWithFixedDelay(this::shipAll, intervalMs, intervalMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private static Object getFileKey(final File file) throws IOException {
+    try {
+      return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+    } catch (final NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Starts uploading a log file.
+   *
+   * @param maxBackups number of backups kept when the log file is rolled over, 0 if it isn't.
+   */
+  public ShippedLog register(final int execId, final String name, final int attempt,
+      final File file, final int maxBackups) {
+    final ShippedLog log = new ShippedLog(execId, name, attempt, file, maxBackups);
+    this.logs.add(log);
+    return log;
+  }
+
+  /**
+   * @return the number of logs being uploaded.
+   */
+  public int getLogCount() {
+    return this.logs.size();
+  }
+
+  void shipAll() {
+    for (final ShippedLog log : this.logs) {
+      try {
+        log.ship(false);
+      } catch (final IOException | ExecutorManagerException e) {
+        // the part is uploaded again on the next run
+        logger.warn("Error uploading the log of " + log.execId + " : " + log.name, e);
+      }
+    }
+  }
+
+  /**
+   * Stops the uploads, the logs which aren't finished are uploaded by their finish() call.
+   */
+  public void shutdown() {
+    this.scheduler.shutdownNow();
+  }
+
+  /**
+   * A log being uploaded.
+   */
+  public class ShippedLog {
+
+    private final int execId;
+    private final String name;
+    private final int attempt;
+    private final File file;
+    private final int maxBackups;
+    // The part being read, uploaded once full
+    private final ByteBuffer chunk;
+    private FileChannel channel = null;
+    private Object fileKey = null;
+    // Start of the chunk in the whole log
+    private long uploadedBytes = 0;
+    private boolean finished = false;
+
+    private ShippedLog(final int execId, final String name, final int attempt, final File file,
+        final int maxBackups) {
+      this.execId = execId;
+      this.name = name;
+      this.attempt = attempt;
+      this.file = file;
+      this.maxBackups = maxBackups;
+      this.chunk = ByteBuffer.allocate(LogShipper.this.chunkSize);
+    }
+
+    /**
+     * Uploads the rest of the log, the log file must not be written any more.
+     */
+    public void finish() throws ExecutorManagerException {
+      LogShipper.this.logs.remove(this);
+      synchronized (this) {
+        try {
+          for (int i = 1; ; i++) {
+            try {
+              ship(true);
+              return;
+            } catch (final ExecutorManagerException e) {
+              if (i >= FINISH_ATTEMPTS) {
+                throw e;
+              }
+              logger.warn("Error uploading the log of " + this.execId + " : " + this.name
+                  + ", retrying", e);
+            }
+          }
+        } catch (final IOException e) {
+          throw new ExecutorManagerException("Error reading log file " + this.file, e);
+        } finally {
+          this.finished = true;
+          IOUtils.closeQuietly(this.channel);
+        }
+      }
+    }
+
+    /**
+     * Uploads the complete parts written since the previous call, and the last part too if
+     * last is true.
+     */
+    private synchronized void ship(final boolean last)
+        throws IOException, ExecutorManagerException {
+      if (this.finished) {
+        return;
+      }
+      if (this.channel != null || open(this.file)) {
+        while (true) {
+          readToEnd();
+          final File next = getNextFile();
+          if (next == null) {
+            break;
+          }
+          // rollOver() closes the file before renaming it, what it wrote last is read now
+          readToEnd();
+          this.channel.close();
+          if (!open(next)) {
+            // rolled over again in the meantime
+            open(this.file);
+            break;
+          }
+        }
+      }
+      if (last && this.chunk.position() > 0) {
+        upload();
+      }
+    }
+
+    private boolean open(final File file) throws IOException {
+      try {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+      } catch (final NoSuchFileException e) {
+        this.channel = null;
+        return false;
+      }
+      this.fileKey = getFileKey(file);
+      return true;
+    }
+
+    private void readToEnd() throws IOException, ExecutorManagerException {
+      while (true) {
+        if (!this.chunk.hasRemaining()) {
+          upload();
+        }
+        if (this.channel.read(this.chunk) <= 0) {
+          break;
+        }
+      }
+      if (this.channel.size() < this.channel.position()) {
+        // truncated by a rollover without backups
+        this.channel.position(0);
+      }
+    }
+
+    /**
+     * @return the file written after the open one if it was rolled over, null if it wasn't.
+     */
+    private File getNextFile() throws IOException {
+      final Object currentKey = getFileKey(this.file);
+      if (currentKey == null || this.fileKey == null || currentKey.equals(this.fileKey)) {
+        return null;
+      }
+      for (int i = 1; i <= this.maxBackups; i++) {
+        if (this.fileKey.equals(getFileKey(getBackup(i)))) {
+          return i == 1 ? this.file : getBackup(i - 1);
+        }
+      }
+      logger.warn("Log file " + this.file + " was rolled over more than " + this.maxBackups
+          + " times since its last upload, the parts in between are skipped");
+      for (int i = this.maxBackups; i >= 1; i--) {
+        if (getBackup(i).exists()) {
+          return getBackup(i);
+        }
+      }
+      return this.file;
+    }
+
+    private File getBackup(final int index) {
+      return new File(this.file.getPath() + "." + index);
+    }
+
+    private void upload() throws ExecutorManagerException {
+      LogShipper.this.executorLoader.uploadLogChunk(this.execId, this.name, this.attempt,
+          (int) this.uploadedBytes, this.chunk.array(), this.chunk.position());
+      this.uploadedBytes += this.chunk.position();
+      this.chunk.clear();
+    }
+  }
+}
@@ -17,13 +17,37 @@
 package azkaban.execapp;
 
 import azkaban.Constants;
+import azkaban.utils.AsyncLogAppender;
+import azkaban.utils.AsyncLogAppender.OverflowPolicy;
 import azkaban.utils.Props;
 import com.google.gson.Gson;
 import java.util.HashMap;
 import java.util.Map;
+import org.apache.log4j.Appender;
+import org.apache.log4j.FileAppender;
 
 class LogUtil {
 
+  private static final int DEFAULT_ASYNC_LOG_BUFFER_SIZE = 8192;
+
+  /**
+   * Wraps the file appender of a job or flow log into an {@link AsyncLogAppender} if the
+   * executor is configured to write the log files asynchronously.
+   */
+  static Appender createLogFileAppender(final Props azkabanProps,
+      final FileAppender fileAppender) {
+    if (!azkabanProps.getBoolean(
+        Constants.ConfigurationKeys.AZKABAN_SERVER_LOGGING_ASYNC_ENABLED, false)) {
+      return fileAppender;
+    }
+    return new AsyncLogAppender(fileAppender,
+        azkabanProps.getInt(Constants.ConfigurationKeys.AZKABAN_SERVER_LOGGING_ASYNC_BUFFER_SIZE,
+            DEFAULT_ASYNC_LOG_BUFFER_SIZE),
+        OverflowPolicy.valueOf(azkabanProps.getString(
+            Constants.ConfigurationKeys.AZKABAN_SERVER_LOGGING_ASYNC_OVERFLOW_POLICY,
+            OverflowPolicy.BLOCK.name())));
+  }
+
   static String createLogPatternLayoutJsonString(final Props props, final String jobId) {
     final Map<String, String> layout = new HashMap<>();
     layout.put("category", "%c{1}");
@@ -20,10 +20,11 @@ import azkaban.executor.ExecutorInfo;
 import azkaban.utils.JSONUtils;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -37,11 +38,10 @@ public class ServerStatisticsServlet extends HttpServlet {
   private static final int cacheTimeInMilliseconds = 1000;
   private static final Logger logger = Logger.getLogger(ServerStatisticsServlet.class);
   private static final String noCacheParamName = "nocache";
-  private static final boolean exists_Bash = new File("/bin/bash").exists();
-  private static final boolean exists_Cat = new File("/bin/cat").exists();
-  private static final boolean exists_Grep = new File("/bin/grep").exists();
-  private static final boolean exists_Meminfo = new File("/proc/meminfo").exists();
-  private static final boolean exists_LoadAvg = new File("/proc/loadavg").exists();
+  private static final String MEMINFO_FILE = "/proc/meminfo";
+  private static final String LOADAVG_FILE = "/proc/loadavg";
+  private static final boolean exists_Meminfo = new File(MEMINFO_FILE).exists();
+  private static final boolean exists_LoadAvg = new File(LOADAVG_FILE).exists();
 
   protected static long lastRefreshedTime = 0;
   protected static ExecutorInfo cachedstats = null;
@@ -75,32 +75,23 @@ public class ServerStatisticsServlet extends HttpServlet {
    * means 55.6%
    */
   protected void fillRemainingMemoryPercent(final ExecutorInfo stats) {
-    if (exists_Bash && exists_Cat && exists_Grep && exists_Meminfo) {
-      final java.lang.ProcessBuilder processBuilder =
-          new java.lang.ProcessBuilder("/bin/bash", "-c",
-              "/bin/cat /proc/meminfo | grep -E \"^MemTotal:|^MemFree:|^Buffers:|^Cached:|^SwapCached:\"");
+    if (exists_Meminfo) {
       try {
-        final ArrayList<String> output = new ArrayList<>();
-        final Process process = processBuilder.start();
-        process.waitFor();
-        final InputStream inputStream = process.getInputStream();
-        try {
-          final java.io.BufferedReader reader = new java.io.BufferedReader(
-              new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-          String line = null;
-          while ((line = reader.readLine()) != null) {
+        // read the proc file directly rather than forking a shell for every refresh.
+        final List<String> output = new ArrayList<>();
+        for (final String line : Files.readAllLines(Paths.get(MEMINFO_FILE),
+            StandardCharsets.UTF_8)) {
+          if (line.matches("^(MemTotal|MemFree|Buffers|Cached|SwapCached):.*")) {
             output.add(line);
           }
-        } finally {
-          inputStream.close();
         }
 
         long totalMemory = 0;
         long totalFreeMemory = 0;
         Long parsedResult = (long) 0;
 
-        // process the output from bash call.
-        // we expect the result from the bash call to be something like following -
+        // process the matching lines of the proc file.
+        // we expect them to be something like following -
         // MemTotal:       65894264 kB
         // MemFree:        57753844 kB
         // Buffers:          305552 kB
@@ -147,8 +138,8 @@ public class ServerStatisticsServlet extends HttpServlet {
           }
         } else {
           logger.error(
-              "failed to get total/free memory info as the bash call returned invalid result."
-                  + String.format(" Output from the bash call - %s ", output.toString()));
+              "failed to get total/free memory info as the proc file has unexpected content."
+                  + String.format(" Matching lines - %s ", output.toString()));
         }
 
         // the number got from the proc file is in KBs we want to see the number in MBs so we are dividing it by 1024.
@@ -157,13 +148,11 @@ public class ServerStatisticsServlet extends HttpServlet {
             totalMemory == 0 ? 0 : ((double) totalFreeMemory / (double) totalMemory) * 100);
       } catch (final Exception ex) {
         logger.error("failed fetch system memory info "
-            + "as exception is captured when fetching result from bash call. Ex -" + ex
+            + "as exception is captured when reading the proc file. Ex -" + ex
             .getMessage());
       }
     } else {
-      logger.error(
-          "failed fetch system memory info, one or more files from the following list are missing -  "
-              + "'/bin/bash'," + "'/bin/cat'," + "'/proc/loadavg'");
+      logger.error("failed fetch system memory info, '" + MEMINFO_FILE + "' is missing");
     }
   }
 
@@ -233,26 +222,12 @@ public class ServerStatisticsServlet extends HttpServlet {
    * method will only work on the property "cpuUsage".
    */
   protected void fillCpuUsage(final ExecutorInfo stats) {
-    if (exists_Bash && exists_Cat && exists_LoadAvg) {
-      final java.lang.ProcessBuilder processBuilder =
-          new java.lang.ProcessBuilder("/bin/bash", "-c", "/bin/cat /proc/loadavg");
+    if (exists_LoadAvg) {
       try {
-        final ArrayList<String> output = new ArrayList<>();
-        final Process process = processBuilder.start();
-        process.waitFor();
-        final InputStream inputStream = process.getInputStream();
-        try {
-          final java.io.BufferedReader reader = new java.io.BufferedReader(
-              new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-          String line = null;
-          while ((line = reader.readLine()) != null) {
-            output.add(line);
-          }
-        } finally {
-          inputStream.close();
-        }
+        final List<String> output =
+            Files.readAllLines(Paths.get(LOADAVG_FILE), StandardCharsets.UTF_8);
 
-        // process the output from bash call.
+        // process the content of the proc file.
         if (output.size() > 0) {
           final String[] splitedresult = output.get(0).split("\\s+");
           double cpuUsage = 0.0;
@@ -267,13 +242,11 @@ public class ServerStatisticsServlet extends HttpServlet {
         }
       } catch (final Exception ex) {
         logger.error("failed fetch system load info "
-            + "as exception is captured when fetching result from bash call. Ex -" + ex
+            + "as exception is captured when reading the proc file. Ex -" + ex
             .getMessage());
       }
     } else {
-      logger.error(
-          "failed fetch system load info, one or more files from the following list are missing -  "
-              + "'/bin/bash'," + "'/bin/cat'," + "'/proc/loadavg'");
+      logger.error("failed fetch system load info, '" + LOADAVG_FILE + "' is missing");
     }
   }
 }
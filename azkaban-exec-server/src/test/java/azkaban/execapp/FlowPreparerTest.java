@@ -17,17 +17,29 @@
 
 package azkaban.execapp;
 
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import azkaban.executor.ExecutableFlow;
 import azkaban.project.ProjectFileHandler;
+import azkaban.spi.StorageException;
 import azkaban.storage.StorageManager;
 import azkaban.utils.Pair;
 import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Before;
@@ -43,6 +55,8 @@ public class FlowPreparerTest {
   final Map<Pair<Integer, Integer>, ProjectVersion> installedProjects = new HashMap<>();
 
   private FlowPreparer instance;
+  private StorageManager storageManager;
+  private ProjectFileHandler projectFileHandler;
 
   @Before
   public void setUp() throws Exception {
@@ -54,14 +68,14 @@ public class FlowPreparerTest {
     final ClassLoader classLoader = getClass().getClassLoader();
     final File file = new File(classLoader.getResource(SAMPLE_FLOW_01 + ".zip").getFile());
 
-    final ProjectFileHandler projectFileHandler = mock(ProjectFileHandler.class);
-    when(projectFileHandler.getFileType()).thenReturn("zip");
-    when(projectFileHandler.getLocalFile()).thenReturn(file);
+    this.projectFileHandler = mock(ProjectFileHandler.class);
+    when(this.projectFileHandler.getFileType()).thenReturn("zip");
+    when(this.projectFileHandler.getLocalFile()).thenReturn(file);
 
-    final StorageManager storageManager = mock(StorageManager.class);
-    when(storageManager.getProjectFile(12, 34)).thenReturn(projectFileHandler);
+    this.storageManager = mock(StorageManager.class);
+    when(this.storageManager.getProjectFile(12, 34)).thenReturn(this.projectFileHandler);
 
-    this.instance = new FlowPreparer(storageManager, this.executionsDir, this.projectsDir,
+    this.instance = new FlowPreparer(this.storageManager, this.executionsDir, this.projectsDir,
         this.installedProjects);
   }
 
@@ -93,4 +107,70 @@ public class FlowPreparerTest {
     assertTrue(execDir.exists());
     assertTrue(new File(execDir, SAMPLE_FLOW_01).exists());
   }
+
+  @Test
+  public void testProjectIsPreparedOnceForConcurrentFlows() throws Exception {
+    final CountDownLatch downloadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseDownload = new CountDownLatch(1);
+    when(this.storageManager.getProjectFile(12, 34)).thenAnswer(invocation -> {
+      downloadStarted.countDown();
+      releaseDownload.await(10, TimeUnit.SECONDS);
+      return this.projectFileHandler;
+    });
+
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<File>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(() -> {
+          final ProjectVersion pv = new ProjectVersion(12, 34);
+          this.instance.setupProject(pv);
+          return pv.getInstalledDir();
+        }));
+      }
+      assertTrue(downloadStarted.await(10, TimeUnit.SECONDS));
+      releaseDownload.countDown();
+
+      for (final Future<File> future : futures) {
+        final File installedDir = future.get(10, TimeUnit.SECONDS);
+        assertTrue(new File(installedDir, SAMPLE_FLOW_01).exists());
+      }
+      verify(this.storageManager, times(1)).getProjectFile(12, 34);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testFailedPreparationIsReportedToWaitingFlows() throws Exception {
+    final CountDownLatch downloadStarted = new CountDownLatch(1);
+    final CountDownLatch releaseDownload = new CountDownLatch(1);
+    when(this.storageManager.getProjectFile(12, 34)).thenAnswer(invocation -> {
+      downloadStarted.countDown();
+      releaseDownload.await(10, TimeUnit.SECONDS);
+      throw new StorageException("download failed");
+    });
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<?> first = executor.submit(() -> {
+        this.instance.setupProject(new ProjectVersion(12, 34));
+        return null;
+      });
+      assertTrue(downloadStarted.await(10, TimeUnit.SECONDS));
+      final Future<?> second = executor.submit(() -> {
+        this.instance.setupProject(new ProjectVersion(12, 34));
+        return null;
+      });
+
+      releaseDownload.countDown();
+      assertThatThrownBy(() -> first.get(10, TimeUnit.SECONDS))
+          .hasCauseInstanceOf(StorageException.class);
+      assertThatThrownBy(() -> second.get(10, TimeUnit.SECONDS))
+          .hasRootCauseInstanceOf(StorageException.class);
+      assertFalse(new File(this.projectsDir, "12.34").exists());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -88,6 +88,8 @@ public class FlowRunnerTest extends FlowRunnerTestBase {
     waitForAndAssertFlowStatus(Status.SUCCEEDED);
     assertThreadShutDown();
     compareFinishedRuntime(this.runner);
+    // the jobs depending on others were submitted by the threads of the jobs they depend on
+    Assert.assertTrue(this.runner.getJobHandoffTimes().getCount() > 0);
 
     assertStatus("job1", Status.SUCCEEDED);
     assertStatus("job2", Status.SUCCEEDED);
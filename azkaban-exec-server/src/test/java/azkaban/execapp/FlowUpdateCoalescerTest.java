@@ -0,0 +1,146 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import azkaban.executor.ExecutableFlow;
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.Status;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FlowUpdateCoalescerTest {
+
+  private ExecutorLoader loader;
+  private ExecutableFlow flow1;
+  private ExecutableFlow flow2;
+
+  @Before
+  public void setUp() throws Exception {
+    this.loader = mock(ExecutorLoader.class);
+    this.flow1 = new ExecutableFlow();
+    this.flow1.setExecutionId(1);
+    this.flow2 = new ExecutableFlow();
+    this.flow2.setExecutionId(2);
+  }
+
+  @Test
+  public void testUpdatesAreCoalesced() throws Exception {
+    final FlowUpdateCoalescer coalescer = new FlowUpdateCoalescer(this.loader, 60000);
+    try {
+      for (int i = 0; i < 10; i++) {
+        coalescer.update(this.flow1);
+      }
+      coalescer.update(this.flow2);
+
+      // only the first update of each flow is written before the interval is over
+      verify(this.loader, times(1)).updateExecutableFlow(this.flow1);
+      verify(this.loader, times(1)).updateExecutableFlow(this.flow2);
+      assertThat(coalescer.getWrittenUpdates()).isEqualTo(2);
+      assertThat(coalescer.getCoalescedUpdates()).isEqualTo(9);
+
+      coalescer.flush(this.flow1);
+      verify(this.loader, times(2)).updateExecutableFlow(this.flow1);
+      assertThat(coalescer.getWrittenUpdates()).isEqualTo(3);
+    } finally {
+      coalescer.shutdown();
+    }
+    // nothing was pending any more
+    verify(this.loader, times(2)).updateExecutableFlow(this.flow1);
+  }
+
+  @Test
+  public void testPendingUpdateIsWrittenAfterInterval() throws Exception {
+    final FlowUpdateCoalescer coalescer = new FlowUpdateCoalescer(this.loader, 100);
+    try {
+      coalescer.update(this.flow1);
+      coalescer.update(this.flow1);
+      coalescer.update(this.flow1);
+
+      verify(this.loader, timeout(5000).times(2)).updateExecutableFlow(this.flow1);
+      assertThat(coalescer.getCoalescedUpdates()).isEqualTo(2);
+    } finally {
+      coalescer.shutdown();
+    }
+  }
+
+  @Test
+  public void testShutdownWritesPendingUpdates() throws Exception {
+    final FlowUpdateCoalescer coalescer = new FlowUpdateCoalescer(this.loader, 60000);
+    coalescer.update(this.flow1);
+    coalescer.update(this.flow1);
+    coalescer.update(this.flow2);
+    coalescer.shutdown();
+
+    verify(this.loader, times(2)).updateExecutableFlow(this.flow1);
+    verify(this.loader, times(1)).updateExecutableFlow(this.flow2);
+  }
+
+  @Test
+  public void testRemovedFlowIsNotWrittenAgain() throws Exception {
+    final FlowUpdateCoalescer coalescer = new FlowUpdateCoalescer(this.loader, 60000);
+    coalescer.update(this.flow1);
+    coalescer.update(this.flow1);
+    coalescer.remove(1);
+    coalescer.shutdown();
+
+    verify(this.loader, times(1)).updateExecutableFlow(this.flow1);
+  }
+
+  @Test
+  public void testUpdatesAreAppendedBetweenCompactions() throws Exception {
+    final FlowUpdateCoalescer coalescer = new FlowUpdateCoalescer(this.loader, 0, 60000);
+    try {
+      coalescer.update(this.flow1);
+      coalescer.update(this.flow1);
+      coalescer.update(this.flow1);
+      // the first write is a full one, the following ones only append the updated nodes
+      verify(this.loader, times(1)).updateExecutableFlow(this.flow1);
+      verify(this.loader, times(2)).appendExecutableFlowUpdate(eq(this.flow1), anyLong());
+      assertThat(coalescer.getAppendedUpdates()).isEqualTo(2);
+
+      // a finished flow is compacted
+      this.flow1.setStatus(Status.SUCCEEDED);
+      coalescer.flush(this.flow1);
+      verify(this.loader, times(2)).updateExecutableFlow(this.flow1);
+      assertThat(coalescer.getWrittenUpdates()).isEqualTo(4);
+    } finally {
+      coalescer.shutdown();
+    }
+  }
+
+  @Test
+  public void testNoStalenessWritesEveryUpdate() throws Exception {
+    final FlowUpdateCoalescer coalescer = new FlowUpdateCoalescer(this.loader, 0);
+    try {
+      for (int i = 0; i < 5; i++) {
+        coalescer.update(this.flow1);
+      }
+      verify(this.loader, times(5)).updateExecutableFlow(this.flow1);
+      assertThat(coalescer.getCoalescedUpdates()).isEqualTo(0);
+    } finally {
+      coalescer.shutdown();
+    }
+  }
+}
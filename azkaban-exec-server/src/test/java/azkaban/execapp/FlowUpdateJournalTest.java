@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FlowUpdateJournalTest {
+
+  @Test
+  public void testUpdatedSince() {
+    final FlowUpdateJournal journal = new FlowUpdateJournal(1L);
+    journal.markUpdated(1);
+    final long sequence = journal.getSequence();
+    journal.markUpdated(2);
+
+    assertThat(journal.isUpdatedSince(1, FlowUpdateJournal.NO_SEQUENCE)).isTrue();
+    assertThat(journal.isUpdatedSince(1, sequence)).isFalse();
+    assertThat(journal.isUpdatedSince(2, sequence)).isTrue();
+    assertThat(journal.isUpdatedSince(3, FlowUpdateJournal.NO_SEQUENCE)).isFalse();
+
+    journal.remove(2);
+    assertThat(journal.isUpdatedSince(2, sequence)).isFalse();
+  }
+
+  @Test
+  public void testAwaitReturnsImmediatelyForPendingUpdate() throws Exception {
+    final FlowUpdateJournal journal = new FlowUpdateJournal(1L);
+    journal.markUpdated(1);
+
+    final long start = System.currentTimeMillis();
+    final long sequence = journal.awaitUpdate(Arrays.asList(1, 2), 0, 10000);
+    assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+    assertThat(sequence).isEqualTo(journal.getSequence());
+  }
+
+  @Test
+  public void testAwaitTimesOutWithoutUpdate() throws Exception {
+    final FlowUpdateJournal journal = new FlowUpdateJournal(1L);
+    journal.markUpdated(1);
+    final long sequence = journal.getSequence();
+    // Updates of executions that weren't asked for don't wake up the caller.
+    journal.markUpdated(2);
+
+    assertThat(journal.awaitUpdate(Collections.singletonList(1), sequence, 50))
+        .isEqualTo(journal.getSequence());
+  }
+
+  @Test
+  public void testAwaitWakesUpOnUpdate() throws Exception {
+    final FlowUpdateJournal journal = new FlowUpdateJournal(1L);
+    final long sequence = journal.getSequence();
+
+    final CompletableFuture<Long> waiter = CompletableFuture.supplyAsync(() -> {
+      try {
+        return journal.awaitUpdate(Collections.singletonList(7), sequence, 60000);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+    journal.markUpdated(7);
+
+    assertThat(waiter.get(10, TimeUnit.SECONDS)).isGreaterThan(sequence);
+  }
+}
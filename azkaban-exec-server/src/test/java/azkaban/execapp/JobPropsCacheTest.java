@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import azkaban.utils.Props;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JobPropsCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File writeJob(final String name, final String content) throws IOException {
+    final File file = new File(this.temp.getRoot(), name);
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  @Test
+  public void testJobFileIsParsedOncePerProjectVersion() throws Exception {
+    final JobPropsCache cache = new JobPropsCache(100);
+    final File job = writeJob("job1.job", "type=command\ncommand=echo 1\n");
+
+    final Props props1 = cache.get(1, 1, "job1.job", job);
+    writeJob("job1.job", "type=command\ncommand=echo 2\n");
+    final Props props2 = cache.get(1, 1, "job1.job", job);
+    final Props props3 = cache.get(1, 2, "job1.job", job);
+
+    assertThat(props2.get("command")).isEqualTo("echo 1");
+    assertThat(props3.get("command")).isEqualTo("echo 2");
+    assertThat(cache.size()).isEqualTo(2);
+
+    // every caller gets its own copy
+    props1.put("command", "echo 3");
+    props1.setParent(Props.of("parent", "value"));
+    final Props props4 = cache.get(1, 1, "job1.job", job);
+    assertThat(props4.get("command")).isEqualTo("echo 1");
+    assertThat(props4.getParent()).isNull();
+  }
+
+  @Test
+  public void testCopiesHaveTheGivenJobFileAsSource() throws Exception {
+    final JobPropsCache cache = new JobPropsCache(100);
+    // the job file of the same project version in the directories of two executions
+    final File job1 = writeJob("job1.job", "type=command\ncommand=echo 1\n");
+    this.temp.newFolder("exec2");
+    final File job2 = writeJob("exec2/job1.job", "type=command\ncommand=echo 1\n");
+
+    assertThat(cache.get(1, 1, "job1.job", job1).getSource()).isEqualTo(job1.getPath());
+    final Props cached = cache.get(1, 1, "job1.job", job2);
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(cached.getSource()).isEqualTo(job2.getPath());
+  }
+
+  @Test
+  public void testMissingJobFile() {
+    final JobPropsCache cache = new JobPropsCache(100);
+    assertThatThrownBy(() -> cache.get(1, 1, "missing.job",
+        new File(this.temp.getRoot(), "missing.job"))).isInstanceOf(IOException.class);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class JobSlotSchedulerTest {
+
+  private final List<String> startedJobs = Collections.synchronizedList(new ArrayList<>());
+  private JobSlotScheduler scheduler;
+
+  @After
+  public void tearDown() {
+    this.scheduler.shutdownNow();
+  }
+
+  /* Submits a job which records its start and runs until the latch is released */
+  private Future<?> submit(final ExecutorService flow, final String name,
+      final CountDownLatch release) {
+    return flow.submit(() -> {
+      this.startedJobs.add(name);
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+  }
+
+  private void awaitStartedJobs(final int count) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (this.startedJobs.size() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(this.startedJobs).hasSize(count);
+  }
+
+  @Test
+  public void testGlobalAndFlowLimits() throws Exception {
+    this.scheduler = new JobSlotScheduler(3, JobSlotScheduler.Policy.FAIR_SHARE);
+    final ExecutorService flow1 = this.scheduler.newFlowExecutor(1, 5, 2);
+    final ExecutorService flow2 = this.scheduler.newFlowExecutor(2, 5, 10);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      futures.add(submit(flow1, "flow1-" + i, release));
+      futures.add(submit(flow2, "flow2-" + i, release));
+    }
+
+    awaitStartedJobs(3);
+    assertThat(this.scheduler.getUsedSlots()).isEqualTo(3);
+    assertThat(this.scheduler.getWaitingJobs()).isEqualTo(5);
+    // flow1 can't take more than 2 slots
+    assertThat(this.startedJobs.stream().filter(job -> job.startsWith("flow1"))).hasSize(2);
+
+    release.countDown();
+    for (final Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    flow1.shutdown();
+    flow2.shutdown();
+    assertThat(flow1.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(flow2.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(this.scheduler.getUsedSlots()).isEqualTo(0);
+    assertThat(this.scheduler.getWaitingJobs()).isEqualTo(0);
+  }
+
+  @Test
+  public void testFairShareServesFlowWithFewerRunningJobs() throws Exception {
+    this.scheduler = new JobSlotScheduler(2, JobSlotScheduler.Policy.FAIR_SHARE);
+    final ExecutorService flow1 = this.scheduler.newFlowExecutor(1, 10, 10);
+    final ExecutorService flow2 = this.scheduler.newFlowExecutor(2, 5, 10);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    final CountDownLatch releaseOthers = new CountDownLatch(1);
+    final Future<?> first = submit(flow1, "flow1-0", releaseFirst);
+    submit(flow1, "flow1-1", releaseOthers);
+    awaitStartedJobs(2);
+    submit(flow1, "flow1-2", releaseOthers);
+    submit(flow2, "flow2-0", releaseOthers);
+
+    // flow2 has no running job while flow1 still has one, despite its lower priority
+    releaseFirst.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    awaitStartedJobs(3);
+    assertThat(this.startedJobs.get(2)).isEqualTo("flow2-0");
+    releaseOthers.countDown();
+  }
+
+  @Test
+  public void testPriorityServesHigherPriorityFlow() throws Exception {
+    this.scheduler = new JobSlotScheduler(1, JobSlotScheduler.Policy.PRIORITY);
+    final ExecutorService flow1 = this.scheduler.newFlowExecutor(1, 5, 10);
+    final ExecutorService flow2 = this.scheduler.newFlowExecutor(2, 10, 10);
+    final CountDownLatch releaseFirst = new CountDownLatch(1);
+    final CountDownLatch releaseOthers = new CountDownLatch(1);
+    final Future<?> first = submit(flow1, "flow1-0", releaseFirst);
+    awaitStartedJobs(1);
+    submit(flow1, "flow1-1", releaseOthers);
+    submit(flow2, "flow2-0", releaseOthers);
+
+    releaseFirst.countDown();
+    first.get(10, TimeUnit.SECONDS);
+    awaitStartedJobs(2);
+    assertThat(this.startedJobs.get(1)).isEqualTo("flow2-0");
+    releaseOthers.countDown();
+  }
+
+  @Test
+  public void testJobsWaitingWithoutSlotDontBlockTheJobsTheyWaitFor() throws Exception {
+    this.scheduler = new JobSlotScheduler(2, JobSlotScheduler.Policy.FAIR_SHARE);
+    final ExecutorService pipelinedFlow = this.scheduler.newFlowExecutor(1, 5, 10);
+    final ExecutorService flow = this.scheduler.newFlowExecutor(2, 5, 10);
+    final CountDownLatch upstreamDone = new CountDownLatch(1);
+    // more jobs waiting on the other flow than there are slots
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      final String name = "pipelined-" + i;
+      futures.add(pipelinedFlow.submit(() -> {
+        JobSlotScheduler.callWithoutSlot(() -> {
+          try {
+            return upstreamDone.await(10, TimeUnit.SECONDS);
+          } catch (final InterruptedException e) {
+            throw new RuntimeException(e);
+          }
+        });
+        this.startedJobs.add(name);
+      }));
+    }
+    futures.add(flow.submit(() -> {
+      this.startedJobs.add("upstream");
+      upstreamDone.countDown();
+    }));
+
+    for (final Future<?> future : futures) {
+      future.get(10, TimeUnit.SECONDS);
+    }
+    assertThat(this.startedJobs.get(0)).isEqualTo("upstream");
+    assertThat(this.startedJobs).hasSize(4);
+    pipelinedFlow.shutdown();
+    flow.shutdown();
+    assertThat(pipelinedFlow.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(flow.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(this.scheduler.getUsedSlots()).isEqualTo(0);
+  }
+
+  /* Runs the wait without the slot of the job, awaiting the latch */
+  private static void awaitWithoutSlot(final CountDownLatch latch) {
+    JobSlotScheduler.callWithoutSlot(() -> {
+      try {
+        return latch.await(10, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+  }
+
+  @Test
+  public void testResumingJobGetsTheSlotYieldedByAnotherJob() throws Exception {
+    this.scheduler = new JobSlotScheduler(1, JobSlotScheduler.Policy.FAIR_SHARE);
+    final ExecutorService flow1 = this.scheduler.newFlowExecutor(1, 5, 10);
+    final ExecutorService flow2 = this.scheduler.newFlowExecutor(2, 5, 10);
+    final CountDownLatch resume = new CountDownLatch(1);
+    final CountDownLatch yield = new CountDownLatch(1);
+    final CountDownLatch releaseYielded = new CountDownLatch(1);
+    final Future<?> resuming = flow1.submit(() -> {
+      this.startedJobs.add("resuming");
+      awaitWithoutSlot(resume);
+      this.startedJobs.add("resumed");
+    });
+    final Future<?> yielding = flow2.submit(() -> {
+      this.startedJobs.add("yielding");
+      try {
+        yield.await(10, TimeUnit.SECONDS);
+      } catch (final InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      awaitWithoutSlot(releaseYielded);
+    });
+    awaitStartedJobs(2);
+
+    // the first job waits for the slot held by the second one, which then gives it up
+    resume.countDown();
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (this.scheduler.getResumingJobs() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(this.scheduler.getResumingJobs()).isEqualTo(1);
+    yield.countDown();
+
+    resuming.get(10, TimeUnit.SECONDS);
+    assertThat(this.startedJobs).containsExactly("resuming", "yielding", "resumed");
+    releaseYielded.countDown();
+    yielding.get(10, TimeUnit.SECONDS);
+    flow1.shutdown();
+    flow2.shutdown();
+    assertThat(flow1.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(flow2.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(this.scheduler.getUsedSlots()).isEqualTo(0);
+  }
+
+  @Test
+  public void testShutdownFlowRejectsJobs() throws Exception {
+    this.scheduler = new JobSlotScheduler(1, JobSlotScheduler.Policy.FAIR_SHARE);
+    final ExecutorService flow = this.scheduler.newFlowExecutor(1, 5, 1);
+    flow.shutdown();
+    assertThat(flow.isTerminated()).isTrue();
+    assertThatThrownBy(() -> flow.submit(() -> {
+    })).isInstanceOf(RejectedExecutionException.class);
+  }
+}
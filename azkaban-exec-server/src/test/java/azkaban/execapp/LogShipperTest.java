@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 LinkedIn Corp.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package azkaban.execapp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import azkaban.executor.ExecutorLoader;
+import azkaban.executor.ExecutorManagerException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.apache.log4j.RollingFileAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.stubbing.Answer;
+
+public class LogShipperTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ExecutorLoader loader;
+  // Uploaded parts by start byte
+  private Map<Integer, byte[]> parts;
+  private LogShipper shipper;
+  private Answer<Void> recordPart;
+
+  @Before
+  public void setUp() throws Exception {
+    this.loader = mock(ExecutorLoader.class);
+    this.parts = new TreeMap<>();
+    this.recordPart = invocation -> {
+      final byte[] buffer = invocation.getArgument(4);
+      this.parts.put(invocation.getArgument(3),
+          Arrays.copyOf(buffer, (int) invocation.getArgument(5)));
+      return null;
+    };
+    doAnswer(this.recordPart).when(this.loader)
+        .uploadLogChunk(anyInt(), anyString(), anyInt(), anyInt(), any(), anyInt());
+    // the uploads are triggered by the test
+    this.shipper = new LogShipper(this.loader, 3600 * 1000, 100);
+  }
+
+  @After
+  public void tearDown() {
+    this.shipper.shutdown();
+  }
+
+  private String getUploadedLog() {
+    final ByteArrayOutputStream log = new ByteArrayOutputStream();
+    for (final Map.Entry<Integer, byte[]> part : this.parts.entrySet()) {
+      assertThat(part.getKey()).isEqualTo(log.size());
+      log.write(part.getValue(), 0, part.getValue().length);
+    }
+    return new String(log.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static void write(final File file, final String text) throws Exception {
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  @Test
+  public void testCompletePartsAreUploadedWhileWritten() throws Exception {
+    final File file = new File(this.temp.getRoot(), "_job.1.job.log");
+    final LogShipper.ShippedLog log = this.shipper.register(1, "job", 0, file, 0);
+    this.shipper.shipAll();
+    assertThat(this.parts).isEmpty();
+
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 25; i++) {
+      expected.append("line ").append(i).append('\n');
+    }
+    write(file, expected.toString());
+    this.shipper.shipAll();
+    // only the complete parts
+    assertThat(this.parts).containsOnlyKeys(0, 100);
+
+    write(file, "last line");
+    expected.append("last line");
+    log.finish();
+    assertThat(this.parts).containsOnlyKeys(0, 100, 200);
+    assertThat(getUploadedLog()).isEqualTo(expected.toString());
+    assertThat(this.shipper.getLogCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testRolledOverFilesAreFollowed() throws Exception {
+    final File file = new File(this.temp.getRoot(), "_job.1.job.log");
+    final RollingFileAppender appender = new RollingFileAppender(new PatternLayout("%m%n"),
+        file.getAbsolutePath(), true);
+    appender.setMaximumFileSize(300);
+    appender.setMaxBackupIndex(2);
+    final Logger logger = Logger.getLogger("LogShipperTest.rolling");
+    logger.setAdditivity(false);
+    logger.addAppender(appender);
+    final LogShipper.ShippedLog log = this.shipper.register(1, "job", 0, file, 2);
+
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      logger.info("line " + i);
+      expected.append("line ").append(i).append(System.getProperty("line.separator"));
+      if (i % 5 == 0) {
+        this.shipper.shipAll();
+      }
+    }
+    logger.removeAppender(appender);
+    appender.close();
+    log.finish();
+
+    // the whole log, not only the last files kept on disk
+    assertThat(new File(file.getPath() + ".3")).doesNotExist();
+    assertThat(getUploadedLog()).isEqualTo(expected.toString());
+  }
+
+  @Test
+  public void testFailedUploadIsRetriedWithTheSameStart() throws Exception {
+    final File file = new File(this.temp.getRoot(), "_flow.1.flow.log");
+    final LogShipper.ShippedLog log = this.shipper.register(1, "", 0, file, 0);
+    final String expected = new String(new char[250]).replace('\0', 'a');
+    write(file, expected);
+
+    doThrow(new ExecutorManagerException("DB is down")).doAnswer(this.recordPart).when(this.loader)
+        .uploadLogChunk(eq(1), eq(""), eq(0), eq(100), any(), eq(100));
+    this.shipper.shipAll();
+    assertThat(this.parts).containsOnlyKeys(0);
+
+    log.finish();
+    verify(this.loader, times(2)).uploadLogChunk(eq(1), eq(""), eq(0), eq(100), any(), eq(100));
+    assertThat(getUploadedLog()).isEqualTo(expected);
+  }
+}